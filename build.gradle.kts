@@ -4,6 +4,7 @@ plugins {
     java
     application
     id("net.ltgt.errorprone") version "0.8.1"
+    id("me.champeau.gradle.jmh") version "0.5.0"
 }
 
 java {
@@ -66,4 +67,13 @@ tasks.withType<JavaCompile> {
 // Error prone options
 tasks.named<JavaCompile>("compileTestJava") {
     options.errorprone.isEnabled.set(false)
+}
+
+// Benchmarks are run by `./gradlew jmh`, the generated code is not checked
+tasks.named<JavaCompile>("compileJmhJava") {
+    options.errorprone.isEnabled.set(false)
+}
+tasks.named<JavaCompile>("jmhCompileGeneratedClasses") {
+    options.errorprone.isEnabled.set(false)
+    options.compilerArgs.remove("-Werror")
 }
\ No newline at end of file
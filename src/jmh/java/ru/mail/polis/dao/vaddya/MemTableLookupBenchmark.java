@@ -0,0 +1,74 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mail.polis.Files;
+import ru.mail.polis.dao.vaddya.memtable.MemTableType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the point lookups of the recent writes, i.e. of the keys which are still in the MemTable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx256m")
+public class MemTableLookupBenchmark {
+    private static final long FLUSH_THRESHOLD = 64 * 1024 * 1024;
+    private static final int KEY_SIZE = 16;
+    private static final int VALUE_SIZE = 100;
+
+    @Param({"SEQUENTIAL", "HASH_INDEXED", "HASH_ONLY"})
+    private MemTableType type;
+
+    @Param({"1000", "100000"})
+    private int count;
+
+    private File data;
+    private DAOImpl dao;
+    private ByteBuffer[] keys;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = Files.createTempDirectory();
+        dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD).withMemTableType(type));
+        final var random = ThreadLocalRandom.current();
+        keys = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            final var key = new byte[KEY_SIZE];
+            final var value = new byte[VALUE_SIZE];
+            random.nextBytes(key);
+            random.nextBytes(value);
+            keys[i] = ByteBuffer.wrap(key);
+            dao.upsert(keys[i], ByteBuffer.wrap(value));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dao.close();
+        Files.recursiveDelete(data);
+    }
+
+    @Benchmark
+    public ByteBuffer get() {
+        return dao.get(keys[ThreadLocalRandom.current().nextInt(count)]);
+    }
+}
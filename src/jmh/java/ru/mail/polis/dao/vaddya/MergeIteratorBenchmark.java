@@ -0,0 +1,100 @@
+package ru.mail.polis.dao.vaddya;
+
+import com.google.common.collect.Iterators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.mail.polis.dao.Iters;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares merging of the entry iterators by the loser tree with the Guava heap based merge.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeIteratorBenchmark {
+    private static final int ENTRIES_COUNT = 100_000;
+    private static final int KEY_SIZE = 16;
+    // part of the keys that are present in several sources
+    private static final double OVERWRITE_RATIO = 0.1;
+
+    @Param({"2", "8", "32"})
+    private int sourcesCount;
+
+    private List<List<TableEntry>> sources;
+
+    @Setup
+    public void setUp() {
+        final var random = new Random(42);
+        final var keys = new ArrayList<ByteBuffer>(ENTRIES_COUNT);
+        for (var i = 0; i < ENTRIES_COUNT; i++) {
+            final var key = new byte[KEY_SIZE];
+            random.nextBytes(key);
+            keys.add(ByteBuffer.wrap(key));
+        }
+        keys.sort(ByteBuffer::compareTo);
+
+        final var entries = new ArrayList<List<TableEntry>>();
+        for (var i = 0; i < sourcesCount; i++) {
+            entries.add(new ArrayList<>());
+        }
+        var ts = 0L;
+        for (final var key : keys) {
+            final var copies = random.nextDouble() < OVERWRITE_RATIO ? 2 : 1;
+            for (var i = 0; i < copies; i++) {
+                final var source = entries.get(random.nextInt(sourcesCount));
+                if (source.isEmpty() || !source.get(source.size() - 1).getKey().equals(key)) {
+                    source.add(TableEntry.from(key, key, false, ++ts));
+                }
+            }
+        }
+        this.sources = entries;
+    }
+
+    @Benchmark
+    public void heap(final Blackhole blackhole) {
+        @SuppressWarnings("UnstableApiUsage")
+        final var merged = Iterators.mergeSorted(iterators(), TableEntry.COMPARATOR);
+        consume(Iters.collapseEquals(merged, TableEntry::getKey), blackhole);
+    }
+
+    @Benchmark
+    public void loserTree(final Blackhole blackhole) {
+        consume(IteratorUtils.collapseIterators(iterators()), blackhole);
+    }
+
+    private List<Iterator<TableEntry>> iterators() {
+        final var iterators = new ArrayList<Iterator<TableEntry>>(sources.size());
+        for (final var source : sources) {
+            iterators.add(source.iterator());
+        }
+        return iterators;
+    }
+
+    private static void consume(
+            final Iterator<TableEntry> iterator,
+            final Blackhole blackhole) {
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+}
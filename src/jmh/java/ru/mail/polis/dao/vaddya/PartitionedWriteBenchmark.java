@@ -0,0 +1,69 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mail.polis.Files;
+import ru.mail.polis.dao.DAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the throughput of concurrent writes scales with the number of partitions.
+ * The number of writing threads is set by {@code -t}, e.g. to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(value = 1, jvmArgs = "-Xmx256m")
+public class PartitionedWriteBenchmark {
+    private static final long FLUSH_THRESHOLD = 4 * 1024 * 1024;
+    private static final int KEY_SIZE = 16;
+    private static final int VALUE_SIZE = 100;
+
+    @Param({"1", "2", "4", "8"})
+    private int partitions;
+
+    private File data;
+    private DAO dao;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = Files.createTempDirectory();
+        final var config = DAOConfig.of(FLUSH_THRESHOLD);
+        dao = partitions == 1 ? new DAOImpl(data, config) : new PartitionedDAO(data, partitions, config);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dao.close();
+        Files.recursiveDelete(data);
+    }
+
+    @Benchmark
+    public void upsert() throws IOException {
+        final var random = ThreadLocalRandom.current();
+        final var key = new byte[KEY_SIZE];
+        final var value = new byte[VALUE_SIZE];
+        random.nextBytes(key);
+        random.nextBytes(value);
+        dao.upsert(ByteBuffer.wrap(key), ByteBuffer.wrap(value));
+    }
+}
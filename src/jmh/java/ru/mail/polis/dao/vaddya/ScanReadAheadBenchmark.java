@@ -0,0 +1,101 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.mail.polis.dao.vaddya.sstable.ReadAhead;
+import ru.mail.polis.dao.vaddya.sstable.SSTable;
+import ru.mail.polis.dao.vaddya.sstable.SSTableBuilder;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares full scans of a table on the cold page cache with and without the read-ahead.
+ * The page cache is dropped before each scan, that requires root, otherwise the scans are warm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = "-Xmx256m")
+public class ScanReadAheadBenchmark {
+    private static final int ENTRIES_COUNT = 64 * 1024;
+    private static final int KEY_SIZE = 16;
+    private static final int VALUE_SIZE = 1024;
+    private static final Path DROP_CACHES = Paths.get("/proc/sys/vm/drop_caches");
+
+    @Param({"0", "262144", "1048576", "4194304"})
+    private int readAheadBytes;
+
+    private Path file;
+    private SSTable table;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("scan", ".db");
+        final var random = new Random(42);
+        try (var builder = SSTableBuilder.create(file, WriterConfig.defaults())) {
+            final var value = new byte[VALUE_SIZE];
+            for (var i = 0; i < ENTRIES_COUNT; i++) {
+                // the decimal digits keep the order of the numbers, the keys are compared as signed bytes
+                final var key = String.format(Locale.ROOT, "%0" + KEY_SIZE + "d", i);
+                random.nextBytes(value);
+                builder.upsert(ByteBuffer.wrap(key.getBytes(StandardCharsets.US_ASCII)), ByteBuffer.wrap(value));
+            }
+            builder.finish();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void openCold() throws IOException {
+        // unreachable mappings of the previous scan keep their pages in the cache
+        table = null;
+        System.gc();
+        if (Files.isWritable(DROP_CACHES)) {
+            Files.write(DROP_CACHES, "1".getBytes(StandardCharsets.US_ASCII));
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            table = SSTable.open(channel, ReadAhead.of(readAheadBytes));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        table = null;
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void scan(final Blackhole bh) {
+        final var cursor = table.cursor(ByteBuffer.allocate(0));
+        while (cursor.isValid()) {
+            // read the last byte of the value, so every page of the table is faulted in
+            final var value = cursor.valueBuffer();
+            bh.consume(value.get(cursor.valueOffset() + cursor.valueLength() - 1));
+            cursor.next();
+        }
+    }
+}
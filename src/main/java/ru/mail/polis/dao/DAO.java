@@ -23,7 +23,12 @@ import ru.mail.polis.Record;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
@@ -65,6 +70,24 @@ public interface DAO extends Closeable {
         return Iters.until(iterator(from), bound);
     }
 
+    /**
+     * Provides iterator (possibly empty) over {@link Record}s which keys start with the given prefix
+     * in <b>ascending</b> order according to {@link Record#compareTo(Record)}.
+     */
+    @NotNull
+    default Iterator<Record> prefix(@NotNull ByteBuffer prefix) throws IOException {
+        final byte[] bound = new byte[prefix.remaining()];
+        prefix.duplicate().get(bound);
+        // buffers are compared as signed bytes, so the highest byte is Byte.MAX_VALUE
+        for (int i = bound.length - 1; i >= 0; i--) {
+            if (bound[i] != Byte.MAX_VALUE) {
+                bound[i]++;
+                return range(prefix, ByteBuffer.wrap(bound, 0, i + 1));
+            }
+        }
+        return iterator(prefix);
+    }
+
     /**
      * Obtains {@link Record} corresponding to given key.
      *
@@ -85,6 +108,23 @@ public interface DAO extends Closeable {
         }
     }
 
+    /**
+     * Obtains values corresponding to given keys.
+     * Keys without values are absent in the resulting map.
+     */
+    @NotNull
+    default Map<ByteBuffer, ByteBuffer> getAll(@NotNull Collection<ByteBuffer> keys) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> result = new HashMap<>();
+        for (final ByteBuffer key : keys) {
+            try {
+                result.put(key, get(key));
+            } catch (NoSuchElementException e) {
+                // skip absent keys
+            }
+        }
+        return result;
+    }
+
     /**
      * Inserts or updates value by given key.
      */
@@ -97,6 +137,19 @@ public interface DAO extends Closeable {
      */
     void remove(@NotNull ByteBuffer key) throws IOException;
 
+    /**
+     * Removes values with keys starting at "from" key (inclusive) until given "to" key (exclusive).
+     */
+    default void removeRange(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to) throws IOException {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        range(from, to).forEachRemaining(record -> keys.add(record.getKey()));
+        for (final ByteBuffer key : keys) {
+            remove(key);
+        }
+    }
+
     /**
      * Performs compaction.
      */
@@ -16,11 +16,19 @@
 
 package ru.mail.polis.dao;
 
+import com.google.common.base.Splitter;
 import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.vaddya.DAOConfig;
 import ru.mail.polis.dao.vaddya.DAOImpl;
+import ru.mail.polis.dao.vaddya.EntryDAO;
+import ru.mail.polis.dao.vaddya.MemoryBudget;
+import ru.mail.polis.dao.vaddya.PartitionedDAO;
+import ru.mail.polis.dao.vaddya.memtable.MemTableType;
+import ru.mail.polis.dao.vaddya.naming.StorageTiers;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 
 /**
  * Custom {@link DAO} factory.
@@ -29,6 +37,16 @@ import java.io.IOException;
  */
 public final class DAOFactory {
     static final long MAX_HEAP = 256 * 1024 * 1024;
+    // shared by all DAOs of the process, so the MemTables together never take more than a quarter of the heap
+    private static final MemoryBudget MEMORY_BUDGET = MemoryBudget.of(MAX_HEAP / 4);
+    // number of partitions of the local storage, e.g. the number of cores to scale the writes
+    private static final int PARTITIONS = Integer.getInteger("dao.partitions", 1);
+    // comma separated names of the column families which are opened (and created) with the storage
+    private static final String COLUMN_FAMILIES = System.getProperty("dao.column.families", "");
+    // storage tiers as "<first level>=<dir>[,<dir>...]" separated by ';', e.g. "2=/hdd1,/hdd2" keeps L0-L1 in place
+    private static final String STORAGE_TIERS = System.getProperty("dao.storage.tiers", "");
+    // structure of the MemTables, e.g. HASH_INDEXED for the point lookups of the recent writes
+    private static final String MEMTABLE_TYPE = System.getProperty("dao.memtable.type", "SEQUENTIAL");
 
     private DAOFactory() {
         // Not instantiatable
@@ -42,6 +60,20 @@ public final class DAOFactory {
      */
     @NotNull
     public static DAO create(@NotNull final File data) throws IOException {
+        return create(data, PARTITIONS);
+    }
+
+    /**
+     * Construct a {@link DAO} instance sharding the keys by their hashes into the partitions.
+     *
+     * @param data       local disk folder to persist the data to
+     * @param partitions number of partitions, a single partition is a plain storage
+     * @return a storage instance
+     */
+    @NotNull
+    public static DAO create(
+            @NotNull final File data,
+            final int partitions) throws IOException {
         if (Runtime.getRuntime().maxMemory() > MAX_HEAP) {
             throw new IllegalStateException("The heap is too big. Consider setting Xmx.");
         }
@@ -54,6 +86,31 @@ public final class DAOFactory {
             throw new IllegalArgumentException("Path is not a directory: " + data);
         }
 
-        return new DAOImpl(data, MAX_HEAP / 64);
+        final var config = DAOConfig.of(MAX_HEAP / 64)
+                .withMemoryBudget(MEMORY_BUDGET)
+                .withStorageTiers(storageTiers(STORAGE_TIERS))
+                .withMemTableType(MemTableType.valueOf(MEMTABLE_TYPE));
+        final EntryDAO dao = partitions == 1 ? new DAOImpl(data, config) : new PartitionedDAO(data, partitions, config);
+        for (final var name : Splitter.on(',').trimResults().omitEmptyStrings().split(COLUMN_FAMILIES)) {
+            dao.openColumnFamily(name, config);
+        }
+        return dao;
+    }
+
+    @NotNull
+    private static StorageTiers storageTiers(@NotNull final String spec) {
+        var tiers = StorageTiers.none();
+        for (final var tier : Splitter.on(';').trimResults().omitEmptyStrings().split(spec)) {
+            final var parts = Splitter.on('=').trimResults().limit(2).splitToList(tier);
+            if (parts.size() != 2) {
+                throw new IllegalArgumentException("Wrong storage tier: " + tier);
+            }
+            final var directories = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(parts.get(1))
+                    .stream()
+                    .map(Path::of)
+                    .toArray(Path[]::new);
+            tiers = tiers.withTier(Integer.parseInt(parts.get(0)), directories);
+        }
+        return tiers;
     }
 }
@@ -0,0 +1,163 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.function.IntFunction;
+
+/**
+ * Cursor over the alive entries of a merged cursor that stops at the upper bound.
+ * Tombstones and entries removed by the range tombstones are skipped,
+ * values stored in the value log are exposed as views into the mapped value log files.
+ * Merge operands are folded with the older versions of the key into a value on the heap.
+ */
+@NotThreadSafe
+final class AliveCursor implements Cursor {
+    private final Cursor cursor;
+    private final RangeTombstones tombstones;
+    @Nullable
+    private final ByteBuffer to;
+    private final IntFunction<ByteBuffer> valueLogFiles;
+    // the current entry if it is folded, the cursor is already positioned after its versions
+    @Nullable
+    private TableEntry folded;
+
+    /**
+     * Creates a cursor.
+     *
+     * @param cursor        merged cursor without equal keys except the versions under merge operands
+     * @param tombstones    range tombstones to apply
+     * @param to            upper bound of the keys (exclusive) or {@code null}
+     * @param valueLogFiles contents of the value log files by their IDs
+     */
+    AliveCursor(
+            @NotNull final Cursor cursor,
+            @NotNull final RangeTombstones tombstones,
+            @Nullable final ByteBuffer to,
+            @NotNull final IntFunction<ByteBuffer> valueLogFiles) {
+        this.cursor = cursor;
+        this.tombstones = tombstones;
+        this.to = to;
+        this.valueLogFiles = valueLogFiles;
+        skipRemoved();
+    }
+
+    @Override
+    public boolean isValid() {
+        return folded != null || isCursorValid();
+    }
+
+    @Override
+    public void next() {
+        if (folded == null) {
+            cursor.next();
+        } else {
+            folded = null;
+        }
+        skipRemoved();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer keyBuffer() {
+        return folded == null ? cursor.keyBuffer() : folded.getKey();
+    }
+
+    @Override
+    public int keyOffset() {
+        return folded == null ? cursor.keyOffset() : folded.getKey().position();
+    }
+
+    @Override
+    public int keyLength() {
+        return folded == null ? cursor.keyLength() : folded.getKey().remaining();
+    }
+
+    @Override
+    public long ts() {
+        return folded == null ? cursor.ts() : folded.ts();
+    }
+
+    @Override
+    public boolean hasTombstone() {
+        return false;
+    }
+
+    @Override
+    public boolean isOperand() {
+        return false;
+    }
+
+    /**
+     * Values are always resolved, so the value buffer is either a table or a value log file.
+     */
+    @Override
+    public int valueLogId() {
+        return -1;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer valueBuffer() {
+        if (folded != null) {
+            return folded.getValue();
+        }
+        final var fileId = cursor.valueLogId();
+        return fileId < 0 ? cursor.valueBuffer() : valueLogFiles.apply(fileId);
+    }
+
+    @Override
+    public int valueOffset() {
+        return folded == null ? cursor.valueOffset() : folded.getValue().position();
+    }
+
+    @Override
+    public int valueLength() {
+        return folded == null ? cursor.valueLength() : folded.getValue().remaining();
+    }
+
+    @NotNull
+    @Override
+    public TableEntry entry() {
+        return folded == null ? resolve(cursor.entry()) : folded;
+    }
+
+    private boolean isCursorValid() {
+        return cursor.isValid() && (to == null || cursor.compareKey(to) < 0);
+    }
+
+    private void skipRemoved() {
+        while (isCursorValid() && (cursor.hasTombstone() || tombstones.covers(cursor))) {
+            cursor.next();
+        }
+        if (isCursorValid() && cursor.isOperand()) {
+            fold();
+        }
+    }
+
+    private void fold() {
+        final var versions = new ArrayList<TableEntry>();
+        do {
+            versions.add(cursor.entry());
+            cursor.next();
+        } while (cursor.isValid() && cursor.compareKey(versions.get(0).getKey()) == 0);
+        folded = MergeUtils.fold(versions, tombstones, this::resolve);
+    }
+
+    @NotNull
+    private TableEntry resolve(@NotNull final TableEntry entry) {
+        final var pointer = entry.valuePointer();
+        if (pointer == null) {
+            return entry;
+        }
+        final var offset = (int) pointer.offset();
+        final var value = valueLogFiles.apply(pointer.fileId()).duplicate()
+                .position(offset)
+                .limit(offset + pointer.length())
+                .slice();
+        return entry.resolved(value);
+    }
+}
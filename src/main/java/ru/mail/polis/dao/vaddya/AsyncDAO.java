@@ -0,0 +1,63 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.Record;
+
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Asynchronous operations of a storage. The operations served by the MemTables complete in the calling thread,
+ * the ones which could block on the reads of the mapped tables, on the stalled writes or on the writes
+ * of the same key are executed by the storage threads, so the futures should not be joined by them.
+ */
+public interface AsyncDAO {
+    /**
+     * Get an entry for a given key, see {@link EntryDAO#getEntry(ByteBuffer)}.
+     *
+     * @param key key to search for
+     * @return a future of the entry, it could be a tombstone, or of {@code null} if the key is absent
+     */
+    @NotNull
+    CompletableFuture<TableEntry> getEntryAsync(@NotNull ByteBuffer key);
+
+    /**
+     * Get a value for a given key.
+     *
+     * @param key key to search for
+     * @return a future of the value, it completes with {@link NoSuchElementException} if the key is absent
+     */
+    @NotNull
+    default CompletableFuture<ByteBuffer> getAsync(@NotNull final ByteBuffer key) {
+        return getEntryAsync(key).thenApply(entry -> {
+            if (entry == null || entry.hasTombstone()) {
+                throw new NoSuchEntityException("Not found");
+            }
+            return entry.getValue();
+        });
+    }
+
+    @NotNull
+    CompletableFuture<Void> upsertAsync(
+            @NotNull ByteBuffer key,
+            @NotNull ByteBuffer value);
+
+    @NotNull
+    CompletableFuture<Void> removeAsync(@NotNull ByteBuffer key);
+
+    /**
+     * Get a publisher of the alive records with keys between {@code from} (inclusive) and {@code to} (exclusive).
+     * Each subscriber scans the range from the start, the records are read by the storage threads on demand.
+     *
+     * @param from starting key (inclusive)
+     * @param to   ending key (exclusive) or {@code null}
+     * @return a publisher
+     */
+    @NotNull
+    Flow.Publisher<Record> rangeAsync(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to);
+}
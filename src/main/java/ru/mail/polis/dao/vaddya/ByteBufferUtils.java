@@ -1,11 +1,28 @@
 package ru.mail.polis.dao.vaddya;
 
+import com.google.common.io.BaseEncoding;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public final class ByteBufferUtils {
+    /**
+     * Flag of the value size meaning that the value is stored in the value log.
+     */
+    public static final int POINTER_FLAG = Integer.MIN_VALUE;
+    /**
+     * Flag of the value size meaning that the value is a sequence of merge operands, see {@link MergeUtils}.
+     */
+    public static final int OPERAND_FLAG = 1 << 30;
+    /**
+     * Flag of the value size meaning that the value is compressed with the dictionary of the table.
+     */
+    public static final int COMPRESSED_FLAG = 1 << 29;
     private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
 
     private ByteBufferUtils() {
@@ -22,61 +39,134 @@ public final class ByteBufferUtils {
     }
 
     /**
-     * Creates a buffer from the specified int value.
+     * Compare regions of the buffers of the same length as signed bytes just like {@link ByteBuffer#compareTo}
+     * using only absolute methods, so nothing is allocated. Big-endian buffers are compared by 8 bytes at once.
      *
-     * @param value a int value to put into the buffer
-     * @return a buffer with int value
+     * @return a negative integer, zero, or a positive integer as the first region is less than,
+     *         equal to, or greater than the second one
      */
-    @NotNull
-    public static ByteBuffer fromInt(final int value) {
-        final var buffer = ByteBuffer.allocate(Integer.BYTES);
-        buffer.putInt(value);
-        return buffer.flip();
+    public static int compare(
+            @NotNull final ByteBuffer first,
+            final int firstOffset,
+            @NotNull final ByteBuffer second,
+            final int secondOffset,
+            final int length) {
+        var i = 0;
+        if (first.order() == ByteOrder.BIG_ENDIAN && second.order() == ByteOrder.BIG_ENDIAN) {
+            for (; i + Long.BYTES <= length; i += Long.BYTES) {
+                final var x = first.getLong(firstOffset + i);
+                final var y = second.getLong(secondOffset + i);
+                if (x != y) {
+                    // the highest differing byte decides
+                    final var shift = Long.SIZE - Byte.SIZE - (Long.numberOfLeadingZeros(x ^ y) & -Byte.SIZE);
+                    return Byte.compare((byte) (x >>> shift), (byte) (y >>> shift));
+                }
+            }
+        }
+        for (; i < length; i++) {
+            final var cmp = Byte.compare(first.get(firstOffset + i), second.get(secondOffset + i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
     }
 
     /**
-     * Creates a buffer from the specified list of ints.
+     * Returns the lowest key that is greater than all keys starting with the given prefix.
      *
-     * @param list a list of int values
-     * @return a buffer with int list
+     * @param prefix prefix of the keys
+     * @return upper bound (exclusive) or {@code null} if there is no such key
+     */
+    @Nullable
+    public static ByteBuffer prefixUpperBound(@NotNull final ByteBuffer prefix) {
+        final var bound = new byte[prefix.remaining()];
+        prefix.duplicate().get(bound);
+        // buffers are compared as signed bytes, so the highest byte is Byte.MAX_VALUE
+        for (var i = bound.length - 1; i >= 0; i--) {
+            if (bound[i] != Byte.MAX_VALUE) {
+                bound[i]++;
+                return ByteBuffer.wrap(bound, 0, i + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the lowest key that is greater than the given key.
      */
     @NotNull
-    public static ByteBuffer fromIntList(@NotNull final List<Integer> list) {
-        final var buffer = ByteBuffer.allocate(Integer.BYTES * list.size());
-        list.forEach(buffer::putInt);
-        return buffer.flip();
+    public static ByteBuffer successor(@NotNull final ByteBuffer key) {
+        final var result = ByteBuffer.allocate(key.remaining() + 1);
+        // buffers are compared as signed bytes, so the lowest byte is Byte.MIN_VALUE
+        result.put(key.duplicate()).put(Byte.MIN_VALUE);
+        return result.flip();
     }
 
     /**
-     * Create and fill ByteBuffer from MemTable entry.
+     * Format the remaining bytes of the buffer in hex, the position of the buffer is not changed.
+     */
+    @NotNull
+    public static String toHexString(@NotNull final ByteBuffer buffer) {
+        final var bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return BaseEncoding.base16().encode(bytes);
+    }
+
+    /**
+     * Create and fill ByteBuffer from the range tombstones.
      *
      * <p>ByteBuffer will contain:
      * <ul>
-     * <li> Size of the key (4 bytes)
-     * <li> Key of the entry (N bytes)
-     * <li> Timestamp (8 bytes), if negative then it is a tombstone and neither value size nor value itself is present
-     * <li> Size of the value (4 bytes)
-     * <li> Value of the entry (M bytes)
+     * <li> Number of tombstones (4 bytes)
+     * <li> For each tombstone: size of the lowest key (4 bytes) and the key itself (N bytes),
+     * size of the highest key (4 bytes, -1 if the range is unbounded) and the key itself (M bytes),
+     * timestamp (8 bytes)
      * </ul>
      */
     @NotNull
-    public static ByteBuffer fromTableEntry(@NotNull final TableEntry entry) {
-        final var keySize = entry.getKey().remaining();
-        if (entry.hasTombstone()) {
-            return ByteBuffer.allocate(Integer.BYTES + keySize + Long.BYTES)
-                    .putInt(keySize)
-                    .put(entry.getKey().duplicate())
-                    .putLong(-entry.ts())
-                    .flip();
+    public static ByteBuffer fromRangeTombstones(@NotNull final Collection<RangeTombstone> tombstones) {
+        final var size = tombstones.stream().mapToInt(RangeTombstone::sizeInBytes).sum();
+        final var buffer = ByteBuffer.allocate(Integer.BYTES + size).putInt(tombstones.size());
+        for (final var tombstone : tombstones) {
+            buffer.putInt(tombstone.from().remaining()).put(tombstone.from().duplicate());
+            final var to = tombstone.to();
+            if (to == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(to.remaining()).put(to.duplicate());
+            }
+            buffer.putLong(tombstone.ts());
         }
+        return buffer.flip();
+    }
 
-        final var valueSize = entry.getValue().remaining();
-        return ByteBuffer.allocate(Integer.BYTES + keySize + Long.BYTES + Integer.BYTES + valueSize)
-                .putInt(keySize)
-                .put(entry.getKey().duplicate())
-                .putLong(entry.ts())
-                .putInt(valueSize)
-                .put(entry.getValue().duplicate())
-                .flip();
+    /**
+     * Read range tombstones from the buffer filled by {@code fromRangeTombstones}.
+     *
+     * @param buffer buffer to read from
+     * @return range tombstones
+     */
+    @NotNull
+    public static List<RangeTombstone> toRangeTombstones(@NotNull final ByteBuffer buffer) {
+        final var block = buffer.duplicate();
+        final var count = block.getInt();
+        final var tombstones = new ArrayList<RangeTombstone>(count);
+        for (var i = 0; i < count; i++) {
+            final var from = slice(block, block.getInt());
+            final var toSize = block.getInt();
+            final var to = toSize < 0 ? null : slice(block, toSize);
+            tombstones.add(RangeTombstone.from(from, to, block.getLong()));
+        }
+        return tombstones;
+    }
+
+    @NotNull
+    private static ByteBuffer slice(
+            @NotNull final ByteBuffer buffer,
+            final int size) {
+        final var slice = buffer.duplicate().limit(buffer.position() + size).slice();
+        buffer.position(buffer.position() + size);
+        return slice;
     }
 }
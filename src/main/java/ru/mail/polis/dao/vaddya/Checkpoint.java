@@ -0,0 +1,101 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects hard links to the live files of the storage in a checkpoint directory.
+ * The directory gets a manifest with the names of all the live files, so a checkpoint can be incremental:
+ * files listed in the manifest of the previous checkpoint are not linked again,
+ * and the storage is restored by the files of both checkpoints listed in the latest manifest.
+ * A full checkpoint is a storage directory itself.
+ * The files of the storage tiers are collected into the checkpoint directory too, and the TIERS file of the storage
+ * is not, so the tables are moved to the directories of the tiers the checkpoint is opened with.
+ */
+@NotThreadSafe
+public final class Checkpoint {
+    public static final String MANIFEST = "MANIFEST";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path target;
+    private final Set<String> previous;
+    private final List<String> files = new ArrayList<>();
+    private int linked;
+    private int copied;
+
+    private Checkpoint(
+            @NotNull final Path target,
+            @NotNull final Set<String> previous) {
+        this.target = target;
+        this.previous = previous;
+    }
+
+    /**
+     * Create a checkpoint in the directory, the directory is created if it is absent.
+     *
+     * @param target   directory on the same file system as the storage, otherwise the files are copied
+     * @param previous directory of the previous checkpoint to skip its files or {@code null}
+     * @throws IOException if cannot create the directory or read the previous manifest
+     */
+    @NotNull
+    static Checkpoint create(
+            @NotNull final Path target,
+            @Nullable final Path previous) throws IOException {
+        Files.createDirectories(target);
+        final Set<String> previousFiles = previous == null
+                ? Set.of()
+                : new HashSet<>(Files.readAllLines(previous.resolve(MANIFEST), StandardCharsets.UTF_8));
+        return new Checkpoint(target, previousFiles);
+    }
+
+    /**
+     * Link the live file to the checkpoint unless it belongs to the previous checkpoint.
+     * The file is copied if it is stored on another file system, e.g. in a storage tier on another disk.
+     * The caller guarantees that the file is not removed during the call.
+     *
+     * @throws IOException if cannot create the link or copy the file
+     */
+    public void add(@NotNull final Path file) throws IOException {
+        final var name = file.getFileName().toString();
+        files.add(name);
+        if (previous.contains(name)) {
+            return;
+        }
+        final var link = target.resolve(name);
+        if (Files.getFileStore(file).equals(Files.getFileStore(target))) {
+            Files.createLink(link, file);
+            linked++;
+        } else {
+            Files.copy(file, link);
+            copied++;
+        }
+    }
+
+    /**
+     * Write the manifest, the checkpoint is complete after that.
+     *
+     * @throws IOException if cannot write the manifest
+     */
+    void finish() throws IOException {
+        final var tempPath = target.resolve(MANIFEST + TEMP_SUFFIX);
+        Files.write(tempPath, files, StandardCharsets.UTF_8);
+        Files.move(tempPath, target.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{" + "target=" + target + ", files=" + files.size()
+                + ", linked=" + linked + ", copied=" + copied + '}';
+    }
+}
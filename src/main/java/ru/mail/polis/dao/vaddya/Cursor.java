@@ -0,0 +1,96 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A movable position over sorted table entries that exposes the current entry as offset/length views
+ * into the underlying buffers, so moving the cursor and comparing keys allocate nothing.
+ * Views are valid only until the cursor is moved.
+ *
+ * <p>Entries with equal keys are ordered from the newest to the oldest as in {@link TableEntry#COMPARATOR}.
+ */
+public interface Cursor {
+    /**
+     * Check if the cursor points to an entry.
+     */
+    boolean isValid();
+
+    /**
+     * Move the cursor to the next entry.
+     */
+    void next();
+
+    /**
+     * Get the buffer that contains the key of the current entry.
+     * The buffer should be accessed only using absolute methods.
+     */
+    @NotNull
+    ByteBuffer keyBuffer();
+
+    int keyOffset();
+
+    int keyLength();
+
+    /**
+     * Get timestamp of the current entry.
+     */
+    long ts();
+
+    /**
+     * Check if the current entry is a tombstone.
+     */
+    boolean hasTombstone();
+
+    /**
+     * Get ID of the value log file containing the value or {@code -1} if the value is stored inline.
+     * Offset and length of the value refer to the value log file then.
+     */
+    int valueLogId();
+
+    /**
+     * Check if the inline value of the current entry is a sequence of merge operands, see {@link MergeUtils}.
+     */
+    boolean isOperand();
+
+    /**
+     * Get the buffer that contains the inline value of the current entry.
+     * The buffer should be accessed only using absolute methods.
+     *
+     * @throws IllegalStateException if the entry is a tombstone or the value is stored in the value log
+     */
+    @NotNull
+    ByteBuffer valueBuffer();
+
+    int valueOffset();
+
+    int valueLength();
+
+    /**
+     * Create an entry equal to the current one, unlike the views it outlives the move of the cursor.
+     */
+    @NotNull
+    TableEntry entry();
+
+    /**
+     * Compare the key of the current entry with the given key in place.
+     */
+    default int compareKey(@NotNull final ByteBuffer key) {
+        final var length = Math.min(keyLength(), key.remaining());
+        final var cmp = ByteBufferUtils.compare(keyBuffer(), keyOffset(), key, key.position(), length);
+        return cmp == 0 ? keyLength() - key.remaining() : cmp;
+    }
+
+    /**
+     * Compare keys of the current entries of the cursors in place.
+     */
+    static int compareKeys(
+            @NotNull final Cursor first,
+            @NotNull final Cursor second) {
+        final var length = Math.min(first.keyLength(), second.keyLength());
+        final var cmp = ByteBufferUtils.compare(
+                first.keyBuffer(), first.keyOffset(), second.keyBuffer(), second.keyOffset(), length);
+        return cmp == 0 ? first.keyLength() - second.keyLength() : cmp;
+    }
+}
@@ -0,0 +1,136 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.vaddya.memtable.MemTableType;
+import ru.mail.polis.dao.vaddya.naming.StorageTiers;
+import ru.mail.polis.dao.vaddya.sstable.PrefixExtractor;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Immutable configuration of {@link DAOImpl}.
+ */
+@ThreadSafe
+public final class DAOConfig {
+    private final long flushThresholdInBytes;
+    private final WriterConfig writerConfig;
+    private final int valueLogThresholdInBytes;
+    private final MemoryBudget memoryBudget;
+    private final StorageTiers storageTiers;
+    private final MemTableType memTableType;
+
+    /**
+     * Create a configuration without prefix filters, value log and memory limit storing all the tables
+     * in the storage directory.
+     *
+     * @param flushThresholdInBytes threshold in bytes when MemTable is flushed to the disk
+     * @return a configuration
+     */
+    @NotNull
+    public static DAOConfig of(final long flushThresholdInBytes) {
+        return new DAOConfig(
+                flushThresholdInBytes,
+                WriterConfig.defaults(),
+                Integer.MAX_VALUE,
+                MemoryBudget.unlimited(),
+                StorageTiers.none(),
+                MemTableType.SEQUENTIAL);
+    }
+
+    private DAOConfig(
+            final long flushThresholdInBytes,
+            @NotNull final WriterConfig writerConfig,
+            final int valueLogThresholdInBytes,
+            @NotNull final MemoryBudget memoryBudget,
+            @NotNull final StorageTiers storageTiers,
+            @NotNull final MemTableType memTableType) {
+        this.flushThresholdInBytes = flushThresholdInBytes;
+        this.writerConfig = writerConfig;
+        this.valueLogThresholdInBytes = valueLogThresholdInBytes;
+        this.memoryBudget = memoryBudget;
+        this.storageTiers = storageTiers;
+        this.memTableType = memTableType;
+    }
+
+    /**
+     * Build prefix filters of the tables using the extractor.
+     */
+    @NotNull
+    public DAOConfig withPrefixExtractor(@NotNull final PrefixExtractor prefixExtractor) {
+        return withWriterConfig(writerConfig.withPrefixExtractor(prefixExtractor));
+    }
+
+    /**
+     * Set the configuration of the tables writing, it overrides the prefix extractor.
+     */
+    @NotNull
+    public DAOConfig withWriterConfig(@NotNull final WriterConfig writerConfig) {
+        return new DAOConfig(flushThresholdInBytes, writerConfig, valueLogThresholdInBytes, memoryBudget,
+                storageTiers, memTableType);
+    }
+
+    /**
+     * Store values larger than the threshold in the value log instead of the tables.
+     */
+    @NotNull
+    public DAOConfig withValueLogThreshold(final int valueLogThresholdInBytes) {
+        return new DAOConfig(flushThresholdInBytes, writerConfig, valueLogThresholdInBytes, memoryBudget,
+                storageTiers, memTableType);
+    }
+
+    /**
+     * Charge the memory retained by the MemTables to the budget, it can be shared by several DAOs.
+     */
+    @NotNull
+    public DAOConfig withMemoryBudget(@NotNull final MemoryBudget memoryBudget) {
+        return new DAOConfig(flushThresholdInBytes, writerConfig, valueLogThresholdInBytes, memoryBudget,
+                storageTiers, memTableType);
+    }
+
+    /**
+     * Place the tables of the levels in the directories of the tiers, the value log stays in the storage directory.
+     */
+    @NotNull
+    public DAOConfig withStorageTiers(@NotNull final StorageTiers storageTiers) {
+        return new DAOConfig(flushThresholdInBytes, writerConfig, valueLogThresholdInBytes, memoryBudget,
+                storageTiers, memTableType);
+    }
+
+    /**
+     * Set the structure of the MemTables, the hash tables speed up the point lookups of the recent writes.
+     */
+    @NotNull
+    public DAOConfig withMemTableType(@NotNull final MemTableType memTableType) {
+        return new DAOConfig(flushThresholdInBytes, writerConfig, valueLogThresholdInBytes, memoryBudget,
+                storageTiers, memTableType);
+    }
+
+    public long flushThresholdInBytes() {
+        return flushThresholdInBytes;
+    }
+
+    @NotNull
+    public WriterConfig writerConfig() {
+        return writerConfig;
+    }
+
+    public int valueLogThresholdInBytes() {
+        return valueLogThresholdInBytes;
+    }
+
+    @NotNull
+    public MemoryBudget memoryBudget() {
+        return memoryBudget;
+    }
+
+    @NotNull
+    public StorageTiers storageTiers() {
+        return storageTiers;
+    }
+
+    @NotNull
+    public MemTableType memTableType() {
+        return memTableType;
+    }
+}
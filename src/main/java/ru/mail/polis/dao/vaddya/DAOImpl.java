@@ -2,42 +2,98 @@ package ru.mail.polis.dao.vaddya;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.mail.polis.Record;
-import ru.mail.polis.dao.DAO;
 import ru.mail.polis.dao.vaddya.flush.Flusher;
 import ru.mail.polis.dao.vaddya.flush.TableFlusher;
 import ru.mail.polis.dao.vaddya.memtable.MemTablePool;
 import ru.mail.polis.dao.vaddya.memtable.MemTablePoolImpl;
+import ru.mail.polis.dao.vaddya.memtable.MemTableType;
 import ru.mail.polis.dao.vaddya.naming.AtomicGenerationProvider;
+import ru.mail.polis.dao.vaddya.naming.GenerationProvider;
 import ru.mail.polis.dao.vaddya.naming.LeveledFileManagerImpl;
 import ru.mail.polis.dao.vaddya.sstable.leveled.LeveledSSTablePoolImpl;
 import ru.mail.polis.dao.vaddya.sstable.SSTable;
 import ru.mail.polis.dao.vaddya.sstable.SSTablePool;
+import ru.mail.polis.dao.vaddya.vlog.ValueLog;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
 
 @ThreadSafe
-public class DAOImpl implements DAO {
+public class DAOImpl implements EntryDAO {
     private static final Logger log = LoggerFactory.getLogger(DAOImpl.class);
 
+    // value log file is collected if its live values take less than the ratio of the file size
+    private static final double VALUE_LOG_LIVE_RATIO = 0.5;
+    private static final long CHECKPOINT_FLUSH_TIMEOUT_SECONDS = 60;
+    private static final String COLUMN_FAMILY_PREFIX = "cf-";
+    private static final Pattern COLUMN_FAMILY_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final int KEY_LOCK_STRIPES = 256;
+    private static final int STORAGE_THREADS = 4;
+
     private final SSTablePool ssTablePool;
     private final MemTablePool memTablePool;
     private final Flusher flusher;
+    private final ValueLog valueLog;
+    private final GenerationProvider generationProvider;
+    private final LeveledFileManagerImpl fileManager;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // the range tombstones are fragmented once until they change, not on every read
+    private volatile RangeTombstones fragmentedTombstones = RangeTombstones.of(List.of());
+    private final Lock valueLogLock = new ReentrantLock();
+    // serialize the point writes of a key, so the conditional writes check and write atomically
+    private final Striped<Lock> keyLocks = Striped.lock(KEY_LOCK_STRIPES);
+    private final File root;
+    private final DAOConfig config;
+    private final ExecutorService flushExecutor;
+    // runs the asynchronous operations which could block on the reads of the tables or on the stalled writes
+    private final ExecutorService storageExecutor;
+    // the column families share the executors of the storage which opened them
+    private final boolean ownsExecutors;
+    // the ingested tables could have entries newer than the ones of the MemTables written before this timestamp
+    private final AtomicLong ingestedBefore = new AtomicLong();
+    private final Map<String, DAOImpl> columnFamilies = new ConcurrentHashMap<>();
 
     /**
-     * Creates persistent DAO.
+     * Creates persistent DAO without prefix filters and value log.
      *
      * @param root folder to save and read data from
      * @throws UncheckedIOException if cannot open or read SSTables
@@ -45,21 +101,58 @@ public class DAOImpl implements DAO {
     public DAOImpl(
             @NotNull final File root,
             final long flushThresholdInBytes) {
-        final var fileManager = new LeveledFileManagerImpl(root);
-        final var generationProvider = new AtomicGenerationProvider();
-        
-        this.flusher = new TableFlusher(fileManager);
+        this(root, DAOConfig.of(flushThresholdInBytes));
+    }
+
+    /**
+     * Creates persistent DAO.
+     *
+     * @param root   folder to save and read data from
+     * @param config configuration of the DAO
+     * @throws UncheckedIOException if cannot open or read SSTables
+     */
+    public DAOImpl(
+            @NotNull final File root,
+            @NotNull final DAOConfig config) {
+        this(root, config, TableFlusher.newExecutor(), newStorageExecutor(), true);
+    }
+
+    private DAOImpl(
+            @NotNull final File root,
+            @NotNull final DAOConfig config,
+            @NotNull final ExecutorService flushExecutor,
+            @NotNull final ExecutorService storageExecutor,
+            final boolean ownsExecutors) {
+        this.root = root;
+        this.config = config;
+        this.flushExecutor = flushExecutor;
+        this.storageExecutor = storageExecutor;
+        this.ownsExecutors = ownsExecutors;
+        this.fileManager = new LeveledFileManagerImpl(root, config.storageTiers());
+        final var flushThresholdInBytes = config.flushThresholdInBytes();
+        final var writerConfig = config.writerConfig();
+        this.generationProvider = new AtomicGenerationProvider();
+        this.valueLog = new ValueLog(root, config.valueLogThresholdInBytes());
+
+        this.flusher = new TableFlusher(fileManager, writerConfig, valueLog, flushExecutor);
         this.flusher.addListener(this::flushed);
-        this.memTablePool = new MemTablePoolImpl(flushThresholdInBytes, generationProvider, flusher);
+        this.memTablePool = new MemTablePoolImpl(flushThresholdInBytes, generationProvider, flusher,
+                config.memoryBudget(), config.memTableType());
 
         final var compactionThresholdInBytes = 4 * flushThresholdInBytes;
         final var targetTableSizeInBytes = 2 * flushThresholdInBytes;
         this.ssTablePool = new LeveledSSTablePoolImpl(compactionThresholdInBytes, targetTableSizeInBytes, fileManager, 
-                generationProvider);
+                generationProvider, writerConfig, memTablePool::unflushedSince);
 
         log.info("DAO was opened in directory {}, SSTablePool: {}", root, ssTablePool);
     }
 
+    @NotNull
+    private static ExecutorService newStorageExecutor() {
+        final var threadFactory = new ThreadFactoryBuilder().setNameFormat("storage-%d").build();
+        return Executors.newFixedThreadPool(STORAGE_THREADS, threadFactory);
+    }
+
     @Override
     @NotNull
     public Iterator<Record> iterator(@NotNull final ByteBuffer from) {
@@ -68,9 +161,33 @@ public class DAOImpl implements DAO {
         return IteratorUtils.toRecords(alive);
     }
 
+    @Override
+    @NotNull
+    public Iterator<Record> prefix(@NotNull final ByteBuffer prefix) {
+        final Collection<Iterator<TableEntry>> iterators;
+        final RangeTombstones tombstones;
+        final UnaryOperator<TableEntry> resolver;
+        lock.readLock().lock();
+        try {
+            iterators = List.of(
+                    memTablePool.prefix(prefix),
+                    ssTablePool.prefix(prefix)
+            );
+            tombstones = rangeTombstones();
+            resolver = valueLog.resolver();
+        } finally {
+            lock.readLock().unlock();
+        }
+        final var iterator = IteratorUtils.collapseIterators(iterators, tombstones, resolver);
+        final var alive = Iterators.transform(IteratorUtils.aliveEntries(iterator), resolver::apply);
+        return IteratorUtils.toRecords(alive);
+    }
+
     /**
      * Get an entry iterator.
-     * Returning value by iterator could be a tombstone.
+     * Returning value by iterator could be a tombstone,
+     * entries removed by range tombstones are returned as point tombstones.
+     * Values stored in the value log are resolved lazily, merge operands are folded into values.
      *
      * @param from starting key to search for
      * @return an iterator
@@ -78,21 +195,66 @@ public class DAOImpl implements DAO {
     @NotNull
     public Iterator<TableEntry> entryIterator(@NotNull final ByteBuffer from) {
         final Collection<Iterator<TableEntry>> iterators;
+        final RangeTombstones tombstones;
+        final UnaryOperator<TableEntry> resolver;
         lock.readLock().lock();
         try {
-            iterators = Set.of(
+            iterators = List.of(
                     memTablePool.iterator(from),
                     ssTablePool.iterator(from)
             );
+            tombstones = rangeTombstones();
+            resolver = valueLog.resolver();
+        } finally {
+            lock.readLock().unlock();
+        }
+        final var iterator = IteratorUtils.collapseIterators(iterators, tombstones, resolver);
+        return Iterators.transform(iterator, resolver::apply);
+    }
+
+    /**
+     * Get a cursor over the alive entries with keys between {@code from} (inclusive) and {@code to} (exclusive).
+     * Unlike {@link #range(ByteBuffer, ByteBuffer)}, entries are exposed as views into the tables
+     * and the value log files, so nothing is allocated per entry unless {@link Cursor#entry()} is called.
+     *
+     * @param from starting key (inclusive)
+     * @param to   ending key (exclusive) or {@code null}
+     * @return a cursor
+     */
+    @Override
+    @NotNull
+    public Cursor cursor(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final Collection<Cursor> cursors;
+        final RangeTombstones tombstones;
+        final IntFunction<ByteBuffer> valueLogFiles;
+        lock.readLock().lock();
+        try {
+            cursors = List.of(
+                    memTablePool.cursor(from),
+                    ssTablePool.cursor(from)
+            );
+            tombstones = rangeTombstones();
+            valueLogFiles = valueLog.snapshot();
         } finally {
             lock.readLock().unlock();
         }
-        return IteratorUtils.collapseIterators(iterators);
+        return new AliveCursor(IteratorUtils.collapseCursors(cursors), tombstones, to, valueLogFiles);
     }
 
     @Override
     @NotNull
     public ByteBuffer get(@NotNull final ByteBuffer key) throws NoSuchEntityException {
+        if (config.memTableType() != MemTableType.SEQUENTIAL) {
+            // the hash tables are probed instead of being iterated from the key
+            final var entry = getEntry(key);
+            if (entry == null || entry.hasTombstone()) {
+                throw new NoSuchEntityException("Not found");
+            }
+            return entry.getValue();
+        }
+
         final var iterator = iterator(key);
         if (!iterator.hasNext()) {
             throw new NoSuchEntityException("Not found");
@@ -113,8 +275,20 @@ public class DAOImpl implements DAO {
      * @param key key to search for
      * @return value or {@code null}
      */
+    @Override
     @Nullable
     public TableEntry getEntry(@NotNull final ByteBuffer key) {
+        if (config.memTableType() != MemTableType.SEQUENTIAL) {
+            return getEntries(List.of(key)).get(key);
+        }
+        return scanEntry(key);
+    }
+
+    /**
+     * Get an entry for a given key by iterating the tables from the key, the merge operands are folded.
+     */
+    @Nullable
+    private TableEntry scanEntry(@NotNull final ByteBuffer key) {
         final var iterator = entryIterator(key);
         if (!iterator.hasNext()) {
             return null;
@@ -128,48 +302,632 @@ public class DAOImpl implements DAO {
         return next;
     }
 
+    /**
+     * Get entries for the given keys.
+     * Keys are sorted, so each table is walked only once.
+     * Values could be tombstones, absent keys are skipped unless they are removed by range tombstones.
+     *
+     * @param keys keys to search for
+     * @return entries by their keys
+     */
+    @Override
+    @NotNull
+    public Map<ByteBuffer, TableEntry> getEntries(@NotNull final Collection<ByteBuffer> keys) {
+        final var sortedKeys = List.copyOf(new TreeSet<>(keys));
+        final var result = new HashMap<ByteBuffer, TableEntry>();
+        final RangeTombstones tombstones;
+        final UnaryOperator<TableEntry> resolver;
+        lock.readLock().lock();
+        try {
+            memTablePool.lookup(sortedKeys, result);
+            ssTablePool.lookup(sortedKeys, result);
+            tombstones = rangeTombstones();
+            resolver = valueLog.resolver();
+            for (final var key : sortedKeys) {
+                final var entry = result.get(key);
+                if (entry != null && entry.isOperand()) {
+                    // the older versions are needed to fold the operands
+                    result.put(key, MergeUtils.fold(versions(key), tombstones, resolver));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        result.replaceAll((key, entry) -> resolver.apply(entry));
+        if (!tombstones.isEmpty()) {
+            for (final var key : sortedKeys) {
+                final var entry = result.get(key);
+                // absent key is considered older than any tombstone
+                final var candidate = entry == null ? TableEntry.from(key, null, true, 0L) : entry;
+                final var applied = tombstones.apply(candidate);
+                if (applied != candidate) {
+                    result.put(key, applied);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    @NotNull
+    public Map<ByteBuffer, ByteBuffer> getAll(@NotNull final Collection<ByteBuffer> keys) {
+        final var result = new HashMap<ByteBuffer, ByteBuffer>();
+        getEntries(keys).forEach((key, entry) -> {
+            if (!entry.hasTombstone()) {
+                result.put(key, entry.getValue());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Get an entry for a given key, the entry found in the MemTables is returned in the calling thread
+     * unless the older versions are needed to fold the merge operands.
+     */
+    @Override
+    @NotNull
+    public CompletableFuture<TableEntry> getEntryAsync(@NotNull final ByteBuffer key) {
+        final var entry = memTableEntry(key);
+        if (entry != null) {
+            return CompletableFuture.completedFuture(entry);
+        }
+        return CompletableFuture.supplyAsync(() -> getEntry(key), storageExecutor);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> upsertAsync(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        return writeAsync(key, () -> upsert(key, value));
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> removeAsync(@NotNull final ByteBuffer key) {
+        return writeAsync(key, () -> remove(key));
+    }
+
+    @Override
+    @NotNull
+    public Flow.Publisher<Record> rangeAsync(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        return new RangePublisher(() -> range(from, to), storageExecutor);
+    }
+
+    /**
+     * Get the entry of the key if the MemTables have its newest version, range tombstones are applied.
+     *
+     * @return the entry or {@code null} if the tables should be read
+     */
+    @Nullable
+    private TableEntry memTableEntry(@NotNull final ByteBuffer key) {
+        final var result = new HashMap<ByteBuffer, TableEntry>();
+        final RangeTombstones tombstones;
+        lock.readLock().lock();
+        try {
+            memTablePool.lookup(List.of(key), result);
+            tombstones = rangeTombstones();
+        } finally {
+            lock.readLock().unlock();
+        }
+        final var entry = result.get(key);
+        // the entries of the flushed tables are older unless they were ingested
+        if (entry == null || entry.isOperand() || entry.ts() <= ingestedBefore.get()) {
+            return null;
+        }
+        return tombstones.apply(entry);
+    }
+
+    /**
+     * Apply the write in the calling thread unless it could block: the memory budget is exceeded
+     * or the lock of the key is held, e.g. by a conditional write which reads the tables.
+     */
+    @NotNull
+    private CompletableFuture<Void> writeAsync(
+            @NotNull final ByteBuffer key,
+            @NotNull final Runnable write) {
+        final var lock = keyLocks.get(key);
+        if (config.memoryBudget().isExceeded() || !lock.tryLock()) {
+            return CompletableFuture.runAsync(write, storageExecutor);
+        }
+        // the write takes the lock of the key once more, the locks are reentrant
+        try {
+            write.run();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @NotNull
+    Executor storageExecutor() {
+        return storageExecutor;
+    }
+
+    @NotNull
+    Lock keyLock(@NotNull final ByteBuffer key) {
+        return keyLocks.get(key);
+    }
+
     @Override
     public void upsert(
             @NotNull final ByteBuffer key,
             @NotNull final ByteBuffer value) {
-        memTablePool.upsert(key.duplicate().asReadOnlyBuffer(), value.duplicate().asReadOnlyBuffer());
+        final var lock = keyLocks.get(key);
+        lock.lock();
+        try {
+            memTablePool.upsert(key.duplicate().asReadOnlyBuffer(), value.duplicate().asReadOnlyBuffer());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Insert the value if the key is absent or removed.
+     * The check and the write are atomic with respect to the other point writes of the key,
+     * but not to the batches and the range removals.
+     */
+    @Override
+    public boolean putIfAbsent(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        return upsertIf(key, value, entry -> entry == null || entry.hasTombstone());
+    }
+
+    /**
+     * Replace the value if the current version of the key is alive and has the expected timestamp.
+     * The check and the write are atomic with respect to the other point writes of the key,
+     * but not to the batches and the range removals.
+     */
+    @Override
+    public boolean putIfTimestamp(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            final long expectedTs) {
+        return upsertIf(key, value, entry -> entry != null && !entry.hasTombstone() && entry.ts() == expectedTs);
     }
 
     @Override
     public void remove(@NotNull final ByteBuffer key) {
-        memTablePool.remove(key.duplicate().asReadOnlyBuffer());
+        final var lock = keyLocks.get(key);
+        lock.lock();
+        try {
+            memTablePool.remove(key.duplicate().asReadOnlyBuffer());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the operand to the MemTable, it is folded with the previous value there if the MemTable has one.
+     */
+    @Override
+    public void merge(
+            @NotNull final ByteBuffer key,
+            @NotNull final MergeOperator operator,
+            @NotNull final ByteBuffer operand) {
+        final var operands = MergeUtils.operand(operator, operand.duplicate());
+        final var lock = keyLocks.get(key);
+        lock.lock();
+        try {
+            memTablePool.merge(key.duplicate().asReadOnlyBuffer(), operands);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sum the estimates of the MemTables and the tables, the column families are not included.
+     */
+    @Override
+    @NotNull
+    public RangeEstimate estimateRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        lock.readLock().lock();
+        try {
+            return memTablePool.estimateRange(from, to).plus(ssTablePool.estimateRange(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all values with keys between {@code from} (inclusive) and {@code to} (exclusive)
+     * using a single range tombstone.
+     */
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final var bound = to == null ? null : to.duplicate().asReadOnlyBuffer();
+        memTablePool.removeRange(from.duplicate().asReadOnlyBuffer(), bound);
+    }
+
+    /**
+     * Apply all operations of the batch sharing a single timestamp.
+     * Operations of the batch are never split between different tables.
+     *
+     * @param batch batch to apply
+     */
+    @Override
+    public void apply(@NotNull final WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        memTablePool.apply(batch);
     }
 
     @Override
     public void close() {
+        columnFamilies.values().forEach(DAOImpl::close);
         try {
             memTablePool.close();
             ssTablePool.close();
             flusher.close();
         } catch (IOException e) {
             log.error("Error while closing DAO: {}", e.getMessage());
+        } finally {
+            if (ownsExecutors) {
+                flushExecutor.shutdown();
+                storageExecutor.shutdown();
+            }
         }
     }
 
+    /**
+     * Compact the tables, then collect garbage of the value log. The opened column families are compacted as well.
+     */
     @Override
     public void compact() throws IOException {
         ssTablePool.compact();
+        collectValueLog();
+        for (final var family : columnFamilies.values()) {
+            family.compact();
+        }
+    }
+
+    /**
+     * Get the column family opened by {@link #openColumnFamily(String, DAOConfig)}. An existing column family
+     * which is not opened yet is opened with the configuration of this storage.
+     *
+     * @param name name of the column family
+     * @return the column family or {@code null} if it does not exist
+     * @throws IllegalArgumentException if the name is not valid
+     */
+    @Override
+    @Nullable
+    public DAOImpl columnFamily(@NotNull final String name) {
+        final var directory = columnFamilyDirectory(name);
+        final var family = columnFamilies.get(name);
+        if (family != null || !directory.isDirectory()) {
+            return family;
+        }
+        synchronized (columnFamilies) {
+            var opened = columnFamilies.get(name);
+            if (opened == null) {
+                opened = new DAOImpl(directory, inherited(name, config), flushExecutor, storageExecutor, false);
+                columnFamilies.put(name, opened);
+            }
+            return opened;
+        }
+    }
+
+    /**
+     * Open the column family creating it if it is absent. The column family is an independent keyspace with its own
+     * MemTables, tables and compaction set up by the configuration, but it shares the flusher and storage threads and
+     * the memory budget of this storage. The configuration is not persisted, so the column family should be opened
+     * before it is accessed after the restart, otherwise the configuration of this storage is used.
+     * The column families are compacted, checkpointed and closed together with this storage.
+     *
+     * @param name         name of the column family consisting of latin letters, digits, '-' and '_'
+     * @param familyConfig configuration of the column family, its memory budget is replaced
+     * @return the column family
+     * @throws IllegalArgumentException if the name is not valid
+     * @throws IllegalStateException    if the column family is already opened
+     * @throws UncheckedIOException     if cannot create or open the column family
+     */
+    @Override
+    @NotNull
+    public DAOImpl openColumnFamily(
+            @NotNull final String name,
+            @NotNull final DAOConfig familyConfig) {
+        final var directory = columnFamilyDirectory(name);
+        synchronized (columnFamilies) {
+            if (columnFamilies.containsKey(name)) {
+                throw new IllegalStateException("Column family is already opened: " + name);
+            }
+            try {
+                Files.createDirectories(directory.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            final var family = new DAOImpl(directory, inherited(name, familyConfig), flushExecutor, storageExecutor,
+                    false);
+            columnFamilies.put(name, family);
+            log.info("Column family {} was opened", name);
+            return family;
+        }
+    }
+
+    /**
+     * Load tables built by {@link ru.mail.polis.dao.vaddya.sstable.SSTableBuilder} bypassing the MemTables,
+     * the files are moved into the storage.
+     *
+     * @param paths table files
+     * @throws IOException if a file can not be moved or is not a valid table
+     */
+    @Override
+    public void ingest(@NotNull final List<Path> paths) throws IOException {
+        // the entries of the tables were written before
+        ingestedBefore.accumulateAndGet(HybridClock.instance().now(), Math::max);
+        ssTablePool.ingest(paths);
+    }
+
+    /**
+     * Get a path in the storage directory to build a table to be ingested, so the table is moved without copying.
+     * The file is not a part of the storage until it is ingested, the caller removes it if the ingestion fails.
+     */
+    @Override
+    @NotNull
+    public Path ingestPath() {
+        return fileManager.tempPathTo(generationProvider.nextGeneration());
+    }
+
+    /**
+     * Create a full checkpoint, see {@link #checkpoint(Path, Path)}.
+     */
+    @Override
+    public void checkpoint(@NotNull final Path target) throws IOException {
+        checkpoint(target, null);
+    }
+
+    /**
+     * Flush the MemTables and hard link the live files of the tables and the value log with a manifest
+     * into the directory, so the files are not copied. A full checkpoint can be opened as a storage.
+     * An incremental checkpoint links only the files which are absent in the previous checkpoint.
+     * The tables of the storage tiers are collected into the directory without the TIERS file,
+     * see {@link Checkpoint}.
+     *
+     * @param target   directory on the same file system as the storage
+     * @param previous directory of the previous checkpoint or {@code null} to create a full checkpoint
+     * @throws IOException if cannot flush the MemTables or link the files
+     */
+    public void checkpoint(
+            @NotNull final Path target,
+            @Nullable final Path previous) throws IOException {
+        try {
+            if (!memTablePool.flush(CHECKPOINT_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("Unable to flush MemTables in " + CHECKPOINT_FLUSH_TIMEOUT_SECONDS + " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing MemTables");
+        }
+
+        final var checkpoint = Checkpoint.create(target, previous);
+        // the value log files referred by the linked tables can not be collected meanwhile
+        valueLogLock.lock();
+        try {
+            ssTablePool.checkpoint(checkpoint);
+            valueLog.checkpoint(checkpoint);
+        } finally {
+            valueLogLock.unlock();
+        }
+        checkpoint.finish();
+        log.info("Checkpoint was created: {}", checkpoint);
+
+        // the existing column families are opened to be checkpointed as well
+        for (final var name : columnFamilyNames()) {
+            final var family = columnFamily(name);
+            if (family != null) {
+                final var directory = COLUMN_FAMILY_PREFIX + name;
+                family.checkpoint(target.resolve(directory), previous == null ? null : previous.resolve(directory));
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes of the tables that are waiting for compaction.
+     */
+    public long pendingCompactionBytes() {
+        return ssTablePool.pendingCompactionBytes();
+    }
+
+    /**
+     * Relocate live values of the value log files that contain too much garbage and remove the files.
+     * Relocated values keep their timestamps and are written to a new table that shadows the old pointers.
+     */
+    private void collectValueLog() throws IOException {
+        valueLogLock.lock();
+        try {
+            for (final var fileId : valueLog.collectable()) {
+                final var pointers = valueLog.pointers(fileId);
+                final var entries = baseEntries(pointers.keySet());
+                final var live = new ArrayList<TableEntry>();
+                var liveBytes = 0L;
+                for (final var pointer : pointers.entrySet()) {
+                    final var entry = entries.get(pointer.getKey());
+                    if (entry != null && pointer.getValue().equals(entry.valuePointer())) {
+                        live.add(entry);
+                        liveBytes += pointer.getValue().length();
+                    }
+                }
+                if (liveBytes > valueLog.sizeInBytes(fileId) * VALUE_LOG_LIVE_RATIO) {
+                    continue;
+                }
+
+                if (!live.isEmpty()) {
+                    final var generation = generationProvider.nextGeneration();
+                    final var relocated = valueLog.relocate(generation, live);
+                    final var ssTable = flusher.flushEntries(generation, relocated.iterator(), List.of());
+                    flushed(generation, List.of(), ssTable);
+                }
+                valueLog.remove(fileId);
+                log.info("Value log file {} was collected: {} live values were relocated", fileId, live.size());
+            }
+        } finally {
+            valueLogLock.unlock();
+        }
+    }
+
+    private boolean upsertIf(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            @NotNull final Predicate<TableEntry> condition) {
+        final var lock = keyLocks.get(key);
+        lock.lock();
+        try {
+            if (!condition.test(newestEntry(key))) {
+                return false;
+            }
+            memTablePool.upsert(key.duplicate().asReadOnlyBuffer(), value.duplicate().asReadOnlyBuffer());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the newest version of the key with the range tombstones applied using the point lookups,
+     * the value is neither resolved nor folded with the older versions.
+     *
+     * @return the entry or {@code null} if the key is absent
+     */
+    @Nullable
+    private TableEntry newestEntry(@NotNull final ByteBuffer key) {
+        final var keys = List.of(key);
+        final var result = new HashMap<ByteBuffer, TableEntry>();
+        final RangeTombstones tombstones;
+        lock.readLock().lock();
+        try {
+            memTablePool.lookup(keys, result);
+            ssTablePool.lookup(keys, result);
+            tombstones = rangeTombstones();
+        } finally {
+            lock.readLock().unlock();
+        }
+        final var entry = result.get(key);
+        // absent key is considered older than any tombstone
+        final var candidate = entry == null ? TableEntry.from(key, null, true, 0L) : entry;
+        final var applied = tombstones.apply(candidate);
+        return applied == candidate ? entry : applied;
+    }
+
+    /**
+     * Get the entries the values of the keys are read from, i.e. the newest entries or the entries
+     * the merge operands are applied to. Unlike {@link #getEntries(Collection)}, the values are not resolved,
+     * and the entries removed by the range tombstones are skipped.
+     */
+    @NotNull
+    private Map<ByteBuffer, TableEntry> baseEntries(@NotNull final Collection<ByteBuffer> keys) {
+        final var sortedKeys = List.copyOf(new TreeSet<>(keys));
+        final var result = new HashMap<ByteBuffer, TableEntry>();
+        final RangeTombstones tombstones;
+        lock.readLock().lock();
+        try {
+            memTablePool.lookup(sortedKeys, result);
+            ssTablePool.lookup(sortedKeys, result);
+            tombstones = rangeTombstones();
+            for (final var key : sortedKeys) {
+                final var entry = result.get(key);
+                if (entry != null && entry.isOperand()) {
+                    result.remove(key);
+                    final var base = baseEntry(key);
+                    if (base != null) {
+                        result.put(key, base);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        result.values().removeIf(tombstones::isCovered);
+        return result;
+    }
+
+    /**
+     * Get the first version of the key that is not a merge operand, should be called under the read lock.
+     */
+    @Nullable
+    private TableEntry baseEntry(@NotNull final ByteBuffer key) {
+        for (final var version : versions(key)) {
+            if (!version.isOperand()) {
+                return version;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the versions of the key from the newest to the oldest by the point lookups of each table,
+     * so the hash MemTables are not sorted to fold the operands. Should be called under the read lock.
+     */
+    @NotNull
+    private List<TableEntry> versions(@NotNull final ByteBuffer key) {
+        final var versions = new ArrayList<TableEntry>();
+        memTablePool.lookupVersions(key, versions);
+        ssTablePool.lookupVersions(key, versions);
+        versions.sort(TableEntry.COMPARATOR);
+        return versions;
+    }
+
+    @NotNull
+    private DAOConfig inherited(
+            @NotNull final String name,
+            @NotNull final DAOConfig familyConfig) {
+        return familyConfig.withMemoryBudget(config.memoryBudget())
+                .withStorageTiers(familyConfig.storageTiers().resolve(COLUMN_FAMILY_PREFIX + name));
+    }
+
+    @NotNull
+    private File columnFamilyDirectory(@NotNull final String name) {
+        if (!COLUMN_FAMILY_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Wrong name of the column family: " + name);
+        }
+        return new File(root, COLUMN_FAMILY_PREFIX + name);
+    }
+
+    @NotNull
+    private List<String> columnFamilyNames() {
+        return Optional.ofNullable(root.list()).map(Stream::of).orElseGet(Stream::empty)
+                .filter(name -> name.startsWith(COLUMN_FAMILY_PREFIX))
+                .map(name -> name.substring(COLUMN_FAMILY_PREFIX.length()))
+                .filter(name -> COLUMN_FAMILY_NAME.matcher(name).matches())
+                .collect(toList());
+    }
+
+    @NotNull
+    private RangeTombstones rangeTombstones() {
+        final var tombstones = new ArrayList<>(memTablePool.rangeTombstones());
+        tombstones.addAll(ssTablePool.rangeTombstones());
+        final var fragmented = fragmentedTombstones.update(tombstones);
+        fragmentedTombstones = fragmented;
+        return fragmented;
     }
 
     /**
-     * Atomically remove table from the {@link MemTablePool}
-     * and add to the {@link SSTablePool}.
+     * Atomically remove tables from the {@link MemTablePool}
+     * and add the table flushed from them to the {@link SSTablePool}.
      *
      * @param generation generation of the flushed table
+     * @param sources    generations of the flushed MemTables, empty for a table not flushed from MemTables
      * @param ssTable    flushed table
      */
     private void flushed(
             final int generation,
+            @NotNull final Collection<Integer> sources,
             @NotNull final SSTable ssTable) {
         lock.writeLock().lock();
         try {
-            memTablePool.flushed(generation);
+            // the table is added first, so the flush waiters find it in the pool
             ssTablePool.addTable(generation, ssTable);
+            sources.forEach(memTablePool::flushed);
+            valueLog.seal(generation);
         } catch (IOException e) {
             log.error("Flushed error: {}", e.getMessage(), e);
         } finally {
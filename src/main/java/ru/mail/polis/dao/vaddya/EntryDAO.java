@@ -0,0 +1,146 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.DAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage that exposes the timestamped entries including tombstones, so the replicas can be reconciled.
+ */
+public interface EntryDAO extends DAO, AsyncDAO {
+    // the writes go to the MemTables, so they do not throw IOException
+
+    @Override
+    void upsert(
+            @NotNull ByteBuffer key,
+            @NotNull ByteBuffer value);
+
+    @Override
+    void remove(@NotNull ByteBuffer key);
+
+    @Override
+    void removeRange(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to);
+
+    /**
+     * Insert the value if the key is absent or removed.
+     *
+     * @return {@code true} if the value was inserted
+     */
+    boolean putIfAbsent(
+            @NotNull ByteBuffer key,
+            @NotNull ByteBuffer value);
+
+    /**
+     * Replace the value if the current version of the key is alive and has the expected timestamp.
+     *
+     * @return {@code true} if the value was replaced
+     */
+    boolean putIfTimestamp(
+            @NotNull ByteBuffer key,
+            @NotNull ByteBuffer value,
+            long expectedTs);
+
+    /**
+     * Apply the operand to the value of the key without reading it, the operands are folded on reads and compaction.
+     *
+     * @throws IllegalArgumentException if the operator does not accept the operand
+     */
+    void merge(
+            @NotNull ByteBuffer key,
+            @NotNull MergeOperator operator,
+            @NotNull ByteBuffer operand);
+
+    /**
+     * Get a cursor over the alive entries with keys between {@code from} (inclusive) and {@code to} (exclusive).
+     */
+    @NotNull
+    Cursor cursor(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to);
+
+    /**
+     * Estimate the size and the number of entries with keys between {@code from} (inclusive)
+     * and {@code to} (exclusive) by the key bounds, offsets and counts of the tables without reading the entries.
+     *
+     * @param from the lowest key of the range (inclusive)
+     * @param to   the highest key of the range (exclusive) or {@code null} if the range is unbounded
+     * @return an approximate estimate, see {@link RangeEstimate}
+     */
+    @NotNull
+    RangeEstimate estimateRange(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to);
+
+    /**
+     * Get an entry for a given key, value could be a tombstone.
+     *
+     * @return value or {@code null}
+     */
+    @Nullable
+    TableEntry getEntry(@NotNull ByteBuffer key);
+
+    /**
+     * Get entries for the given keys, values could be tombstones.
+     *
+     * @return entries by their keys
+     */
+    @NotNull
+    Map<ByteBuffer, TableEntry> getEntries(@NotNull Collection<ByteBuffer> keys);
+
+    /**
+     * Apply all operations of the batch.
+     */
+    void apply(@NotNull WriteBatch batch);
+
+    /**
+     * Load tables built by {@link ru.mail.polis.dao.vaddya.sstable.SSTableBuilder} bypassing the MemTables.
+     *
+     * @param paths table files, they are moved into the storage
+     * @throws IOException if a file can not be moved or is not a valid table
+     */
+    void ingest(@NotNull List<Path> paths) throws IOException;
+
+    /**
+     * Get a path in the storage directory to build a table to be ingested, so the table is moved without copying.
+     * The file is not a part of the storage until it is ingested, the caller removes it if the ingestion fails.
+     */
+    @NotNull
+    Path ingestPath();
+
+    /**
+     * Create a consistent copy of the storage in the given directory without stopping the storage.
+     *
+     * @param target directory on the same file system as the storage
+     * @throws IOException if cannot flush the MemTables or link the files
+     */
+    void checkpoint(@NotNull Path target) throws IOException;
+
+    /**
+     * Get an existing column family, i.e. an independent keyspace of the storage.
+     *
+     * @return the column family or {@code null} if it does not exist
+     * @throws IllegalArgumentException if the name is not valid
+     */
+    @Nullable
+    EntryDAO columnFamily(@NotNull String name);
+
+    /**
+     * Open the column family with the configuration creating it if it is absent.
+     *
+     * @throws IllegalArgumentException if the name is not valid
+     * @throws IllegalStateException    if the column family is already opened
+     */
+    @NotNull
+    EntryDAO openColumnFamily(
+            @NotNull String name,
+            @NotNull DAOConfig config);
+}
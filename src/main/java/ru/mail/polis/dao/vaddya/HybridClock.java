@@ -0,0 +1,81 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free hybrid logical clock.
+ *
+ * <p>Timestamps are wall clock milliseconds multiplied by {@code 1_000_000} plus a logical counter,
+ * so they are compatible with the previously written nanosecond-like timestamps.
+ * The clock never goes backwards: if the wall clock stalls or the counter is exhausted,
+ * the timestamp runs ahead of the wall clock until it catches up.
+ * Timestamps observed from the other nodes move the clock forward,
+ * so the following local timestamps are greater than any timestamp causally preceding them.
+ * A remote timestamp that is ahead of the wall clock by more than the max offset is rejected,
+ * so a single node with a broken clock cannot push the clocks of the cluster far into the future.
+ */
+@ThreadSafe
+public final class HybridClock {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long MAX_OFFSET_MILLIS = 500L;
+    private static final HybridClock INSTANCE = new HybridClock(System::currentTimeMillis, MAX_OFFSET_MILLIS);
+
+    private final AtomicLong last = new AtomicLong();
+    private final LongSupplier physicalMillis;
+    private final long maxOffset;
+
+    /**
+     * Creates a clock.
+     *
+     * @param physicalMillis  wall clock in milliseconds
+     * @param maxOffsetMillis how far ahead of the wall clock an observed timestamp could be
+     */
+    HybridClock(
+            @NotNull final LongSupplier physicalMillis,
+            final long maxOffsetMillis) {
+        this.physicalMillis = physicalMillis;
+        this.maxOffset = maxOffsetMillis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Get the clock shared by all storages of the process.
+     */
+    @NotNull
+    public static HybridClock instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get a unique timestamp that is greater than all the timestamps returned or observed before.
+     *
+     * @throws IllegalStateException if the clock has reached the greatest timestamp
+     */
+    public long now() {
+        final var physical = physicalMillis.getAsLong() * NANOS_PER_MILLI;
+        return last.accumulateAndGet(physical, (previous, current) -> {
+            if (previous == Long.MAX_VALUE) {
+                throw new IllegalStateException("Hybrid clock is exhausted");
+            }
+            return Math.max(previous + 1, current);
+        });
+    }
+
+    /**
+     * Move the clock forward to the timestamp received from another node if it is ahead.
+     *
+     * @param remote timestamp of another node
+     * @return {@code false} if the timestamp is rejected for being too far ahead of the wall clock
+     */
+    public boolean observe(final long remote) {
+        final var physical = physicalMillis.getAsLong() * NANOS_PER_MILLI;
+        if (remote - physical > maxOffset) {
+            return false;
+        }
+        last.accumulateAndGet(remote, Math::max);
+        return true;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Cursor over the entries of an iterator, used for the tables that keep entries as objects.
+ */
+@NotThreadSafe
+final class IteratorCursor implements Cursor {
+    private final Iterator<TableEntry> iterator;
+    private TableEntry current;
+
+    IteratorCursor(@NotNull final Iterator<TableEntry> iterator) {
+        this.iterator = iterator;
+        next();
+    }
+
+    @Override
+    public boolean isValid() {
+        return current != null;
+    }
+
+    @Override
+    public void next() {
+        current = iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer keyBuffer() {
+        return current.getKey();
+    }
+
+    @Override
+    public int keyOffset() {
+        return current.getKey().position();
+    }
+
+    @Override
+    public int keyLength() {
+        return current.getKey().remaining();
+    }
+
+    @Override
+    public long ts() {
+        return current.ts();
+    }
+
+    @Override
+    public boolean hasTombstone() {
+        return current.hasTombstone();
+    }
+
+    @Override
+    public int valueLogId() {
+        final var pointer = current.valuePointer();
+        return pointer == null ? -1 : pointer.fileId();
+    }
+
+    @Override
+    public boolean isOperand() {
+        return current.isOperand();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer valueBuffer() {
+        if (current.hasTombstone()) {
+            throw new IllegalStateException("Entry is a tombstone");
+        }
+        return current.getValue();
+    }
+
+    @Override
+    public int valueOffset() {
+        final var pointer = current.valuePointer();
+        return pointer == null ? valueBuffer().position() : (int) pointer.offset();
+    }
+
+    @Override
+    public int valueLength() {
+        final var pointer = current.valuePointer();
+        return pointer == null ? valueBuffer().remaining() : pointer.length();
+    }
+
+    @NotNull
+    @Override
+    public TableEntry entry() {
+        return current;
+    }
+}
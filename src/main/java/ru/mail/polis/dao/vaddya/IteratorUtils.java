@@ -3,13 +3,16 @@ package ru.mail.polis.dao.vaddya;
 import com.google.common.collect.Iterators;
 import org.jetbrains.annotations.NotNull;
 import ru.mail.polis.Record;
-import ru.mail.polis.dao.Iters;
 import ru.mail.polis.dao.vaddya.sstable.SSTable;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collector;
 
 import static java.util.stream.Collectors.toList;
@@ -22,16 +25,135 @@ public final class IteratorUtils {
     }
 
     /**
-     * Merge sorted iterators and remove entries with equal keys.
+     * Merge sorted iterators and remove entries with equal keys, the newest entry is kept
+     * unless it is a merge operand (see {@link MergeCursor}).
      *
-     * @param iterators iterators to be merged
+     * @param iterators iterators to be merged ordered from the most to the least recent
      * @return an iterator without equal keys
      */
     @NotNull
     public static Iterator<TableEntry> collapseIterators(@NotNull final Collection<Iterator<TableEntry>> iterators) {
-        @SuppressWarnings("UnstableApiUsage") 
-        final var merged = Iterators.mergeSorted(iterators, TableEntry.COMPARATOR);
-        return Iters.collapseEquals(merged, TableEntry::getKey);
+        final var cursors = iterators.stream()
+                .map(IteratorCursor::new)
+                .collect(toList());
+        return entries(collapseCursors(cursors));
+    }
+
+    /**
+     * Merge sorted cursors and skip entries with equal keys, the newest entry is kept
+     * unless it is a merge operand (see {@link MergeCursor}).
+     *
+     * @param cursors cursors to be merged ordered from the most to the least recent
+     * @return a cursor without equal keys
+     */
+    @NotNull
+    public static Cursor collapseCursors(@NotNull final Collection<? extends Cursor> cursors) {
+        return new MergeCursor(cursors);
+    }
+
+    /**
+     * Get an iterator over the entries of the cursor, the cursor should not be used after that.
+     *
+     * @param cursor cursor to iterate over
+     * @return an iterator
+     */
+    @NotNull
+    public static Iterator<TableEntry> entries(@NotNull final Cursor cursor) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.isValid();
+            }
+
+            @Override
+            public TableEntry next() {
+                if (!cursor.isValid()) {
+                    throw new NoSuchElementException();
+                }
+                final var entry = cursor.entry();
+                cursor.next();
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Merge sorted iterators, remove entries with equal keys folding the merge operands and replace entries
+     * removed by the range tombstones with point tombstones.
+     *
+     * @param iterators  iterators to be merged
+     * @param tombstones range tombstones to apply
+     * @param resolver   function that reads values stored in the value log, which the operands are applied to
+     * @return an iterator without equal keys
+     */
+    @NotNull
+    public static Iterator<TableEntry> collapseIterators(
+            @NotNull final Collection<Iterator<TableEntry>> iterators,
+            @NotNull final RangeTombstones tombstones,
+            @NotNull final UnaryOperator<TableEntry> resolver) {
+        final var collapsed = foldOperands(collapseIterators(iterators),
+                versions -> List.of(MergeUtils.fold(versions, tombstones, resolver)));
+        if (tombstones.isEmpty()) {
+            return collapsed;
+        }
+        return Iterators.transform(collapsed, tombstones::apply);
+    }
+
+    /**
+     * Replace the versions of each key which start with a merge operand by the entries produced by the folder.
+     *
+     * @param iterator merged iterator
+     * @param folder   function of the versions of a key from the newest to the oldest
+     * @return an iterator over the folded entries
+     */
+    @NotNull
+    public static Iterator<TableEntry> foldOperands(
+            @NotNull final Iterator<TableEntry> iterator,
+            @NotNull final Function<List<TableEntry>, List<TableEntry>> folder) {
+        final var peeking = Iterators.peekingIterator(iterator);
+        return new Iterator<>() {
+            private Iterator<TableEntry> folded = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                return folded.hasNext() || peeking.hasNext();
+            }
+
+            @Override
+            public TableEntry next() {
+                if (folded.hasNext()) {
+                    return folded.next();
+                }
+                final var entry = peeking.next();
+                if (!entry.isOperand()) {
+                    return entry;
+                }
+                final var versions = new ArrayList<TableEntry>();
+                versions.add(entry);
+                while (peeking.hasNext() && peeking.peek().getKey().equals(entry.getKey())) {
+                    versions.add(peeking.next());
+                }
+                folded = folder.apply(versions).iterator();
+                return folded.next();
+            }
+        };
+    }
+
+    /**
+     * Remove entries that are covered by the range tombstones.
+     *
+     * @param iterator   iterator to filter
+     * @param tombstones range tombstones
+     * @return a filtered iterator
+     */
+    @NotNull
+    public static Iterator<TableEntry> uncoveredEntries(
+            @NotNull final Iterator<TableEntry> iterator,
+            @NotNull final RangeTombstones tombstones) {
+        if (tombstones.isEmpty()) {
+            return iterator;
+        }
+        return Iterators.filter(iterator, entry -> !tombstones.isCovered(entry));
     }
 
     /**
@@ -65,7 +187,9 @@ public final class IteratorUtils {
     }
 
     /**
-     * Leave in the collection of the iterators only alive entries.
+     * Leave in the collection of the iterators only alive entries
+     * (i.e. without tombstones and not removed by the range tombstones of the tables).
+     * Merge operands are folded as on compaction, see {@link MergeUtils#compact(List, Collection)}.
      *
      * @param tables tables to be merged
      * @return a filtered iterator
@@ -75,8 +199,15 @@ public final class IteratorUtils {
         final var iterators = tables.stream()
                 .map(SSTable::iterator)
                 .collect(toList());
-        final var iterator = collapseIterators(iterators);
-        return aliveEntries(iterator);
+        final var tombstones = RangeTombstones.of(tables.stream()
+                .flatMap(table -> table.rangeTombstones().stream())
+                .collect(toList()));
+        final var folded = foldOperands(collapseIterators(iterators),
+                versions -> MergeUtils.compact(versions, tombstones));
+        if (tombstones.isEmpty()) {
+            return aliveEntries(folded);
+        }
+        return aliveEntries(Iterators.transform(folded, tombstones::apply));
     }
 
     /**
@@ -0,0 +1,114 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Heap memory retained by the tables of one or more storages sharing a common limit.
+ *
+ * <p>Memory is charged by every write, so the accounting is striped to avoid contention.
+ * When the limit is exceeded, the tables are flushed earlier and the writers are stalled
+ * until the pending flushes release the memory.
+ */
+@ThreadSafe
+public final class MemoryBudget {
+    private final long limitInBytes;
+    private final LongAdder usedBytes = new LongAdder();
+    private final Lock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private MemoryBudget(final long limitInBytes) {
+        this.limitInBytes = limitInBytes;
+    }
+
+    /**
+     * Create a budget with the given limit.
+     *
+     * @param limitInBytes the maximum number of bytes retained by the tables
+     * @return a budget
+     */
+    @NotNull
+    public static MemoryBudget of(final long limitInBytes) {
+        if (limitInBytes <= 0) {
+            throw new IllegalArgumentException("Limit should be positive: " + limitInBytes);
+        }
+        return new MemoryBudget(limitInBytes);
+    }
+
+    /**
+     * Create a budget that is never exceeded, though the memory is still accounted.
+     */
+    @NotNull
+    public static MemoryBudget unlimited() {
+        return new MemoryBudget(Long.MAX_VALUE);
+    }
+
+    /**
+     * Charge (or give back, if negative) bytes retained by a table.
+     */
+    public void charge(final long bytes) {
+        usedBytes.add(bytes);
+    }
+
+    /**
+     * Give back bytes retained by a table which is not needed anymore and wake up the stalled writers.
+     */
+    public void release(final long bytes) {
+        usedBytes.add(-bytes);
+        lock.lock();
+        try {
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long usedBytes() {
+        return usedBytes.sum();
+    }
+
+    public long limitInBytes() {
+        return limitInBytes;
+    }
+
+    public boolean isExceeded() {
+        return usedBytes.sum() > limitInBytes;
+    }
+
+    /**
+     * Wait until the memory is released below the limit.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the timeout
+     * @return {@code true} if the memory is below the limit, {@code false} if the time elapsed
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public boolean awaitBelowLimit(
+            final long timeout,
+            @NotNull final TimeUnit unit) throws InterruptedException {
+        var nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (isExceeded()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = released.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryBudget[" + usedBytes() + "/" + limitInBytes + " bytes]";
+    }
+}
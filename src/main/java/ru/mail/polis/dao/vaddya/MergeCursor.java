@@ -0,0 +1,197 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges sorted cursors using a loser tree and skips older entries with equal keys.
+ * The versions older than a merge operand are not skipped down to the first one that is not an operand,
+ * so the operands can be folded (see {@link MergeUtils}).
+ *
+ * <p>Internal nodes of the tree keep the losers of the matches, the overall winner is kept in the root,
+ * so advancing the winner replays only the matches on the path from its leaf to the root.
+ * Entries with equal keys are ordered from the newest to the oldest, full ties are won by the source
+ * that comes first, so sources should be ordered from the most to the least recent.
+ */
+@NotThreadSafe
+final class MergeCursor implements Cursor {
+    private static final int EMPTY = -1;
+
+    private final Cursor[] sources;
+    // tree[0] is the winner, tree[1..k-1] are the losers, leaf of the source i is k + i
+    private final int[] tree;
+    // key of the returned entry to skip its older versions, reused between the moves
+    private ByteBuffer lastKey = ByteBuffer.allocate(Long.BYTES * 4);
+
+    MergeCursor(@NotNull final Collection<? extends Cursor> cursors) {
+        this.sources = cursors.toArray(new Cursor[0]);
+        this.tree = new int[Math.max(sources.length, 1)];
+        build();
+    }
+
+    @Override
+    public boolean isValid() {
+        return sources.length > 0 && winner().isValid();
+    }
+
+    @Override
+    public void next() {
+        if (!isValid()) {
+            throw new NoSuchElementException();
+        }
+        if (winner().isOperand()) {
+            advance(tree[0]);
+            return;
+        }
+        rememberKey(winner());
+        do {
+            advance(tree[0]);
+        } while (winner().isValid() && winner().compareKey(lastKey) == 0);
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer keyBuffer() {
+        return winner().keyBuffer();
+    }
+
+    @Override
+    public int keyOffset() {
+        return winner().keyOffset();
+    }
+
+    @Override
+    public int keyLength() {
+        return winner().keyLength();
+    }
+
+    @Override
+    public long ts() {
+        return winner().ts();
+    }
+
+    @Override
+    public boolean hasTombstone() {
+        return winner().hasTombstone();
+    }
+
+    @Override
+    public int valueLogId() {
+        return winner().valueLogId();
+    }
+
+    @Override
+    public boolean isOperand() {
+        return winner().isOperand();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer valueBuffer() {
+        return winner().valueBuffer();
+    }
+
+    @Override
+    public int valueOffset() {
+        return winner().valueOffset();
+    }
+
+    @Override
+    public int valueLength() {
+        return winner().valueLength();
+    }
+
+    @NotNull
+    @Override
+    public TableEntry entry() {
+        return winner().entry();
+    }
+
+    @NotNull
+    private Cursor winner() {
+        return sources[tree[0]];
+    }
+
+    private void build() {
+        Arrays.fill(tree, EMPTY);
+        final var k = sources.length;
+        for (var source = k - 1; source >= 0; source--) {
+            var winner = source;
+            for (var node = (source + k) / 2; node > 0; node /= 2) {
+                if (tree[node] == EMPTY) {
+                    // wait for the winner of the sibling subtree
+                    tree[node] = winner;
+                    winner = EMPTY;
+                    break;
+                }
+                if (beats(tree[node], winner)) {
+                    final var loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            if (winner != EMPTY) {
+                tree[0] = winner;
+            }
+        }
+    }
+
+    private void advance(final int source) {
+        sources[source].next();
+
+        var winner = source;
+        for (var node = (source + sources.length) / 2; node > 0; node /= 2) {
+            if (beats(tree[node], winner)) {
+                final var loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    private boolean beats(
+            final int first,
+            final int second) {
+        final var firstCursor = sources[first];
+        final var secondCursor = sources[second];
+        if (!firstCursor.isValid() || !secondCursor.isValid()) {
+            return !secondCursor.isValid() && (firstCursor.isValid() || first < second);
+        }
+        final var cmp = compare(firstCursor, secondCursor);
+        return cmp < 0 || (cmp == 0 && first < second);
+    }
+
+    private static int compare(
+            @NotNull final Cursor first,
+            @NotNull final Cursor second) {
+        final var cmp = Cursor.compareKeys(first, second);
+        if (cmp != 0) {
+            return cmp;
+        }
+        if (first.ts() != second.ts()) {
+            return first.ts() > second.ts() ? -1 : 1;
+        }
+        // the same version of the entry relocated by the value log GC, the newer file wins
+        return Integer.compare(second.valueLogId(), first.valueLogId());
+    }
+
+    private void rememberKey(@NotNull final Cursor cursor) {
+        final var length = cursor.keyLength();
+        if (lastKey.capacity() < length) {
+            lastKey = ByteBuffer.allocate(Math.max(length, lastKey.capacity() * 2));
+        }
+        final var key = cursor.keyBuffer();
+        final var offset = cursor.keyOffset();
+        lastKey.clear();
+        for (var i = 0; i < length; i++) {
+            lastKey.put(i, key.get(offset + i));
+        }
+        lastKey.limit(length);
+    }
+}
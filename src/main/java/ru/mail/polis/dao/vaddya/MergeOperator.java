@@ -0,0 +1,120 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Built-in operators of the read-free updates, see {@link EntryDAO#merge(ByteBuffer, MergeOperator, ByteBuffer)}.
+ * An operand is applied to the current value of the key, so the older operands can be combined
+ * into one without the value. The ordinals are persisted in the tables, so the operators can only be appended.
+ */
+public enum MergeOperator {
+    /**
+     * Add a signed 64-bit big-endian integer, the absent value or a value of another size is considered to be zero.
+     */
+    ADD {
+        @Override
+        public boolean accepts(@NotNull final ByteBuffer value) {
+            return value.remaining() == Long.BYTES;
+        }
+
+        @NotNull
+        @Override
+        ByteBuffer combine(
+                @NotNull final ByteBuffer older,
+                @NotNull final ByteBuffer newer) {
+            return longBuffer(longOf(older) + longOf(newer));
+        }
+    },
+
+    /**
+     * Append the bytes to the value, the absent value is considered to be empty.
+     */
+    APPEND {
+        @Override
+        public boolean accepts(@NotNull final ByteBuffer value) {
+            return true;
+        }
+
+        @NotNull
+        @Override
+        ByteBuffer combine(
+                @NotNull final ByteBuffer older,
+                @NotNull final ByteBuffer newer) {
+            return ByteBuffer.allocate(older.remaining() + newer.remaining())
+                    .put(older.duplicate())
+                    .put(newer.duplicate())
+                    .flip();
+        }
+    },
+
+    /**
+     * Keep the maximum of signed 64-bit big-endian integers, the absent value or a value of another size is replaced.
+     */
+    MAX {
+        @Override
+        public boolean accepts(@NotNull final ByteBuffer value) {
+            return value.remaining() == Long.BYTES;
+        }
+
+        @NotNull
+        @Override
+        ByteBuffer combine(
+                @NotNull final ByteBuffer older,
+                @NotNull final ByteBuffer newer) {
+            return longOf(older) >= longOf(newer) ? older : newer;
+        }
+    };
+
+    /**
+     * Check if the operator can be applied to the value or the operand.
+     */
+    public abstract boolean accepts(@NotNull ByteBuffer value);
+
+    /**
+     * Combine two accepted operands into one, which has the same effect as applying them one after another.
+     */
+    @NotNull
+    abstract ByteBuffer combine(
+            @NotNull ByteBuffer older,
+            @NotNull ByteBuffer newer);
+
+    /**
+     * Apply the operand to the value.
+     *
+     * @param value   current value or {@code null} if it is absent
+     * @param operand accepted operand
+     * @return the new value
+     */
+    @NotNull
+    ByteBuffer apply(
+            @Nullable final ByteBuffer value,
+            @NotNull final ByteBuffer operand) {
+        return value == null || !accepts(value) ? operand : combine(value, operand);
+    }
+
+    /**
+     * Get the operator by its persisted ordinal.
+     *
+     * @throws IllegalArgumentException if the ordinal is unknown
+     */
+    @NotNull
+    static MergeOperator of(final int ordinal) {
+        final var operators = values();
+        if (ordinal < 0 || ordinal >= operators.length) {
+            throw new IllegalArgumentException("Unknown merge operator: " + ordinal);
+        }
+        return operators[ordinal];
+    }
+
+    private static long longOf(@NotNull final ByteBuffer buffer) {
+        return buffer.getLong(buffer.position());
+    }
+
+    @NotNull
+    private static ByteBuffer longBuffer(final long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(0, value);
+    }
+}
@@ -0,0 +1,213 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Util methods to encode and fold the merge operands.
+ *
+ * <p>Value of an operand entry is a sequence of operands applied from the first to the last one.
+ * Each operand is written as the ordinal of the operator (1 byte), the size (4 bytes) and the operand itself.
+ * Adjacent operands of the same operator are always combined, so the sequence stays short.
+ *
+ * <p>Operands of a key are kept until they meet the value they are applied to: the merged cursors return
+ * the older versions of the key after an operand down to the first one that is not an operand.
+ */
+public final class MergeUtils {
+    private static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+    private MergeUtils() {
+    }
+
+    /**
+     * Encode a single operand.
+     *
+     * @throws IllegalArgumentException if the operator does not accept the operand
+     */
+    @NotNull
+    public static ByteBuffer operand(
+            @NotNull final MergeOperator operator,
+            @NotNull final ByteBuffer operand) {
+        if (!operator.accepts(operand)) {
+            throw new IllegalArgumentException("Wrong operand of " + operator + ": " + operand.remaining() + " bytes");
+        }
+        return encode(List.of(operator), List.of(operand));
+    }
+
+    /**
+     * Combine two sequences of operands into one.
+     */
+    @NotNull
+    public static ByteBuffer combine(
+            @NotNull final ByteBuffer older,
+            @NotNull final ByteBuffer newer) {
+        final var operators = new ArrayList<MergeOperator>();
+        final var operands = new ArrayList<ByteBuffer>();
+        decode(older, operators, operands);
+        decode(newer, operators, operands);
+        return encode(operators, operands);
+    }
+
+    /**
+     * Apply a sequence of operands to the value.
+     *
+     * @param value    current value or {@code null} if it is absent
+     * @param operands sequence of operands
+     * @return the new value
+     */
+    @NotNull
+    public static ByteBuffer apply(
+            @Nullable final ByteBuffer value,
+            @NotNull final ByteBuffer operands) {
+        final var operators = new ArrayList<MergeOperator>();
+        final var decoded = new ArrayList<ByteBuffer>();
+        decode(operands, operators, decoded);
+        var result = value;
+        for (var i = 0; i < operators.size(); i++) {
+            result = operators.get(i).apply(result, decoded.get(i));
+        }
+        return result == null ? ByteBufferUtils.emptyBuffer() : result;
+    }
+
+    /**
+     * Merge the operand entry into the previous entry of the same MemTable.
+     *
+     * @param previous   entry of the MemTable or {@code null} if the key is absent
+     * @param operand    new operand entry
+     * @param tombstones range tombstones of the MemTable
+     * @return the value if the previous value is known, otherwise the combined operands
+     */
+    @NotNull
+    public static TableEntry merge(
+            @Nullable final TableEntry previous,
+            @NotNull final TableEntry operand,
+            @NotNull final RangeTombstones tombstones) {
+        if (previous == null) {
+            // absent key is considered older than any tombstone, the older tables may contain the value
+            final var absent = TableEntry.from(operand.getKey(), null, true, 0L);
+            return tombstones.isCovered(absent) ? value(operand, apply(null, operand.getValue()))
+                    : operand;
+        }
+        if (previous.hasTombstone() || tombstones.isCovered(previous)) {
+            return value(operand, apply(null, operand.getValue()));
+        }
+        if (previous.isOperand()) {
+            return TableEntry.operand(operand.getKey(), combine(previous.getValue(), operand.getValue()), operand.ts());
+        }
+        return value(operand, apply(previous.getValue(), operand.getValue()));
+    }
+
+    /**
+     * Fold the operands of a key into the value, the operands without the value are applied to the absent one.
+     *
+     * @param versions   versions of the key from the newest to the oldest, the first one is an operand
+     * @param tombstones range tombstones to apply
+     * @param resolver   function that reads values stored in the value log
+     * @return the value or a tombstone if the newest operand is removed
+     */
+    @NotNull
+    public static TableEntry fold(
+            @NotNull final List<TableEntry> versions,
+            @NotNull final RangeTombstones tombstones,
+            @NotNull final UnaryOperator<TableEntry> resolver) {
+        final var newest = versions.get(0);
+        if (tombstones.isCovered(newest)) {
+            return tombstones.apply(newest);
+        }
+        var operands = newest.getValue();
+        for (final var version : versions.subList(1, versions.size())) {
+            if (version.hasTombstone() || tombstones.isCovered(version)) {
+                break;
+            }
+            if (!version.isOperand()) {
+                return value(newest, apply(resolver.apply(version).getValue(), operands));
+            }
+            operands = combine(version.getValue(), operands);
+        }
+        return value(newest, apply(null, operands));
+    }
+
+    /**
+     * Fold the operands of a key during compaction. Unlike reads, compaction does not know if the older
+     * tables contain the key, so the operands without the value are combined, and it does not read
+     * the value log, so the operands are kept in front of the value stored there.
+     *
+     * @param versions   versions of the key from the newest to the oldest, the first one is an operand
+     * @param tombstones range tombstones of the compacted tables
+     * @return the entries to write
+     */
+    @NotNull
+    public static List<TableEntry> compact(
+            @NotNull final List<TableEntry> versions,
+            @NotNull final RangeTombstones tombstones) {
+        final var newest = versions.get(0);
+        if (tombstones.isCovered(newest)) {
+            return List.of(newest);
+        }
+        var operands = newest.getValue();
+        for (final var version : versions.subList(1, versions.size())) {
+            if (version.hasTombstone() || tombstones.isCovered(version)) {
+                return List.of(value(newest, apply(null, operands)));
+            }
+            if (version.valuePointer() != null) {
+                return List.of(TableEntry.operand(newest.getKey(), operands, newest.ts()), version);
+            }
+            if (!version.isOperand()) {
+                return List.of(value(newest, apply(version.getValue(), operands)));
+            }
+            operands = combine(version.getValue(), operands);
+        }
+        return List.of(TableEntry.operand(newest.getKey(), operands, newest.ts()));
+    }
+
+    @NotNull
+    private static TableEntry value(
+            @NotNull final TableEntry operand,
+            @NotNull final ByteBuffer value) {
+        return TableEntry.from(operand.getKey(), value, false, operand.ts());
+    }
+
+    private static void decode(
+            @NotNull final ByteBuffer sequence,
+            @NotNull final List<MergeOperator> operators,
+            @NotNull final List<ByteBuffer> operands) {
+        var position = sequence.position();
+        while (position < sequence.limit()) {
+            final var operator = MergeOperator.of(sequence.get(position));
+            final var start = position + HEADER_SIZE;
+            final var end = start + sequence.getInt(position + Byte.BYTES);
+            final var operand = sequence.duplicate().position(start).limit(end).slice();
+            final var last = operators.size() - 1;
+            if (last >= 0 && operators.get(last) == operator) {
+                operands.set(last, operator.combine(operands.get(last), operand));
+            } else {
+                operators.add(operator);
+                operands.add(operand);
+            }
+            position = end;
+        }
+    }
+
+    @NotNull
+    private static ByteBuffer encode(
+            @NotNull final List<MergeOperator> operators,
+            @NotNull final List<ByteBuffer> operands) {
+        var size = 0;
+        for (final var operand : operands) {
+            size += HEADER_SIZE + operand.remaining();
+        }
+        final var sequence = ByteBuffer.allocate(size);
+        for (var i = 0; i < operators.size(); i++) {
+            final var operand = operands.get(i);
+            sequence.put((byte) operators.get(i).ordinal())
+                    .putInt(operand.remaining())
+                    .put(operand.duplicate());
+        }
+        return sequence.flip();
+    }
+}
@@ -0,0 +1,432 @@
+package ru.mail.polis.dao.vaddya;
+
+import com.google.common.collect.Iterators;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.Record;
+import ru.mail.polis.dao.vaddya.sstable.SSTable;
+import ru.mail.polis.dao.vaddya.sstable.SSTableBuilder;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Storage that shards the keys by their hashes into independent {@link DAOImpl} partitions,
+ * so the writes are spread over several MemTables, flushers and compactors.
+ * Each partition keeps its files in a separate subdirectory, the number of partitions can not be changed
+ * once the storage is created. Scans merge the partitions, which have no keys in common.
+ *
+ * <p>A batch is applied atomically within each partition, but not across the partitions.
+ */
+@ThreadSafe
+public final class PartitionedDAO implements EntryDAO {
+    private static final Logger log = LoggerFactory.getLogger(PartitionedDAO.class);
+    private static final String PARTITION_PREFIX = "partition-";
+    // differs from the seed of the cluster topology, otherwise the keys of a node would fall into few partitions
+    private static final int SEED = 17;
+
+    private final HashFunction hashFunction = Hashing.murmur3_128(SEED);
+    private final List<DAOImpl> partitions;
+    private final Map<String, PartitionedDAO> columnFamilies = new ConcurrentHashMap<>();
+
+    /**
+     * Creates partitioned persistent DAO, the partitions share the configuration including the memory budget.
+     *
+     * @param root       folder to save and read data from
+     * @param partitions number of partitions
+     * @param config     configuration of each partition
+     * @throws IllegalArgumentException if the storage was created with another number of partitions
+     * @throws UncheckedIOException     if cannot open the partitions
+     */
+    public PartitionedDAO(
+            @NotNull final File root,
+            final int partitions,
+            @NotNull final DAOConfig config) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Number of partitions should be positive: " + partitions);
+        }
+        final var existing = Optional.ofNullable(root.list()).map(Stream::of).orElseGet(Stream::empty)
+                .filter(name -> name.startsWith(PARTITION_PREFIX))
+                .count();
+        if (existing > 0 && existing != partitions) {
+            throw new IllegalArgumentException("Storage has " + existing + " partitions, not " + partitions);
+        }
+
+        final var opened = new ArrayList<DAOImpl>(partitions);
+        for (var i = 0; i < partitions; i++) {
+            final var directory = new File(root, PARTITION_PREFIX + i);
+            try {
+                Files.createDirectories(directory.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            final var tiers = config.storageTiers().resolve(PARTITION_PREFIX + i);
+            opened.add(new DAOImpl(directory, config.withStorageTiers(tiers)));
+        }
+        this.partitions = List.copyOf(opened);
+        log.info("Partitioned DAO was opened in directory {} with {} partitions", root, partitions);
+    }
+
+    private PartitionedDAO(@NotNull final List<DAOImpl> partitions) {
+        this.partitions = List.copyOf(partitions);
+    }
+
+    @Override
+    @NotNull
+    public Iterator<Record> iterator(@NotNull final ByteBuffer from) {
+        return IteratorUtils.toRecords(IteratorUtils.entries(cursor(from, null)));
+    }
+
+    @Override
+    @NotNull
+    public Iterator<Record> prefix(@NotNull final ByteBuffer prefix) {
+        final var iterators = partitions.stream()
+                .map(partition -> partition.prefix(prefix))
+                .collect(toList());
+        return Iterators.mergeSorted(iterators, Comparator.naturalOrder());
+    }
+
+    @Override
+    @NotNull
+    public Cursor cursor(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final var cursors = partitions.stream()
+                .map(partition -> partition.cursor(from, to))
+                .collect(toList());
+        return IteratorUtils.collapseCursors(cursors);
+    }
+
+    @Override
+    @NotNull
+    public ByteBuffer get(@NotNull final ByteBuffer key) throws NoSuchEntityException {
+        return partition(key).get(key);
+    }
+
+    @Override
+    @Nullable
+    public TableEntry getEntry(@NotNull final ByteBuffer key) {
+        return partition(key).getEntry(key);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<TableEntry> getEntryAsync(@NotNull final ByteBuffer key) {
+        return partition(key).getEntryAsync(key);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> upsertAsync(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        return partition(key).upsertAsync(key, value);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> removeAsync(@NotNull final ByteBuffer key) {
+        return partition(key).removeAsync(key);
+    }
+
+    /**
+     * Get a publisher of the records of the range merged from the partitions, they are read by the storage threads
+     * of the first partition.
+     */
+    @Override
+    @NotNull
+    public Flow.Publisher<Record> rangeAsync(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        return new RangePublisher(() -> range(from, to), partitions.get(0).storageExecutor());
+    }
+
+    @Override
+    @NotNull
+    public Map<ByteBuffer, TableEntry> getEntries(@NotNull final Collection<ByteBuffer> keys) {
+        final var result = new HashMap<ByteBuffer, TableEntry>();
+        groupByPartition(keys).forEach((index, group) -> result.putAll(partitions.get(index).getEntries(group)));
+        return result;
+    }
+
+    @Override
+    @NotNull
+    public Map<ByteBuffer, ByteBuffer> getAll(@NotNull final Collection<ByteBuffer> keys) {
+        final var result = new HashMap<ByteBuffer, ByteBuffer>();
+        groupByPartition(keys).forEach((index, group) -> result.putAll(partitions.get(index).getAll(group)));
+        return result;
+    }
+
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        partition(key).upsert(key, value);
+    }
+
+    @Override
+    public boolean putIfAbsent(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        return partition(key).putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean putIfTimestamp(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            final long expectedTs) {
+        return partition(key).putIfTimestamp(key, value, expectedTs);
+    }
+
+    @Override
+    public void remove(@NotNull final ByteBuffer key) {
+        partition(key).remove(key);
+    }
+
+    @Override
+    public void merge(
+            @NotNull final ByteBuffer key,
+            @NotNull final MergeOperator operator,
+            @NotNull final ByteBuffer operand) {
+        partition(key).merge(key, operator, operand);
+    }
+
+    /**
+     * Sum the estimates of the partitions, the keys of any range are spread over all of them.
+     */
+    @Override
+    @NotNull
+    public RangeEstimate estimateRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        return partitions.stream()
+                .map(partition -> partition.estimateRange(from, to))
+                .reduce(RangeEstimate.empty(), RangeEstimate::plus);
+    }
+
+    /**
+     * Remove the range from each partition using a single range tombstone per partition.
+     */
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        partitions.forEach(partition -> partition.removeRange(from, to));
+    }
+
+    /**
+     * Apply the operations of the batch split by the partitions, each part is applied atomically.
+     */
+    @Override
+    public void apply(@NotNull final WriteBatch batch) {
+        batch.split(this::partitionIndex).forEach((index, part) -> partitions.get(index).apply(part));
+    }
+
+    /**
+     * Split each table by the partitions of the keys and ingest the parts into the partitions.
+     * The file is removed when all its parts are ingested.
+     *
+     * @param paths table files
+     * @throws IOException if a file is not a valid table or contains range tombstones,
+     *                     or a part can not be ingested
+     */
+    @Override
+    public void ingest(@NotNull final List<Path> paths) throws IOException {
+        for (final var path : paths) {
+            final var parts = split(path);
+            try {
+                for (final var part : parts.entrySet()) {
+                    partitions.get(part.getKey()).ingest(List.of(part.getValue()));
+                }
+            } finally {
+                // the parts which are not ingested are left in place
+                for (final var part : parts.values()) {
+                    Files.deleteIfExists(part);
+                }
+            }
+            Files.delete(path);
+        }
+    }
+
+    @Override
+    public void compact() throws IOException {
+        for (final var partition : partitions) {
+            partition.compact();
+        }
+    }
+
+    /**
+     * Get a path in the storage directory of the first partition, the parts of the table are written next to it.
+     */
+    @Override
+    @NotNull
+    public Path ingestPath() {
+        return partitions.get(0).ingestPath();
+    }
+
+    /**
+     * Create a full checkpoint, each partition is linked into its own subdirectory.
+     */
+    @Override
+    public void checkpoint(@NotNull final Path target) throws IOException {
+        checkpoint(target, null);
+    }
+
+    /**
+     * Create a checkpoint of each partition in its own subdirectory, see {@link DAOImpl#checkpoint(Path, Path)}.
+     *
+     * @param target   directory on the same file system as the storage
+     * @param previous directory of the previous checkpoint or {@code null} to create a full checkpoint
+     * @throws IOException if cannot flush the MemTables or link the files
+     */
+    public void checkpoint(
+            @NotNull final Path target,
+            @Nullable final Path previous) throws IOException {
+        for (var i = 0; i < partitions.size(); i++) {
+            final var name = PARTITION_PREFIX + i;
+            partitions.get(i).checkpoint(target.resolve(name), previous == null ? null : previous.resolve(name));
+        }
+    }
+
+    /**
+     * Get the column family partitioned the same way, each partition has its own column family.
+     */
+    @Override
+    @Nullable
+    public PartitionedDAO columnFamily(@NotNull final String name) {
+        final var family = columnFamilies.get(name);
+        if (family != null) {
+            return family;
+        }
+        final var familyPartitions = new ArrayList<DAOImpl>(partitions.size());
+        for (final var partition : partitions) {
+            final var familyPartition = partition.columnFamily(name);
+            if (familyPartition == null) {
+                return null;
+            }
+            familyPartitions.add(familyPartition);
+        }
+        return columnFamilies.computeIfAbsent(name, key -> new PartitionedDAO(familyPartitions));
+    }
+
+    /**
+     * Open the column family in each partition, see {@link DAOImpl#openColumnFamily(String, DAOConfig)}.
+     */
+    @Override
+    @NotNull
+    public PartitionedDAO openColumnFamily(
+            @NotNull final String name,
+            @NotNull final DAOConfig config) {
+        final var familyPartitions = new ArrayList<DAOImpl>(partitions.size());
+        for (var i = 0; i < partitions.size(); i++) {
+            final var tiers = config.storageTiers().resolve(PARTITION_PREFIX + i);
+            familyPartitions.add(partitions.get(i).openColumnFamily(name, config.withStorageTiers(tiers)));
+        }
+        final var family = new PartitionedDAO(familyPartitions);
+        columnFamilies.put(name, family);
+        return family;
+    }
+
+    /**
+     * Get the number of bytes of the tables that are waiting for compaction in all the partitions.
+     */
+    public long pendingCompactionBytes() {
+        return partitions.stream()
+                .mapToLong(DAOImpl::pendingCompactionBytes)
+                .sum();
+    }
+
+    @Override
+    public void close() {
+        partitions.forEach(DAOImpl::close);
+    }
+
+    @NotNull
+    private DAOImpl partition(@NotNull final ByteBuffer key) {
+        return partitions.get(partitionIndex(key));
+    }
+
+    private int partitionIndex(@NotNull final ByteBuffer key) {
+        return Math.floorMod(hashFunction.hashBytes(key.duplicate()).asInt(), partitions.size());
+    }
+
+    @NotNull
+    private Map<Integer, List<ByteBuffer>> groupByPartition(@NotNull final Collection<ByteBuffer> keys) {
+        final var groups = new HashMap<Integer, List<ByteBuffer>>();
+        for (final var key : keys) {
+            groups.computeIfAbsent(partitionIndex(key), index -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
+    /**
+     * Write the entries of the table into a file per partition next to the table.
+     *
+     * @return files of the parts by the partitions
+     */
+    @NotNull
+    private Map<Integer, Path> split(@NotNull final Path path) throws IOException {
+        final SSTable table;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            table = SSTable.open(channel);
+        }
+        if (!table.rangeTombstones().isEmpty()) {
+            throw new IOException("Unable to split range tombstones of " + path + " by partitions");
+        }
+
+        final var builders = new HashMap<Integer, SSTableBuilder>();
+        final var parts = new HashMap<Integer, Path>();
+        try {
+            final var iterator = table.iterator();
+            while (iterator.hasNext()) {
+                final var entry = iterator.next();
+                final var index = partitionIndex(entry.getKey());
+                var builder = builders.get(index);
+                if (builder == null) {
+                    final var part = path.resolveSibling(path.getFileName() + "." + index);
+                    builder = SSTableBuilder.create(part, WriterConfig.defaults());
+                    builders.put(index, builder);
+                    parts.put(index, part);
+                }
+                // the parts keep the timestamps, so they do not shadow the writes made after the table was built
+                builder.append(entry);
+            }
+            for (final var builder : builders.values()) {
+                builder.finish();
+            }
+        } finally {
+            // the unfinished parts are removed
+            for (final var builder : builders.values()) {
+                builder.close();
+            }
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,86 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Approximate size and number of the entries of a key range. The entries are counted as they are stored,
+ * so the versions overwritten or removed since the last compaction are included, and the values separated
+ * to the value log are counted by their pointers.
+ */
+@ThreadSafe
+public final class RangeEstimate {
+    private static final RangeEstimate EMPTY = new RangeEstimate(0, 0);
+
+    private final long sizeInBytes;
+    private final long count;
+
+    private RangeEstimate(
+            final long sizeInBytes,
+            final long count) {
+        this.sizeInBytes = sizeInBytes;
+        this.count = count;
+    }
+
+    @NotNull
+    public static RangeEstimate empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create an estimate.
+     *
+     * @param sizeInBytes size of the entries
+     * @param count       number of the entries
+     * @return an estimate
+     * @throws IllegalArgumentException if the size or the number is negative
+     */
+    @NotNull
+    public static RangeEstimate of(
+            final long sizeInBytes,
+            final long count) {
+        if (sizeInBytes < 0 || count < 0) {
+            throw new IllegalArgumentException("Negative estimate: " + sizeInBytes + " bytes, " + count + " entries");
+        }
+        return sizeInBytes == 0 && count == 0 ? EMPTY : new RangeEstimate(sizeInBytes, count);
+    }
+
+    /**
+     * Get the estimate of the range stored by both tables.
+     */
+    @NotNull
+    public RangeEstimate plus(@NotNull final RangeEstimate other) {
+        return of(sizeInBytes + other.sizeInBytes, count + other.count);
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RangeEstimate)) {
+            return false;
+        }
+        final var that = (RangeEstimate) o;
+        return sizeInBytes == that.sizeInBytes && count == that.count;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(sizeInBytes) + Long.hashCode(count);
+    }
+
+    @Override
+    public String toString() {
+        return "RangeEstimate{size=" + sizeInBytes + ", count=" + count + '}';
+    }
+}
@@ -0,0 +1,144 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.Record;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of the records of an iterator which is opened for each subscriber.
+ * The records are emitted by the executor as they are requested, at most one task of a subscription
+ * is running at a time, so the signals to the subscriber are serialized.
+ */
+@ThreadSafe
+final class RangePublisher implements Flow.Publisher<Record> {
+    private final Callable<Iterator<Record>> source;
+    private final Executor executor;
+
+    /**
+     * Create a publisher.
+     *
+     * @param source   a source to open an iterator for a subscriber, it is called by the executor
+     * @param executor an executor to read the records
+     */
+    RangePublisher(
+            @NotNull final Callable<Iterator<Record>> source,
+            @NotNull final Executor executor) {
+        this.source = source;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super Record> subscriber) {
+        Objects.requireNonNull(subscriber);
+        final var subscription = new RangeSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class RangeSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super Record> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // number of the signals since the task was scheduled, the task runs until it handles all of them
+        private final AtomicInteger pending = new AtomicInteger();
+        @Nullable
+        private volatile Throwable invalidRequest;
+        private volatile boolean cancelled;
+        // accessed by the task only
+        @Nullable
+        private Iterator<Record> iterator;
+        private boolean done;
+
+        RangeSubscription(@NotNull final Flow.Subscriber<? super Record> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                // the demand is unbounded once it overflows
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() != 0) {
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                cancelled = true;
+                subscriber.onError(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            var missed = 1;
+            do {
+                emit();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                finish();
+                return;
+            }
+            final var error = invalidRequest;
+            if (error != null) {
+                finish();
+                subscriber.onError(error);
+                return;
+            }
+            try {
+                if (iterator == null) {
+                    iterator = source.call();
+                }
+                var emitted = 0L;
+                final var requested = demand.get();
+                while (emitted < requested && iterator.hasNext() && !cancelled) {
+                    subscriber.onNext(iterator.next());
+                    emitted++;
+                }
+                if (requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                if (!cancelled && !iterator.hasNext()) {
+                    finish();
+                    subscriber.onComplete();
+                }
+            } catch (Exception e) {
+                finish();
+                subscriber.onError(e);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            iterator = null;
+        }
+    }
+}
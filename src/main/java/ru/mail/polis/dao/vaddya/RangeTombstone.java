@@ -0,0 +1,86 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * Removal of all values with keys between {@code from} (inclusive) and {@code to} (exclusive)
+ * that are older than the tombstone. The tombstones are applied to the entries
+ * by {@link RangeTombstones}.
+ */
+@ThreadSafe
+public final class RangeTombstone {
+    private final ByteBuffer from;
+    @Nullable
+    private final ByteBuffer to;
+    private final long ts;
+
+    /**
+     * Create a range tombstone with the current timestamp.
+     *
+     * @param from the lowest key of the range (inclusive)
+     * @param to   the highest key of the range (exclusive) or {@code null} if the range is unbounded
+     * @return a range tombstone
+     */
+    @NotNull
+    public static RangeTombstone remove(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        return new RangeTombstone(from, to, HybridClock.instance().now());
+    }
+
+    @NotNull
+    public static RangeTombstone from(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final long ts) {
+        return new RangeTombstone(from, to, ts);
+    }
+
+    private RangeTombstone(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final long ts) {
+        this.from = from;
+        this.to = to;
+        this.ts = ts;
+    }
+
+    /**
+     * Get the lowest key of the range (inclusive).
+     */
+    @NotNull
+    public ByteBuffer from() {
+        return from;
+    }
+
+    /**
+     * Get the highest key of the range (exclusive) or {@code null} if the range is unbounded.
+     */
+    @Nullable
+    public ByteBuffer to() {
+        return to;
+    }
+
+    /**
+     * Get the tombstone timestamp in nanos.
+     */
+    public long ts() {
+        return ts;
+    }
+
+    /**
+     * Get size of the serialized tombstone in bytes.
+     */
+    public int sizeInBytes() {
+        return Integer.BYTES + from.remaining() + Integer.BYTES + (to == null ? 0 : to.remaining()) + Long.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return "RangeTombstone{ts=" + ts + '}';
+    }
+}
@@ -0,0 +1,181 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Range tombstones fragmented by their bounds into non-overlapping ranges sorted by the lowest keys.
+ * Each fragment keeps the timestamp of the newest tombstone covering it, so the entries are checked
+ * by a binary search instead of a scan of all the tombstones.
+ */
+@ThreadSafe
+public final class RangeTombstones {
+    private static final RangeTombstones EMPTY = new RangeTombstones(List.of(), new ByteBuffer[0], new long[0]);
+
+    // the tombstones the fragments are built from
+    private final List<RangeTombstone> tombstones;
+    // the lowest keys of the fragments, a fragment ends where the next one starts
+    private final ByteBuffer[] starts;
+    // the timestamps of the newest tombstones covering the fragments, 0 if the fragment is not covered
+    private final long[] timestamps;
+
+    private RangeTombstones(
+            @NotNull final List<RangeTombstone> tombstones,
+            @NotNull final ByteBuffer[] starts,
+            @NotNull final long[] timestamps) {
+        this.tombstones = tombstones;
+        this.starts = starts;
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * Fragment the range tombstones.
+     *
+     * @param tombstones range tombstones in any order
+     * @return fragmented tombstones
+     */
+    @NotNull
+    public static RangeTombstones of(@NotNull final Collection<RangeTombstone> tombstones) {
+        if (tombstones.isEmpty()) {
+            return EMPTY;
+        }
+
+        final var bounds = new TreeSet<ByteBuffer>();
+        final Map<ByteBuffer, List<Long>> startsAt = new HashMap<>();
+        final Map<ByteBuffer, List<Long>> endsAt = new HashMap<>();
+        for (final var tombstone : tombstones) {
+            final var to = tombstone.to();
+            if (to != null && tombstone.from().compareTo(to) >= 0) {
+                continue; // empty range
+            }
+            bounds.add(tombstone.from());
+            startsAt.computeIfAbsent(tombstone.from(), key -> new ArrayList<>()).add(tombstone.ts());
+            if (to != null) {
+                bounds.add(to);
+                endsAt.computeIfAbsent(to, key -> new ArrayList<>()).add(tombstone.ts());
+            }
+        }
+
+        final var starts = new ByteBuffer[bounds.size()];
+        final var timestamps = new long[bounds.size()];
+        final var active = new TreeMap<Long, Integer>(); // timestamps of the tombstones covering the bound
+        var count = 0;
+        for (final var bound : bounds) {
+            for (final var ts : endsAt.getOrDefault(bound, List.of())) {
+                active.computeIfPresent(ts,
+                        (key, tombstonesCount) -> tombstonesCount == 1 ? null : tombstonesCount - 1);
+            }
+            for (final var ts : startsAt.getOrDefault(bound, List.of())) {
+                active.merge(ts, 1, Integer::sum);
+            }
+            final var ts = active.isEmpty() ? 0L : active.lastKey();
+            if (ts != (count == 0 ? 0L : timestamps[count - 1])) {
+                // the adjacent fragments with equal timestamps are joined
+                starts[count] = bound;
+                timestamps[count] = ts;
+                count++;
+            }
+        }
+        return new RangeTombstones(List.copyOf(tombstones), Arrays.copyOf(starts, count),
+                Arrays.copyOf(timestamps, count));
+    }
+
+    /**
+     * Fragment the range tombstones unless they are the same as these ones were built from,
+     * so the readers do not repeat the fragmentation until the tombstones change.
+     *
+     * @param tombstones range tombstones in any order
+     * @return this instance or the new fragmented tombstones
+     */
+    @NotNull
+    public RangeTombstones update(@NotNull final List<RangeTombstone> tombstones) {
+        return this.tombstones.equals(tombstones) ? this : of(tombstones);
+    }
+
+    /**
+     * Get the tombstones the fragments are built from.
+     */
+    @NotNull
+    public List<RangeTombstone> tombstones() {
+        return tombstones;
+    }
+
+    /**
+     * Check if there are no tombstones.
+     */
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    /**
+     * Apply the tombstones to the entry.
+     *
+     * @param entry entry to check
+     * @return the entry itself or a point tombstone with the timestamp of the newest covering range tombstone
+     */
+    @NotNull
+    public TableEntry apply(@NotNull final TableEntry entry) {
+        final var ts = timestamp(entry.getKey());
+        return ts > entry.ts() ? TableEntry.from(entry.getKey(), null, true, ts) : entry;
+    }
+
+    /**
+     * Check if the entry is removed by any of the tombstones.
+     */
+    public boolean isCovered(@NotNull final TableEntry entry) {
+        return timestamp(entry.getKey()) > entry.ts();
+    }
+
+    /**
+     * Check if the current entry of the cursor is removed by any of the tombstones, the key is compared in place.
+     */
+    public boolean covers(@NotNull final Cursor cursor) {
+        var low = 0;
+        var high = starts.length - 1;
+        var fragment = -1;
+        while (low <= high) {
+            final var mid = (low + high) >>> 1;
+            if (cursor.compareKey(starts[mid]) >= 0) {
+                fragment = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return fragment >= 0 && timestamps[fragment] > cursor.ts();
+    }
+
+    /**
+     * Get the timestamp of the newest tombstone covering the key or 0 if there is none.
+     */
+    private long timestamp(@NotNull final ByteBuffer key) {
+        var low = 0;
+        var high = starts.length - 1;
+        var fragment = -1;
+        while (low <= high) {
+            final var mid = (low + high) >>> 1;
+            if (starts[mid].compareTo(key) <= 0) {
+                fragment = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return fragment < 0 ? 0L : timestamps[fragment];
+    }
+
+    @Override
+    public String toString() {
+        return "RangeTombstones{fragments=" + starts.length + '}';
+    }
+}
@@ -5,7 +5,10 @@ import org.jetbrains.annotations.Nullable;
 import ru.mail.polis.dao.Iters;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import static ru.mail.polis.dao.vaddya.ByteBufferUtils.emptyBuffer;
 
@@ -26,6 +29,14 @@ public interface Table {
     @NotNull
     Iterator<TableEntry> iterator(@NotNull ByteBuffer from);
 
+    /**
+     * Get a cursor over the table entries starting from the given key.
+     */
+    @NotNull
+    default Cursor cursor(@NotNull final ByteBuffer from) {
+        return new IteratorCursor(iterator(from));
+    }
+
     /**
      * Get iterator over all values of the table.
      */
@@ -48,7 +59,88 @@ public interface Table {
             return Iters.empty();
         }
 
-        final var bound = TableEntry.from(to, emptyBuffer(), false, -1);
+        // the newest possible entry precedes all the entries with the same key, so the bound is exclusive
+        final var bound = TableEntry.from(to, emptyBuffer(), false, Long.MAX_VALUE);
         return Iters.until(iterator(from), bound);
     }
+
+    /**
+     * Get iterator over the table entries which keys start with the given prefix.
+     */
+    @NotNull
+    default Iterator<TableEntry> prefix(@NotNull ByteBuffer prefix) {
+        return range(prefix, ByteBufferUtils.prefixUpperBound(prefix));
+    }
+
+    /**
+     * Estimate the entries with keys between {@code from} (inclusive) and {@code to} (exclusive),
+     * the default implementation walks the range, so it suits only the in-memory tables.
+     */
+    @NotNull
+    default RangeEstimate estimateRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        var sizeInBytes = 0L;
+        var count = 0L;
+        for (final var it = range(from, to); it.hasNext(); ) {
+            final var entry = it.next();
+            sizeInBytes += entry.getKey().remaining();
+            if (!entry.hasTombstone() && entry.valuePointer() == null) {
+                sizeInBytes += entry.getValue().remaining();
+            }
+            count++;
+        }
+        return RangeEstimate.of(sizeInBytes, count);
+    }
+
+    /**
+     * Get range tombstones of the table.
+     */
+    @NotNull
+    default Collection<RangeTombstone> rangeTombstones() {
+        return List.of();
+    }
+
+    /**
+     * Look up the given keys and put the found entries (possibly tombstones) into the result
+     * unless it already contains a newer entry for the same key.
+     *
+     * @param sortedKeys distinct keys in ascending order
+     * @param result     entries found so far
+     */
+    default void lookup(
+            @NotNull List<ByteBuffer> sortedKeys,
+            @NotNull Map<ByteBuffer, TableEntry> result) {
+        for (final var key : sortedKeys) {
+            final var iterator = iterator(key);
+            if (!iterator.hasNext()) {
+                return; // all the next keys are greater
+            }
+            final var entry = iterator.next();
+            if (entry.getKey().equals(key)) {
+                result.merge(key, entry, TableEntry::newest);
+            }
+        }
+    }
+
+    /**
+     * Look up the key and add all its entries (possibly tombstones) to the versions, e.g. a compacted table
+     * keeps an operand in front of the value stored in the value log. The pools add the entries
+     * of each of their tables, so the merge operands are folded without iterating the pools.
+     *
+     * @param key      key to search for
+     * @param versions versions found so far in any order
+     */
+    default void lookupVersions(
+            @NotNull final ByteBuffer key,
+            @NotNull final Collection<TableEntry> versions) {
+        final var iterator = iterator(key);
+        while (iterator.hasNext()) {
+            final var entry = iterator.next();
+            if (!entry.getKey().equals(key)) {
+                return;
+            }
+            versions.add(entry);
+        }
+    }
 }
@@ -2,6 +2,7 @@ package ru.mail.polis.dao.vaddya;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.vaddya.vlog.ValuePointer;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.nio.ByteBuffer;
@@ -10,30 +11,48 @@ import java.util.Comparator;
 import static java.util.Comparator.comparing;
 import static java.util.Comparator.reverseOrder;
 import static ru.mail.polis.dao.vaddya.ByteBufferUtils.emptyBuffer;
-import static ru.mail.polis.dao.vaddya.TimeUtils.currentTimeNanos;
 
 @ThreadSafe
 public final class TableEntry implements Comparable<TableEntry> {
+    /**
+     * Entries with equal keys are ordered from the newest to the oldest.
+     * Values relocated by the value log GC keep their timestamps, so the entry
+     * pointing to the newer value log file wins.
+     */
     static final Comparator<TableEntry> COMPARATOR = comparing(TableEntry::getKey)
-            .thenComparing(TableEntry::ts, reverseOrder());
+            .thenComparing(TableEntry::ts, reverseOrder())
+            .thenComparing(TableEntry::valueLogId, reverseOrder());
 
     private final ByteBuffer key;
     @Nullable
     private final ByteBuffer value;
+    @Nullable
+    private final ValuePointer pointer;
     private final boolean hasTombstone;
+    private final boolean isOperand;
     private final long ts;
 
     @NotNull
     public static TableEntry upsert(
             @NotNull final ByteBuffer key,
             @NotNull final ByteBuffer value) {
-        return new TableEntry(key, value, false, currentTimeNanos());
+        return new TableEntry(key, value, null, false, false, HybridClock.instance().now());
+    }
+
+    /**
+     * Create an entry with the merge operands encoded by {@link MergeUtils}, they are applied to the older value.
+     */
+    @NotNull
+    public static TableEntry merge(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer operands) {
+        return new TableEntry(key, operands, null, false, true, HybridClock.instance().now());
     }
 
     @NotNull
     public static TableEntry delete(
             @NotNull final ByteBuffer key) {
-        return new TableEntry(key, emptyBuffer(), true, currentTimeNanos());
+        return new TableEntry(key, emptyBuffer(), null, true, false, HybridClock.instance().now());
     }
 
     @NotNull
@@ -42,20 +61,62 @@ public final class TableEntry implements Comparable<TableEntry> {
             @Nullable final ByteBuffer value,
             final boolean hasTombstone,
             final long ts) {
-        return new TableEntry(key, value, hasTombstone, ts);
+        return new TableEntry(key, value, null, hasTombstone, false, ts);
+    }
+
+    @NotNull
+    public static TableEntry operand(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer operands,
+            final long ts) {
+        return new TableEntry(key, operands, null, false, true, ts);
+    }
+
+    /**
+     * Create an entry which value is stored in the value log.
+     */
+    @NotNull
+    public static TableEntry pointer(
+            @NotNull final ByteBuffer key,
+            @NotNull final ValuePointer pointer,
+            final long ts) {
+        return new TableEntry(key, null, pointer, false, false, ts);
     }
 
     private TableEntry(
             @NotNull final ByteBuffer key,
             @Nullable final ByteBuffer value,
+            @Nullable final ValuePointer pointer,
             final boolean hasTombstone,
+            final boolean isOperand,
             final long ts) {
         this.key = key;
         this.value = value;
+        this.pointer = pointer;
         this.hasTombstone = hasTombstone;
+        this.isOperand = isOperand;
         this.ts = ts;
     }
 
+    /**
+     * Choose the newest of two entries, the first one wins in case of equal entries.
+     */
+    @NotNull
+    public static TableEntry newest(
+            @NotNull final TableEntry first,
+            @NotNull final TableEntry second) {
+        return COMPARATOR.compare(second, first) < 0 ? second : first;
+    }
+
+    /**
+     * Create a copy of the entry with the value read by its pointer.
+     * The pointer is kept, so the entry is still written as a pointer.
+     */
+    @NotNull
+    public TableEntry resolved(@NotNull final ByteBuffer value) {
+        return new TableEntry(key, value, pointer, hasTombstone, isOperand, ts);
+    }
+
     /**
      * Get the key.
      */
@@ -68,15 +129,27 @@ public final class TableEntry implements Comparable<TableEntry> {
      * Get the value.
      *
      * @throws IllegalArgumentException if value is absent
+     * @throws IllegalStateException    if value is stored in the value log and was not resolved
      */
     @NotNull
     public ByteBuffer getValue() {
         if (value == null) {
+            if (pointer != null) {
+                throw new IllegalStateException("Value is not resolved: " + pointer);
+            }
             throw new IllegalArgumentException("Value is absent");
         }
         return value;
     }
 
+    /**
+     * Get the pointer to the value in the value log or {@code null} if the value is stored inline.
+     */
+    @Nullable
+    public ValuePointer valuePointer() {
+        return pointer;
+    }
+
     /**
      * Get the tombstone, if true then the value is absent.
      */
@@ -84,6 +157,13 @@ public final class TableEntry implements Comparable<TableEntry> {
         return hasTombstone;
     }
 
+    /**
+     * Check if the value is a sequence of merge operands rather than the value itself.
+     */
+    public boolean isOperand() {
+        return isOperand;
+    }
+
     /**
      * Get the entry timestamp in nanos.
      */
@@ -91,6 +171,10 @@ public final class TableEntry implements Comparable<TableEntry> {
         return ts;
     }
 
+    private int valueLogId() {
+        return pointer == null ? -1 : pointer.fileId();
+    }
+
     @Override
     public int compareTo(@NotNull final TableEntry o) {
         return COMPARATOR.compare(this, o);
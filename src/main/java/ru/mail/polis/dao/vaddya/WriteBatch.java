@@ -0,0 +1,137 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import static ru.mail.polis.dao.vaddya.ByteBufferUtils.emptyBuffer;
+
+/**
+ * A group of upserts and removals that are applied to the storage at once.
+ *
+ * <p>All operations of the batch share a single timestamp and are placed
+ * into the same MemTable, so they are either flushed together or not at all.
+ * Operations on the same key are applied in the order they were added.
+ *
+ * <p>The atomicity covers flushing only, not visibility: the operations are put into the MemTable
+ * one by one, so concurrent reads and iterators may observe a part of the batch while it is applied.
+ */
+@NotThreadSafe
+public final class WriteBatch {
+    private final List<Operation> operations = new ArrayList<>();
+    private long sizeInBytes;
+
+    /**
+     * Add insertion or update of the value by the given key.
+     *
+     * @param key   key
+     * @param value value
+     * @return this batch
+     */
+    @NotNull
+    public WriteBatch upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        final var operation = new Operation(readOnly(key), readOnly(value), false);
+        operations.add(operation);
+        sizeInBytes += Integer.BYTES + key.remaining() + Long.BYTES + Integer.BYTES + value.remaining();
+        return this;
+    }
+
+    /**
+     * Add removal of the value by the given key.
+     *
+     * @param key key
+     * @return this batch
+     */
+    @NotNull
+    public WriteBatch remove(@NotNull final ByteBuffer key) {
+        final var operation = new Operation(readOnly(key), emptyBuffer(), true);
+        operations.add(operation);
+        sizeInBytes += Integer.BYTES + key.remaining() + Long.BYTES;
+        return this;
+    }
+
+    /**
+     * Get number of operations in the batch.
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Check if the batch contains no operations.
+     */
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Get size of the batch entries in bytes.
+     */
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Create table entries for all operations of the batch stamped with a single timestamp.
+     *
+     * @return entries in the order of operations
+     */
+    @NotNull
+    public Collection<TableEntry> timestampedEntries() {
+        final var ts = HybridClock.instance().now();
+        final var entries = new ArrayList<TableEntry>(operations.size());
+        for (final var operation : operations) {
+            entries.add(TableEntry.from(operation.key, operation.value, operation.hasTombstone, ts));
+        }
+        return entries;
+    }
+
+    /**
+     * Split the batch by the partitions of the keys keeping the order of operations on each key.
+     *
+     * @param partitioner function that maps a key to its partition
+     * @return non-empty batches by their partitions
+     */
+    @NotNull
+    public Map<Integer, WriteBatch> split(@NotNull final ToIntFunction<ByteBuffer> partitioner) {
+        final var batches = new HashMap<Integer, WriteBatch>();
+        for (final var operation : operations) {
+            final var batch = batches.computeIfAbsent(partitioner.applyAsInt(operation.key), p -> new WriteBatch());
+            if (operation.hasTombstone) {
+                batch.remove(operation.key);
+            } else {
+                batch.upsert(operation.key, operation.value);
+            }
+        }
+        return batches;
+    }
+
+    @NotNull
+    private static ByteBuffer readOnly(@NotNull final ByteBuffer buffer) {
+        return buffer.duplicate().asReadOnlyBuffer();
+    }
+
+    private static final class Operation {
+        private final ByteBuffer key;
+        private final ByteBuffer value;
+        private final boolean hasTombstone;
+
+        Operation(
+                @NotNull final ByteBuffer key,
+                @NotNull final ByteBuffer value,
+                final boolean hasTombstone) {
+            this.key = key;
+            this.value = value;
+            this.hasTombstone = hasTombstone;
+        }
+    }
+}
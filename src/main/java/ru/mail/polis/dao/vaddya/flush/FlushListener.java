@@ -3,8 +3,18 @@ package ru.mail.polis.dao.vaddya.flush;
 import org.jetbrains.annotations.NotNull;
 import ru.mail.polis.dao.vaddya.sstable.SSTable;
 
+import java.util.List;
+
 public interface FlushListener {
+    /**
+     * Called when the MemTables are flushed into a table, they should be replaced by the table at once.
+     *
+     * @param generation generation of the table, the newest of the flushed MemTables
+     * @param sources    generations of the flushed MemTables in ascending order
+     * @param ssTable    flushed table
+     */
     void flushed(
             int generation,
+            @NotNull List<Integer> sources,
             @NotNull SSTable ssTable);
 }
@@ -1,12 +1,14 @@
 package ru.mail.polis.dao.vaddya.flush;
 
 import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
 import ru.mail.polis.dao.vaddya.TableEntry;
 import ru.mail.polis.dao.vaddya.memtable.MemTable;
 import ru.mail.polis.dao.vaddya.sstable.SSTable;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Iterator;
 
 public interface Flusher extends Closeable {
@@ -17,7 +19,8 @@ public interface Flusher extends Closeable {
     @NotNull
     SSTable flushEntries(
             final int generation,
-            @NotNull final Iterator<TableEntry> iterator) throws IOException;
+            @NotNull final Iterator<TableEntry> iterator,
+            @NotNull final Collection<RangeTombstone> tombstones) throws IOException;
     
     void addListener(@NotNull final FlushListener flushListener);
 }
@@ -4,73 +4,174 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.vaddya.IteratorUtils;
+import ru.mail.polis.dao.vaddya.MergeUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
+import ru.mail.polis.dao.vaddya.RangeTombstones;
 import ru.mail.polis.dao.vaddya.TableEntry;
 import ru.mail.polis.dao.vaddya.memtable.MemTable;
 import ru.mail.polis.dao.vaddya.naming.FileManager;
 import ru.mail.polis.dao.vaddya.sstable.SSTable;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+import ru.mail.polis.dao.vaddya.vlog.ValueLog;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Phaser;
 
+import static java.util.stream.Collectors.toList;
+
 @ThreadSafe
 public final class TableFlusher implements Flusher {
     private static final int THREAD_COUNT = 4;
+    // the tables flushed early because of the memory budget are a quarter of the threshold
+    private static final int MAX_COALESCED_TABLES = 4;
     private static final Logger log = LoggerFactory.getLogger(TableFlusher.class);
 
     private final FileManager fileManager;
+    private final WriterConfig writerConfig;
+    private final ValueLog valueLog;
     private final Executor executor;
     private final Collection<FlushListener> listeners = new CopyOnWriteArrayList<>();
+    private final NavigableMap<Integer, MemTable> queued = new TreeMap<>();
     private final Phaser phaser = new Phaser(1); // one party for closing call
 
     /**
      * Creates a flusher instance that schedules and executes
      * flushes of MemTables to the disk.
      *
-     * @param fileManager a file manager to create file names
+     * @param fileManager  a file manager to create file names
+     * @param writerConfig a configuration of the tables writing
+     * @param valueLog     a value log to separate large values of the flushed MemTables
      */
-    public TableFlusher(@NotNull final FileManager fileManager) {
+    public TableFlusher(
+            @NotNull final FileManager fileManager,
+            @NotNull final WriterConfig writerConfig,
+            @NotNull final ValueLog valueLog) {
+        this(fileManager, writerConfig, valueLog, newExecutor());
+    }
+
+    /**
+     * Creates a flusher instance that executes flushes using the executor, which can be shared by several flushers.
+     *
+     * @param fileManager  a file manager to create file names
+     * @param writerConfig a configuration of the tables writing
+     * @param valueLog     a value log to separate large values of the flushed MemTables
+     * @param executor     an executor to run flushes
+     */
+    public TableFlusher(
+            @NotNull final FileManager fileManager,
+            @NotNull final WriterConfig writerConfig,
+            @NotNull final ValueLog valueLog,
+            @NotNull final Executor executor) {
         this.fileManager = fileManager;
+        this.writerConfig = writerConfig;
+        this.valueLog = valueLog;
+        this.executor = executor;
+    }
+
+    /**
+     * Create an executor with the flusher threads.
+     */
+    @NotNull
+    public static ExecutorService newExecutor() {
         final var threadFactory = new ThreadFactoryBuilder().setNameFormat("flusher-%d").build();
-        this.executor = Executors.newFixedThreadPool(THREAD_COUNT, threadFactory);
+        return Executors.newFixedThreadPool(THREAD_COUNT, threadFactory);
     }
 
+    /**
+     * Schedule a flush of the MemTable, the MemTables which are queued until a flusher thread is free
+     * are flushed together into one table.
+     */
     @Override
     public void scheduleFlush(
             final int generation,
             @NotNull final MemTable memTable) {
         phaser.register();
-        executor.execute(() -> flush(generation, memTable));
+        synchronized (queued) {
+            queued.put(generation, memTable);
+        }
+        executor.execute(this::flushQueued);
     }
 
-    private void flush(
-            final int generation,
-            @NotNull final MemTable memTable) {
+    private void flushQueued() {
         try {
-            final var it = memTable.iterator();
-            final var ssTable = flushEntries(generation, it);
-            log.info("T{} was flushed: {}", generation, ssTable);
-            listeners.forEach(listener -> listener.flushed(generation, ssTable));
-        } catch (IOException e) {
+            final var tables = pollQueued();
+            if (tables.isEmpty()) {
+                return; // the table was taken by the flush of the previous ones
+            }
+            final var generation = tables.lastKey();
+            final var tombstones = tables.values()
+                    .stream()
+                    .flatMap(table -> table.rangeTombstones().stream())
+                    .collect(toList());
+            final var it = valueLog.separate(generation, entries(tables, tombstones));
+            final var ssTable = flushEntries(generation, it, tombstones);
+            log.info("T{} was flushed from {} MemTables {}: {}", generation, tables.size(), tables.keySet(), ssTable);
+            final var sources = List.copyOf(tables.keySet());
+            listeners.forEach(listener -> listener.flushed(generation, sources, ssTable));
+        } catch (IOException | UncheckedIOException e) {
             log.error("Flushing error", e);
         } finally {
             phaser.arrive();
         }
     }
 
+    /**
+     * Take up to {@link #MAX_COALESCED_TABLES} of the oldest queued MemTables.
+     */
+    @NotNull
+    private NavigableMap<Integer, MemTable> pollQueued() {
+        final NavigableMap<Integer, MemTable> tables = new TreeMap<>();
+        synchronized (queued) {
+            while (!queued.isEmpty() && tables.size() < MAX_COALESCED_TABLES) {
+                final var entry = queued.pollFirstEntry();
+                tables.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Merge the entries of the MemTables, the older versions of the keys are skipped
+     * and the merge operands are folded into the older versions.
+     */
+    @NotNull
+    private static Iterator<TableEntry> entries(
+            @NotNull final NavigableMap<Integer, MemTable> tables,
+            @NotNull final Collection<RangeTombstone> tombstones) {
+        if (tables.size() == 1) {
+            return tables.firstEntry().getValue().iterator();
+        }
+        final var iterators = tables.descendingMap()
+                .values()
+                .stream()
+                .map(MemTable::iterator)
+                .collect(toList());
+        final var fragmented = RangeTombstones.of(tombstones);
+        return IteratorUtils.foldOperands(IteratorUtils.collapseIterators(iterators),
+                versions -> MergeUtils.compact(versions, fragmented));
+    }
+
     @Override
     @NotNull
     public SSTable flushEntries(
             final int generation,
-            @NotNull final Iterator<TableEntry> iterator) throws IOException {
+            @NotNull final Iterator<TableEntry> iterator,
+            @NotNull final Collection<RangeTombstone> tombstones) throws IOException {
         final var tempPath = fileManager.tempPathTo(generation);
         final var finalPath = fileManager.finalPathTo(generation);
-        return SSTable.flushAndOpen(iterator, tempPath, finalPath);
+        return SSTable.flushAndOpen(iterator, tempPath, finalPath, writerConfig, tombstones);
     }
 
     @Override
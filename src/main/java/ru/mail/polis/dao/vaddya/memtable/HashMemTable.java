@@ -0,0 +1,242 @@
+package ru.mail.polis.dao.vaddya.memtable;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.vaddya.MemoryBudget;
+import ru.mail.polis.dao.vaddya.MergeUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
+import ru.mail.polis.dao.vaddya.RangeTombstones;
+import ru.mail.polis.dao.vaddya.TableEntry;
+import ru.mail.polis.dao.vaddya.WriteBatch;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.stream.Collectors.toList;
+import static ru.mail.polis.dao.vaddya.ByteBufferUtils.emptyBuffer;
+
+/**
+ * Table that finds the entries by a hash of the keys, so the point lookups do not compare the keys
+ * on the way down a skip list. The ordered table keeps the entries in a skip list as well, it is updated
+ * within the update of the hash index, so both structures agree on the entry of each key.
+ * The unordered table is sorted once it is frozen, so the flush and the scans of a queued table share
+ * the sorted entries, while each scan of the table being written sorts a snapshot of its entries.
+ */
+@ThreadSafe
+final class HashMemTable implements MemTable {
+    // approximate heap overhead of a hash node with its share of the bucket array
+    static final int HASH_NODE_OVERHEAD_IN_BYTES = 64;
+    private static final Comparator<TableEntry> BY_KEY = Comparator.comparing(TableEntry::getKey);
+
+    private final Map<ByteBuffer, TableEntry> index = new ConcurrentHashMap<>();
+    @Nullable
+    private final NavigableMap<ByteBuffer, TableEntry> ordered;
+    private final Collection<RangeTombstone> tombstones = new CopyOnWriteArrayList<>();
+    // fragmented on each removal of a range, so the merge operands are checked by a binary search
+    private volatile RangeTombstones fragmentedTombstones = RangeTombstones.of(List.of());
+    private final LongAdder retainedBytes = new LongAdder();
+    private final MemoryBudget budget;
+    // the entries of the unordered table sorted on freeze
+    @Nullable
+    private volatile List<TableEntry> sorted;
+
+    /**
+     * Create a table.
+     *
+     * @param budget  a budget to charge the memory retained by the table to
+     * @param ordered whether the entries are kept in order for the scans
+     */
+    HashMemTable(
+            @NotNull final MemoryBudget budget,
+            final boolean ordered) {
+        this.budget = budget;
+        this.ordered = ordered ? new ConcurrentSkipListMap<>() : null;
+    }
+
+    @Override
+    @NotNull
+    public Iterator<TableEntry> iterator(@NotNull final ByteBuffer from) {
+        if (ordered != null) {
+            return ordered.tailMap(from).values().iterator();
+        }
+        final var frozen = sorted;
+        if (frozen != null) {
+            return frozen.subList(lowerBound(frozen, from), frozen.size()).iterator();
+        }
+        return sortedEntries(from).iterator();
+    }
+
+    /**
+     * Sort the entries of the unordered table, no writes follow, so the sorted entries serve all the scans.
+     */
+    @Override
+    public void freeze() {
+        if (ordered == null) {
+            sorted = sortedEntries(emptyBuffer());
+        }
+    }
+
+    @Override
+    public void lookup(
+            @NotNull final List<ByteBuffer> sortedKeys,
+            @NotNull final Map<ByteBuffer, TableEntry> result) {
+        for (final var key : sortedKeys) {
+            final var entry = index.get(key);
+            if (entry != null) {
+                result.merge(key, entry, TableEntry::newest);
+            }
+        }
+    }
+
+    /**
+     * Probe the hash index, the table keeps a single entry per key.
+     */
+    @Override
+    public void lookupVersions(
+            @NotNull final ByteBuffer key,
+            @NotNull final Collection<TableEntry> versions) {
+        final var entry = index.get(key);
+        if (entry != null) {
+            versions.add(entry);
+        }
+    }
+
+    @Override
+    @NotNull
+    public Collection<RangeTombstone> rangeTombstones() {
+        return Collections.unmodifiableCollection(tombstones);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return retainedBytes.sum();
+    }
+
+    @Override
+    public int count() {
+        return index.size();
+    }
+
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        put(TableEntry.upsert(key, value));
+    }
+
+    @Override
+    public void remove(@NotNull final ByteBuffer key) {
+        put(TableEntry.delete(key));
+    }
+
+    @Override
+    public void merge(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer operands) {
+        final var operand = TableEntry.merge(key, operands);
+        final var applied = fragmentedTombstones;
+        index.compute(key, (k, previous) -> replace(previous, MergeUtils.merge(previous, operand, applied)));
+    }
+
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final var tombstone = RangeTombstone.remove(from, to);
+        synchronized (tombstones) {
+            tombstones.add(tombstone);
+            fragmentedTombstones = RangeTombstones.of(tombstones);
+        }
+        account(tombstone.sizeInBytes());
+    }
+
+    @Override
+    public void apply(@NotNull final WriteBatch batch) {
+        for (final var entry : batch.timestampedEntries()) {
+            put(entry);
+        }
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+        if (ordered != null) {
+            ordered.clear();
+        }
+        sorted = null;
+        synchronized (tombstones) {
+            tombstones.clear();
+            fragmentedTombstones = RangeTombstones.of(List.of());
+        }
+        account(-retainedBytes.sum());
+    }
+
+    @NotNull
+    private List<TableEntry> sortedEntries(@NotNull final ByteBuffer from) {
+        return index.values()
+                .stream()
+                .filter(entry -> entry.getKey().compareTo(from) >= 0)
+                .sorted(BY_KEY)
+                .collect(toList());
+    }
+
+    /**
+     * Get the position of the first entry with the key not less than the given one.
+     */
+    private static int lowerBound(
+            @NotNull final List<TableEntry> entries,
+            @NotNull final ByteBuffer key) {
+        var low = 0;
+        var high = entries.size();
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (entries.get(mid).getKey().compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void put(@NotNull final TableEntry entry) {
+        index.compute(entry.getKey(), (k, previous) -> replace(previous, entry));
+    }
+
+    /**
+     * Replace the entry of the key in the ordered table, should be called within the update of the index.
+     */
+    @NotNull
+    private TableEntry replace(
+            @Nullable final TableEntry previous,
+            @NotNull final TableEntry entry) {
+        if (ordered != null) {
+            ordered.put(entry.getKey(), entry);
+        }
+        account(retainedSize(entry) - (previous == null ? 0 : retainedSize(previous)));
+        return entry;
+    }
+
+    private void account(final long bytes) {
+        retainedBytes.add(bytes);
+        budget.charge(bytes);
+    }
+
+    private long retainedSize(@NotNull final TableEntry entry) {
+        final var overhead = ordered == null
+                ? MemTableImpl.ENTRY_OVERHEAD_IN_BYTES
+                : MemTableImpl.ENTRY_OVERHEAD_IN_BYTES + HASH_NODE_OVERHEAD_IN_BYTES;
+        return overhead + MemTableImpl.payloadSize(entry);
+    }
+}
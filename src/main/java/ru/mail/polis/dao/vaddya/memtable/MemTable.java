@@ -1,7 +1,9 @@
 package ru.mail.polis.dao.vaddya.memtable;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import ru.mail.polis.dao.vaddya.Table;
+import ru.mail.polis.dao.vaddya.WriteBatch;
 
 import java.nio.ByteBuffer;
 
@@ -18,6 +20,35 @@ public interface MemTable extends Table {
      */
     void remove(@NotNull final ByteBuffer key);
 
+    /**
+     * Merge the sequence of operands into the value of the given key, see {@link ru.mail.polis.dao.vaddya.MergeUtils}.
+     */
+    void merge(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer operands);
+
+    /**
+     * Remove values from the table using the range of keys.
+     *
+     * @param from the lowest key of the range (inclusive)
+     * @param to   the highest key of the range (exclusive) or {@code null} if the range is unbounded
+     */
+    void removeRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to);
+
+    /**
+     * Apply all operations of the batch to the table.
+     */
+    void apply(@NotNull final WriteBatch batch);
+
+    /**
+     * Mark the table read-only, it is called once the table is submitted to flush, so no writes follow.
+     */
+    default void freeze() {
+        // nothing to prepare for the scans by default
+    }
+
     /**
      * Perform table clearing.
      */
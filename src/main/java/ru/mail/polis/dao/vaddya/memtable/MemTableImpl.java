@@ -1,19 +1,46 @@
 package ru.mail.polis.dao.vaddya.memtable;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.vaddya.MemoryBudget;
+import ru.mail.polis.dao.vaddya.MergeUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
+import ru.mail.polis.dao.vaddya.RangeTombstones;
 import ru.mail.polis.dao.vaddya.TableEntry;
+import ru.mail.polis.dao.vaddya.WriteBatch;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Table that keeps entries in memory and accounts the heap it retains.
+ * Overwritten entries are subtracted, so the size reflects only the live entries.
+ */
 @ThreadSafe
 final class MemTableImpl implements MemTable {
+    // approximate heap overhead of a skip list node with its share of the index, the entry and the buffers
+    static final int ENTRY_OVERHEAD_IN_BYTES = 160;
+
     private final NavigableMap<ByteBuffer, TableEntry> table = new ConcurrentSkipListMap<>();
-    private final AtomicInteger currentSize = new AtomicInteger();
+    private final Collection<RangeTombstone> tombstones = new CopyOnWriteArrayList<>();
+    // rebuilt on each removal of a range, the merge operands are checked against it
+    private volatile RangeTombstones fragmentedTombstones = RangeTombstones.of(List.of());
+    private final LongAdder retainedBytes = new LongAdder();
+    private final MemoryBudget budget;
+
+    MemTableImpl(@NotNull final MemoryBudget budget) {
+        this.budget = budget;
+    }
 
     @Override
     @NotNull
@@ -21,9 +48,27 @@ final class MemTableImpl implements MemTable {
         return table.tailMap(from).values().iterator();
     }
 
+    @Override
+    public void lookup(
+            @NotNull final List<ByteBuffer> sortedKeys,
+            @NotNull final Map<ByteBuffer, TableEntry> result) {
+        for (final var key : sortedKeys) {
+            final var entry = table.get(key);
+            if (entry != null) {
+                result.merge(key, entry, TableEntry::newest);
+            }
+        }
+    }
+
+    @Override
+    @NotNull
+    public Collection<RangeTombstone> rangeTombstones() {
+        return Collections.unmodifiableCollection(tombstones);
+    }
+
     @Override
     public long sizeInBytes() {
-        return currentSize.get();
+        return retainedBytes.sum();
     }
 
     @Override
@@ -35,19 +80,96 @@ final class MemTableImpl implements MemTable {
     public void upsert(
             @NotNull final ByteBuffer key,
             @NotNull final ByteBuffer value) {
-        table.put(key, TableEntry.upsert(key, value));
-        currentSize.addAndGet(Integer.BYTES + key.remaining() + Long.BYTES + Integer.BYTES + value.remaining());
+        put(TableEntry.upsert(key, value));
     }
 
     @Override
     public void remove(@NotNull final ByteBuffer key) {
-        table.put(key, TableEntry.delete(key));
-        currentSize.addAndGet(Integer.BYTES + key.remaining() + Long.BYTES);
+        put(TableEntry.delete(key));
+    }
+
+    @Override
+    public void merge(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer operands) {
+        merge(TableEntry.merge(key, operands), RangeTombstones.of(List.of()));
+    }
+
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final var tombstone = RangeTombstone.remove(from, to);
+        synchronized (tombstones) {
+            tombstones.add(tombstone);
+            fragmentedTombstones = RangeTombstones.of(tombstones);
+        }
+        account(tombstone.sizeInBytes());
+    }
+
+    @Override
+    public void apply(@NotNull final WriteBatch batch) {
+        for (final var entry : batch.timestampedEntries()) {
+            put(entry);
+        }
     }
 
     @Override
     public void clear() {
         table.clear();
-        currentSize.set(0);
+        synchronized (tombstones) {
+            tombstones.clear();
+            fragmentedTombstones = RangeTombstones.of(List.of());
+        }
+        account(-retainedBytes.sum());
+    }
+
+    void put(@NotNull final TableEntry entry) {
+        final var previous = table.put(entry.getKey(), entry);
+        account(retainedSize(entry) - (previous == null ? 0 : retainedSize(previous)));
+    }
+
+    /**
+     * Fold the operand entry into the entry of the key, the value is computed if the table knows it.
+     *
+     * @param operand operand entry
+     * @param older   range tombstones that apply to the table but are not kept by it
+     */
+    void merge(
+            @NotNull final TableEntry operand,
+            @NotNull final RangeTombstones older) {
+        final RangeTombstones applied;
+        if (older.isEmpty()) {
+            applied = fragmentedTombstones;
+        } else if (tombstones.isEmpty()) {
+            applied = older;
+        } else {
+            final var all = new ArrayList<>(older.tombstones());
+            all.addAll(tombstones);
+            applied = RangeTombstones.of(all);
+        }
+        final var key = operand.getKey();
+        while (true) {
+            final var previous = table.get(key);
+            final var merged = MergeUtils.merge(previous, operand, applied);
+            if (previous == null ? table.putIfAbsent(key, merged) == null : table.replace(key, previous, merged)) {
+                account(retainedSize(merged) - (previous == null ? 0 : retainedSize(previous)));
+                return;
+            }
+        }
+    }
+
+    private void account(final long bytes) {
+        retainedBytes.add(bytes);
+        budget.charge(bytes);
+    }
+
+    private static long retainedSize(@NotNull final TableEntry entry) {
+        return ENTRY_OVERHEAD_IN_BYTES + payloadSize(entry);
+    }
+
+    static long payloadSize(@NotNull final TableEntry entry) {
+        final var valueSize = entry.hasTombstone() ? 0 : entry.getValue().remaining();
+        return entry.getKey().remaining() + valueSize;
     }
 }
@@ -1,7 +1,26 @@
 package ru.mail.polis.dao.vaddya.memtable;
 
+import org.jetbrains.annotations.NotNull;
+
 import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
 
 public interface MemTablePool extends MemTable, Closeable {
     void flushed(final int generation);
+
+    /**
+     * Submit the current table to flush and wait until it and the tables submitted before are flushed.
+     *
+     * @return {@code false} if the waiting time elapsed
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    boolean flush(
+            long timeout,
+            @NotNull TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Get the timestamp the entries and range tombstones of the pool are newer than. The tables queued to flush
+     * might be installed after the newer ones, so the timestamp is {@link Long#MIN_VALUE} while any is queued.
+     */
+    long unflushedSince();
 }
@@ -1,22 +1,34 @@
 package ru.mail.polis.dao.vaddya.memtable;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.vaddya.HybridClock;
+import ru.mail.polis.dao.vaddya.MemoryBudget;
+import ru.mail.polis.dao.vaddya.RangeEstimate;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
 import ru.mail.polis.dao.vaddya.Table;
 import ru.mail.polis.dao.vaddya.TableEntry;
+import ru.mail.polis.dao.vaddya.WriteBatch;
 import ru.mail.polis.dao.vaddya.flush.Flusher;
 import ru.mail.polis.dao.vaddya.naming.GenerationProvider;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.toList;
 import static ru.mail.polis.dao.vaddya.IteratorUtils.collapseIterators;
@@ -25,13 +37,22 @@ import static ru.mail.polis.dao.vaddya.IteratorUtils.collapseIterators;
 public final class MemTablePoolImpl implements MemTablePool {
     private static final Logger log = LoggerFactory.getLogger(MemTablePoolImpl.class);
 
-    private MemTable currentTable = new MemTableImpl();
-    private final Map<Integer, MemTable> pendingFlush = new TreeMap<>();
+    // the current table is flushed when the budget is exceeded and the table exceeds this part of the threshold
+    private static final int EARLY_FLUSH_DIVISOR = 4;
+    private static final long MAX_STALL_MILLIS = 1000;
+
+    private MemTable currentTable;
+    // the entries of the current table are newer than this timestamp
+    private long currentTableSince;
+    private final NavigableMap<Integer, MemTable> pendingFlush = new TreeMap<>();
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Condition flushedCondition = lock.writeLock().newCondition();
     private final AtomicBoolean stopped = new AtomicBoolean(false);
     private final long flushThresholdInBytes;
     private final GenerationProvider generationProvider;
     private final Flusher flusher;
+    private final MemoryBudget budget;
+    private final MemTableType type;
 
     /**
      * Create a MemTablePool instance that encapsulates the process of creating and
@@ -40,14 +61,38 @@ public final class MemTablePoolImpl implements MemTablePool {
      * @param flushThresholdInBytes threshold in bytes when MemTable is need to be switched
      * @param generationProvider    a generation provider to atomically increment and get table generation
      * @param flusher               a flusher to schedule flushing of a MemTable to the disk
+     * @param budget                a budget to charge the memory retained by the tables to
+     */
+    public MemTablePoolImpl(
+            final long flushThresholdInBytes,
+            @NotNull final GenerationProvider generationProvider,
+            @NotNull final Flusher flusher,
+            @NotNull final MemoryBudget budget) {
+        this(flushThresholdInBytes, generationProvider, flusher, budget, MemTableType.SEQUENTIAL);
+    }
+
+    /**
+     * Creates a pool of MemTables of the given type.
+     *
+     * @param flushThresholdInBytes threshold in bytes when MemTable is need to be switched
+     * @param generationProvider    a generation provider to atomically increment and get table generation
+     * @param flusher               a flusher to schedule flushing of a MemTable to the disk
+     * @param budget                a budget to charge the memory retained by the tables to
+     * @param type                  a structure of the tables
      */
     public MemTablePoolImpl(
             final long flushThresholdInBytes,
             @NotNull final GenerationProvider generationProvider,
-            @NotNull final Flusher flusher) {
+            @NotNull final Flusher flusher,
+            @NotNull final MemoryBudget budget,
+            @NotNull final MemTableType type) {
         this.flushThresholdInBytes = flushThresholdInBytes;
         this.flusher = flusher;
         this.generationProvider = generationProvider;
+        this.budget = budget;
+        this.type = type;
+        this.currentTableSince = HybridClock.instance().now();
+        this.currentTable = newTable();
     }
 
     @Override
@@ -67,6 +112,63 @@ public final class MemTablePoolImpl implements MemTablePool {
         return collapseIterators(iterators);
     }
 
+    @Override
+    public void lookup(
+            @NotNull final List<ByteBuffer> sortedKeys,
+            @NotNull final Map<ByteBuffer, TableEntry> result) {
+        lock.readLock().lock();
+        try {
+            currentTable.lookup(sortedKeys, result);
+            pendingFlush.values().forEach(table -> table.lookup(sortedKeys, result));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void lookupVersions(
+            @NotNull final ByteBuffer key,
+            @NotNull final Collection<TableEntry> versions) {
+        lock.readLock().lock();
+        try {
+            currentTable.lookupVersions(key, versions);
+            pendingFlush.values().forEach(table -> table.lookupVersions(key, versions));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    @NotNull
+    public Collection<RangeTombstone> rangeTombstones() {
+        lock.readLock().lock();
+        try {
+            final var tombstones = new ArrayList<>(currentTable.rangeTombstones());
+            pendingFlush.values().forEach(table -> tombstones.addAll(table.rangeTombstones()));
+            return tombstones;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    @NotNull
+    public RangeEstimate estimateRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final var tables = new ArrayList<MemTable>();
+        lock.readLock().lock();
+        try {
+            tables.add(currentTable);
+            tables.addAll(pendingFlush.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return tables.stream()
+                .map(table -> table.estimateRange(from, to))
+                .reduce(RangeEstimate.empty(), RangeEstimate::plus);
+    }
+
     @Override
     public long sizeInBytes() {
         lock.readLock().lock();
@@ -97,71 +199,166 @@ public final class MemTablePoolImpl implements MemTablePool {
     public void upsert(
             @NotNull final ByteBuffer key,
             @NotNull final ByteBuffer value) {
-        if (stopped.get()) {
-            throw new IllegalStateException("MemTable was already closed");
-        }
-        lock.readLock().lock();
+        write(table -> table.upsert(key, value));
+    }
+
+    @Override
+    public void remove(@NotNull final ByteBuffer key) {
+        write(table -> table.remove(key));
+    }
+
+    @Override
+    public void merge(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer operands) {
+        write(table -> table.merge(key, operands));
+    }
+
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        write(table -> table.removeRange(from, to));
+    }
+
+    @Override
+    public void apply(@NotNull final WriteBatch batch) {
+        // the table can not be switched until the whole batch is applied
+        write(table -> table.apply(batch));
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
         try {
-            currentTable.upsert(key, value);
+            currentTable.clear();
         } finally {
-            lock.readLock().unlock();
-        }
-        if (currentTable.sizeInBytes() > flushThresholdInBytes) { // to avoid extra call & lock
-            enqueueToFlush();
+            lock.writeLock().unlock();
         }
     }
 
     @Override
-    public void remove(@NotNull final ByteBuffer key) {
-        if (stopped.get()) {
-            throw new IllegalStateException("MemTable was already closed");
-        }
-        lock.readLock().lock();
+    public void flushed(final int generation) {
+        final MemTable table;
+        lock.writeLock().lock();
         try {
-            currentTable.remove(key);
+            table = pendingFlush.remove(generation);
+            flushedCondition.signalAll();
         } finally {
-            lock.readLock().unlock();
+            lock.writeLock().unlock();
         }
-        if (currentTable.sizeInBytes() > flushThresholdInBytes) { // to avoid extra call & lock
-            enqueueToFlush();
+        if (table != null) {
+            budget.release(table.sizeInBytes());
         }
     }
 
     @Override
-    public void clear() {
+    public boolean flush(
+            final long timeout,
+            @NotNull final TimeUnit unit) throws InterruptedException {
+        var nanos = unit.toNanos(timeout);
         lock.writeLock().lock();
         try {
-            currentTable.clear();
+            if (currentTable.sizeInBytes() > 0) {
+                submitCurrentTable();
+            }
+            if (pendingFlush.isEmpty()) {
+                return true;
+            }
+            // the tables submitted later are not awaited, so the writes can not delay the flush infinitely
+            final var last = pendingFlush.lastKey();
+            while (!pendingFlush.isEmpty() && pendingFlush.firstKey() <= last) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = flushedCondition.awaitNanos(nanos);
+            }
+            return true;
         } finally {
             lock.writeLock().unlock();
         }
     }
 
     @Override
-    public void flushed(final int generation) {
-        lock.writeLock().lock();
+    public long unflushedSince() {
+        lock.readLock().lock();
         try {
-            pendingFlush.remove(generation);
+            return pendingFlush.isEmpty() ? currentTableSince : Long.MIN_VALUE;
         } finally {
-            lock.writeLock().unlock();
+            lock.readLock().unlock();
         }
     }
 
-    private void enqueueToFlush() {
+    private void write(@NotNull final Consumer<MemTable> operation) {
+        if (stopped.get()) {
+            throw new IllegalStateException("MemTable was already closed");
+        }
+        stallIfExceeded();
+
+        final long size;
+        lock.readLock().lock();
+        try {
+            operation.accept(currentTable);
+            size = currentTable.sizeInBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+        // the table is flushed earlier to release memory if the budget is exceeded
+        final var minSize = budget.isExceeded() ? flushThresholdInBytes / EARLY_FLUSH_DIVISOR : flushThresholdInBytes;
+        if (size > minSize) { // to avoid extra lock
+            enqueueToFlush(minSize);
+        }
+    }
+
+    private void stallIfExceeded() {
+        if (!budget.isExceeded()) {
+            return;
+        }
+        try {
+            if (!budget.awaitBelowLimit(MAX_STALL_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("Writes were stalled for {} ms: {}", MAX_STALL_MILLIS, budget);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueueToFlush(final long minSize) {
         lock.writeLock().lock();
         try {
-            if (currentTable.sizeInBytes() > flushThresholdInBytes) {
-                final var generation = generationProvider.nextGeneration();
-                pendingFlush.put(generation, currentTable);
-                flusher.scheduleFlush(generation, currentTable);
-                log.debug("Table {} with size {} bytes was submitted to flush", generation, currentTable.sizeInBytes());
-                currentTable = new MemTableImpl();
+            if (currentTable.sizeInBytes() > minSize) {
+                submitCurrentTable();
             }
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * Submit the current table to flush and replace it with a new one, should be called under the write lock.
+     */
+    private void submitCurrentTable() {
+        final var generation = generationProvider.nextGeneration();
+        currentTable.freeze();
+        pendingFlush.put(generation, currentTable);
+        flusher.scheduleFlush(generation, currentTable);
+        log.debug("Table {} with size {} bytes was submitted to flush", generation, currentTable.sizeInBytes());
+        currentTableSince = HybridClock.instance().now();
+        currentTable = newTable();
+    }
+
+    @NotNull
+    private MemTable newTable() {
+        switch (type) {
+            case HASH_INDEXED:
+                return new HashMemTable(budget, true);
+            case HASH_ONLY:
+                return new HashMemTable(budget, false);
+            default:
+                return new SequentialMemTable(budget);
+        }
+    }
+
     @Override
     public void close() {
         if (!stopped.compareAndSet(false, true)) {
@@ -173,6 +370,8 @@ public final class MemTablePoolImpl implements MemTablePool {
         try {
             if (currentTable.sizeInBytes() > 0) {
                 final var generation = generationProvider.nextGeneration();
+                currentTable.freeze();
+                pendingFlush.put(generation, currentTable);
                 flusher.scheduleFlush(generation, currentTable);
                 log.debug("Table {} with size {} bytes was submitted to flush", generation, currentTable.sizeInBytes());
             }
@@ -0,0 +1,23 @@
+package ru.mail.polis.dao.vaddya.memtable;
+
+/**
+ * Structure of the MemTables of a storage.
+ */
+public enum MemTableType {
+    /**
+     * Array of the entries appended in ascending order of the keys, converted into a skip list
+     * on the first key out of order (see {@link SequentialMemTable}).
+     */
+    SEQUENTIAL,
+    /**
+     * Skip list with a hash index of the keys, the point lookups take a single hash probe
+     * at the cost of the extra memory and the second insertion of each write.
+     */
+    HASH_INDEXED,
+    /**
+     * Hash table without order, the entries are sorted once the table is submitted to flush,
+     * but each scan of the table being written sorts its entries,
+     * so it suits the keyspaces which are accessed by the keys only.
+     */
+    HASH_ONLY
+}
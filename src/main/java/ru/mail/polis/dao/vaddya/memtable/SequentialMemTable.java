@@ -0,0 +1,298 @@
+package ru.mail.polis.dao.vaddya.memtable;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.vaddya.MemoryBudget;
+import ru.mail.polis.dao.vaddya.MergeUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
+import ru.mail.polis.dao.vaddya.RangeTombstones;
+import ru.mail.polis.dao.vaddya.TableEntry;
+import ru.mail.polis.dao.vaddya.WriteBatch;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Table that appends entries to an array while the keys are written in ascending order,
+ * e.g. monotonic time series keys, so the writes do not pay for the skip list search.
+ * The first key out of order converts the table into a {@link MemTableImpl}.
+ *
+ * <p>Appends are serialized, the readers see the prefix of the array published by the volatile size.
+ */
+@ThreadSafe
+final class SequentialMemTable implements MemTable {
+    private static final Logger log = LoggerFactory.getLogger(SequentialMemTable.class);
+
+    // approximate heap overhead of an array slot with the entry and the buffers
+    static final int APPENDED_ENTRY_OVERHEAD_IN_BYTES = 128;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Collection<RangeTombstone> tombstones = new CopyOnWriteArrayList<>();
+    // the fragments of the tombstones, the operands are merged against them
+    private volatile RangeTombstones fragmentedTombstones = RangeTombstones.of(List.of());
+    private final LongAdder retainedBytes = new LongAdder();
+    private final MemoryBudget budget;
+    private volatile TableEntry[] entries = new TableEntry[INITIAL_CAPACITY];
+    private volatile int size;
+    @Nullable
+    private volatile MemTableImpl converted;
+
+    SequentialMemTable(@NotNull final MemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    @NotNull
+    public Iterator<TableEntry> iterator(@NotNull final ByteBuffer from) {
+        final var table = converted;
+        if (table != null) {
+            return table.iterator(from);
+        }
+        final var count = size;
+        final var array = entries;
+        final var start = lowerBound(array, 0, count, from);
+        return Arrays.asList(array).subList(start, count).iterator();
+    }
+
+    @Override
+    public void lookup(
+            @NotNull final List<ByteBuffer> sortedKeys,
+            @NotNull final Map<ByteBuffer, TableEntry> result) {
+        final var table = converted;
+        if (table != null) {
+            table.lookup(sortedKeys, result);
+            return;
+        }
+        final var count = size;
+        final var array = entries;
+        var position = 0;
+        for (final var key : sortedKeys) {
+            position = lowerBound(array, position, count, key);
+            if (position == count) {
+                return; // all the next keys are greater
+            }
+            final var entry = array[position];
+            if (entry.getKey().equals(key)) {
+                result.merge(key, entry, TableEntry::newest);
+            }
+        }
+    }
+
+    @Override
+    @NotNull
+    public Collection<RangeTombstone> rangeTombstones() {
+        final var table = converted;
+        if (table == null) {
+            return List.copyOf(tombstones);
+        }
+        final var result = new ArrayList<>(tombstones);
+        result.addAll(table.rangeTombstones());
+        return result;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        final var table = converted;
+        return retainedBytes.sum() + (table == null ? 0 : table.sizeInBytes());
+    }
+
+    @Override
+    public int count() {
+        final var table = converted;
+        return table == null ? size : table.count();
+    }
+
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        put(TableEntry.upsert(key, value));
+    }
+
+    @Override
+    public void remove(@NotNull final ByteBuffer key) {
+        put(TableEntry.delete(key));
+    }
+
+    @Override
+    public void merge(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer operands) {
+        final var operand = TableEntry.merge(key, operands);
+        var table = converted;
+        if (table == null) {
+            synchronized (this) {
+                table = converted;
+                if (table == null) {
+                    if (appendOperand(operand)) {
+                        return;
+                    }
+                    table = convert();
+                }
+            }
+        }
+        table.merge(operand, fragmentedTombstones);
+    }
+
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final var table = converted;
+        if (table != null) {
+            table.removeRange(from, to);
+            return;
+        }
+        final var tombstone = RangeTombstone.remove(from, to);
+        synchronized (tombstones) {
+            tombstones.add(tombstone);
+            fragmentedTombstones = RangeTombstones.of(tombstones);
+        }
+        account(tombstone.sizeInBytes());
+    }
+
+    @Override
+    public void apply(@NotNull final WriteBatch batch) {
+        for (final var entry : batch.timestampedEntries()) {
+            put(entry);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        final var table = converted;
+        if (table != null) {
+            table.clear();
+            converted = null;
+        }
+        entries = new TableEntry[INITIAL_CAPACITY];
+        size = 0;
+        synchronized (tombstones) {
+            tombstones.clear();
+            fragmentedTombstones = RangeTombstones.of(List.of());
+        }
+        account(-retainedBytes.sum());
+    }
+
+    private void put(@NotNull final TableEntry entry) {
+        var table = converted;
+        if (table == null) {
+            synchronized (this) {
+                table = converted;
+                if (table == null) {
+                    if (append(entry)) {
+                        return;
+                    }
+                    table = convert();
+                }
+            }
+        }
+        table.put(entry);
+    }
+
+    /**
+     * Append the entry if its key is not lower than the last key, should be called under the monitor.
+     *
+     * @return {@code false} if the key is out of order
+     */
+    private boolean append(@NotNull final TableEntry entry) {
+        final var count = size;
+        var array = entries;
+        if (count > 0) {
+            final var last = array[count - 1];
+            final var cmp = entry.getKey().compareTo(last.getKey());
+            if (cmp < 0) {
+                return false;
+            }
+            if (cmp == 0) {
+                array[count - 1] = entry;
+                size = count; // publish the overwritten entry
+                account(MemTableImpl.payloadSize(entry) - MemTableImpl.payloadSize(last));
+                return true;
+            }
+        }
+        if (count == array.length) {
+            array = Arrays.copyOf(array, count * 2);
+            entries = array;
+        }
+        array[count] = entry;
+        size = count + 1;
+        account(APPENDED_ENTRY_OVERHEAD_IN_BYTES + MemTableImpl.payloadSize(entry));
+        return true;
+    }
+
+    /**
+     * Fold the operand into the last entry or append it if its key is not lower than the last key,
+     * should be called under the monitor.
+     *
+     * @return {@code false} if the key is out of order
+     */
+    private boolean appendOperand(@NotNull final TableEntry operand) {
+        final var count = size;
+        final var last = count == 0 ? null : entries[count - 1];
+        if (last == null) {
+            return append(MergeUtils.merge(null, operand, fragmentedTombstones));
+        }
+        final var cmp = operand.getKey().compareTo(last.getKey());
+        if (cmp < 0) {
+            return false;
+        }
+        return append(MergeUtils.merge(cmp == 0 ? last : null, operand, fragmentedTombstones));
+    }
+
+    /**
+     * Move the appended entries into a skip list table, should be called under the monitor.
+     * The array is kept as is for the readers which have already read it.
+     */
+    @NotNull
+    private MemTableImpl convert() {
+        final var table = new MemTableImpl(budget);
+        final var count = size;
+        final var array = entries;
+        var appendedBytes = 0L;
+        for (var i = 0; i < count; i++) {
+            table.put(array[i]);
+            appendedBytes += APPENDED_ENTRY_OVERHEAD_IN_BYTES + MemTableImpl.payloadSize(array[i]);
+        }
+        account(-appendedBytes);
+        converted = table;
+        log.debug("Table with {} appended entries was converted on a key out of order", count);
+        return table;
+    }
+
+    private void account(final long bytes) {
+        retainedBytes.add(bytes);
+        budget.charge(bytes);
+    }
+
+    /**
+     * Get the position of the first entry with the key not lower than the given key.
+     */
+    private static int lowerBound(
+            @NotNull final TableEntry[] array,
+            final int from,
+            final int to,
+            @NotNull final ByteBuffer key) {
+        var low = from;
+        var high = to;
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (array[mid].getKey().compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -3,31 +3,75 @@ package ru.mail.polis.dao.vaddya.naming;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
 
+/**
+ * File manager which places the tables of the levels according to {@link StorageTiers}.
+ * The directory of a table is derived from its generation and level, so it is found without a lookup.
+ */
 public class LeveledFileManagerImpl implements LeveledFileManager {
     private static final String FINAL_SUFFIX = ".db";
     private static final String TEMP_SUFFIX = ".tmp";
-    private static final String ZERO_LEVEL = "_0";
     private static final Pattern pattern = Pattern.compile("(\\d+)_(\\d+)\\.(\\w+)");
-    
-    private final File root;
+
+    // directories of the tiers the storage was opened with, so the tables are found after the tiers are changed
+    private static final String DIRECTORIES_FILE = "TIERS";
+
+    private final Path root;
+    private final StorageTiers tiers;
+    private final Set<Path> directories;
 
     public LeveledFileManagerImpl(@NotNull final File root) {
-        this.root = root;
+        this(root, StorageTiers.none());
+    }
+
+    /**
+     * Creates a file manager placing the tables in the directories of the tiers, the directories are created.
+     * The directories of the previous tiers which still contain tables are remembered until the tables are moved.
+     *
+     * @throws UncheckedIOException if cannot create the directories or remember them
+     */
+    public LeveledFileManagerImpl(
+            @NotNull final File root,
+            @NotNull final StorageTiers tiers) {
+        this.root = root.toPath().toAbsolutePath();
+        this.tiers = tiers;
+        try {
+            final var current = tiers.allDirectories(this.root);
+            for (final var directory : current) {
+                Files.createDirectories(directory);
+            }
+            this.directories = new LinkedHashSet<>(current);
+            for (final var directory : readDirectories()) {
+                if (!listTables(directory).isEmpty()) {
+                    this.directories.add(directory);
+                }
+            }
+            writeDirectories();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
     @NotNull
     public Path tempPathTo(final int generation) {
-        return pathTo(generation + ZERO_LEVEL + TEMP_SUFFIX);
+        return tempPathTo(generation, 0);
     }
 
     @NotNull
@@ -35,13 +79,13 @@ public class LeveledFileManagerImpl implements LeveledFileManager {
     public Path tempPathTo(
             final int generation,
             final int level) {
-        return pathTo(generation + "_" + level + TEMP_SUFFIX);
+        return directory(generation, level).resolve(generation + "_" + level + TEMP_SUFFIX);
     }
 
     @Override
     @NotNull
     public Path finalPathTo(final int generation) {
-        return pathTo(generation + ZERO_LEVEL + FINAL_SUFFIX);
+        return finalPathTo(generation, 0);
     }
 
     @NotNull
@@ -49,7 +93,7 @@ public class LeveledFileManagerImpl implements LeveledFileManager {
     public Path finalPathTo(
             final int generation,
             final int level) {
-        return pathTo(generation + "_" + level + FINAL_SUFFIX);
+        return directory(generation, level).resolve(generation + "_" + level + FINAL_SUFFIX);
     }
 
     @Override
@@ -72,20 +116,86 @@ public class LeveledFileManagerImpl implements LeveledFileManager {
         throw new IllegalArgumentException();
     }
 
+    /**
+     * List the tables of the storage directory, all the tier directories and the directories of the previous tiers.
+     */
     @NotNull
     @Override
     public List<Path> listTables() {
-        return Optional.ofNullable(root.list())
+        return directories.stream()
+                .flatMap(directory -> listTables(directory).stream())
+                .collect(toList());
+    }
+
+    @NotNull
+    private static List<Path> listTables(@NotNull final Path directory) {
+        return Optional.ofNullable(directory.toFile().list())
                 .map(Arrays::asList)
                 .orElse(emptyList())
                 .stream()
                 .filter(s -> s.endsWith(FINAL_SUFFIX))
-                .map(s -> Path.of(root.getAbsolutePath(), s))
+                .map(directory::resolve)
+                .collect(toList());
+    }
+
+    @NotNull
+    private List<Path> readDirectories() throws IOException {
+        final var file = root.resolve(DIRECTORIES_FILE);
+        if (!Files.exists(file)) {
+            return emptyList();
+        }
+        return Files.readAllLines(file, StandardCharsets.UTF_8)
+                .stream()
+                .filter(line -> !line.isEmpty())
+                .map(root::resolve)
+                .collect(toList());
+    }
+
+    /**
+     * Remember the directories unless the tables are kept in the storage directory only.
+     * The directories inside the storage directory are written relative to it, so the storage can be moved.
+     */
+    private void writeDirectories() throws IOException {
+        final var file = root.resolve(DIRECTORIES_FILE);
+        if (directories.size() == 1) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        final var lines = directories.stream()
+                .map(directory -> directory.startsWith(root) ? root.relativize(directory) : directory)
+                .map(Path::toString)
                 .collect(toList());
+        final var tempFile = root.resolve(DIRECTORIES_FILE + TEMP_SUFFIX);
+        Files.write(tempFile, lines, StandardCharsets.UTF_8);
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Move the table file, the file appears at the target atomically even if the target is on another file system:
+     * the file is copied to a temporary file next to the target first then.
+     *
+     * @param source the table file
+     * @param target the final path of the table
+     * @throws IOException if the file can not be moved
+     */
+    public void move(
+            @NotNull final Path source,
+            @NotNull final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            final var tempPath = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+            Files.copy(source, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempPath, target, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(source);
+        }
     }
 
     @NotNull
-    private Path pathTo(@NotNull final String name) {
-        return Path.of(root.getAbsolutePath(), name);
+    private Path directory(
+            final int generation,
+            final int level) {
+        final var directories = tiers.directories(level, root);
+        return directories.get(Math.floorMod(generation, directories.size()));
     }
 }
@@ -0,0 +1,104 @@
+package ru.mail.polis.dao.vaddya.naming;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toUnmodifiableList;
+
+/**
+ * Immutable placement of the table files of the levels, e.g. upper levels on a fast disk and the rest
+ * on a slow one. A tier holds the levels starting from its first level up to the first level of the next tier,
+ * the levels above the first tier are stored in the storage directory. The tables of a tier are striped
+ * over its directories by their generations, so the tables written together go to different disks.
+ */
+@ThreadSafe
+public final class StorageTiers {
+    private static final StorageTiers NONE = new StorageTiers(new TreeMap<>());
+
+    private final NavigableMap<Integer, List<Path>> tiers;
+
+    private StorageTiers(@NotNull final NavigableMap<Integer, List<Path>> tiers) {
+        this.tiers = tiers;
+    }
+
+    /**
+     * Get the placement of all the levels in the storage directory.
+     */
+    @NotNull
+    public static StorageTiers none() {
+        return NONE;
+    }
+
+    /**
+     * Store the levels starting from the given one in the directories, the tier with the same first level
+     * is replaced. The directories of a storage should not be shared with another storage.
+     *
+     * @param fromLevel   the first level of the tier
+     * @param directories directories to stripe the tables of the tier over
+     * @return a placement with the tier
+     */
+    @NotNull
+    public StorageTiers withTier(
+            final int fromLevel,
+            @NotNull final Path... directories) {
+        if (fromLevel < 0) {
+            throw new IllegalArgumentException("Negative level: " + fromLevel);
+        }
+        if (directories.length == 0) {
+            throw new IllegalArgumentException("No directories of L" + fromLevel);
+        }
+        final var copy = new TreeMap<>(tiers);
+        copy.put(fromLevel, Stream.of(directories)
+                .map(Path::toAbsolutePath)
+                .distinct()
+                .collect(toUnmodifiableList()));
+        return new StorageTiers(copy);
+    }
+
+    /**
+     * Get the placement of a nested storage (a partition or a column family) in the subdirectories with the name.
+     */
+    @NotNull
+    public StorageTiers resolve(@NotNull final String name) {
+        if (tiers.isEmpty()) {
+            return this;
+        }
+        final var resolved = new TreeMap<Integer, List<Path>>();
+        tiers.forEach((level, directories) -> resolved.put(level, directories.stream()
+                .map(directory -> directory.resolve(name))
+                .collect(toUnmodifiableList())));
+        return new StorageTiers(resolved);
+    }
+
+    @NotNull
+    List<Path> directories(
+            final int level,
+            @NotNull final Path root) {
+        final var tier = tiers.floorEntry(level);
+        return tier == null ? List.of(root) : tier.getValue();
+    }
+
+    /**
+     * Get the storage directory followed by the directories of all the tiers without duplicates.
+     */
+    @NotNull
+    Set<Path> allDirectories(@NotNull final Path root) {
+        final var result = new LinkedHashSet<Path>();
+        result.add(root);
+        tiers.values().forEach(result::addAll);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageTiers{" + tiers + '}';
+    }
+}
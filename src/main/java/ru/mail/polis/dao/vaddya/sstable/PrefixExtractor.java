@@ -0,0 +1,112 @@
+package ru.mail.polis.dao.vaddya.sstable;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * Extracts prefixes of the keys to build prefix filters of the tables.
+ */
+@ThreadSafe
+public final class PrefixExtractor {
+    private final Type type;
+    private final int parameter;
+
+    /**
+     * Create an extractor that takes first {@code length} bytes of the key.
+     * Shorter keys have no prefix.
+     *
+     * @param length length of the prefix
+     * @return an extractor instance
+     */
+    @NotNull
+    public static PrefixExtractor fixedLength(final int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Prefix length should be positive: " + length);
+        }
+        return new PrefixExtractor(Type.FIXED_LENGTH, length);
+    }
+
+    /**
+     * Create an extractor that takes bytes of the key up to the first delimiter inclusive.
+     * Keys without the delimiter have no prefix.
+     *
+     * @param delimiter delimiter of the prefix
+     * @return an extractor instance
+     */
+    @NotNull
+    public static PrefixExtractor delimiter(final byte delimiter) {
+        return new PrefixExtractor(Type.DELIMITER, delimiter);
+    }
+
+    @NotNull
+    static PrefixExtractor read(@NotNull final ByteBuffer buffer) {
+        final var ordinal = buffer.get();
+        final var parameter = buffer.getInt();
+        if (ordinal < 0 || ordinal >= Type.values().length) {
+            throw new IllegalArgumentException("Unknown prefix extractor type: " + ordinal);
+        }
+        return new PrefixExtractor(Type.values()[ordinal], parameter);
+    }
+
+    private PrefixExtractor(
+            @NotNull final Type type,
+            final int parameter) {
+        this.type = type;
+        this.parameter = parameter;
+    }
+
+    /**
+     * Extract prefix of the key.
+     * The prefix of any key that starts with the given prefix is equal to the prefix of the given prefix,
+     * so the same method is used to check prefixes of range queries.
+     *
+     * @param key key
+     * @return prefix or {@code null} if the key does not have a prefix
+     */
+    @Nullable
+    public ByteBuffer extract(@NotNull final ByteBuffer key) {
+        final int length;
+        if (type == Type.FIXED_LENGTH) {
+            length = parameter;
+        } else {
+            final var index = indexOf(key, (byte) parameter);
+            length = index < 0 ? -1 : index + 1;
+        }
+        if (length < 0 || length > key.remaining()) {
+            return null;
+        }
+        return key.duplicate().limit(key.position() + length).slice();
+    }
+
+    void write(@NotNull final ByteBuffer buffer) {
+        buffer.put((byte) type.ordinal()).putInt(parameter);
+    }
+
+    static int sizeInBytes() {
+        return Byte.BYTES + Integer.BYTES;
+    }
+
+    private static int indexOf(
+            @NotNull final ByteBuffer key,
+            final byte delimiter) {
+        for (var i = key.position(); i < key.limit(); i++) {
+            if (key.get(i) == delimiter) {
+                return i - key.position();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + parameter + ")";
+    }
+
+    private enum Type {
+        FIXED_LENGTH,
+        DELIMITER
+    }
+}
@@ -0,0 +1,119 @@
+package ru.mail.polis.dao.vaddya.sstable;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bloom filter over prefixes of the table keys that allows to skip tables
+ * without keys with the requested prefix.
+ *
+ * <p>Serialized filter contains:
+ * <ul>
+ * <li> Prefix extractor (see {@link PrefixExtractor})
+ * <li> Bloom filter bytes
+ * </ul>
+ */
+@ThreadSafe
+@SuppressWarnings("UnstableApiUsage")
+final class PrefixFilter {
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final PrefixExtractor extractor;
+    private final BloomFilter<ByteBuffer> filter;
+
+    @NotNull
+    static PrefixFilter read(@NotNull final ByteBuffer block) throws IOException {
+        final var buffer = block.duplicate();
+        final var extractor = PrefixExtractor.read(buffer);
+        final var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        final var filter = BloomFilter.readFrom(new ByteArrayInputStream(bytes), ByteBufferFunnel.INSTANCE);
+        return new PrefixFilter(extractor, filter);
+    }
+
+    private PrefixFilter(
+            @NotNull final PrefixExtractor extractor,
+            @NotNull final BloomFilter<ByteBuffer> filter) {
+        this.extractor = extractor;
+        this.filter = filter;
+    }
+
+    /**
+     * Check if the table might contain keys with the given prefix.
+     *
+     * @param prefix prefix of the keys
+     * @return {@code false} if the table definitely does not contain such keys
+     */
+    boolean mightContain(@NotNull final ByteBuffer prefix) {
+        final var extracted = extractor.extract(prefix);
+        return extracted == null || filter.mightContain(extracted);
+    }
+
+    @NotNull
+    ByteBuffer toBuffer() {
+        final var bytes = new ByteArrayOutputStream();
+        try {
+            filter.writeTo(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final var buffer = ByteBuffer.allocate(PrefixExtractor.sizeInBytes() + bytes.size());
+        extractor.write(buffer);
+        return buffer.put(bytes.toByteArray()).flip();
+    }
+
+    /**
+     * Collects distinct prefixes of the keys added in ascending order.
+     */
+    @NotThreadSafe
+    static final class Builder {
+        private final PrefixExtractor extractor;
+        private final List<ByteBuffer> prefixes = new ArrayList<>();
+
+        Builder(@NotNull final PrefixExtractor extractor) {
+            this.extractor = extractor;
+        }
+
+        void add(@NotNull final ByteBuffer key) {
+            final var prefix = extractor.extract(key);
+            if (prefix == null) {
+                return;
+            }
+            // keys are sorted, so keys with the same prefix are adjacent
+            if (prefixes.isEmpty() || !prefixes.get(prefixes.size() - 1).equals(prefix)) {
+                prefixes.add(prefix);
+            }
+        }
+
+        @NotNull
+        PrefixFilter build() {
+            final var filter = BloomFilter.create(
+                    ByteBufferFunnel.INSTANCE, Math.max(prefixes.size(), 1), FALSE_POSITIVE_PROBABILITY);
+            prefixes.forEach(filter::put);
+            return new PrefixFilter(extractor, filter);
+        }
+    }
+
+    private enum ByteBufferFunnel implements Funnel<ByteBuffer> {
+        INSTANCE;
+
+        @Override
+        public void funnel(
+                @NotNull final ByteBuffer from,
+                @NotNull final PrimitiveSink into) {
+            into.putBytes(from.duplicate());
+        }
+    }
+}
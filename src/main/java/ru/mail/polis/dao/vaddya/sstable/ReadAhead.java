@@ -0,0 +1,111 @@
+package ru.mail.polis.dao.vaddya.sstable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prefetch of the mapped tables for the sequential scans.
+ *
+ * <p>A scan cursor asks to prefetch the window of the table ahead of its position, and the pages of the window
+ * are touched by a background thread, so the scan finds them in the page cache instead of faulting them
+ * in one by one. The prefetch is a hint: the requests are dropped when the queue is full.
+ * It is disabled by default, since no benefit has been measured yet.
+ * {@code MappedByteBuffer.load} is not used, because it is a no-op on the slices of the mapped buffer in Java 11.
+ */
+@ThreadSafe
+public final class ReadAhead {
+    static final int PAGE_SIZE = 4 * 1024;
+    private static final int QUEUE_CAPACITY = 64;
+    private static final ReadAhead DISABLED = new ReadAhead(0);
+    // window of the tables opened by the storages, the prefetch is off unless the window is set
+    private static final ReadAhead INSTANCE = of(Integer.getInteger("dao.readahead.bytes", 0));
+    private static final Executor executor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            new ThreadFactoryBuilder().setNameFormat("read-ahead-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    // the touched bytes are written here, so the reads are not eliminated
+    @SuppressWarnings("unused")
+    private static volatile int sink;
+
+    private final int windowInBytes;
+
+    /**
+     * Prefetch the window of the given size ahead of the scans, it is rounded up to whole pages.
+     */
+    @NotNull
+    public static ReadAhead of(final int windowInBytes) {
+        if (windowInBytes < 0) {
+            throw new IllegalArgumentException("Negative window: " + windowInBytes);
+        }
+        if (windowInBytes == 0) {
+            return DISABLED;
+        }
+        return new ReadAhead(Math.max(PAGE_SIZE * 2, roundUpToPage(windowInBytes)));
+    }
+
+    @NotNull
+    public static ReadAhead disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Get the read-ahead shared by all storages of the process, its window is set by {@code dao.readahead.bytes}
+     * and the prefetch is disabled if it is not set.
+     */
+    @NotNull
+    public static ReadAhead instance() {
+        return INSTANCE;
+    }
+
+    private ReadAhead(final int windowInBytes) {
+        this.windowInBytes = windowInBytes;
+    }
+
+    boolean isEnabled() {
+        return windowInBytes > 0;
+    }
+
+    int windowInBytes() {
+        return windowInBytes;
+    }
+
+    /**
+     * Asynchronously touch the pages of the buffer between {@code from} (inclusive) and {@code to} (exclusive).
+     */
+    void prefetch(
+            @NotNull final ByteBuffer buffer,
+            final int from,
+            final int to) {
+        executor.execute(() -> touch(buffer, from, to));
+    }
+
+    private static void touch(
+            @NotNull final ByteBuffer buffer,
+            final int from,
+            final int to) {
+        var x = 0;
+        // the entries start at the beginning of the file, so their positions are aligned to the pages
+        for (var i = from & -PAGE_SIZE; i < to; i += PAGE_SIZE) {
+            x ^= buffer.get(i);
+        }
+        sink = x;
+    }
+
+    private static int roundUpToPage(final int bytes) {
+        return (int) Math.min(Integer.MAX_VALUE & -PAGE_SIZE, ((long) bytes + PAGE_SIZE - 1) & -PAGE_SIZE);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadAhead{window=" + windowInBytes + "}";
+    }
+}
@@ -2,6 +2,7 @@ package ru.mail.polis.dao.vaddya.sstable;
 
 import org.jetbrains.annotations.NotNull;
 import ru.mail.polis.dao.vaddya.ByteBufferUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
 import ru.mail.polis.dao.vaddya.Table;
 import ru.mail.polis.dao.vaddya.TableEntry;
 
@@ -12,8 +13,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 
 import static java.nio.ByteOrder.BIG_ENDIAN;
 import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
@@ -31,46 +34,61 @@ public interface SSTable extends Table {
     @NotNull
     ByteBuffer highest();
 
+    /**
+     * Check if the table might contain keys with the given prefix.
+     *
+     * @param prefix prefix of the keys
+     * @return {@code false} if the table definitely does not contain such keys
+     */
+    default boolean mayContainPrefix(@NotNull final ByteBuffer prefix) {
+        return true;
+    }
+
+    /**
+     * Get the ratio of the size of the inline values to the size they take in the table,
+     * it is greater than one if the values are compressed (see {@link WriterConfig#withDictionaryCompression(int)}).
+     */
+    default double compressionRatio() {
+        return 1.0;
+    }
+
     /**
      * Flush table entries to the specified channel.
      *
      * <p>File will contain:
      * <ul>
-     * <li> Table entries (mapped to bytes using ByteBufferUtils.fromTableEntry)
+     * <li> Table entries (see {@link SSTableWriter} for the format)
+     * <li> Meta blocks: prefix filter if the prefix extractor is specified,
+     * range tombstones (mapped to bytes using ByteBufferUtils.fromRangeTombstones) if any,
+     * value dictionary (see {@link ValueDictionary}) if the values are compressed
+     * <li> Meta index: type, offset and size (represented by int values) of each meta block
+     * <li> Number of meta blocks (represented by int value)
      * <li> List of offsets (represented by int value), one for each entry
      * <li> Number of entries (represented by int value)
-     * <li> Magic number in the end of the file (int SSTable.MAGIC)
+     * <li> Magic number in the end of the file (int SSTable.MAGIC_V2)
      * </ul>
      *
-     * @param channel channel to write entries to
+     * @param entries    entries to write
+     * @param channel    channel to write entries to
+     * @param config     configuration of the writing
+     * @param tombstones range tombstones to write
      * @throws IOException if cannot write data
      */
     static void flush(
             @NotNull final Iterator<TableEntry> entries,
-            @NotNull final FileChannel channel) throws IOException {
-        final var offsets = new ArrayList<Integer>();
-        var offset = 0;
-        while (entries.hasNext()) {
-            offsets.add(offset);
-            final var buffer = ByteBufferUtils.fromTableEntry(entries.next());
-            offset += buffer.remaining();
-            channel.write(buffer);
+            @NotNull final FileChannel channel,
+            @NotNull final WriterConfig config,
+            @NotNull final Collection<RangeTombstone> tombstones) throws IOException {
+        try (var writer = new SSTableWriter(channel, config)) {
+            while (entries.hasNext()) {
+                writer.append(entries.next());
+            }
+            writer.finish(tombstones);
         }
-
-        final var offsetsBuffer = ByteBufferUtils.fromIntList(offsets);
-        channel.write(offsetsBuffer);
-
-        final var sizeBuffer = ByteBufferUtils.fromInt(offsets.size());
-        channel.write(sizeBuffer);
-
-        final var magicBuffer = ByteBufferUtils.fromInt(SSTableImpl.MAGIC);
-        channel.write(magicBuffer);
-
-        channel.force(true);
     }
 
     /**
-     * Read table from the specified channel.
+     * Read table from the specified channel, the scans use the shared {@link ReadAhead#instance()}.
      *
      * @param channel channel to read entries from
      * @return a SSTable instance
@@ -78,6 +96,21 @@ public interface SSTable extends Table {
      */
     @NotNull
     static SSTable open(@NotNull final FileChannel channel) throws IOException {
+        return open(channel, ReadAhead.instance());
+    }
+
+    /**
+     * Read table from the specified channel.
+     *
+     * @param channel   channel to read entries from
+     * @param readAhead prefetch of the scans
+     * @return a SSTable instance
+     * @throws IOException if cannot read data or table format is invalid
+     */
+    @NotNull
+    static SSTable open(
+            @NotNull final FileChannel channel,
+            @NotNull final ReadAhead readAhead) throws IOException {
         final var size = channel.size();
         if (size < Integer.BYTES * 2) { // magic + count
             throw new IOException("Invalid SSTable format: file is too small: " + size);
@@ -85,36 +118,54 @@ public interface SSTable extends Table {
         final var mapped = channel.map(READ_ONLY, 0, size).order(BIG_ENDIAN);
 
         final var magic = mapped.getInt(mapped.limit() - Integer.BYTES);
-        if (magic != SSTableImpl.MAGIC) {
+        if (magic != SSTableImpl.MAGIC && magic != SSTableImpl.MAGIC_V2) {
             throw new IOException("Invalid SSTable format: magic const is missing");
         }
 
         final var entriesCount = mapped.getInt(mapped.limit() - Integer.BYTES * 2);
-        if (entriesCount <= 0 || mapped.limit() < Integer.BYTES + Integer.BYTES * entriesCount) {
+        if (entriesCount < 0 || mapped.limit() < Integer.BYTES + Integer.BYTES * entriesCount) {
             throw new IOException("Invalid SSTable format: wrong entries count: " + entriesCount);
         }
 
+        final var offsetsStart = mapped.limit() - Integer.BYTES * 2 - Integer.BYTES * entriesCount;
+        final var metaBlocks = new HashMap<Integer, ByteBuffer>();
+        final var entriesEnd = magic == SSTableImpl.MAGIC_V2
+                ? SSTableImpl.readMetaBlocks(mapped, offsetsStart, metaBlocks)
+                : offsetsStart; // the first version has no meta blocks
         final var offsets = mapped.duplicate()
-                .position(mapped.limit() - Integer.BYTES * 2 - Integer.BYTES * entriesCount)
+                .position(offsetsStart)
                 .limit(mapped.limit() - Integer.BYTES)
                 .slice()
                 .asReadOnlyBuffer()
                 .asIntBuffer();
         final var entries = mapped.duplicate()
                 .position(0)
-                .limit(mapped.limit() - Integer.BYTES * 2 - Integer.BYTES * entriesCount)
+                .limit(entriesEnd)
                 .slice()
                 .asReadOnlyBuffer();
 
-        return new SSTableImpl(size, entriesCount, offsets, entries);
+        final var filterBlock = metaBlocks.get(SSTableImpl.PREFIX_FILTER_BLOCK);
+        final var filter = filterBlock == null ? null : PrefixFilter.read(filterBlock);
+        final var tombstonesBlock = metaBlocks.get(SSTableImpl.RANGE_TOMBSTONES_BLOCK);
+        final var tombstones = tombstonesBlock == null
+                ? List.<RangeTombstone>of()
+                : ByteBufferUtils.toRangeTombstones(tombstonesBlock);
+        if (entriesCount == 0 && tombstones.isEmpty()) {
+            throw new IOException("Invalid SSTable format: table is empty");
+        }
+        final var dictionaryBlock = metaBlocks.get(SSTableImpl.VALUE_DICTIONARY_BLOCK);
+        final var dictionary = dictionaryBlock == null ? null : ValueDictionary.read(dictionaryBlock);
+        return new SSTableImpl(size, entriesCount, offsets, entries, filter, tombstones, readAhead, dictionary);
     }
 
     /**
      * Combination of {@code flush} and {@code open} methods.
      *
-     * @param iterator  entries iterator
-     * @param tempPath  temporary path
-     * @param finalPath final path
+     * @param iterator   entries iterator
+     * @param tempPath   temporary path
+     * @param finalPath  final path
+     * @param config     configuration of the writing
+     * @param tombstones range tombstones to write
      * @return a SSTable instance
      * @throws IOException if cannot read/write data or table format is invalid
      */
@@ -122,9 +173,11 @@ public interface SSTable extends Table {
     static SSTable flushAndOpen(
             @NotNull final Iterator<TableEntry> iterator,
             @NotNull final Path tempPath,
-            @NotNull final Path finalPath) throws IOException {
+            @NotNull final Path finalPath,
+            @NotNull final WriterConfig config,
+            @NotNull final Collection<RangeTombstone> tombstones) throws IOException {
         try (var channel = FileChannel.open(tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
-            flush(iterator, channel);
+            flush(iterator, channel, config, tombstones);
         }
         Files.move(tempPath, finalPath, StandardCopyOption.ATOMIC_MOVE);
         try (var channel = FileChannel.open(finalPath, StandardOpenOption.READ)) {
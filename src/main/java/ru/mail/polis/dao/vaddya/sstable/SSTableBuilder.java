@@ -0,0 +1,131 @@
+package ru.mail.polis.dao.vaddya.sstable;
+
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.vaddya.TableEntry;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Builds a table file from the entries in ascending order of the keys without opening a storage,
+ * e.g. to prepare a dump to be ingested (see {@code DAOImpl.ingest}).
+ * The upserts and removals are stamped with the current time, so they shadow the entries written before
+ * the table is built, while the appended entries keep their timestamps.
+ */
+@NotThreadSafe
+public final class SSTableBuilder implements Closeable {
+    private static final int INITIAL_KEY_CAPACITY = 64;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final SSTableWriter writer;
+    private ByteBuffer lastKey = ByteBuffer.allocate(INITIAL_KEY_CAPACITY);
+    private int count;
+    private boolean finished;
+
+    private SSTableBuilder(
+            @NotNull final Path path,
+            @NotNull final FileChannel channel,
+            @NotNull final WriterConfig config) {
+        this.path = path;
+        this.channel = channel;
+        this.writer = new SSTableWriter(channel, config);
+    }
+
+    /**
+     * Create a builder writing the table to the file, the existing file is overwritten.
+     *
+     * @param path   path to the table file
+     * @param config configuration of the writing
+     * @return a builder
+     * @throws IOException if cannot create the file
+     */
+    @NotNull
+    public static SSTableBuilder create(
+            @NotNull final Path path,
+            @NotNull final WriterConfig config) throws IOException {
+        final var channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new SSTableBuilder(path, channel, config);
+    }
+
+    /**
+     * Add a value using the given key.
+     *
+     * @throws IllegalArgumentException if the key is not greater than the previous one
+     * @throws IOException              if cannot write data
+     */
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) throws IOException {
+        append(TableEntry.upsert(key, value));
+    }
+
+    /**
+     * Add a tombstone using the given key.
+     *
+     * @throws IllegalArgumentException if the key is not greater than the previous one
+     * @throws IOException              if cannot write data
+     */
+    public void remove(@NotNull final ByteBuffer key) throws IOException {
+        append(TableEntry.delete(key));
+    }
+
+    /**
+     * Add the entry keeping its timestamp, e.g. to copy the entries of another table.
+     *
+     * @throws IllegalArgumentException if the key is not greater than the previous one
+     * @throws IOException              if cannot write data
+     */
+    public void append(@NotNull final TableEntry entry) throws IOException {
+        final var key = entry.getKey();
+        if (count > 0 && key.compareTo(lastKey) <= 0) {
+            throw new IllegalArgumentException("Keys should be added in ascending order");
+        }
+        writer.append(entry);
+        count++;
+
+        if (lastKey.capacity() < key.remaining()) {
+            lastKey = ByteBuffer.allocate(Math.max(key.remaining(), lastKey.capacity() * 2));
+        }
+        lastKey.clear();
+        lastKey.put(key.duplicate()).flip();
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Write the trailer, the file is a valid table after that.
+     *
+     * @throws IllegalStateException if no entries were added
+     * @throws IOException           if cannot write data
+     */
+    public void finish() throws IOException {
+        if (count == 0) {
+            throw new IllegalStateException("Table is empty");
+        }
+        writer.finish(List.of());
+        finished = true;
+    }
+
+    /**
+     * Close the file, it is removed if the table was not finished.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        channel.close();
+        if (!finished) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
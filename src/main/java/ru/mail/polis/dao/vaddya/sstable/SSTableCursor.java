@@ -0,0 +1,233 @@
+package ru.mail.polis.dao.vaddya.sstable;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.vaddya.ByteBufferUtils;
+import ru.mail.polis.dao.vaddya.Cursor;
+import ru.mail.polis.dao.vaddya.TableEntry;
+import ru.mail.polis.dao.vaddya.vlog.ValuePointer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Cursor over the mapped entries of a table that decodes headers of the entries
+ * using absolute methods only, so the shared buffers are never modified.
+ * Once the cursor has moved a page away from its start, the scan is considered sequential
+ * and the window ahead of the cursor is prefetched each time half of it is consumed.
+ * A compressed value is decompressed on the first access into a buffer reused by the cursor.
+ */
+@NotThreadSafe
+final class SSTableCursor implements Cursor {
+    private final ByteBuffer entries;
+    private final IntBuffer offsets;
+    private final int count;
+    private final ReadAhead readAhead;
+    @Nullable
+    private final ValueDictionary dictionary;
+    private ByteBuffer decompressed = ByteBuffer.allocate(0);
+    private int decompressedPosition = -1;
+    private int position;
+    private int readAheadTrigger;
+    private int prefetchedTo;
+
+    private int keyOffset;
+    private int keyLength;
+    private long ts;
+    private boolean hasTombstone;
+    private int valueLogId;
+    private boolean isOperand;
+    private long valueOffset;
+    private int valueLength;
+    private boolean isCompressed;
+    private int compressedLength;
+
+    SSTableCursor(
+            @NotNull final ByteBuffer entries,
+            @NotNull final IntBuffer offsets,
+            final int count,
+            final int position,
+            @NotNull final ReadAhead readAhead,
+            @Nullable final ValueDictionary dictionary) {
+        this.entries = entries;
+        this.offsets = offsets;
+        this.count = count;
+        this.readAhead = readAhead;
+        this.dictionary = dictionary;
+        this.position = position;
+        if (position < count) {
+            this.prefetchedTo = offsets.get(position);
+            this.readAheadTrigger = prefetchedTo + ReadAhead.PAGE_SIZE;
+        }
+        read();
+    }
+
+    @Override
+    public boolean isValid() {
+        return position < count;
+    }
+
+    @Override
+    public void next() {
+        position++;
+        read();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer keyBuffer() {
+        return entries;
+    }
+
+    @Override
+    public int keyOffset() {
+        return keyOffset;
+    }
+
+    @Override
+    public int keyLength() {
+        return keyLength;
+    }
+
+    @Override
+    public long ts() {
+        return ts;
+    }
+
+    @Override
+    public boolean hasTombstone() {
+        return hasTombstone;
+    }
+
+    @Override
+    public int valueLogId() {
+        return valueLogId;
+    }
+
+    @Override
+    public boolean isOperand() {
+        return isOperand;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer valueBuffer() {
+        if (hasTombstone || valueLogId >= 0) {
+            throw new IllegalStateException("Value is not stored inline");
+        }
+        return isCompressed ? decompressed() : entries;
+    }
+
+    @Override
+    public int valueOffset() {
+        return isCompressed ? 0 : (int) valueOffset;
+    }
+
+    @Override
+    public int valueLength() {
+        return valueLength;
+    }
+
+    @NotNull
+    @Override
+    public TableEntry entry() {
+        final var key = slice(keyOffset, keyLength);
+        if (hasTombstone) {
+            return TableEntry.from(key, null, true, ts);
+        }
+        if (valueLogId >= 0) {
+            return TableEntry.pointer(key, ValuePointer.of(valueLogId, valueOffset, valueLength), ts);
+        }
+        if (isOperand) {
+            return TableEntry.operand(key, slice((int) valueOffset, valueLength), ts);
+        }
+        if (isCompressed) {
+            final var value = ByteBuffer.allocate(valueLength).put(decompressed().duplicate().limit(valueLength));
+            return TableEntry.from(key, value.flip(), false, ts);
+        }
+        return TableEntry.from(key, slice((int) valueOffset, valueLength), false, ts);
+    }
+
+    private void read() {
+        if (position >= count) {
+            return;
+        }
+        var offset = offsets.get(position);
+        if (offset >= readAheadTrigger && readAhead.isEnabled()) {
+            readAhead(offset);
+        }
+        keyLength = entries.getInt(offset);
+        keyOffset = offset + Integer.BYTES;
+        offset = keyOffset + keyLength;
+
+        final var rawTs = entries.getLong(offset);
+        offset += Long.BYTES;
+        hasTombstone = rawTs < 0;
+        ts = Math.abs(rawTs);
+        valueLogId = -1;
+        isOperand = false;
+        isCompressed = false;
+        valueOffset = offset;
+        valueLength = 0;
+        if (hasTombstone) {
+            return;
+        }
+
+        final var valueSize = entries.getInt(offset);
+        offset += Integer.BYTES;
+        if ((valueSize & ByteBufferUtils.POINTER_FLAG) != 0) {
+            valueLogId = entries.getInt(offset);
+            valueOffset = entries.getLong(offset + Integer.BYTES);
+            valueLength = valueSize & ~ByteBufferUtils.POINTER_FLAG;
+        } else if ((valueSize & ByteBufferUtils.COMPRESSED_FLAG) != 0) {
+            isCompressed = true;
+            compressedLength = valueSize & ~ByteBufferUtils.COMPRESSED_FLAG;
+            valueLength = entries.getInt(offset);
+            valueOffset = offset + Integer.BYTES;
+        } else {
+            isOperand = (valueSize & ByteBufferUtils.OPERAND_FLAG) != 0;
+            valueOffset = offset;
+            valueLength = valueSize & ~ByteBufferUtils.OPERAND_FLAG;
+        }
+    }
+
+    @NotNull
+    private ByteBuffer decompressed() {
+        if (decompressedPosition == position) {
+            return decompressed;
+        }
+        if (dictionary == null) {
+            throw new IllegalStateException("Value is compressed but the table has no dictionary");
+        }
+        if (decompressed.capacity() < valueLength) {
+            decompressed = ByteBuffer.allocate(Math.max(valueLength, decompressed.capacity() * 2));
+        }
+        final var source = slice((int) valueOffset, compressedLength);
+        dictionary.decompress(source, decompressed.clear().limit(valueLength));
+        decompressed.clear();
+        decompressedPosition = position;
+        return decompressed;
+    }
+
+    private void readAhead(final int offset) {
+        final var window = readAhead.windowInBytes();
+        final var to = (int) Math.min(entries.limit(), (long) offset + window);
+        final var from = Math.max(offset, prefetchedTo);
+        if (from < to) {
+            readAhead.prefetch(entries, from, to);
+        }
+        prefetchedTo = to;
+        readAheadTrigger = to >= entries.limit() ? Integer.MAX_VALUE : offset + window / 2;
+    }
+
+    @NotNull
+    private ByteBuffer slice(
+            final int offset,
+            final int length) {
+        return entries.duplicate()
+                .position(offset)
+                .limit(offset + length)
+                .slice();
+    }
+}
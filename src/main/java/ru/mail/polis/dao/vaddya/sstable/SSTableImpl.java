@@ -1,53 +1,154 @@
 package ru.mail.polis.dao.vaddya.sstable;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import ru.mail.polis.dao.Iters;
+import ru.mail.polis.dao.vaddya.ByteBufferUtils;
+import ru.mail.polis.dao.vaddya.Cursor;
+import ru.mail.polis.dao.vaddya.IteratorUtils;
+import ru.mail.polis.dao.vaddya.RangeEstimate;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
 import ru.mail.polis.dao.vaddya.TableEntry;
 
 import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static ru.mail.polis.dao.vaddya.ByteBufferUtils.toHexString;
 
 @ThreadSafe
 final class SSTableImpl implements SSTable {
-    static int MAGIC = 0xCAFEFEED;
+    static final int MAGIC = 0xCAFEFEED;
+    static final int MAGIC_V2 = 0xCAFEFEEE;
+    static final int META_INDEX_ENTRY_INTS = 3; // type, offset, size
+    static final int PREFIX_FILTER_BLOCK = 1;
+    static final int RANGE_TOMBSTONES_BLOCK = 2;
+    static final int VALUE_DICTIONARY_BLOCK = 3;
 
     private final long sizeInBytes;
     private final int entriesCount;
     private final IntBuffer offsets;
     private final ByteBuffer entries;
+    private final PrefixFilter prefixFilter;
+    private final List<RangeTombstone> tombstones;
+    private final ReadAhead readAhead;
+    @Nullable
+    private final ValueDictionary dictionary;
 
     SSTableImpl(
             final long sizeInBytes,
             final int entriesCount,
             @NotNull final IntBuffer offsets,
-            @NotNull final ByteBuffer entries) {
+            @NotNull final ByteBuffer entries,
+            @Nullable final PrefixFilter prefixFilter,
+            @NotNull final List<RangeTombstone> tombstones,
+            @NotNull final ReadAhead readAhead,
+            @Nullable final ValueDictionary dictionary) {
         this.sizeInBytes = sizeInBytes;
         this.entriesCount = entriesCount;
         this.entries = entries;
         this.offsets = offsets;
+        this.prefixFilter = prefixFilter;
+        this.tombstones = tombstones;
+        this.readAhead = readAhead;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Read meta blocks of the table by their types.
+     *
+     * @param mapped     mapped table file
+     * @param metaEnd    position where the meta index ends
+     * @param metaBlocks blocks by their types
+     * @return position where the table entries end
+     * @throws IOException if the meta index is invalid
+     */
+    static int readMetaBlocks(
+            @NotNull final ByteBuffer mapped,
+            final int metaEnd,
+            @NotNull final Map<Integer, ByteBuffer> metaBlocks) throws IOException {
+        final var count = mapped.getInt(metaEnd - Integer.BYTES);
+        final var indexStart = metaEnd - Integer.BYTES - Integer.BYTES * META_INDEX_ENTRY_INTS * count;
+        if (count < 0 || indexStart < 0) {
+            throw new IOException("Invalid SSTable format: wrong meta blocks count: " + count);
+        }
+
+        var entriesEnd = indexStart;
+        for (var i = 0; i < count; i++) {
+            final var position = indexStart + Integer.BYTES * META_INDEX_ENTRY_INTS * i;
+            final var type = mapped.getInt(position);
+            final var offset = mapped.getInt(position + Integer.BYTES);
+            final var size = mapped.getInt(position + Integer.BYTES * 2);
+            if (offset < 0 || size < 0 || offset + size > indexStart) {
+                throw new IOException("Invalid SSTable format: wrong meta block " + type);
+            }
+            metaBlocks.put(type, mapped.duplicate().position(offset).limit(offset + size).slice());
+            entriesEnd = Math.min(entriesEnd, offset);
+        }
+        return entriesEnd;
     }
 
     @Override
     @NotNull
     public Iterator<TableEntry> iterator(@NotNull final ByteBuffer from) {
-        if (from.compareTo(highest()) > 0) {
+        return IteratorUtils.entries(cursor(from));
+    }
+
+    /**
+     * Get a cursor for the scan, the point lookups read the entries without the prefetch.
+     */
+    @Override
+    @NotNull
+    public Cursor cursor(@NotNull final ByteBuffer from) {
+        final var position = from.remaining() == 0 ? 0 : position(from);
+        return new SSTableCursor(entries, offsets, entriesCount, position, readAhead, dictionary);
+    }
+
+    /**
+     * Look up the keys moving the cursor forward: the search for each key starts
+     * from the position of the previous one and gallops until the key is bracketed.
+     */
+    @Override
+    public void lookup(
+            @NotNull final List<ByteBuffer> sortedKeys,
+            @NotNull final Map<ByteBuffer, TableEntry> result) {
+        var cursor = 0;
+        for (final var key : sortedKeys) {
+            if (cursor >= entriesCount) {
+                return;
+            }
+            cursor = gallop(key, cursor);
+            if (cursor < entriesCount && compareKeyAt(cursor, key) == 0) {
+                result.merge(key, entryAt(cursor), TableEntry::newest);
+                cursor++;
+            }
+        }
+    }
+
+    @Override
+    @NotNull
+    public Iterator<TableEntry> prefix(@NotNull final ByteBuffer prefix) {
+        if (!mayContainPrefix(prefix)) {
             return Iters.empty();
         }
-        return new Iterator<>() {
-            private int position = from.remaining() == 0 ? 0 : position(from);
+        return SSTable.super.prefix(prefix);
+    }
 
-            @Override
-            public boolean hasNext() {
-                return position < entriesCount;
-            }
+    @Override
+    public boolean mayContainPrefix(@NotNull final ByteBuffer prefix) {
+        return prefixFilter == null || prefixFilter.mightContain(prefix);
+    }
 
-            @Override
-            public TableEntry next() {
-                return entryAt(position++);
-            }
-        };
+    @Override
+    @NotNull
+    public Collection<RangeTombstone> rangeTombstones() {
+        return tombstones;
     }
 
     @Override
@@ -60,35 +161,110 @@ final class SSTableImpl implements SSTable {
         return entriesCount;
     }
 
+    /**
+     * Get the lowest key in the table or the lowest key of the range tombstones if the table has no entries.
+     */
     @Override
     @NotNull
     public ByteBuffer lowest() {
+        if (entriesCount == 0) {
+            return tombstones.stream().map(RangeTombstone::from).min(Comparator.naturalOrder()).orElseThrow();
+        }
         return keyAt(0);
     }
 
+    /**
+     * Get the highest key in the table or the highest lowest key of the range tombstones
+     * if the table has no entries.
+     */
     @Override
     @NotNull
     public ByteBuffer highest() {
+        if (entriesCount == 0) {
+            return tombstones.stream().map(RangeTombstone::from).max(Comparator.naturalOrder()).orElseThrow();
+        }
         return keyAt(entriesCount - 1);
     }
 
+    /**
+     * Estimate the range by the positions of its bounds found with the offsets, so only the keys on the path
+     * of the binary search are read, and the tables covered by the range are estimated by their key bounds.
+     */
+    @Override
+    @NotNull
+    public RangeEstimate estimateRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        if (entriesCount == 0) {
+            return RangeEstimate.empty();
+        }
+        final var lowest = keyAt(0);
+        final var highest = keyAt(entriesCount - 1);
+        if (to != null && to.compareTo(lowest) <= 0 || from.compareTo(highest) > 0) {
+            return RangeEstimate.empty();
+        }
+        final var start = from.compareTo(lowest) <= 0 ? 0 : position(from);
+        final var end = to == null || to.compareTo(highest) > 0 ? entriesCount : position(to);
+        if (start >= end) {
+            return RangeEstimate.empty();
+        }
+        final var endOffset = end == entriesCount ? entries.limit() : offsets.get(end);
+        return RangeEstimate.of(endOffset - offsets.get(start), end - start);
+    }
+
     private int position(@NotNull final ByteBuffer key) {
-        var left = 0;
-        var right = entriesCount - 1;
+        return position(key, 0, entriesCount - 1);
+    }
+
+    /**
+     * Find position of the first key that is not less than the given one
+     * looking only at the positions starting from {@code from}.
+     */
+    private int gallop(
+            @NotNull final ByteBuffer key,
+            final int from) {
+        var step = 1;
+        var left = from;
+        var right = from;
+        while (right < entriesCount && compareKeyAt(right, key) < 0) {
+            left = right + 1;
+            right = from + step;
+            step <<= 1;
+        }
+        return position(key, left, Math.min(right, entriesCount - 1));
+    }
+
+    /**
+     * Find position of the first key that is not less than the given one. A key is repeated only
+     * by the merge operands followed by the value they are applied to, so the newest entry of the key is found.
+     */
+    private int position(
+            @NotNull final ByteBuffer key,
+            final int from,
+            final int to) {
+        var left = from;
+        var right = to;
         while (left <= right) {
             final var mid = left + (right - left) / 2;
-            final var cmp = keyAt(mid).compareTo(key);
-            if (cmp < 0) {
+            if (compareKeyAt(mid, key) < 0) {
                 left = mid + 1;
-            } else if (cmp > 0) {
-                right = mid - 1;
             } else {
-                return mid;
+                right = mid - 1;
             }
         }
         return left;
     }
 
+    private int compareKeyAt(
+            final int position,
+            @NotNull final ByteBuffer key) {
+        final var offset = offsets.get(position);
+        final var keySize = entries.getInt(offset);
+        final var length = Math.min(keySize, key.remaining());
+        final var cmp = ByteBufferUtils.compare(entries, offset + Integer.BYTES, key, key.position(), length);
+        return cmp == 0 ? keySize - key.remaining() : cmp;
+    }
+
     @NotNull
     private ByteBuffer keyAt(final int position) {
         final var offset = offsets.get(position);
@@ -101,37 +277,21 @@ final class SSTableImpl implements SSTable {
 
     @NotNull
     private TableEntry entryAt(final int position) {
-        var offset = offsets.get(position);
-
-        final var keySize = entries.getInt(offset);
-        offset += Integer.BYTES;
-
-        final var key = entries.duplicate()
-                .position(offset)
-                .limit(offset + keySize)
-                .slice();
-        offset += keySize;
-
-        final var ts = entries.position(offset).getLong();
-        offset += Long.BYTES;
-        if (ts < 0) {
-            return TableEntry.from(key, null, true, -ts);
-        }
-
-        final var valueSize = entries.getInt(offset);
-        offset += Integer.BYTES;
-
-        final var value = entries.duplicate()
-                .position(offset)
-                .limit(offset + valueSize)
-                .slice();
+        return new SSTableCursor(entries, offsets, entriesCount, position, ReadAhead.disabled(), dictionary).entry();
+    }
 
-        return TableEntry.from(key, value, false, ts);
+    @Override
+    public double compressionRatio() {
+        return dictionary == null ? 1.0 : dictionary.compressionRatio();
     }
 
     @Override
     public String toString() {
-        return "SSTableImpl{size=" + sizeInBytes + ", count=" + count()
-                + ", [" + lowest().get() + ", " + highest().get() + "]}";
+        // a table could have neither entries nor range tombstones, so it has no bounds
+        final var bounds = entriesCount == 0 && tombstones.isEmpty()
+                ? "[]"
+                : "[" + toHexString(lowest()) + ", " + toHexString(highest()) + "]";
+        return "SSTableImpl{size=" + sizeInBytes + ", count=" + count() + ", tombstones=" + tombstones.size()
+                + ", ratio=" + compressionRatio() + ", " + bounds + "}";
     }
 }
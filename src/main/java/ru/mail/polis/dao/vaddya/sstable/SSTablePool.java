@@ -1,11 +1,18 @@
 package ru.mail.polis.dao.vaddya.sstable;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.vaddya.Checkpoint;
+import ru.mail.polis.dao.vaddya.RangeEstimate;
+import ru.mail.polis.dao.vaddya.TableEntry;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
 public interface SSTablePool extends SSTable, Closeable {
@@ -32,6 +39,54 @@ public interface SSTablePool extends SSTable, Closeable {
      */
     void compact() throws IOException;
 
+    /**
+     * Move externally built tables (see {@link SSTableBuilder}) into the table pool.
+     *
+     * @param paths table files, they are moved into the pool
+     * @throws IOException if a file can not be moved or is not a valid table
+     */
+    void ingest(@NotNull List<Path> paths) throws IOException;
+
+    /**
+     * Add the files of all the tables of the pool to the checkpoint.
+     *
+     * @throws IOException if cannot link a file
+     */
+    void checkpoint(@NotNull Checkpoint checkpoint) throws IOException;
+
+    /**
+     * Get the number of bytes that are waiting for compaction.
+     */
+    default long pendingCompactionBytes() {
+        return 0;
+    }
+
+    /**
+     * Add the versions of the key from each table of the pool.
+     */
+    @Override
+    default void lookupVersions(
+            @NotNull final ByteBuffer key,
+            @NotNull final Collection<TableEntry> versions) {
+        for (final var table : tables().values()) {
+            table.lookupVersions(key, versions);
+        }
+    }
+
+    /**
+     * Sum the estimates of the tables, the tables out of the range are skipped by their key bounds.
+     */
+    @Override
+    @NotNull
+    default RangeEstimate estimateRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        return tables().values()
+                .stream()
+                .map(table -> table.estimateRange(from, to))
+                .reduce(RangeEstimate.empty(), RangeEstimate::plus);
+    }
+
     @Override
     @NotNull
     default ByteBuffer lowest() {
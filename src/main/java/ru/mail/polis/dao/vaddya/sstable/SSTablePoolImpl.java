@@ -3,7 +3,10 @@ package ru.mail.polis.dao.vaddya.sstable;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.vaddya.Checkpoint;
+import ru.mail.polis.dao.vaddya.Cursor;
 import ru.mail.polis.dao.vaddya.IteratorUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
 import ru.mail.polis.dao.vaddya.TableEntry;
 import ru.mail.polis.dao.vaddya.flush.Flusher;
 import ru.mail.polis.dao.vaddya.naming.FileManager;
@@ -15,14 +18,18 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import static java.util.stream.Collectors.toList;
 import static ru.mail.polis.dao.vaddya.IteratorUtils.toCollapsedMergedIterator;
 
 @ThreadSafe
@@ -73,17 +80,66 @@ public final class SSTablePoolImpl implements SSTablePool {
     @Override
     @NotNull
     public Iterator<TableEntry> iterator(@NotNull final ByteBuffer from) {
+        return IteratorUtils.entries(cursor(from));
+    }
+
+    @NotNull
+    @Override
+    public Cursor cursor(@NotNull final ByteBuffer from) {
+        final List<Cursor> cursors;
+        lock.readLock().lock();
+        try {
+            cursors = tables.values()
+                    .stream()
+                    .map(table -> table.cursor(from))
+                    .collect(toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return IteratorUtils.collapseCursors(cursors);
+    }
+
+    @Override
+    @NotNull
+    public Iterator<TableEntry> prefix(@NotNull final ByteBuffer prefix) {
         lock.readLock().lock();
         try {
             return tables.values()
                     .stream()
-                    .map(table -> table.iterator(from))
+                    .filter(table -> table.mayContainPrefix(prefix))
+                    .map(table -> table.prefix(prefix))
                     .collect(toCollapsedMergedIterator());
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    @Override
+    public void lookup(
+            @NotNull final List<ByteBuffer> sortedKeys,
+            @NotNull final Map<ByteBuffer, TableEntry> result) {
+        lock.readLock().lock();
+        try {
+            tables.values().forEach(table -> table.lookup(sortedKeys, result));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    @NotNull
+    public Collection<RangeTombstone> rangeTombstones() {
+        lock.readLock().lock();
+        try {
+            return tables.values()
+                    .stream()
+                    .flatMap(table -> table.rangeTombstones().stream())
+                    .collect(toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     @Override
     public long sizeInBytes() {
         lock.readLock().lock();
@@ -138,6 +194,44 @@ public final class SSTablePoolImpl implements SSTablePool {
         }
     }
 
+    /**
+     * Move the files into the pool and add the tables, all the tables are compacted together anyway.
+     *
+     * @throws IOException if a file can not be moved or is not a valid table, the preceding files stay ingested
+     */
+    @Override
+    public void ingest(@NotNull final List<Path> paths) throws IOException {
+        for (final var path : paths) {
+            final var generation = generationProvider.nextGeneration();
+            final var tempPath = fileManager.tempPathTo(generation);
+            Files.move(path, tempPath);
+            final SSTable table;
+            try (var channel = FileChannel.open(tempPath, StandardOpenOption.READ)) {
+                table = SSTable.open(channel);
+            } catch (IOException e) {
+                Files.move(tempPath, path);
+                throw new IOException("Unable to ingest " + path + ": " + e.getMessage(), e);
+            }
+            Files.move(tempPath, fileManager.finalPathTo(generation), StandardCopyOption.ATOMIC_MOVE);
+            addTable(generation, table);
+        }
+    }
+
+    /**
+     * Link the files of the tables, the compaction removes the files only after the tables are removed.
+     */
+    @Override
+    public void checkpoint(@NotNull final Checkpoint checkpoint) throws IOException {
+        lock.readLock().lock();
+        try {
+            for (final var generation : tables.keySet()) {
+                checkpoint.add(fileManager.finalPathTo(generation));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     @Override
     public void compact() throws IOException {
         final Map<Integer, SSTable> tablesToCompact;
@@ -155,7 +249,7 @@ public final class SSTablePoolImpl implements SSTablePool {
         final int generation;
         if (alive.hasNext()) { // if not only tombstones
             generation = generationProvider.nextGeneration();
-            ssTable = flusher.flushEntries(generation, alive);
+            ssTable = flusher.flushEntries(generation, alive, List.of()); // all tombstones are applied
         } else {
             generation = 0;
             ssTable = null;
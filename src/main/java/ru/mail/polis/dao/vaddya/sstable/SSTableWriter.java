@@ -0,0 +1,303 @@
+package ru.mail.polis.dao.vaddya.sstable;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.vaddya.ByteBufferUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
+import ru.mail.polis.dao.vaddya.TableEntry;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Streams table entries to the channel through a direct buffer,
+ * so the table is written by large sequential chunks without per entry allocations.
+ *
+ * <p>Each entry is written as:
+ * <ul>
+ * <li> Size of the key (4 bytes)
+ * <li> Key of the entry (N bytes)
+ * <li> Timestamp (8 bytes), if negative then it is a tombstone and neither value size nor value itself is present
+ * <li> Size of the value (4 bytes), if the highest bit is set then the value is stored in the value log
+ * and the value itself is replaced with the value log file ID (4 bytes) and the offset in the file (8 bytes),
+ * if the next bit is set then the value is a sequence of merge operands,
+ * if the third bit is set then the value is compressed and the size of the decompressed value (4 bytes) follows
+ * <li> Value of the entry (M bytes)
+ * </ul>
+ *
+ * <p>If the dictionary compression is enabled, the first entries are kept until enough values are sampled
+ * to train the dictionary (see {@link ValueCompressor}), then all the entries are written with the values
+ * compressed where it saves space. The dictionary is written as a meta block (see {@link ValueDictionary}).
+ */
+@NotThreadSafe
+final class SSTableWriter implements Closeable {
+    private static final int INITIAL_OFFSETS_CAPACITY = 1024;
+    private static final int MAX_POOLED_BUFFERS = 8;
+    private static final int MAX_SAMPLES = 1024;
+    // the samples should be several times larger than the dictionary to find what is common
+    private static final int SAMPLES_TO_DICTIONARY_RATIO = 8;
+    // direct buffers are expensive to allocate and are freed only by GC, so they are reused by the writers
+    private static final Queue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    private final FileChannel channel;
+    private final WriterConfig config;
+    private final ByteBuffer buffer;
+    @Nullable
+    private final PrefixFilter.Builder filter;
+    @Nullable
+    private List<TableEntry> pending;
+    private long sampledBytes;
+    @Nullable
+    private ValueCompressor compressor;
+    private int[] offsets = new int[INITIAL_OFFSETS_CAPACITY];
+    private int count;
+    private long position;
+
+    SSTableWriter(
+            @NotNull final FileChannel channel,
+            @NotNull final WriterConfig config) {
+        this.channel = channel;
+        this.config = config;
+        this.buffer = acquireBuffer(config.bufferSizeInBytes());
+        final var extractor = config.prefixExtractor();
+        this.filter = extractor == null ? null : new PrefixFilter.Builder(extractor);
+        this.pending = config.dictionarySizeInBytes() > 0 ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Append the entry, entries should be appended in ascending order.
+     *
+     * @throws IOException if cannot write data or the table exceeds 2 GiB
+     */
+    void append(@NotNull final TableEntry entry) throws IOException {
+        if (pending == null) {
+            write(entry);
+            return;
+        }
+        pending.add(entry);
+        if (isCompressible(entry)) {
+            sampledBytes += entry.getValue().remaining();
+        }
+        if (pending.size() >= MAX_SAMPLES
+                || sampledBytes >= (long) config.dictionarySizeInBytes() * SAMPLES_TO_DICTIONARY_RATIO) {
+            writePending();
+        }
+    }
+
+    private void write(@NotNull final TableEntry entry) throws IOException {
+        addOffset(checkedPosition());
+        final var key = entry.getKey();
+        if (filter != null) {
+            filter.add(key);
+        }
+
+        putInt(key.remaining());
+        put(key);
+        if (entry.hasTombstone()) {
+            putLong(-entry.ts());
+            return;
+        }
+        putLong(entry.ts());
+
+        final var pointer = entry.valuePointer();
+        if (pointer != null) {
+            putInt(checkedSize(pointer.length()) | ByteBufferUtils.POINTER_FLAG);
+            putInt(pointer.fileId());
+            putLong(pointer.offset());
+            return;
+        }
+        final var value = entry.getValue();
+        final var size = checkedSize(value.remaining());
+        if (compressor != null && !entry.isOperand()) {
+            final var compressed = compressor.compress(value);
+            if (compressed != null) {
+                compressor.account(size, Integer.BYTES + compressed.remaining());
+                putInt(compressed.remaining() | ByteBufferUtils.COMPRESSED_FLAG);
+                putInt(size);
+                put(compressed);
+                return;
+            }
+            compressor.account(size, size);
+        }
+        putInt(entry.isOperand() ? size | ByteBufferUtils.OPERAND_FLAG : size);
+        put(value);
+    }
+
+    /**
+     * Train the dictionary on the values of the kept entries and write the entries.
+     */
+    private void writePending() throws IOException {
+        final var entries = pending;
+        if (entries == null) {
+            return;
+        }
+        pending = null;
+        final var samples = entries.stream()
+                .filter(SSTableWriter::isCompressible)
+                .map(TableEntry::getValue)
+                .collect(toList());
+        compressor = ValueCompressor.train(samples, config.dictionarySizeInBytes());
+        for (final var entry : entries) {
+            write(entry);
+        }
+    }
+
+    private static boolean isCompressible(@NotNull final TableEntry entry) {
+        return !entry.hasTombstone()
+                && entry.valuePointer() == null
+                && !entry.isOperand()
+                && ValueCompressor.isCompressible(entry.getValue());
+    }
+
+    /**
+     * Write meta blocks, offsets and the trailer, then force the channel according to the policy.
+     *
+     * @param tombstones range tombstones to write
+     * @throws IOException if cannot write data
+     */
+    void finish(@NotNull final Collection<RangeTombstone> tombstones) throws IOException {
+        writePending();
+        final var metaIndex = new int[SSTableImpl.META_INDEX_ENTRY_INTS * 3];
+        var metaSize = 0;
+        if (filter != null) {
+            metaSize = putMetaBlock(SSTableImpl.PREFIX_FILTER_BLOCK, filter.build().toBuffer(), metaIndex, metaSize);
+        }
+        if (!tombstones.isEmpty()) {
+            final var block = ByteBufferUtils.fromRangeTombstones(tombstones);
+            metaSize = putMetaBlock(SSTableImpl.RANGE_TOMBSTONES_BLOCK, block, metaIndex, metaSize);
+        }
+        if (compressor != null && compressor.hasDictionary()) {
+            final var block = compressor.toDictionary().toBuffer();
+            metaSize = putMetaBlock(SSTableImpl.VALUE_DICTIONARY_BLOCK, block, metaIndex, metaSize);
+        }
+        for (var i = 0; i < metaSize; i++) {
+            putInt(metaIndex[i]);
+        }
+        putInt(metaSize / SSTableImpl.META_INDEX_ENTRY_INTS);
+
+        for (var i = 0; i < count; i++) {
+            putInt(offsets[i]);
+        }
+        putInt(count);
+        putInt(SSTableImpl.MAGIC_V2);
+        drain();
+
+        if (config.forcePolicy() == WriterConfig.ForcePolicy.ON_FINISH) {
+            channel.force(true);
+        }
+    }
+
+    private int putMetaBlock(
+            final int type,
+            @NotNull final ByteBuffer block,
+            final int[] metaIndex,
+            final int metaSize) throws IOException {
+        metaIndex[metaSize] = type;
+        metaIndex[metaSize + 1] = checkedPosition();
+        metaIndex[metaSize + 2] = block.remaining();
+        put(block);
+        return metaSize + SSTableImpl.META_INDEX_ENTRY_INTS;
+    }
+
+    private void addOffset(final int offset) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count++] = offset;
+    }
+
+    private int checkedPosition() throws IOException {
+        if (position > Integer.MAX_VALUE) {
+            throw new IOException("SSTable is too large: " + position);
+        }
+        return (int) position;
+    }
+
+    private static int checkedSize(final int size) throws IOException {
+        if (size >= ByteBufferUtils.COMPRESSED_FLAG) {
+            throw new IOException("Value is too large: " + size);
+        }
+        return size;
+    }
+
+    private void putInt(final int value) throws IOException {
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(value);
+        position += Integer.BYTES;
+    }
+
+    private void putLong(final long value) throws IOException {
+        ensureRemaining(Long.BYTES);
+        buffer.putLong(value);
+        position += Long.BYTES;
+    }
+
+    private void put(@NotNull final ByteBuffer source) throws IOException {
+        final var src = source.duplicate();
+        position += src.remaining();
+        if (src.remaining() >= buffer.capacity()) {
+            // a large value is written directly, there is no point in copying it
+            drain();
+            writeFully(src);
+            return;
+        }
+        while (src.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            final var limit = src.limit();
+            src.limit(src.position() + Math.min(src.remaining(), buffer.remaining()));
+            buffer.put(src);
+            src.limit(limit);
+        }
+    }
+
+    private void ensureRemaining(final int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(@NotNull final ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    /**
+     * Return the buffer to the pool, the writer can not be used after that.
+     */
+    @Override
+    public void close() {
+        if (compressor != null) {
+            compressor.close();
+        }
+        BUFFERS.offer(buffer.clear());
+    }
+
+    @NotNull
+    private static ByteBuffer acquireBuffer(final int size) {
+        final var buffer = BUFFERS.poll();
+        if (buffer == null || buffer.capacity() != size) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        return buffer;
+    }
+}
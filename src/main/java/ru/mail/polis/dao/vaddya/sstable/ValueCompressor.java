@@ -0,0 +1,210 @@
+package ru.mail.polis.dao.vaddya.sstable;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the values of a table with a dictionary trained on the sampled values of the same table,
+ * so the small values with the same structure, e.g. JSON documents of the same schema, share the repeated parts.
+ *
+ * <p>The dictionary is built of the segments of the samples which contain the most frequent {@value #GRAM}-grams,
+ * a gram contributes to the score of a segment only until the first segment containing it is taken.
+ * The best segments are placed at the end of the dictionary, where the matches are the cheapest to encode.
+ */
+@NotThreadSafe
+final class ValueCompressor {
+    /**
+     * Values shorter than this are not worth compressing.
+     */
+    static final int MIN_VALUE_SIZE = 32;
+    /**
+     * Values longer than this compress well without the dictionary or are stored in the value log.
+     */
+    static final int MAX_VALUE_SIZE = 16 * 1024;
+    static final int MAX_DICTIONARY_SIZE = 32 * 1024; // the window of Deflate
+    private static final int GRAM = 8;
+    private static final int SEGMENT = 64;
+    private static final int HASH_BITS = 16;
+
+    private final byte[] dictionary;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private ByteBuffer output = ByteBuffer.allocate(MAX_VALUE_SIZE);
+    private long rawBytes;
+    private long storedBytes;
+
+    private ValueCompressor(@NotNull final byte[] dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    static boolean isCompressible(@NotNull final ByteBuffer value) {
+        return value.remaining() >= MIN_VALUE_SIZE && value.remaining() <= MAX_VALUE_SIZE;
+    }
+
+    /**
+     * Train the dictionary on the samples, the dictionary might be empty if the samples share nothing.
+     *
+     * @param samples values to train on, see {@link #isCompressible(ByteBuffer)}
+     * @param size    maximal size of the dictionary
+     * @return a compressor
+     */
+    @NotNull
+    static ValueCompressor train(
+            @NotNull final List<ByteBuffer> samples,
+            final int size) {
+        final var counts = new int[1 << HASH_BITS];
+        for (final var sample : samples) {
+            for (var i = sample.position(); i + GRAM <= sample.limit(); i++) {
+                counts[hash(sample, i)]++;
+            }
+        }
+
+        final var candidates = new PriorityQueue<Segment>((a, b) -> Integer.compare(b.score, a.score));
+        for (final var sample : samples) {
+            for (var from = sample.position(); from < sample.limit(); from += SEGMENT) {
+                final var segment = new Segment(sample, from, Math.min(sample.limit(), from + SEGMENT));
+                segment.score = segment.score(counts);
+                if (segment.score > 0) {
+                    candidates.add(segment);
+                }
+            }
+        }
+
+        final var taken = new ArrayList<Segment>();
+        var takenBytes = 0;
+        while (!candidates.isEmpty() && takenBytes < size) {
+            final var best = candidates.poll();
+            // the scores only decrease, so the segment is the best if its actual score beats the next stored one
+            final var score = best.score(counts);
+            final var next = candidates.peek();
+            if (next != null && score < next.score) {
+                best.score = score;
+                if (score > 0) {
+                    candidates.add(best);
+                }
+                continue;
+            }
+            if (score == 0) {
+                break;
+            }
+            best.take(counts);
+            taken.add(best);
+            takenBytes += best.to - best.from;
+        }
+
+        // the worst segments go first, so the overflow is cut from them
+        final var dictionary = ByteBuffer.allocate(Math.min(takenBytes, size));
+        var skip = takenBytes - dictionary.capacity();
+        for (var i = taken.size() - 1; i >= 0; i--) {
+            final var segment = taken.get(i);
+            final var length = segment.to - segment.from;
+            if (skip >= length) {
+                skip -= length;
+                continue;
+            }
+            dictionary.put(segment.sample.duplicate().position(segment.from + skip).limit(segment.to));
+            skip = 0;
+        }
+        return new ValueCompressor(dictionary.array());
+    }
+
+    boolean hasDictionary() {
+        return dictionary.length > 0;
+    }
+
+    /**
+     * Compress the value if it gets smaller, the compressed value is valid until the next call.
+     *
+     * @return the compressed value or {@code null} if the value should be stored as is
+     */
+    @Nullable
+    ByteBuffer compress(@NotNull final ByteBuffer value) {
+        if (!hasDictionary() || !isCompressible(value)) {
+            return null;
+        }
+        deflater.reset();
+        deflater.setDictionary(dictionary);
+        deflater.setInput(value.duplicate());
+        deflater.finish();
+        // the compressed value and its raw size should be smaller than the value
+        output.clear().limit(value.remaining() - Integer.BYTES);
+        while (!deflater.finished() && output.hasRemaining()) {
+            deflater.deflate(output);
+        }
+        if (!deflater.finished()) {
+            return null;
+        }
+        return output.flip();
+    }
+
+    /**
+     * Account the size of an inline value before and after the compression.
+     */
+    void account(
+            final int rawSize,
+            final int storedSize) {
+        rawBytes += rawSize;
+        storedBytes += storedSize;
+    }
+
+    @NotNull
+    ValueDictionary toDictionary() {
+        return new ValueDictionary(dictionary, rawBytes, storedBytes);
+    }
+
+    /**
+     * Release the native memory of the compressor.
+     */
+    void close() {
+        deflater.end();
+        output = ByteBuffer.allocate(0);
+    }
+
+    private static int hash(
+            @NotNull final ByteBuffer buffer,
+            final int position) {
+        return (int) ((buffer.getLong(position) * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - HASH_BITS));
+    }
+
+    private static final class Segment {
+        private final ByteBuffer sample;
+        private final int from;
+        private final int to;
+        private int score;
+
+        Segment(
+                @NotNull final ByteBuffer sample,
+                final int from,
+                final int to) {
+            this.sample = sample;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Sum the counts of the grams that are seen more than once, the unique ones give no matches.
+         */
+        int score(@NotNull final int[] counts) {
+            var score = 0;
+            for (var i = from; i + GRAM <= to; i++) {
+                final var count = counts[hash(sample, i)];
+                if (count > 1) {
+                    score += count;
+                }
+            }
+            return score;
+        }
+
+        void take(@NotNull final int[] counts) {
+            for (var i = from; i + GRAM <= to; i++) {
+                counts[hash(sample, i)] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.mail.polis.dao.vaddya.sstable;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Dictionary shared by the values of a table, it is the preset dictionary of the raw Deflate streams
+ * of the compressed values (see {@link ValueCompressor}).
+ *
+ * <p>The meta block contains:
+ * <ul>
+ * <li> Total size of the inline values before the compression (8 bytes)
+ * <li> Total size of the inline values as they are stored (8 bytes)
+ * <li> Dictionary (the rest of the block)
+ * </ul>
+ */
+@ThreadSafe
+final class ValueDictionary {
+    // the inflaters own native memory, so they are reused by the threads instead of being created per value
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final byte[] dictionary;
+    private final long rawBytes;
+    private final long storedBytes;
+
+    ValueDictionary(
+            @NotNull final byte[] dictionary,
+            final long rawBytes,
+            final long storedBytes) {
+        this.dictionary = dictionary;
+        this.rawBytes = rawBytes;
+        this.storedBytes = storedBytes;
+    }
+
+    @NotNull
+    static ValueDictionary read(@NotNull final ByteBuffer block) throws IOException {
+        if (block.remaining() < Long.BYTES * 2) {
+            throw new IOException("Invalid SSTable format: value dictionary is too small");
+        }
+        final var rawBytes = block.getLong(block.position());
+        final var storedBytes = block.getLong(block.position() + Long.BYTES);
+        final var dictionary = new byte[block.remaining() - Long.BYTES * 2];
+        block.duplicate().position(block.position() + Long.BYTES * 2).get(dictionary);
+        return new ValueDictionary(dictionary, rawBytes, storedBytes);
+    }
+
+    @NotNull
+    ByteBuffer toBuffer() {
+        return ByteBuffer.allocate(Long.BYTES * 2 + dictionary.length)
+                .putLong(rawBytes)
+                .putLong(storedBytes)
+                .put(dictionary)
+                .flip();
+    }
+
+    @NotNull
+    byte[] dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the ratio of the size of the inline values to the size they take in the table.
+     */
+    double compressionRatio() {
+        return storedBytes == 0 ? 1.0 : (double) rawBytes / storedBytes;
+    }
+
+    /**
+     * Decompress the value filling the remaining bytes of the target.
+     *
+     * @param source compressed value
+     * @param target buffer with exactly the size of the value remaining
+     * @throws IllegalStateException if the value is corrupted
+     */
+    void decompress(
+            @NotNull final ByteBuffer source,
+            @NotNull final ByteBuffer target) {
+        final var inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setDictionary(dictionary);
+        inflater.setInput(source);
+        try {
+            while (target.hasRemaining()) {
+                if (inflater.inflate(target) == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Compressed value is truncated");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed value is corrupted", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ValueDictionary{size=" + dictionary.length + ", ratio=" + compressionRatio() + '}';
+    }
+}
@@ -0,0 +1,115 @@
+package ru.mail.polis.dao.vaddya.sstable;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Immutable configuration of the SSTable writing.
+ */
+@ThreadSafe
+public final class WriterConfig {
+    private static final int MIN_BUFFER_SIZE = 4 * 1024;
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final WriterConfig DEFAULT = new WriterConfig(null, DEFAULT_BUFFER_SIZE, ForcePolicy.ON_FINISH, 0);
+
+    @Nullable
+    private final PrefixExtractor prefixExtractor;
+    private final int bufferSizeInBytes;
+    private final ForcePolicy forcePolicy;
+    private final int dictionarySizeInBytes;
+
+    /**
+     * Get the default configuration: no prefix filters, 1 MiB buffer, tables are forced to the disk,
+     * values are not compressed.
+     */
+    @NotNull
+    public static WriterConfig defaults() {
+        return DEFAULT;
+    }
+
+    private WriterConfig(
+            @Nullable final PrefixExtractor prefixExtractor,
+            final int bufferSizeInBytes,
+            @NotNull final ForcePolicy forcePolicy,
+            final int dictionarySizeInBytes) {
+        this.prefixExtractor = prefixExtractor;
+        this.bufferSizeInBytes = bufferSizeInBytes;
+        this.forcePolicy = forcePolicy;
+        this.dictionarySizeInBytes = dictionarySizeInBytes;
+    }
+
+    /**
+     * Build prefix filters of the tables using the extractor.
+     */
+    @NotNull
+    public WriterConfig withPrefixExtractor(@NotNull final PrefixExtractor prefixExtractor) {
+        return new WriterConfig(prefixExtractor, bufferSizeInBytes, forcePolicy, dictionarySizeInBytes);
+    }
+
+    /**
+     * Set size of the write buffer, the table is written by chunks of this size.
+     *
+     * @throws IllegalArgumentException if the size is less than 4 KiB
+     */
+    @NotNull
+    public WriterConfig withBufferSize(final int bufferSizeInBytes) {
+        if (bufferSizeInBytes < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size should be at least " + MIN_BUFFER_SIZE);
+        }
+        return new WriterConfig(prefixExtractor, bufferSizeInBytes, forcePolicy, dictionarySizeInBytes);
+    }
+
+    /**
+     * Set the policy of forcing the written tables to the disk.
+     */
+    @NotNull
+    public WriterConfig withForcePolicy(@NotNull final ForcePolicy forcePolicy) {
+        return new WriterConfig(prefixExtractor, bufferSizeInBytes, forcePolicy, dictionarySizeInBytes);
+    }
+
+    /**
+     * Compress the small inline values of each table with a dictionary trained on the first values of the table.
+     *
+     * @param dictionarySizeInBytes maximal size of the dictionary, 0 disables the compression
+     * @throws IllegalArgumentException if the size is negative or exceeds 32 KiB
+     */
+    @NotNull
+    public WriterConfig withDictionaryCompression(final int dictionarySizeInBytes) {
+        if (dictionarySizeInBytes < 0 || dictionarySizeInBytes > ValueCompressor.MAX_DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Dictionary size should be between 0 and "
+                    + ValueCompressor.MAX_DICTIONARY_SIZE);
+        }
+        return new WriterConfig(prefixExtractor, bufferSizeInBytes, forcePolicy, dictionarySizeInBytes);
+    }
+
+    @Nullable
+    public PrefixExtractor prefixExtractor() {
+        return prefixExtractor;
+    }
+
+    public int bufferSizeInBytes() {
+        return bufferSizeInBytes;
+    }
+
+    @NotNull
+    public ForcePolicy forcePolicy() {
+        return forcePolicy;
+    }
+
+    public int dictionarySizeInBytes() {
+        return dictionarySizeInBytes;
+    }
+
+    public enum ForcePolicy {
+        /**
+         * Leave the written data in the page cache, it is lost in case of OS crash.
+         */
+        NONE,
+        /**
+         * Force the table to the disk before it is opened.
+         */
+        ON_FINISH
+    }
+}
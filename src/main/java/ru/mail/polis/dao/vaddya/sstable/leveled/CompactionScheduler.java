@@ -0,0 +1,450 @@
+package ru.mail.polis.dao.vaddya.sstable.leveled;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
+import ru.mail.polis.dao.vaddya.RangeTombstones;
+import ru.mail.polis.dao.vaddya.sstable.SSTable;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.LongSupplier;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Schedules compaction jobs when the tables are installed instead of polling the levels.
+ *
+ * <p>Each level gets a score: L0 is scored by its size and by the number of its tables,
+ * the other levels are scored by their size relative to the target size of the level.
+ * The level with the highest score of at least 1 is compacted first. A job merges the level
+ * into the next one, so it holds both levels, and the jobs holding different levels run concurrently.
+ *
+ * <p>Flushed tables which do not overlap the levels are installed directly into the deepest level.
+ *
+ * <p>The range tombstones merged into the last level have no older entries below, so they are dropped
+ * once no other table overlaps them and the MemTables hold no entries older than them.
+ */
+@ThreadSafe
+final class CompactionScheduler implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(CompactionScheduler.class);
+    private static final int L0_TABLES_TRIGGER = 2;
+    private static final int TIMEOUT = 60;
+
+    private final List<Level> levels;
+    private final ReadWriteLock lock;
+    private final long compactionThresholdInBytes;
+    private final LongSupplier unflushedSince;
+    private final ExecutorService executor;
+    // levels held by the running jobs
+    private final boolean[] busy;
+    private boolean closed;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param levels                     levels to compact
+     * @param lock                       lock to atomically replace the tables of the levels
+     * @param compactionThresholdInBytes threshold in bytes when zero level need to be compacted
+     * @param unflushedSince             the timestamp the entries yet to be installed are newer than
+     */
+    CompactionScheduler(
+            @NotNull final List<Level> levels,
+            @NotNull final ReadWriteLock lock,
+            final long compactionThresholdInBytes,
+            @NotNull final LongSupplier unflushedSince) {
+        this.levels = levels;
+        this.lock = lock;
+        this.compactionThresholdInBytes = compactionThresholdInBytes;
+        this.unflushedSince = unflushedSince;
+        this.busy = new boolean[levels.size()];
+        final var threadFactory = new ThreadFactoryBuilder().setNameFormat("compactor-%d").build();
+        this.executor = Executors.newFixedThreadPool(levels.size() / 2, threadFactory);
+    }
+
+    /**
+     * Submit jobs for the levels that need to be compacted, should be called when tables are installed.
+     */
+    void wake() {
+        synchronized (this) {
+            while (!closed) {
+                final var level = nextLevel();
+                if (level < 0) {
+                    return;
+                }
+                try {
+                    executor.execute(() -> runInBackground(level));
+                } catch (RejectedExecutionException e) {
+                    log.error("Unable to submit compaction of L{}", level, e);
+                    release(level);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Install a flushed table which does not overlap any level into the deepest level not held by the jobs,
+     * so the tables of sequential writes skip the rewrites through L0. Overlapping tables and tables with
+     * range tombstones go to L0 to be merged with the older entries on the way down.
+     *
+     * @param generation generation of the table flushed to L0
+     * @param table      the flushed table
+     */
+    void install(
+            final int generation,
+            @NotNull final SSTable table) {
+        synchronized (this) {
+            final var index = installLevel(table);
+            lock.readLock().lock();
+            try {
+                if (index > 0) {
+                    level(index).moveTable(generation, table);
+                    log.info("T{} does not overlap the levels above and is installed to L{}", generation, index);
+                } else {
+                    level(0).addTable(generation, table);
+                }
+            } catch (IOException e) {
+                log.error("Unable to move T{} to L{}: {}", generation, index, e.getMessage());
+                level(0).addTable(generation, table);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        wake();
+    }
+
+    /**
+     * Install an ingested table into the deepest level which does not overlap it together with the levels above.
+     *
+     * @param generation generation of the table
+     * @param table      the ingested table
+     * @param path       the table file in the storage directory
+     * @throws IOException if the file can not be moved, the table is not installed then
+     */
+    void ingest(
+            final int generation,
+            @NotNull final SSTable table,
+            @NotNull final Path path) throws IOException {
+        synchronized (this) {
+            final var index = table.count() > 0
+                    && table.rangeTombstones().isEmpty()
+                    && !level(0).overlaps(table.lowest(), table.highest())
+                    ? deepestFreeLevel(table.lowest(), table.highest())
+                    : 0;
+            lock.readLock().lock();
+            try {
+                level(index).moveTable(generation, table, path);
+            } finally {
+                lock.readLock().unlock();
+            }
+            log.info("T{} is ingested to L{}: {}", generation, index, table);
+        }
+        wake();
+    }
+
+    /**
+     * Merge each level into the next one regardless of the scores, so all the entries end up in the last level
+     * and the covered entries are dropped. Waits for the running jobs holding the levels.
+     *
+     * @throws IOException if cannot merge the levels
+     */
+    void compact() throws IOException {
+        for (var index = 0; index < levels.size() - 1; index++) {
+            holdWhenFree(index);
+            try {
+                if (level(index).tableCount() > 0) {
+                    compactWholeLevel(index);
+                }
+            } finally {
+                release(index);
+            }
+        }
+        log.info("After compaction: {}", levels);
+        wake();
+    }
+
+    /**
+     * Get the number of bytes that should be moved to the next levels to bring all the scores below 1.
+     */
+    long pendingCompactionBytes() {
+        lock.readLock().lock();
+        try {
+            var pending = 0L;
+            for (var index = 0; index < levels.size() - 1; index++) {
+                final var size = level(index).sizeInBytes();
+                if (index == 0) {
+                    pending += score(0) >= 1 ? size : 0;
+                } else {
+                    pending += Math.max(size - threshold(index), 0);
+                }
+            }
+            return pending;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(TIMEOUT, TimeUnit.SECONDS)) {
+                log.error("Unable to await termination of compactor");
+            }
+        } catch (InterruptedException e) {
+            log.error("Unable to stop compactor {}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pick the level with the highest score among the levels not held by the running jobs and hold it.
+     *
+     * @return index of the level or {@code -1} if there is nothing to compact
+     */
+    private int nextLevel() {
+        var best = -1;
+        var bestScore = 1.0;
+        for (var index = 0; index < levels.size() - 1; index++) {
+            if (!isFree(index)) {
+                continue;
+            }
+            final var score = score(index);
+            if (score >= bestScore) {
+                best = index;
+                bestScore = score;
+            }
+        }
+        if (best >= 0) {
+            hold(best);
+        }
+        return best;
+    }
+
+    private int installLevel(@NotNull final SSTable table) {
+        if (table.count() == 0 || !table.rangeTombstones().isEmpty()) {
+            return 0;
+        }
+        final var lowest = table.lowest();
+        final var highest = table.highest();
+        var empty = true;
+        for (final var level : levels) {
+            if (level.overlaps(lowest, highest)) {
+                return 0;
+            }
+            empty &= level.tableCount() == 0;
+        }
+        if (empty) {
+            return 0; // the first table gives no evidence of sequential writes
+        }
+        return deepestFreeLevel(lowest, highest);
+    }
+
+    /**
+     * Get the deepest level which does not overlap the keys together with the levels above (except L0)
+     * and is not held by the running jobs.
+     */
+    private int deepestFreeLevel(
+            @NotNull final ByteBuffer lowest,
+            @NotNull final ByteBuffer highest) {
+        var index = 0;
+        while (index + 1 < levels.size() && !level(index + 1).overlaps(lowest, highest)) {
+            index++;
+        }
+        // the levels held by the running jobs might get overlapping tables when the jobs complete
+        while (index > 0 && busy[index]) {
+            index--;
+        }
+        return index;
+    }
+
+    private double score(final int index) {
+        final var level = level(index);
+        final var sizeScore = (double) level.sizeInBytes() / threshold(index);
+        if (index == 0) {
+            return Math.max(sizeScore, (double) level.tableCount() / L0_TABLES_TRIGGER);
+        }
+        return sizeScore;
+    }
+
+    private long threshold(final int index) {
+        return compactionThresholdInBytes * (index + 1);
+    }
+
+    private boolean isFree(final int index) {
+        return !busy[index] && !busy[index + 1];
+    }
+
+    private void hold(final int index) {
+        busy[index] = true;
+        busy[index + 1] = true;
+    }
+
+    private synchronized void holdWhenFree(final int index) {
+        while (!isFree(index)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while awaiting compaction", e);
+            }
+        }
+        hold(index);
+    }
+
+    private synchronized void release(final int index) {
+        busy[index] = false;
+        busy[index + 1] = false;
+        notifyAll();
+    }
+
+    private void runInBackground(final int index) {
+        try {
+            run(index);
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Unable to compact L{}: {}", index, e.getMessage());
+        } finally {
+            release(index);
+        }
+        // the next level might need to be compacted now
+        wake();
+    }
+
+    private void run(final int index) throws IOException {
+        if (index == 0) {
+            compactWholeLevel(0);
+        } else {
+            compactLevel(index);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("L{} is compacted, pending compaction: {} bytes", index, pendingCompactionBytes());
+        }
+    }
+
+    private void compactLevel(final int index) throws IOException {
+        final var lowerTable = level(index).maxSizedTable();
+        final var higherLevelSnapshot = level(index + 1).snapshot();
+        final var poolTombstones = rangeTombstones();
+        log.info("Merging T{} of L{} with {} tables of L{}",
+                lowerTable.getKey(), index, higherLevelSnapshot.tables().size(), index + 1);
+
+        final var createdTables = higherLevelSnapshot.mergeWith(lowerTable.getValue(), poolTombstones);
+        replaceTables(index, List.of(lowerTable.getKey()), higherLevelSnapshot.tables().keySet(), createdTables);
+    }
+
+    private void compactWholeLevel(final int index) throws IOException {
+        final var lowerLevelSnapshot = level(index).snapshot();
+        final var higherLevelSnapshot = level(index + 1).snapshot();
+        final var poolTombstones = rangeTombstones();
+        log.info("Merging {} tables of L{} with {} tables of L{}",
+                lowerLevelSnapshot.tables().size(), index, higherLevelSnapshot.tables().size(), index + 1);
+        final var createdTables = higherLevelSnapshot.mergeWith(lowerLevelSnapshot, poolTombstones);
+        replaceTables(index, lowerLevelSnapshot.tables().keySet(), higherLevelSnapshot.tables().keySet(),
+                createdTables);
+    }
+
+    /**
+     * Atomically replace the merged tables of the levels with the created ones,
+     * the created table of the range tombstones is dropped if they are obsolete in the last level.
+     */
+    private void replaceTables(
+            final int index,
+            @NotNull final Collection<Integer> lowerGenerations,
+            @NotNull final Collection<Integer> higherGenerations,
+            @NotNull final Map<Integer, SSTable> createdTables) {
+        final List<Integer> obsolete;
+        lock.writeLock().lock();
+        try {
+            obsolete = index + 1 == levels.size() - 1
+                    ? obsoleteTombstones(createdTables, lowerGenerations, higherGenerations)
+                    : List.of();
+            level(index).removeTables(lowerGenerations);
+            level(index + 1).removeTables(higherGenerations);
+            createdTables.keySet().removeAll(obsolete);
+            level(index + 1).addTables(createdTables);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!obsolete.isEmpty()) {
+            // the tables were not added, so only their files are removed
+            level(index + 1).removeTables(obsolete);
+            log.info("Range tombstones of {} have nothing to remove in L{} and are dropped", obsolete, index + 1);
+        }
+    }
+
+    /**
+     * Get the created tables of the range tombstones which have nothing to remove in the last level,
+     * should be called under the write lock, so no table is installed meanwhile.
+     * There are no older entries below the last level, so a tombstone might remove only the entries of the tables
+     * out of the job and of the MemTables. It is kept while any of those tables overlaps its range or the MemTables
+     * might hold the entries older than it, including the tables queued to flush. The tombstones of a table
+     * are dropped all together, so a table is kept if any of its tombstones is not obsolete.
+     */
+    @NotNull
+    private List<Integer> obsoleteTombstones(
+            @NotNull final Map<Integer, SSTable> createdTables,
+            @NotNull final Collection<Integer> lowerGenerations,
+            @NotNull final Collection<Integer> higherGenerations) {
+        final var since = unflushedSince.getAsLong();
+        final var others = levels.stream()
+                .flatMap(level -> level.tables().entrySet().stream())
+                .filter(table -> table.getValue().count() > 0)
+                .filter(table -> !lowerGenerations.contains(table.getKey())
+                        && !higherGenerations.contains(table.getKey()))
+                .map(Map.Entry::getValue)
+                .collect(toList());
+        return createdTables.entrySet().stream()
+                .filter(table -> table.getValue().count() == 0)
+                .filter(table -> table.getValue().rangeTombstones().stream()
+                        .allMatch(tombstone -> tombstone.ts() < since
+                                && others.stream().noneMatch(other -> overlaps(other, tombstone))))
+                .map(Map.Entry::getKey)
+                .collect(toList());
+    }
+
+    private static boolean overlaps(
+            @NotNull final SSTable table,
+            @NotNull final RangeTombstone tombstone) {
+        final var to = tombstone.to();
+        return table.highest().compareTo(tombstone.from()) >= 0
+                && (to == null || table.lowest().compareTo(to) < 0);
+    }
+
+    /**
+     * Collect the range tombstones of all the levels to fold the merge operands of a job with respect to them.
+     */
+    @NotNull
+    private RangeTombstones rangeTombstones() {
+        lock.readLock().lock();
+        try {
+            return RangeTombstones.of(levels.stream()
+                    .flatMap(level -> level.rangeTombstones().stream())
+                    .collect(toList()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    private Level level(final int index) {
+        return levels.get(index);
+    }
+}
@@ -1,30 +1,43 @@
 package ru.mail.polis.dao.vaddya.sstable.leveled;
 
 import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.mail.polis.dao.vaddya.ByteBufferUtils;
+import ru.mail.polis.dao.vaddya.Checkpoint;
+import ru.mail.polis.dao.vaddya.Cursor;
 import ru.mail.polis.dao.vaddya.IteratorUtils;
+import ru.mail.polis.dao.vaddya.MergeUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
+import ru.mail.polis.dao.vaddya.RangeTombstones;
 import ru.mail.polis.dao.vaddya.TableEntry;
 import ru.mail.polis.dao.vaddya.naming.GenerationProvider;
 import ru.mail.polis.dao.vaddya.naming.LeveledFileManagerImpl;
 import ru.mail.polis.dao.vaddya.sstable.SSTable;
 import ru.mail.polis.dao.vaddya.sstable.SSTablePool;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
 import ru.mail.polis.dao.vaddya.sstable.leveled.LevelUtils.RangedSSTable;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
-import java.util.Set;
+import java.util.NoSuchElementException;
 import java.util.TreeSet;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -42,16 +55,19 @@ final class Level implements SSTablePool {
     private final long targetTableSizeInBytes;
     private final LeveledFileManagerImpl fileManager;
     private final GenerationProvider generationProvider;
+    private final WriterConfig writerConfig;
 
     Level(
             final int index,
             final long targetTableSizeInBytes,
             @NotNull final LeveledFileManagerImpl fileManager,
-            @NotNull final GenerationProvider generationProvider) {
+            @NotNull final GenerationProvider generationProvider,
+            @NotNull final WriterConfig writerConfig) {
         this.index = index;
         this.targetTableSizeInBytes = targetTableSizeInBytes;
         this.fileManager = fileManager;
         this.generationProvider = generationProvider;
+        this.writerConfig = writerConfig;
     }
 
     @Override
@@ -67,6 +83,31 @@ final class Level implements SSTablePool {
         }
     }
 
+    /**
+     * Move the file of a table flushed to L0 to the current level and add the table.
+     *
+     * @throws IOException if the file can not be moved, the table is not added then
+     */
+    void moveTable(
+            final int generation,
+            @NotNull final SSTable table) throws IOException {
+        moveTable(generation, table, fileManager.finalPathTo(generation));
+    }
+
+    /**
+     * Move the table file to the current level and add the table.
+     *
+     * @param source the table file, it is copied if the level is stored on another file system
+     * @throws IOException if the file can not be moved, the table is not added then
+     */
+    void moveTable(
+            final int generation,
+            @NotNull final SSTable table,
+            @NotNull final Path source) throws IOException {
+        fileManager.move(source, fileManager.finalPathTo(generation, index));
+        addTable(generation, table);
+    }
+
     void addTables(@NotNull final Map<Integer, SSTable> tables) {
         lock.writeLock().lock();
         try {
@@ -84,7 +125,8 @@ final class Level implements SSTablePool {
     public void removeTable(final int generation) {
         lock.writeLock().lock();
         try {
-            tables.remove(RangedSSTable.fromGeneration(generation));
+            // the tables are ordered by their keys, so the table is looked up by its generation
+            tables.removeIf(table -> table.generation == generation);
             log.debug("T{} is removed from L{}", generation, index);
         } finally {
             lock.writeLock().unlock();
@@ -96,9 +138,7 @@ final class Level implements SSTablePool {
     void removeTables(@NotNull final Collection<Integer> generations) {
         lock.writeLock().lock();
         try {
-            generations.stream()
-                    .map(RangedSSTable::fromGeneration)
-                    .forEach(tables::remove);
+            tables.removeIf(table -> generations.contains(table.generation));
             log.debug("Tables {} are removed from L{}", generations, index);
         } finally {
             lock.writeLock().unlock();
@@ -112,6 +152,74 @@ final class Level implements SSTablePool {
         // do nothing
     }
 
+    /**
+     * Move the files into the level and add the tables, the tables below L0 should not overlap the level.
+     * The placement of the tables by the levels is chosen by {@link LeveledSSTablePoolImpl#ingest(List)}.
+     *
+     * @throws IOException if a file can not be moved or is not a valid table, or the table overlaps the level,
+     *                     the preceding files stay ingested
+     */
+    @Override
+    public void ingest(@NotNull final List<Path> paths) throws IOException {
+        for (final var path : paths) {
+            final var generation = generationProvider.nextGeneration();
+            final var tempPath = fileManager.tempPathTo(generation, index);
+            fileManager.move(path, tempPath);
+            final SSTable table;
+            try (var channel = FileChannel.open(tempPath, StandardOpenOption.READ)) {
+                table = SSTable.open(channel);
+                if (index > 0 && (!table.rangeTombstones().isEmpty() || overlaps(table.lowest(), table.highest()))) {
+                    throw new IOException("Table overlaps L" + index);
+                }
+            } catch (IOException e) {
+                fileManager.move(tempPath, path);
+                throw new IOException("Unable to ingest " + path + ": " + e.getMessage(), e);
+            }
+            moveTable(generation, table, tempPath);
+        }
+    }
+
+    @Override
+    public void checkpoint(@NotNull final Checkpoint checkpoint) throws IOException {
+        lock.readLock().lock();
+        try {
+            for (final var table : tables) {
+                checkpoint.add(fileManager.finalPathTo(table.generation, index));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int tableCount() {
+        lock.readLock().lock();
+        try {
+            return tables.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Check whether any table of the level might contain keys between {@code lowest} and {@code highest} (inclusive).
+     */
+    boolean overlaps(
+            @NotNull final ByteBuffer lowest,
+            @NotNull final ByteBuffer highest) {
+        lock.readLock().lock();
+        try {
+            final var candidates = index == 0 ? tables : tables.tailSet(RangedSSTable.fromValue(lowest));
+            for (final var table : candidates) {
+                if (table.ssTable.lowest().compareTo(highest) <= 0 && table.highest.compareTo(lowest) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     Map.Entry<Integer, SSTable> maxSizedTable() {
         lock.readLock().lock();
         try {
@@ -126,53 +234,73 @@ final class Level implements SSTablePool {
 
     /**
      * Merge tables of the current level with the specified table.
+     * Entries covered by the range tombstones are dropped, the tombstones themselves
+     * are moved to a separate table to be applied to the next levels.
      *
-     * @param table table (or level) to be merged with
+     * @param table          table (or level) to be merged with
+     * @param poolTombstones range tombstones of all the levels, the merge operands are folded with respect to them,
+     *                       since a tombstone out of the merged tables could remove the value under an operand
      * @return map of created SSTables with their generation.
      * @throws IOException if any IO error was occurred
      */
-    Map<Integer, SSTable> mergeWith(@NotNull final SSTable table) throws IOException {
+    Map<Integer, SSTable> mergeWith(
+            @NotNull final SSTable table,
+            @NotNull final RangeTombstones poolTombstones) throws IOException {
         final var totalEntriesCount = table.count() + count();
         final var totalSizeInBytes = table.sizeInBytes() + sizeInBytes();
         final var tableCount = Math.max(totalSizeInBytes / getTargetTableSizeInBytes(), 1);
-        final var entriesPerTable = (int) (totalEntriesCount / tableCount);
-
-        return tables.isEmpty()
-                ? flushWithoutMerge(table, entriesPerTable)
-                : flushWithMerge(table, entriesPerTable);
+        final var entriesPerTable = (int) Math.max(totalEntriesCount / tableCount, 1);
+        final var tombstones = new ArrayList<>(table.rangeTombstones());
+        tombstones.addAll(rangeTombstones());
+        final var fragmented = RangeTombstones.of(tombstones);
+
+        final var result = tables.isEmpty()
+                ? flushWithoutMerge(table, entriesPerTable, fragmented, poolTombstones)
+                : flushWithMerge(table, entriesPerTable, fragmented, poolTombstones);
+        if (!tombstones.isEmpty()) {
+            final var generation = generationProvider.nextGeneration();
+            final var ssTable = flushAndOpen(generation, Collections.emptyIterator(), tombstones);
+            result.put(generation, ssTable);
+            log.info("Range tombstones merged with L{} into T{}: {}", index, generation, ssTable);
+        }
+        return result;
     }
 
     @NotNull
     private Map<Integer, SSTable> flushWithoutMerge(
             @NotNull final SSTable table,
-            final int entriesPerTable) throws IOException {
+            final int entriesPerTable,
+            @NotNull final RangeTombstones tombstones,
+            @NotNull final RangeTombstones poolTombstones) throws IOException {
         final var result = new HashMap<Integer, SSTable>();
         final var iterator = table.iterator();
-        flushEntries(iterator, entriesPerTable, result);
+        flushEntries(iterator, entriesPerTable, tombstones, poolTombstones, result);
         return result;
     }
 
     @NotNull
     private Map<Integer, SSTable> flushWithMerge(
             final @NotNull SSTable table,
-            final int entriesPerTable) throws IOException {
+            final int entriesPerTable,
+            @NotNull final RangeTombstones tombstones,
+            @NotNull final RangeTombstones poolTombstones) throws IOException {
         final var result = new HashMap<Integer, SSTable>();
 
         // flush entries with keys lower than keys of the current level tables
         final var levelLowest = lowest();
         final var levelHighest = highest();
         final var lower = table.range(ByteBufferUtils.emptyBuffer(), levelLowest);
-        flushEntries(lower, entriesPerTable, result);
+        flushEntries(lower, entriesPerTable, tombstones, poolTombstones, result);
 
-        // merge with tables of the current level
-        final var range = table.range(levelLowest, levelHighest);
-        final var merged = IteratorUtils.collapseIterators(Set.of(iterator(), range));
-        flushEntries(merged, entriesPerTable, result);
+        // merge with tables of the current level including the entries with the highest key of the level
+        final var levelBound = ByteBufferUtils.successor(levelHighest);
+        final var range = table.range(levelLowest, levelBound);
+        final var merged = IteratorUtils.collapseIterators(List.of(range, iterator()));
+        flushEntries(merged, entriesPerTable, tombstones, poolTombstones, result);
 
         // flush entries with keys higher than keys of the current level tables
-        final var currentLevelHighest = highest();
-        final var higher = table.iterator(currentLevelHighest);
-        flushEntries(higher, entriesPerTable, result);
+        final var higher = table.iterator(levelBound);
+        flushEntries(higher, entriesPerTable, tombstones, poolTombstones, result);
 
         return result;
     }
@@ -180,6 +308,12 @@ final class Level implements SSTablePool {
     @Override
     @NotNull
     public Iterator<TableEntry> iterator(@NotNull final ByteBuffer from) {
+        return IteratorUtils.entries(cursor(from));
+    }
+
+    @NotNull
+    @Override
+    public Cursor cursor(@NotNull final ByteBuffer from) {
         final Collection<RangedSSTable> ssTables;
         lock.readLock().lock();
         try {
@@ -192,10 +326,10 @@ final class Level implements SSTablePool {
             lock.readLock().unlock();
         }
 
-        final var iterators = ssTables.stream()
-                .map(table -> table.ssTable.iterator(from))
+        final var cursors = ssTables.stream()
+                .map(table -> table.ssTable.cursor(from))
                 .collect(toList());
-        return IteratorUtils.collapseIterators(iterators);
+        return IteratorUtils.collapseCursors(cursors);
     }
 
     @NotNull
@@ -207,22 +341,70 @@ final class Level implements SSTablePool {
             return iterator(from);
         }
 
+        final var iterators = overlapping(from, to).stream()
+                .map(table -> table.ssTable.range(from, to))
+                .collect(toList());
+        return IteratorUtils.collapseIterators(iterators);
+    }
+
+    /**
+     * Scan only the tables which ranges overlap with the prefix and whose filters allow it.
+     */
+    @NotNull
+    @Override
+    public Iterator<TableEntry> prefix(@NotNull final ByteBuffer prefix) {
+        final var iterators = overlapping(prefix, ByteBufferUtils.prefixUpperBound(prefix)).stream()
+                .filter(table -> table.ssTable.mayContainPrefix(prefix))
+                .map(table -> table.ssTable.prefix(prefix))
+                .collect(toList());
+        return IteratorUtils.collapseIterators(iterators);
+    }
+
+    @Override
+    public void lookup(
+            @NotNull final List<ByteBuffer> sortedKeys,
+            @NotNull final Map<ByteBuffer, TableEntry> result) {
         final Collection<RangedSSTable> ssTables;
         lock.readLock().lock();
         try {
-            if (index == 0) {
-                ssTables = new TreeSet<>(tables);
-            } else {
-                ssTables = tables.subSet(RangedSSTable.fromValue(from), RangedSSTable.fromValue(to));
-            }
+            ssTables = new ArrayList<>(tables);
         } finally {
             lock.readLock().unlock();
         }
 
-        final var iterators = ssTables.stream()
-                .map(table -> table.ssTable.range(from, to))
-                .collect(toList());
-        return IteratorUtils.collapseIterators(iterators);
+        if (index == 0) {
+            ssTables.forEach(table -> table.ssTable.lookup(sortedKeys, result));
+            return;
+        }
+
+        // tables do not overlap, so each key is looked up in a single table
+        var from = 0;
+        for (final var table : ssTables) {
+            if (from == sortedKeys.size()) {
+                return;
+            }
+            if (table.ssTable.count() == 0) {
+                continue; // range tombstones only, their bounds overlap the other tables
+            }
+            final var to = upperBound(sortedKeys, from, table.highest);
+            if (from < to) {
+                table.ssTable.lookup(sortedKeys.subList(from, to), result);
+            }
+            from = to;
+        }
+    }
+
+    @NotNull
+    @Override
+    public Collection<RangeTombstone> rangeTombstones() {
+        lock.readLock().lock();
+        try {
+            return tables.stream()
+                    .flatMap(x -> x.ssTable.rangeTombstones().stream())
+                    .collect(toList());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     @Override
@@ -269,7 +451,7 @@ final class Level implements SSTablePool {
     Level snapshot() {
         lock.readLock().lock();
         try {
-            final var level = new Level(index, targetTableSizeInBytes, fileManager, generationProvider);
+            final var level = new Level(index, targetTableSizeInBytes, fileManager, generationProvider, writerConfig);
             level.tables.addAll(tables);
             return level;
         } finally {
@@ -288,25 +470,101 @@ final class Level implements SSTablePool {
     }
 
     private void flushEntries(
-            @NotNull final Iterator<TableEntry> iterator,
+            @NotNull final Iterator<TableEntry> entries,
             final int entriesPerTable,
+            @NotNull final RangeTombstones tombstones,
+            @NotNull final RangeTombstones poolTombstones,
             @NotNull final Map<Integer, SSTable> result) throws IOException {
+        final var folded = IteratorUtils.foldOperands(entries,
+                versions -> MergeUtils.compact(versions, poolTombstones));
+        final var iterator = Iterators.peekingIterator(IteratorUtils.uncoveredEntries(folded, tombstones));
         while (iterator.hasNext()) {
             final var generation = generationProvider.nextGeneration();
-            final var limited = Iterators.limit(iterator, entriesPerTable);
-            final var ssTable = flushAndOpen(generation, limited);
+            final var limited = limit(iterator, entriesPerTable);
+            final var ssTable = flushAndOpen(generation, limited, List.of());
             result.put(generation, ssTable);
             log.info("Entries merged with L{} into T{}: {}", index, generation, ssTable);
         }
     }
     
+    /**
+     * Take up to the limit of entries, but never split the versions of a key kept under a merge operand,
+     * so the tables of the level do not overlap.
+     */
+    @NotNull
+    private static Iterator<TableEntry> limit(
+            @NotNull final PeekingIterator<TableEntry> iterator,
+            final int limit) {
+        return new Iterator<>() {
+            private int count;
+            @Nullable
+            private ByteBuffer lastKey;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext() && (count < limit || iterator.peek().getKey().equals(lastKey));
+            }
+
+            @Override
+            public TableEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final var entry = iterator.next();
+                count++;
+                lastKey = entry.getKey();
+                return entry;
+            }
+        };
+    }
+
     @NotNull
     private SSTable flushAndOpen(
             final int generation,
-            @NotNull final Iterator<TableEntry> iterator) throws IOException {
+            @NotNull final Iterator<TableEntry> iterator,
+            @NotNull final Collection<RangeTombstone> tombstones) throws IOException {
         final var tempPath = fileManager.tempPathTo(generation, index);
         final var finalPath = fileManager.finalPathTo(generation, index);
-        return SSTable.flushAndOpen(iterator, tempPath, finalPath);
+        return SSTable.flushAndOpen(iterator, tempPath, finalPath, writerConfig, tombstones);
+    }
+
+    private static int upperBound(
+            @NotNull final List<ByteBuffer> sortedKeys,
+            final int from,
+            @NotNull final ByteBuffer highest) {
+        var to = from;
+        while (to < sortedKeys.size() && sortedKeys.get(to).compareTo(highest) <= 0) {
+            to++;
+        }
+        return to;
+    }
+
+    /**
+     * Get tables which might contain keys between {@code from} (inclusive) and {@code to} (exclusive).
+     */
+    @NotNull
+    private Collection<RangedSSTable> overlapping(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        lock.readLock().lock();
+        try {
+            if (index == 0) {
+                return new TreeSet<>(tables);
+            }
+            final var result = new ArrayList<RangedSSTable>();
+            for (final var table : tables.tailSet(RangedSSTable.fromValue(from))) {
+                if (table.ssTable.count() == 0) {
+                    continue; // range tombstones only, their bounds overlap the other tables
+                }
+                if (to != null && table.ssTable.lowest().compareTo(to) >= 0) {
+                    break;
+                }
+                result.add(table);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     private long getTargetTableSizeInBytes() {
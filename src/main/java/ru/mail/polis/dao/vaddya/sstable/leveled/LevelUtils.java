@@ -1,7 +1,6 @@
 package ru.mail.polis.dao.vaddya.sstable.leveled;
 
 import org.jetbrains.annotations.NotNull;
-import ru.mail.polis.dao.vaddya.ByteBufferUtils;
 import ru.mail.polis.dao.vaddya.TableEntry;
 import ru.mail.polis.dao.vaddya.sstable.SSTable;
 
@@ -21,10 +20,6 @@ final class LevelUtils {
         final SSTable ssTable;
         final ByteBuffer highest;
 
-        static RangedSSTable fromGeneration(final int generation) {
-            return new RangedSSTable(generation, SingleValueTable.LOWEST);
-        }
-
         static RangedSSTable fromValue(@NotNull final ByteBuffer value) {
             return new RangedSSTable(-1, SingleValueTable.wrap(value));
         }
@@ -65,8 +60,6 @@ final class LevelUtils {
      * Special class that can be used as a bound in the range-queries of {@code NavigableSet<SSTable>}.
      */
     static final class SingleValueTable implements SSTable {
-        private static final SingleValueTable LOWEST = new SingleValueTable(ByteBufferUtils.emptyBuffer());
-
         final ByteBuffer value;
 
         static SingleValueTable wrap(@NotNull final ByteBuffer value) {
@@ -1,35 +1,36 @@
 package ru.mail.polis.dao.vaddya.sstable.leveled;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.vaddya.Checkpoint;
+import ru.mail.polis.dao.vaddya.Cursor;
+import ru.mail.polis.dao.vaddya.IteratorUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
 import ru.mail.polis.dao.vaddya.TableEntry;
 import ru.mail.polis.dao.vaddya.naming.GenerationProvider;
 import ru.mail.polis.dao.vaddya.naming.LeveledFileManagerImpl;
 import ru.mail.polis.dao.vaddya.sstable.SSTable;
 import ru.mail.polis.dao.vaddya.sstable.SSTablePool;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
 
 import javax.annotation.concurrent.ThreadSafe;
-import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
 import java.util.stream.IntStream;
 
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toUnmodifiableList;
 import static ru.mail.polis.dao.vaddya.IteratorUtils.toCollapsedMergedIterator;
@@ -41,47 +42,103 @@ public class LeveledSSTablePoolImpl implements SSTablePool {
 
     private final List<Level> levels;
     private final LeveledFileManagerImpl fileManager;
-    private final long compactionThresholdInBytes;
-    private final LeveledCompactor compactor = new LeveledCompactor();
+    private final GenerationProvider generationProvider;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CompactionScheduler scheduler;
 
     /**
-     * Creates a SSTablePool instance with leveled compaction the in background.
+     * Creates a SSTablePool instance with leveled compaction in the background.
+     * Compaction is scheduled when the tables are added to the pool.
      * https://github.com/facebook/rocksdb/wiki/Leveled-Compaction
      *
      * @param compactionThresholdInBytes threshold in bytes when zero level need to be compacted
      * @param targetTableSizeInBytes     target base size of a table on a disk
      * @param fileManager                a file manager to access files
      * @param generationProvider         a generation provider to atomically increment and get generation
+     * @param writerConfig               a configuration of the tables writing
+     * @param unflushedSince             the timestamp the entries yet to be added to the pool are newer than,
+     *                                   the range tombstones which are not older are kept in the last level
      */
     public LeveledSSTablePoolImpl(
             final long compactionThresholdInBytes,
             final long targetTableSizeInBytes,
             @NotNull final LeveledFileManagerImpl fileManager,
-            @NotNull final GenerationProvider generationProvider) {
+            @NotNull final GenerationProvider generationProvider,
+            @NotNull final WriterConfig writerConfig,
+            @NotNull final LongSupplier unflushedSince) {
         this.fileManager = fileManager;
-        this.compactionThresholdInBytes = compactionThresholdInBytes;
+        this.generationProvider = generationProvider;
         this.levels = IntStream.range(0, LEVELS_COUNT)
-                .mapToObj(index -> new Level(index, targetTableSizeInBytes, fileManager, generationProvider))
+                .mapToObj(index ->
+                        new Level(index, targetTableSizeInBytes, fileManager, generationProvider, writerConfig))
                 .collect(toUnmodifiableList());
 
         final var maxGeneration = openTables();
         generationProvider.setNextGeneration(maxGeneration + 1);
+
+        this.scheduler = new CompactionScheduler(levels, lock, compactionThresholdInBytes, unflushedSince);
+        scheduler.wake();
     }
 
     @NotNull
     @Override
     public Iterator<TableEntry> iterator(@NotNull final ByteBuffer from) {
+        return IteratorUtils.entries(cursor(from));
+    }
+
+    @NotNull
+    @Override
+    public Cursor cursor(@NotNull final ByteBuffer from) {
+        final List<Cursor> cursors;
+        lock.readLock().lock();
+        try {
+            cursors = levels.stream()
+                    .map(table -> table.cursor(from))
+                    .collect(toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return IteratorUtils.collapseCursors(cursors);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<TableEntry> prefix(@NotNull final ByteBuffer prefix) {
         lock.readLock().lock();
         try {
             return levels.stream()
-                    .map(table -> table.iterator(from))
+                    .map(level -> level.prefix(prefix))
                     .collect(toCollapsedMergedIterator());
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    @Override
+    public void lookup(
+            @NotNull final List<ByteBuffer> sortedKeys,
+            @NotNull final Map<ByteBuffer, TableEntry> result) {
+        lock.readLock().lock();
+        try {
+            levels.forEach(level -> level.lookup(sortedKeys, result));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public Collection<RangeTombstone> rangeTombstones() {
+        lock.readLock().lock();
+        try {
+            return levels.stream()
+                    .flatMap(level -> level.rangeTombstones().stream())
+                    .collect(toUnmodifiableList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     @Override
     public long sizeInBytes() {
         lock.readLock().lock();
@@ -123,9 +180,45 @@ public class LeveledSSTablePoolImpl implements SSTablePool {
     public void addTable(
             final int generation,
             @NotNull final SSTable table) {
+        scheduler.install(generation, table);
+    }
+
+    /**
+     * Move externally built tables into the pool, each table gets a new generation and is placed into
+     * the deepest level which does not overlap it together with the levels above, so the loaded data
+     * is not rewritten by the compaction of the upper levels.
+     *
+     * @param paths table files, they are moved into the pool
+     * @throws IOException if a file can not be moved or is not a valid table, the invalid file is left in place
+     *                     and the preceding files stay ingested
+     */
+    @Override
+    public void ingest(@NotNull final List<Path> paths) throws IOException {
+        for (final var path : paths) {
+            final var generation = generationProvider.nextGeneration();
+            final var tempPath = fileManager.tempPathTo(generation);
+            Files.move(path, tempPath);
+            final SSTable table;
+            try (var channel = FileChannel.open(tempPath, StandardOpenOption.READ)) {
+                table = SSTable.open(channel);
+            } catch (IOException e) {
+                Files.move(tempPath, path);
+                throw new IOException("Unable to ingest " + path + ": " + e.getMessage(), e);
+            }
+            scheduler.ingest(generation, table, tempPath);
+        }
+    }
+
+    /**
+     * Link the files of all the levels, the compaction can not replace the tables until the files are linked.
+     */
+    @Override
+    public void checkpoint(@NotNull final Checkpoint checkpoint) throws IOException {
         lock.readLock().lock();
         try {
-            level(0).addTable(generation, table);
+            for (final var level : levels) {
+                level.checkpoint(checkpoint);
+            }
         } finally {
             lock.readLock().unlock();
         }
@@ -141,14 +234,22 @@ public class LeveledSSTablePoolImpl implements SSTablePool {
         }
     }
 
+    /**
+     * Compact L0 and then all the levels that need to be compacted, waits for the background jobs.
+     */
     @Override
     public void compact() throws IOException {
-        compactor.compact();
+        scheduler.compact();
+    }
+
+    @Override
+    public long pendingCompactionBytes() {
+        return scheduler.pendingCompactionBytes();
     }
 
     @Override
     public void close() {
-        compactor.close();
+        scheduler.close();
     }
 
     @Override
@@ -174,7 +275,13 @@ public class LeveledSSTablePoolImpl implements SSTablePool {
                 if (level < 0 || level >= LEVELS_COUNT) {
                     throw new IllegalArgumentException("Level == " + level);
                 }
-                try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // the table could be written with other storage tiers or restored from a checkpoint
+                final var expected = fileManager.finalPathTo(generation, level);
+                if (!path.equals(expected)) {
+                    fileManager.move(path, expected);
+                    log.info("Table {} is moved to {}", path, expected);
+                }
+                try (var channel = FileChannel.open(expected, StandardOpenOption.READ)) {
                     final var ssTable = SSTable.open(channel);
                     levels.get(level).addTable(generation, ssTable);
                 }
@@ -186,137 +293,4 @@ public class LeveledSSTablePoolImpl implements SSTablePool {
         }
         return maxGeneration;
     }
-
-    private class LeveledCompactor implements Closeable {
-        // check every FREQUENCY seconds if compaction needs to be done
-        private static final int FREQUENCY = 1;
-        private static final int TIMEOUT = 60;
-
-        private final ScheduledExecutorService executor;
-        private final ScheduledFuture<?> future;
-        private final AtomicBoolean isCompacting = new AtomicBoolean();
-        private CountDownLatch compactionLatch = new CountDownLatch(1);
-
-        LeveledCompactor() {
-            final var threadFactory = new ThreadFactoryBuilder().setNameFormat("compactor-%d").build();
-            this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
-            this.future = executor.scheduleAtFixedRate(this::compactIfNeeded, FREQUENCY, FREQUENCY, TimeUnit.SECONDS);
-        }
-
-        void compact() throws IOException {
-            if (!isCompacting.compareAndSet(false, true)) {
-                try {
-                    compactionLatch.await(TIMEOUT, TimeUnit.SECONDS);
-                } catch (InterruptedException e) {
-                    log.error("Error while awaiting compaction completion: {}", e.getMessage());
-                    Thread.currentThread().interrupt();
-                }
-                return;
-            }
-            try {
-                compactionLatch = new CountDownLatch(1);
-                for (int i = 0; i < LEVELS_COUNT - 1; i++) {
-                    if (!compactLevel(i)) {
-                        break;
-                    }
-                }
-                log.info("After compaction: {}", levels);
-            } finally {
-                isCompacting.set(false);
-                compactionLatch.countDown();
-            }
-        }
-
-        @Override
-        public void close() {
-            executor.shutdown();
-            if (isCompacting.get() && !future.isDone()) {
-                try {
-                    future.cancel(false);
-                    if (!executor.awaitTermination(TIMEOUT, TimeUnit.SECONDS)) {
-                        log.error("Unable to await termination of compactor");
-                    }
-                } catch (InterruptedException e) {
-                    log.error("Unable to stop compactor {}", e.getMessage());
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }
-
-        private boolean compactLevel(final int index) throws IOException {
-            if (index == 0) {
-                return compactZeroLevel();
-            }
-
-            final var level = level(index);
-            if (level.sizeInBytes() < getLevelCompactionThreshold(index)) {
-                return false;
-            }
-
-            final var lowerTable = level(index).maxSizedTable();
-            final var higherLevelSnapshot = level(index + 1).snapshot();
-            log.info("Merging T{} of {} with {} tables of L{}", 
-                    lowerTable, index, higherLevelSnapshot.tables().size(), index + 1);
-
-            final var createdTables = higherLevelSnapshot.mergeWith(lowerTable.getValue());
-
-            lock.writeLock().lock();
-            try {
-                level(index).removeTable(lowerTable.getKey());
-                level(index + 1).removeTables(higherLevelSnapshot.tables().keySet());
-                level(index + 1).addTables(createdTables);
-            } finally {
-                lock.writeLock().unlock();
-            }
-            return true;
-        }
-
-        private boolean compactZeroLevel() throws IOException {
-            final var zeroLevelSnapshot = level(0).snapshot();
-            final var firstLevelSnapshot = level(1).snapshot();
-            log.info("Merging {} tables of L0 with {} tables of L1", 
-                    zeroLevelSnapshot.tables().size(), firstLevelSnapshot.tables().size());
-            final var createdTables = firstLevelSnapshot.mergeWith(zeroLevelSnapshot);
-
-            lock.writeLock().lock();
-            try {
-                level(0).removeTables(zeroLevelSnapshot.tables().keySet());
-                level(1).removeTables(firstLevelSnapshot.tables().keySet());
-                level(1).addTables(createdTables);
-            } finally {
-                lock.writeLock().unlock();
-            }
-            return true;
-        }
-
-        private void compactIfNeeded() {
-            if (isCompacting.get()) {
-                return;
-            }
-
-            final long zeroLevelSizeInBytes;
-            lock.readLock().lock();
-            try {
-                zeroLevelSizeInBytes = level(0).sizeInBytes();
-            } finally {
-                lock.readLock().unlock();
-            }
-
-            if (zeroLevelSizeInBytes > compactionThresholdInBytes) {
-                try {
-                    compact();
-                } catch (IOException e) {
-                    log.error("Unable to compact: {}", e.getMessage());
-                } catch (RejectedExecutionException e) {
-                    log.error("Unable to submit compaction task", e);
-                }
-            } else {
-                log.debug("No compaction needed: {}/{}", zeroLevelSizeInBytes, compactionThresholdInBytes);
-            }
-        }
-
-        private long getLevelCompactionThreshold(final int index) {
-            return compactionThresholdInBytes * (index + 1);
-        }
-    }
 }
@@ -0,0 +1,349 @@
+package ru.mail.polis.dao.vaddya.vlog;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.vaddya.Checkpoint;
+import ru.mail.polis.dao.vaddya.TableEntry;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Append-only files that keep large values separately from the tables,
+ * so the compaction moves only pointers to the values instead of the values themselves.
+ *
+ * <p>File will contain records, one for each separated value:
+ * <ul>
+ * <li> Size of the key (4 bytes) and the key itself (N bytes)
+ * <li> Size of the value (4 bytes) and the value itself (M bytes)
+ * </ul>
+ *
+ * <p>Files are written once, either on the flush of a MemTable or on the relocation of the live values by GC,
+ * and are named after the generation of the table that refers to them.
+ */
+@ThreadSafe
+public final class ValueLog {
+    private static final Logger log = LoggerFactory.getLogger(ValueLog.class);
+    private static final String FINAL_SUFFIX = ".vlog";
+    private static final String TEMP_SUFFIX = ".vlog.tmp";
+
+    private final File root;
+    private final int thresholdInBytes;
+    private final Set<Integer> sealed = ConcurrentHashMap.newKeySet();
+    private volatile Map<Integer, ByteBuffer> files = Map.of(); // copied on write, so readers can take a snapshot
+
+    /**
+     * Creates a value log and opens the existing files.
+     *
+     * @param root             folder to save and read files from
+     * @param thresholdInBytes values larger than threshold are separated from the tables
+     * @throws UncheckedIOException if cannot open the files
+     */
+    public ValueLog(
+            @NotNull final File root,
+            final int thresholdInBytes) {
+        this.root = root;
+        this.thresholdInBytes = thresholdInBytes;
+
+        final var names = Optional.ofNullable(root.list()).map(Stream::of).orElseGet(Stream::empty)
+                .filter(name -> name.endsWith(FINAL_SUFFIX))
+                .collect(toList());
+        for (final var name : names) {
+            try {
+                final var fileId = Integer.parseInt(name.substring(0, name.length() - FINAL_SUFFIX.length()));
+                register(fileId);
+                sealed.add(fileId);
+            } catch (NumberFormatException e) {
+                log.error("Unable to parse ID of the value log file {}", name);
+            }
+        }
+    }
+
+    /**
+     * Replace values larger than threshold with the pointers to the value log file,
+     * merge operands are kept in the tables.
+     * The file is forced to the disk when the iterator is exhausted.
+     *
+     * @param fileId  ID of the file to write values to
+     * @param entries entries to separate
+     * @return an iterator over the entries with the separated values
+     */
+    @NotNull
+    public Iterator<TableEntry> separate(
+            final int fileId,
+            @NotNull final Iterator<TableEntry> entries) {
+        final var writer = new Writer(fileId);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                if (entries.hasNext()) {
+                    return true;
+                }
+                writer.finish();
+                return false;
+            }
+
+            @Override
+            public TableEntry next() {
+                final var entry = entries.next();
+                if (entry.hasTombstone()
+                        || entry.isOperand()
+                        || entry.valuePointer() != null
+                        || entry.getValue().remaining() <= thresholdInBytes) {
+                    return entry;
+                }
+                final var pointer = writer.append(entry.getKey(), entry.getValue());
+                return TableEntry.pointer(entry.getKey(), pointer, entry.ts());
+            }
+        };
+    }
+
+    /**
+     * Copy values of the entries into a new file keeping timestamps of the entries.
+     *
+     * @param fileId  ID of the file to write values to
+     * @param entries entries with the values stored in the value log in ascending order
+     * @return entries pointing to the new file
+     */
+    @NotNull
+    public List<TableEntry> relocate(
+            final int fileId,
+            @NotNull final Collection<TableEntry> entries) {
+        final var resolver = resolver();
+        final var writer = new Writer(fileId);
+        final var relocated = new ArrayList<TableEntry>(entries.size());
+        for (final var entry : entries) {
+            final var value = resolver.apply(entry).getValue();
+            final var pointer = writer.append(entry.getKey(), value);
+            relocated.add(TableEntry.pointer(entry.getKey(), pointer, entry.ts()));
+        }
+        writer.finish();
+        return relocated;
+    }
+
+    /**
+     * Get a function that reads values of the entries by their pointers.
+     * The function keeps the files opened at the moment of the call, even if they are removed later.
+     */
+    @NotNull
+    public UnaryOperator<TableEntry> resolver() {
+        final var snapshot = files;
+        return entry -> resolve(snapshot, entry);
+    }
+
+    /**
+     * Get a function that maps IDs of the files to their mapped contents.
+     * The function keeps the files opened at the moment of the call, even if they are removed later.
+     */
+    @NotNull
+    public IntFunction<ByteBuffer> snapshot() {
+        final var snapshot = files;
+        return fileId -> file(snapshot, fileId);
+    }
+
+    /**
+     * Mark the file as referred by a table, so it can be collected by GC.
+     */
+    public void seal(final int fileId) {
+        if (files.containsKey(fileId)) {
+            sealed.add(fileId);
+        }
+    }
+
+    /**
+     * Get IDs of the files that can be collected by GC.
+     */
+    @NotNull
+    public Collection<Integer> collectable() {
+        return new TreeMap<>(files).keySet()
+                .stream()
+                .filter(sealed::contains)
+                .collect(toList());
+    }
+
+    /**
+     * Read pointers to all values of the file.
+     *
+     * @param fileId ID of the file
+     * @return pointers by their keys
+     */
+    @NotNull
+    public NavigableMap<ByteBuffer, ValuePointer> pointers(final int fileId) {
+        final var file = file(files, fileId).duplicate();
+        final var pointers = new TreeMap<ByteBuffer, ValuePointer>();
+        while (file.hasRemaining()) {
+            final var keySize = file.getInt();
+            final var key = file.duplicate().limit(file.position() + keySize).slice();
+            file.position(file.position() + keySize);
+            final var valueSize = file.getInt();
+            pointers.put(key, ValuePointer.of(fileId, file.position(), valueSize));
+            file.position(file.position() + valueSize);
+        }
+        return pointers;
+    }
+
+    /**
+     * Get size of the file in bytes.
+     */
+    public long sizeInBytes(final int fileId) {
+        return file(files, fileId).capacity();
+    }
+
+    /**
+     * Add all the written files to the checkpoint, the caller guarantees that the files are not removed meanwhile.
+     *
+     * @throws IOException if cannot link a file
+     */
+    public void checkpoint(@NotNull final Checkpoint checkpoint) throws IOException {
+        for (final var fileId : new TreeMap<>(files).keySet()) {
+            checkpoint.add(finalPath(fileId));
+        }
+    }
+
+    /**
+     * Remove the file. Values of the file are still available to the previously created resolvers.
+     */
+    public void remove(final int fileId) throws IOException {
+        synchronized (this) {
+            final var copy = new HashMap<>(files);
+            copy.remove(fileId);
+            files = Map.copyOf(copy);
+        }
+        sealed.remove(fileId);
+        Files.deleteIfExists(finalPath(fileId));
+    }
+
+    @NotNull
+    private static TableEntry resolve(
+            @NotNull final Map<Integer, ByteBuffer> files,
+            @NotNull final TableEntry entry) {
+        final var pointer = entry.valuePointer();
+        if (pointer == null) {
+            return entry;
+        }
+        final var offset = (int) pointer.offset();
+        final var value = file(files, pointer.fileId()).duplicate()
+                .position(offset)
+                .limit(offset + pointer.length())
+                .slice();
+        return entry.resolved(value);
+    }
+
+    @NotNull
+    private static ByteBuffer file(
+            @NotNull final Map<Integer, ByteBuffer> files,
+            final int fileId) {
+        final var file = files.get(fileId);
+        if (file == null) {
+            throw new IllegalStateException("Value log file is missing: " + fileId);
+        }
+        return file;
+    }
+
+    private void register(final int fileId) {
+        try (var channel = FileChannel.open(finalPath(fileId), StandardOpenOption.READ)) {
+            final var mapped = channel.map(READ_ONLY, 0, channel.size()).asReadOnlyBuffer();
+            synchronized (this) {
+                final var copy = new HashMap<>(files);
+                copy.put(fileId, mapped);
+                files = Map.copyOf(copy);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @NotNull
+    private Path finalPath(final int fileId) {
+        return root.toPath().resolve(fileId + FINAL_SUFFIX);
+    }
+
+    @NotNull
+    private Path tempPath(final int fileId) {
+        return root.toPath().resolve(fileId + TEMP_SUFFIX);
+    }
+
+    /**
+     * Writes values into a temporary file that is opened lazily on the first value
+     * and becomes available for reading after the finish.
+     */
+    @NotThreadSafe
+    private final class Writer {
+        private final int fileId;
+        private FileChannel channel;
+        private long offset;
+
+        Writer(final int fileId) {
+            this.fileId = fileId;
+        }
+
+        @NotNull
+        ValuePointer append(
+                @NotNull final ByteBuffer key,
+                @NotNull final ByteBuffer value) {
+            final var valueSize = value.remaining();
+            final var buffer = ByteBuffer.allocate(Integer.BYTES + key.remaining() + Integer.BYTES + valueSize)
+                    .putInt(key.remaining())
+                    .put(key.duplicate())
+                    .putInt(valueSize)
+                    .put(value.duplicate())
+                    .flip();
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(tempPath(fileId),
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                }
+                final var valueOffset = offset + buffer.remaining() - valueSize;
+                while (buffer.hasRemaining()) {
+                    offset += channel.write(buffer);
+                }
+                return ValuePointer.of(fileId, valueOffset, valueSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void finish() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.force(true);
+                channel.close();
+                channel = null;
+                Files.move(tempPath(fileId), finalPath(fileId), StandardCopyOption.ATOMIC_MOVE);
+                register(fileId);
+                log.debug("Value log file {} was written: {} bytes", fileId, offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.mail.polis.dao.vaddya.vlog;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Location of a value stored in the value log.
+ */
+@ThreadSafe
+public final class ValuePointer {
+    private final int fileId;
+    private final long offset;
+    private final int length;
+
+    @NotNull
+    public static ValuePointer of(
+            final int fileId,
+            final long offset,
+            final int length) {
+        return new ValuePointer(fileId, offset, length);
+    }
+
+    private ValuePointer(
+            final int fileId,
+            final long offset,
+            final int length) {
+        this.fileId = fileId;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Get ID of the value log file.
+     */
+    public int fileId() {
+        return fileId;
+    }
+
+    /**
+     * Get offset of the value in the value log file.
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * Get length of the value in bytes.
+     */
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ValuePointer)) {
+            return false;
+        }
+        final var that = (ValuePointer) o;
+        return fileId == that.fileId && offset == that.offset && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * fileId + Long.hashCode(offset)) + length;
+    }
+
+    @Override
+    public String toString() {
+        return "ValuePointer{" + fileId + ":" + offset + "+" + length + '}';
+    }
+}
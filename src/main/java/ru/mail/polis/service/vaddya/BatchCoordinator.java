@@ -0,0 +1,115 @@
+package ru.mail.polis.service.vaddya;
+
+import one.nio.http.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.service.vaddya.topology.ReplicationFactor;
+import ru.mail.polis.service.vaddya.topology.Topology;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static ru.mail.polis.service.vaddya.ResponseUtils.emptyResponse;
+
+/**
+ * Coordinates multi-key requests between the replicas,
+ * so each node receives a single request with all its keys.
+ */
+@ThreadSafe
+final class BatchCoordinator {
+    private static final Logger log = LoggerFactory.getLogger(BatchCoordinator.class);
+
+    private final Topology<String> topology;
+    private final Map<String, ServiceClient> clients;
+
+    BatchCoordinator(
+            @NotNull final Topology<String> topology,
+            @NotNull final Map<String, ServiceClient> clients) {
+        this.topology = topology;
+        this.clients = clients;
+    }
+
+    /**
+     * Send operations of the batch to the replicas and respond when every operation
+     * is acknowledged by enough replicas.
+     *
+     * @param session    session to send response to
+     * @param operations operations of the batch
+     * @param rf         replication factor
+     */
+    void apply(
+            @NotNull final ServiceSession session,
+            @NotNull final List<BatchOperation> operations,
+            @NotNull final ReplicationFactor rf) {
+        final var groups = ReplicaGroups.group(topology, rf, operations, BatchOperation::id);
+        final var futures = groups.byNode()
+                .entrySet()
+                .stream()
+                .collect(toMap(Map.Entry::getKey, e -> clients.get(e.getKey()).batchAsync(e.getValue())));
+
+        CompletableFutureUtils.succeeded(futures)
+                .thenApply(acked -> groups.acknowledged(acked.keySet())
+                        ? emptyResponse(Response.CREATED)
+                        : emptyResponse(ResponseUtils.NOT_ENOUGH_REPLICAS))
+                .thenAccept(session::send)
+                .exceptionally(this::logError);
+    }
+
+    /**
+     * Request values from the replicas and respond with the merged values
+     * when each value is received from enough replicas.
+     *
+     * @param session session to send response to
+     * @param ids     IDs of the values
+     * @param rf      replication factor
+     */
+    void getAll(
+            @NotNull final ServiceSession session,
+            @NotNull final List<String> ids,
+            @NotNull final ReplicationFactor rf) {
+        final var groups = ReplicaGroups.group(topology, rf, ids, Function.identity());
+        final var futures = groups.byNode()
+                .entrySet()
+                .stream()
+                .collect(toMap(Map.Entry::getKey, e -> clients.get(e.getKey()).getAllAsync(e.getValue())));
+
+        CompletableFutureUtils.succeeded(futures)
+                .thenApply(responses -> mergeValues(groups, responses))
+                .thenAccept(session::send)
+                .exceptionally(this::logError);
+    }
+
+    @NotNull
+    private static Response mergeValues(
+            @NotNull final ReplicaGroups<String> groups,
+            @NotNull final Map<String, Map<String, Value>> responses) {
+        if (!groups.acknowledged(responses.keySet())) {
+            return emptyResponse(ResponseUtils.NOT_ENOUGH_REPLICAS);
+        }
+
+        final var ids = groups.items();
+        final var merged = new LinkedHashMap<String, Value>();
+        for (var i = 0; i < ids.size(); i++) {
+            final var id = ids.get(i);
+            final var values = groups.replicasOf(i, responses.keySet())
+                    .stream()
+                    .map(node -> responses.get(node).getOrDefault(id, Value.absent()))
+                    .collect(toList());
+            merged.put(id, Value.merge(values));
+        }
+        return Response.ok(BatchUtils.encodeValues(merged));
+    }
+
+    @Nullable
+    private Void logError(@NotNull final Throwable t) {
+        log.error("Unexpected error", t);
+        return null;
+    }
+}
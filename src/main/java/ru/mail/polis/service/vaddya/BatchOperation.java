@@ -0,0 +1,57 @@
+package ru.mail.polis.service.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Single upsert or removal of a write batch.
+ */
+@ThreadSafe
+final class BatchOperation {
+    private final String id;
+    @Nullable
+    private final byte[] data;
+
+    @NotNull
+    static BatchOperation upsert(
+            @NotNull final String id,
+            @NotNull final byte[] data) {
+        return new BatchOperation(id, data.clone());
+    }
+
+    @NotNull
+    static BatchOperation remove(@NotNull final String id) {
+        return new BatchOperation(id, null);
+    }
+
+    private BatchOperation(
+            @NotNull final String id,
+            @Nullable final byte[] data) {
+        this.id = id;
+        this.data = data;
+    }
+
+    @NotNull
+    String id() {
+        return id;
+    }
+
+    boolean isRemove() {
+        return data == null;
+    }
+
+    @NotNull
+    byte[] data() {
+        if (data == null) {
+            throw new IllegalStateException("Trying to get data of removal");
+        }
+        return data.clone();
+    }
+
+    @Override
+    public String toString() {
+        return (isRemove() ? "remove" : "upsert") + " id=" + id.hashCode();
+    }
+}
@@ -0,0 +1,213 @@
+package ru.mail.polis.service.vaddya;
+
+import com.google.common.base.Charsets;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Binary formats of the multi-key requests and responses.
+ * Each ID is encoded as its size (4 bytes) followed by the ID itself in UTF-8.
+ *
+ * <p>Write batch is a sequence of operations, each one contains:
+ * <ul>
+ * <li> ID
+ * <li> Size of the value (4 bytes), if negative then it is a removal and value itself is not present
+ * <li> Value (M bytes)
+ * </ul>
+ *
+ * <p>Multi-get request is a sequence of IDs.
+ *
+ * <p>Multi-get response is a sequence of values, each one contains:
+ * <ul>
+ * <li> ID
+ * <li> Timestamp (8 bytes)
+ * <li> Size of the value (4 bytes), -1 if the value is removed and -2 if it is absent
+ * <li> Value (M bytes)
+ * </ul>
+ */
+final class BatchUtils {
+    private static final int REMOVE = -1;
+    private static final int REMOVED = -1;
+    private static final int ABSENT = -2;
+
+    private BatchUtils() {
+    }
+
+    @NotNull
+    static byte[] encodeBatch(@NotNull final Collection<BatchOperation> operations) {
+        final var ids = new ArrayList<byte[]>(operations.size());
+        final var values = new ArrayList<byte[]>(operations.size());
+        var size = 0;
+        for (final var operation : operations) {
+            final var id = operation.id().getBytes(Charsets.UTF_8);
+            final var data = operation.isRemove() ? null : operation.data();
+            ids.add(id);
+            values.add(data);
+            size += Integer.BYTES + id.length + Integer.BYTES + (data == null ? 0 : data.length);
+        }
+
+        final var buffer = ByteBuffer.allocate(size);
+        for (var i = 0; i < ids.size(); i++) {
+            final var id = ids.get(i);
+            final var data = values.get(i);
+            buffer.putInt(id.length).put(id);
+            if (data == null) {
+                buffer.putInt(REMOVE);
+            } else {
+                buffer.putInt(data.length).put(data);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decode operations of the batch.
+     *
+     * @param bytes encoded batch
+     * @return list of operations
+     * @throws IllegalArgumentException if the batch is malformed
+     */
+    @NotNull
+    static List<BatchOperation> decodeBatch(@NotNull final byte[] bytes) {
+        final var buffer = ByteBuffer.wrap(bytes);
+        final var operations = new ArrayList<BatchOperation>();
+        try {
+            while (buffer.hasRemaining()) {
+                final var id = readId(buffer);
+                final var dataSize = buffer.getInt();
+                if (dataSize == REMOVE) {
+                    operations.add(BatchOperation.remove(id));
+                } else {
+                    operations.add(BatchOperation.upsert(id, readBytes(buffer, dataSize)));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Batch is truncated", e);
+        }
+        return operations;
+    }
+
+    @NotNull
+    static byte[] encodeIds(@NotNull final Collection<String> ids) {
+        final var encoded = ids.stream()
+                .map(id -> id.getBytes(Charsets.UTF_8))
+                .collect(toList());
+        final var size = encoded.stream()
+                .mapToInt(id -> Integer.BYTES + id.length)
+                .sum();
+        final var buffer = ByteBuffer.allocate(size);
+        encoded.forEach(id -> buffer.putInt(id.length).put(id));
+        return buffer.array();
+    }
+
+    /**
+     * Decode IDs of the multi-get request.
+     *
+     * @param bytes encoded IDs
+     * @return list of IDs
+     * @throws IllegalArgumentException if the request is malformed
+     */
+    @NotNull
+    static List<String> decodeIds(@NotNull final byte[] bytes) {
+        final var buffer = ByteBuffer.wrap(bytes);
+        final var ids = new ArrayList<String>();
+        try {
+            while (buffer.hasRemaining()) {
+                ids.add(readId(buffer));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Request is truncated", e);
+        }
+        return ids;
+    }
+
+    @NotNull
+    static byte[] encodeValues(@NotNull final Map<String, Value> values) {
+        final var ids = new ArrayList<byte[]>(values.size());
+        final var datas = new ArrayList<byte[]>(values.size());
+        var size = 0;
+        for (final var entry : values.entrySet()) {
+            final var id = entry.getKey().getBytes(Charsets.UTF_8);
+            final var value = entry.getValue();
+            final var data = value.state() == Value.State.PRESENT ? value.data() : null;
+            ids.add(id);
+            datas.add(data);
+            size += Integer.BYTES + id.length + Long.BYTES + Integer.BYTES + (data == null ? 0 : data.length);
+        }
+
+        final var buffer = ByteBuffer.allocate(size);
+        var i = 0;
+        for (final var value : values.values()) {
+            final var id = ids.get(i);
+            final var data = datas.get(i);
+            i++;
+            buffer.putInt(id.length).put(id).putLong(value.ts());
+            if (value.state() == Value.State.PRESENT) {
+                buffer.putInt(data.length).put(data);
+            } else {
+                buffer.putInt(value.state() == Value.State.REMOVED ? REMOVED : ABSENT);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decode values of the multi-get response.
+     *
+     * @param bytes encoded values
+     * @return values by their IDs
+     * @throws IllegalArgumentException if the response is malformed
+     */
+    @NotNull
+    static Map<String, Value> decodeValues(@NotNull final byte[] bytes) {
+        final var buffer = ByteBuffer.wrap(bytes);
+        final var values = new HashMap<String, Value>();
+        try {
+            while (buffer.hasRemaining()) {
+                final var id = readId(buffer);
+                final var ts = buffer.getLong();
+                final var dataSize = buffer.getInt();
+                if (dataSize == REMOVED) {
+                    values.put(id, Value.removed(ts));
+                } else if (dataSize == ABSENT) {
+                    values.put(id, Value.absent());
+                } else {
+                    values.put(id, Value.present(readBytes(buffer, dataSize), ts));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Response is truncated", e);
+        }
+        return values;
+    }
+
+    @NotNull
+    private static String readId(@NotNull final ByteBuffer buffer) {
+        final var id = new String(readBytes(buffer, buffer.getInt()), Charsets.UTF_8);
+        if (id.isEmpty()) {
+            throw new IllegalArgumentException("Empty ID");
+        }
+        return id;
+    }
+
+    @NotNull
+    private static byte[] readBytes(
+            @NotNull final ByteBuffer buffer,
+            final int size) {
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Wrong size: " + size);
+        }
+        final var bytes = new byte[size];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
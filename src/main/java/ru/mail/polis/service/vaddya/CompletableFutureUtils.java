@@ -7,6 +7,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
@@ -62,6 +65,28 @@ final class CompletableFutureUtils {
         return future;
     }
 
+    /**
+     * Await completion of all the futures and collect results of the successfully completed ones.
+     *
+     * @param futures futures by their keys
+     * @return future of results of the succeeded futures by their keys, it never completes exceptionally
+     */
+    static <K, T> CompletableFuture<Map<K, T>> succeeded(@NotNull final Map<K, CompletableFuture<T>> futures) {
+        final var succeeded = Collections.synchronizedMap(new HashMap<K, T>());
+        final var completions = futures.entrySet()
+                .stream()
+                .map(e -> e.getValue().handle((result, error) -> {
+                    if (error == null) {
+                        succeeded.put(e.getKey(), result);
+                    } else {
+                        log.debug("Future {} completed exceptionally: {}", e.getKey(), error.getMessage());
+                    }
+                    return null;
+                }))
+                .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(completions).thenApply(x -> succeeded);
+    }
+
     @Nullable
     private static Void logError(@NotNull final Throwable t) {
         log.error("Unexpected error", t);
@@ -14,7 +14,10 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.mail.polis.dao.DAO;
-import ru.mail.polis.dao.vaddya.DAOImpl;
+import ru.mail.polis.dao.vaddya.EntryDAO;
+import ru.mail.polis.dao.vaddya.HybridClock;
+import ru.mail.polis.dao.vaddya.MergeOperator;
+import ru.mail.polis.dao.vaddya.RangeEstimate;
 import ru.mail.polis.service.Service;
 import ru.mail.polis.service.vaddya.topology.ReplicationFactor;
 import ru.mail.polis.service.vaddya.topology.Topology;
@@ -23,9 +26,12 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import static java.util.stream.Collectors.toList;
@@ -35,14 +41,17 @@ import static ru.mail.polis.service.vaddya.ResponseUtils.emptyResponse;
 
 @ThreadSafe
 public final class HttpService extends HttpServer implements Service {
-    private static final String RESPONSE_NOT_ENOUGH_REPLICAS = "504 Not Enough Replicas";
     private static final int MIN_WORKERS = 4;
     private static final Logger log = LoggerFactory.getLogger(HttpService.class);
 
-    private final DAOImpl dao;
+    private final EntryDAO dao;
     private final Topology<String> topology;
     private final ReplicationFactor quorum;
     private final Map<String, ServiceClient> clients;
+    private final LocalServiceClient local;
+    private final BatchCoordinator batches;
+    private final ColumnFamilyClients defaultFamily;
+    private final Map<String, ColumnFamilyClients> columnFamilies = new ConcurrentHashMap<>();
 
     /**
      * Create a {@link HttpServer} instance that implements {@link Service}.
@@ -81,10 +90,11 @@ public final class HttpService extends HttpServer implements Service {
 
         this.topology = topology;
         this.quorum = ReplicationFactor.quorum(topology.size());
-        this.dao = (DAOImpl) dao;
-        this.clients = topology.all()
-                .stream()
-                .collect(toMap(node -> node, this::createServiceClient));
+        this.dao = (EntryDAO) dao;
+        this.defaultFamily = new ColumnFamilyClients(this.dao, null);
+        this.local = defaultFamily.local;
+        this.clients = defaultFamily.clients;
+        this.batches = new BatchCoordinator(topology, clients);
     }
 
     @Override
@@ -92,6 +102,21 @@ public final class HttpService extends HttpServer implements Service {
         return new ServiceSession(socket, this);
     }
 
+    /**
+     * Move the local clock forward to the timestamp piggybacked by another node before handling the request,
+     * so the timestamps of the following local writes are greater.
+     * Only the internal requests are trusted to carry the timestamp, it is ignored in the client requests.
+     */
+    @Override
+    public void handleRequest(
+            @NotNull final Request request,
+            @NotNull final HttpSession session) throws IOException {
+        if (ResponseUtils.isProxied(request)) {
+            ResponseUtils.timestamp(request).ifPresent(this::observe);
+        }
+        super.handleRequest(request, session);
+    }
+
     @Override
     public void handleDefault(
             @NotNull final Request request,
@@ -122,11 +147,16 @@ public final class HttpService extends HttpServer implements Service {
     }
 
     /**
-     * Process request to get, put or delete an entity by ID
+     * Process request to get, put, merge (PATCH) or delete an entity by ID
      * and write response to the session instance.
+     * PUT is conditional if it has {@code If-None-Match: *} (the entity is absent)
+     * or {@code If-Match: <ts>} (the entity has the timestamp from {@code X-OK-Timestamp}),
+     * 412 is returned if the condition does not hold.
      *
      * @param id          entity ID
      * @param replicas    replication factor in format "ack/from"
+     * @param cf          column family, the default keyspace if absent
+     * @param op          merge operator of PATCH: "add", "append" or "max"
      * @param request     HTTP request
      * @param httpSession HTTP session
      */
@@ -134,6 +164,8 @@ public final class HttpService extends HttpServer implements Service {
     public void entity(
             @Param("id") final String id,
             @Param("replicas") final String replicas,
+            @Param("cf") final String cf,
+            @Param("op") final String op,
             @NotNull final Request request,
             @NotNull final HttpSession httpSession) {
         final var session = ServiceSession.cast(httpSession);
@@ -143,24 +175,28 @@ public final class HttpService extends HttpServer implements Service {
         }
 
         final var proxied = ResponseUtils.isProxied(request);
-        final ReplicationFactor rf;
-        try {
-            rf = proxied || replicas == null ? quorum : ReplicationFactor.parse(replicas);
-        } catch (IllegalArgumentException e) {
-            log.debug("[{}] Wrong replication factor: {}", port, replicas);
+        final var rf = replicationFactor(replicas, proxied);
+        if (rf == null) {
             session.sendEmptyResponse(Response.BAD_REQUEST);
             return;
         }
+        final var family = columnFamily(session, cf);
+        if (family == null) {
+            return;
+        }
 
         switch (request.getMethod()) {
             case Request.METHOD_GET:
-                scheduleGetEntity(session, id, rf, proxied);
+                scheduleGetEntity(session, family, id, rf, proxied);
                 break;
             case Request.METHOD_PUT:
-                schedulePutEntity(session, id, request.getBody(), rf, proxied);
+                schedulePutEntity(session, family, id, request, rf, proxied);
+                break;
+            case Request.METHOD_PATCH:
+                scheduleMergeEntity(session, family, id, mergeOperator(op), request.getBody(), rf, proxied);
                 break;
             case Request.METHOD_DELETE:
-                scheduleDeleteEntity(session, id, rf, proxied);
+                scheduleDeleteEntity(session, family, id, rf, proxied);
                 break;
             default:
                 log.debug("[{}] Not supported HTTP-method: {}", port, request.getMethod());
@@ -170,10 +206,14 @@ public final class HttpService extends HttpServer implements Service {
     }
 
     /**
-     * Process request to get range of values.
+     * Process request to get range of values or values which keys start with the prefix,
+     * or to delete range of values.
+     * Range deletion is sent to all nodes and requires acknowledgement of the quorum of them.
      *
      * @param start       Start key
      * @param end         End key
+     * @param prefix      Prefix of the keys, mutually exclusive with the range
+     * @param cf          column family, the default keyspace if absent
      * @param request     HTTP request
      * @param httpSession HTTP session
      */
@@ -181,41 +221,244 @@ public final class HttpService extends HttpServer implements Service {
     public void entities(
             @Param("start") final String start,
             @Param("end") final String end,
+            @Param("prefix") final String prefix,
+            @Param("cf") final String cf,
             @NotNull final Request request,
             @NotNull final HttpSession httpSession) {
         final var session = ServiceSession.cast(httpSession);
-        if (start == null || start.isEmpty()) {
+        final var hasRange = start != null && !start.isEmpty();
+        final var hasPrefix = prefix != null && !prefix.isEmpty();
+        if (hasRange == hasPrefix || hasPrefix && end != null) {
             session.sendEmptyResponse(Response.BAD_REQUEST);
             return;
         }
+        final var family = columnFamily(session, cf);
+        if (family == null) {
+            return;
+        }
+        if (request.getMethod() == Request.METHOD_DELETE && hasRange) {
+            scheduleDeleteEntities(session, family, start, end, ResponseUtils.isProxied(request));
+            return;
+        }
         if (request.getMethod() != Request.METHOD_GET) {
             session.sendEmptyResponse(Response.METHOD_NOT_ALLOWED);
             return;
         }
 
-        final var startBuffer = wrapString(start);
-        final var endBuffer = end == null ? null : wrapString(end);
         try {
-            final var range = dao.range(startBuffer, endBuffer);
-            session.stream(range);
+            if (hasPrefix) {
+                session.stream(family.dao.prefix(wrapString(prefix)));
+            } else {
+                session.stream(family.dao.cursor(wrapString(start), end == null ? null : wrapString(end)));
+            }
         } catch (IOException e) {
             log.error("Unable to stream range of values", e);
         }
     }
 
+    /**
+     * Process request to estimate the size and the number of values in the range of keys without reading them,
+     * the response body is the line {@code <bytes> <entries>}. The keys of any range are hashed over the vnodes
+     * of all the nodes, so the estimates of the nodes are summed, extrapolated to the nodes which did not respond
+     * and divided by the number of replicas of each key. The estimate includes the overwritten and removed values
+     * which are not compacted yet.
+     *
+     * @param start       Start key
+     * @param end         End key
+     * @param replicas    replication factor in format "ack/from" the values were written with
+     * @param cf          column family, the default keyspace if absent
+     * @param request     HTTP request
+     * @param httpSession HTTP session
+     */
+    @Path("/v0/entities/estimate")
+    public void entitiesEstimate(
+            @Param("start") final String start,
+            @Param("end") final String end,
+            @Param("replicas") final String replicas,
+            @Param("cf") final String cf,
+            @NotNull final Request request,
+            @NotNull final HttpSession httpSession) {
+        final var session = ServiceSession.cast(httpSession);
+        if (request.getMethod() != Request.METHOD_GET) {
+            session.sendEmptyResponse(Response.METHOD_NOT_ALLOWED);
+            return;
+        }
+        final var proxied = ResponseUtils.isProxied(request);
+        final var rf = replicationFactor(replicas, proxied);
+        if (start == null || start.isEmpty() || rf == null) {
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return;
+        }
+        final var family = columnFamily(session, cf);
+        if (family == null) {
+            return;
+        }
+
+        if (proxied) {
+            asyncExecute(() -> session.send(ResponseUtils.estimateToResponse(family.local.estimateRange(start, end))));
+            return;
+        }
+
+        final var futures = family.clients.entrySet()
+                .stream()
+                .collect(toMap(Map.Entry::getKey, e -> e.getValue().estimateRangeAsync(start, end)));
+        CompletableFutureUtils.succeeded(futures)
+                .thenApply(estimates -> {
+                    if (estimates.size() < quorum.ack()) {
+                        log.debug("[{}] Not enough replicas to estimate range: {}", port, estimates.size());
+                        return emptyResponse(ResponseUtils.NOT_ENOUGH_REPLICAS);
+                    }
+                    final var estimate = clusterEstimate(estimates.values(), futures.size(), rf.from());
+                    return ResponseUtils.estimateToResponse(estimate);
+                })
+                .thenAccept(session::send)
+                .exceptionally(this::logError);
+    }
+
+    /**
+     * Process request to get values by multiple IDs (see {@link BatchUtils} for the formats).
+     * IDs are grouped by replicas, so each node receives a single request.
+     *
+     * @param replicas    replication factor in format "ack/from"
+     * @param request     HTTP request
+     * @param httpSession HTTP session
+     */
+    @Path("/v0/entities/batch")
+    public void entitiesBatch(
+            @Param("replicas") final String replicas,
+            @NotNull final Request request,
+            @NotNull final HttpSession httpSession) {
+        final var session = ServiceSession.cast(httpSession);
+        if (request.getMethod() != Request.METHOD_POST) {
+            session.sendEmptyResponse(Response.METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        final var proxied = ResponseUtils.isProxied(request);
+        final var rf = replicationFactor(replicas, proxied);
+        final var body = request.getBody();
+        if (rf == null || body == null) {
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return;
+        }
+
+        final List<String> ids;
+        try {
+            ids = BatchUtils.decodeIds(body);
+        } catch (IllegalArgumentException e) {
+            log.debug("[{}] Malformed IDs: {}", port, e.getMessage());
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return;
+        }
+
+        if (proxied) {
+            asyncExecute(() -> session.send(Response.ok(BatchUtils.encodeValues(local.getAll(ids)))));
+            return;
+        }
+
+        batches.getAll(session, ids, rf);
+    }
+
+    /**
+     * Process request to apply a batch of upserts and removals (see {@link BatchUtils} for the format).
+     * Operations are grouped by replicas, so each node receives a single request.
+     *
+     * @param replicas    replication factor in format "ack/from"
+     * @param request     HTTP request
+     * @param httpSession HTTP session
+     */
+    @Path("/v0/batch")
+    public void batch(
+            @Param("replicas") final String replicas,
+            @NotNull final Request request,
+            @NotNull final HttpSession httpSession) {
+        final var session = ServiceSession.cast(httpSession);
+        if (request.getMethod() != Request.METHOD_POST) {
+            session.sendEmptyResponse(Response.METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        final var proxied = ResponseUtils.isProxied(request);
+        final var rf = replicationFactor(replicas, proxied);
+        final var body = request.getBody();
+        if (rf == null || body == null) {
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return;
+        }
+
+        final List<BatchOperation> operations;
+        try {
+            operations = BatchUtils.decodeBatch(body);
+        } catch (IllegalArgumentException e) {
+            log.debug("[{}] Malformed batch: {}", port, e.getMessage());
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return;
+        }
+
+        if (proxied) {
+            asyncExecute(() -> {
+                local.apply(operations);
+                session.sendEmptyResponse(Response.CREATED);
+            });
+            return;
+        }
+
+        batches.apply(session, operations, rf);
+    }
+
+    /**
+     * Process request to load a dump of the local storage bypassing the MemTables. The dump has the format of
+     * the write batch (see {@link BatchUtils}) with the IDs sorted in ascending order of their UTF-8 bytes,
+     * it is written to a table and ingested by the storage of this node only, so there is no replication.
+     *
+     * @param request     HTTP request
+     * @param httpSession HTTP session
+     */
+    @Path("/v0/admin/ingest")
+    public void ingest(
+            @NotNull final Request request,
+            @NotNull final HttpSession httpSession) {
+        final var session = ServiceSession.cast(httpSession);
+        if (request.getMethod() != Request.METHOD_POST) {
+            session.sendEmptyResponse(Response.METHOD_NOT_ALLOWED);
+            return;
+        }
+        final var body = request.getBody();
+        if (body == null) {
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return;
+        }
+
+        asyncExecute(() -> {
+            try {
+                local.ingest(BatchUtils.decodeBatch(body));
+                session.sendEmptyResponse(Response.CREATED);
+            } catch (IllegalArgumentException e) {
+                log.debug("[{}] Malformed dump: {}", port, e.getMessage());
+                session.sendEmptyResponse(Response.BAD_REQUEST);
+            } catch (IOException e) {
+                log.error("[{}] Unable to ingest dump", port, e);
+                session.sendEmptyResponse(Response.INTERNAL_ERROR);
+            }
+        });
+    }
+
     private void scheduleGetEntity(
             @NotNull final ServiceSession session,
+            @NotNull final ColumnFamilyClients family,
             @NotNull final String id,
             @NotNull final ReplicationFactor rf,
             final boolean proxied) {
         if (proxied) {
-            asyncExecute(() -> session.send(getEntityLocal(id)));
+            family.local.getAsync(id)
+                    .thenAccept(session::send)
+                    .exceptionally(e -> sendLocalError(session, e));
             return;
         }
 
         final var futures = topology.primaryFor(id, rf)
                 .stream()
-                .map(clients::get)
+                .map(family.clients::get)
                 .map(client -> client.getAsync(id))
                 .collect(toList());
 
@@ -225,16 +468,31 @@ public final class HttpService extends HttpServer implements Service {
                 .exceptionally(this::logError);
     }
 
-    @NotNull
-    private Value getEntityLocal(@NotNull final String id) {
-        log.debug("[{}] Get local entity: id={}", port, id.hashCode());
-        final var key = wrapString(id);
-        final var entry = dao.getEntry(key);
-        return Value.fromEntry(entry);
+    private void schedulePutEntity(
+            @NotNull final ServiceSession session,
+            @NotNull final ColumnFamilyClients family,
+            @NotNull final String id,
+            @NotNull final Request request,
+            @NotNull final ReplicationFactor rf,
+            final boolean proxied) {
+        final Precondition precondition;
+        try {
+            precondition = Precondition.fromRequest(request);
+        } catch (IllegalArgumentException e) {
+            log.debug("[{}] Wrong precondition: {}", port, e.getMessage());
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return;
+        }
+        if (precondition == null) {
+            schedulePutEntity(session, family, id, request.getBody(), rf, proxied);
+        } else {
+            scheduleConditionalPutEntity(session, family, id, request.getBody(), precondition, rf, proxied);
+        }
     }
 
     private void schedulePutEntity(
             @NotNull final ServiceSession session,
+            @NotNull final ColumnFamilyClients family,
             @NotNull final String id,
             @Nullable final byte[] bytes,
             @NotNull final ReplicationFactor rf,
@@ -245,16 +503,15 @@ public final class HttpService extends HttpServer implements Service {
         }
 
         if (proxied) {
-            asyncExecute(() -> {
-                putEntityLocal(id, bytes);
-                session.sendEmptyResponse(Response.CREATED);
-            });
+            family.local.putAsync(id, bytes)
+                    .thenRun(() -> session.sendEmptyResponse(Response.CREATED))
+                    .exceptionally(e -> sendLocalError(session, e));
             return;
         }
 
         final var futures = topology.primaryFor(id, rf)
                 .stream()
-                .map(clients::get)
+                .map(family.clients::get)
                 .map(client -> client.putAsync(id, bytes))
                 .collect(toList());
 
@@ -264,23 +521,74 @@ public final class HttpService extends HttpServer implements Service {
                 .exceptionally(this::logError);
     }
 
-    private void putEntityLocal(
+    /**
+     * Check the precondition against the merged value of the replicas and, if it holds,
+     * put the value to each replica only if the replica has not changed since it was read.
+     * Replicas assign their own timestamps, so every replica is checked against its own version.
+     * A concurrent write to any of the read replicas fails the request with 412,
+     * though the replicas which have already accepted the value keep it.
+     */
+    private void scheduleConditionalPutEntity(
+            @NotNull final ServiceSession session,
+            @NotNull final ColumnFamilyClients family,
             @NotNull final String id,
-            @NotNull final byte[] bytes) {
-        log.debug("[{}] Put local entity: id={}", port, id.hashCode());
-        final var key = wrapString(id);
-        final var value = ByteBuffer.wrap(bytes);
-        dao.upsert(key, value);
+            @Nullable final byte[] bytes,
+            @NotNull final Precondition precondition,
+            @NotNull final ReplicationFactor rf,
+            final boolean proxied) {
+        if (bytes == null) {
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return;
+        }
+
+        if (proxied) {
+            asyncExecute(() -> {
+                final var put = family.local.putIf(id, bytes, precondition);
+                session.sendEmptyResponse(put ? Response.CREATED : Response.PRECONDITION_FAILED);
+            });
+            return;
+        }
+
+        final var reads = topology.primaryFor(id, rf)
+                .stream()
+                .map(node -> family.clients.get(node)
+                        .getAsync(id)
+                        .thenApply(value -> Map.entry(node, value)))
+                .collect(toList());
+
+        CompletableFutureUtils.firstN(reads, rf.ack())
+                .thenCompose(versions -> {
+                    final var current = Value.merge(versions.stream().map(Map.Entry::getValue).collect(toList()));
+                    if (!precondition.test(current)) {
+                        return CompletableFuture.<Collection<Boolean>>completedFuture(List.of(false));
+                    }
+                    final var writes = versions.stream()
+                            .map(e -> family.clients.get(e.getKey())
+                                    .putIfAsync(id, bytes, Precondition.of(e.getValue())))
+                            .collect(toList());
+                    return CompletableFutureUtils.firstN(writes, writes.size());
+                })
+                .handle((res, e) -> handleResponses(res, e, HttpService::conditionalResponse))
+                .thenAccept(session::send)
+                .exceptionally(this::logError);
     }
 
-    private void scheduleDeleteEntity(
+    private void scheduleMergeEntity(
             @NotNull final ServiceSession session,
+            @NotNull final ColumnFamilyClients family,
             @NotNull final String id,
+            @Nullable final MergeOperator operator,
+            @Nullable final byte[] operand,
             @NotNull final ReplicationFactor rf,
             final boolean proxied) {
+        if (operator == null || operand == null || !operator.accepts(ByteBuffer.wrap(operand))) {
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return;
+        }
+
         if (proxied) {
             asyncExecute(() -> {
-                deleteEntityLocal(id);
+                family.local.merge(id, operator, operand);
                 session.sendEmptyResponse(Response.ACCEPTED);
             });
             return;
@@ -288,7 +596,32 @@ public final class HttpService extends HttpServer implements Service {
 
         final var futures = topology.primaryFor(id, rf)
                 .stream()
-                .map(clients::get)
+                .map(family.clients::get)
+                .map(client -> client.mergeAsync(id, operator, operand))
+                .collect(toList());
+
+        CompletableFutureUtils.firstN(futures, rf.ack())
+                .handle((res, e) -> handleResponses(res, e, voids -> emptyResponse(Response.ACCEPTED)))
+                .thenAccept(session::send)
+                .exceptionally(this::logError);
+    }
+
+    private void scheduleDeleteEntity(
+            @NotNull final ServiceSession session,
+            @NotNull final ColumnFamilyClients family,
+            @NotNull final String id,
+            @NotNull final ReplicationFactor rf,
+            final boolean proxied) {
+        if (proxied) {
+            family.local.deleteAsync(id)
+                    .thenRun(() -> session.sendEmptyResponse(Response.ACCEPTED))
+                    .exceptionally(e -> sendLocalError(session, e));
+            return;
+        }
+
+        final var futures = topology.primaryFor(id, rf)
+                .stream()
+                .map(family.clients::get)
                 .map(client -> client.deleteAsync(id))
                 .collect(toList());
 
@@ -298,10 +631,93 @@ public final class HttpService extends HttpServer implements Service {
                 .exceptionally(this::logError);
     }
 
-    private void deleteEntityLocal(@NotNull final String id) {
-        log.debug("[{}] Delete local entity: id={}", port, id.hashCode());
-        final var key = wrapString(id);
-        dao.remove(key);
+    private void scheduleDeleteEntities(
+            @NotNull final ServiceSession session,
+            @NotNull final ColumnFamilyClients family,
+            @NotNull final String start,
+            @Nullable final String end,
+            final boolean proxied) {
+        if (proxied) {
+            asyncExecute(() -> {
+                family.local.deleteRange(start, end);
+                session.sendEmptyResponse(Response.ACCEPTED);
+            });
+            return;
+        }
+
+        // keys of the range are spread over the whole cluster
+        final var futures = family.clients.values()
+                .stream()
+                .map(client -> client.deleteRangeAsync(start, end))
+                .collect(toList());
+
+        CompletableFutureUtils.firstN(futures, quorum.ack())
+                .handle((res, e) -> handleResponses(res, e, voids -> emptyResponse(Response.ACCEPTED)))
+                .thenAccept(session::send)
+                .exceptionally(this::logError);
+    }
+
+    private void observe(final long timestamp) {
+        if (!HybridClock.instance().observe(timestamp)) {
+            log.warn("[{}] Timestamp is too far ahead of the local clock: {}", port, timestamp);
+        }
+    }
+
+    /**
+     * Get the clients of the column family, the family should exist on all the nodes.
+     * Respond with an error if the family does not exist or its name is not valid.
+     *
+     * @return the clients or {@code null} if the error response was sent
+     */
+    @Nullable
+    private ColumnFamilyClients columnFamily(
+            @NotNull final ServiceSession session,
+            @Nullable final String name) {
+        if (name == null) {
+            return defaultFamily;
+        }
+        final var cached = columnFamilies.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        final EntryDAO family;
+        try {
+            family = dao.columnFamily(name);
+        } catch (IllegalArgumentException e) {
+            log.debug("[{}] Wrong column family: {}", port, name);
+            session.sendEmptyResponse(Response.BAD_REQUEST);
+            return null;
+        }
+        if (family == null) {
+            session.sendEmptyResponse(Response.NOT_FOUND);
+            return null;
+        }
+        return columnFamilies.computeIfAbsent(name, key -> new ColumnFamilyClients(family, name));
+    }
+
+    @Nullable
+    private MergeOperator mergeOperator(@Nullable final String op) {
+        if (op == null) {
+            return null;
+        }
+        try {
+            return MergeOperator.valueOf(op.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.debug("[{}] Wrong merge operator: {}", port, op);
+            return null;
+        }
+    }
+
+    @Nullable
+    private ReplicationFactor replicationFactor(
+            @Nullable final String replicas,
+            final boolean proxied) {
+        try {
+            return proxied || replicas == null ? quorum : ReplicationFactor.parse(replicas);
+        } catch (IllegalArgumentException e) {
+            log.debug("[{}] Wrong replication factor: {}", port, replicas);
+            return null;
+        }
     }
 
     @NotNull
@@ -312,59 +728,77 @@ public final class HttpService extends HttpServer implements Service {
         if (responses != null && error == null) {
             return response.apply(responses);
         }
-        if (error instanceof NotEnoughReplicasException) {
-            log.debug("[{}] Not enough replicas to handle request: {}", port, error.getMessage());
-            return emptyResponse(RESPONSE_NOT_ENOUGH_REPLICAS);
+        // the failures are wrapped when they complete a dependent stage, e.g. the reads of a conditional PUT
+        final var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof NotEnoughReplicasException) {
+            log.debug("[{}] Not enough replicas to handle request: {}", port, cause.getMessage());
+            return emptyResponse(ResponseUtils.NOT_ENOUGH_REPLICAS);
         }
         log.error("[{}] Unknown response error", port, error);
         return emptyResponse(Response.INTERNAL_ERROR);
     }
 
-    @Nullable
-    private Void logError(@NotNull final Throwable t) {
-        log.error("Unexpected error", t);
-        return null;
+    /**
+     * Extrapolate the estimates of the responded nodes to the cluster, the nodes own equal numbers of vnodes,
+     * then count every key once rather than once per replica.
+     */
+    @NotNull
+    private static RangeEstimate clusterEstimate(
+            @NotNull final Collection<RangeEstimate> estimates,
+            final int nodes,
+            final int replicas) {
+        final var sum = estimates.stream().reduce(RangeEstimate.empty(), RangeEstimate::plus);
+        final var scale = (double) nodes / estimates.size() / replicas;
+        return RangeEstimate.of(Math.round(sum.sizeInBytes() * scale), Math.round(sum.count() * scale));
     }
 
     @NotNull
-    private ServiceClient createServiceClient(@NotNull final String node) {
-        if (topology.isMe(node)) {
-            return new LocalServiceClient(workers);
-        }
-        return new HttpServiceClient(node);
+    private static Response conditionalResponse(@NotNull final Collection<Boolean> results) {
+        final var put = results.stream().allMatch(Boolean::booleanValue);
+        return emptyResponse(put ? Response.CREATED : Response.PRECONDITION_FAILED);
     }
 
-    private final class LocalServiceClient implements ServiceClient {
-        private final ExecutorService executor;
-
-        LocalServiceClient(@NotNull final ExecutorService executor) {
-            this.executor = executor;
-        }
+    @Nullable
+    private Void sendLocalError(
+            @NotNull final ServiceSession session,
+            @NotNull final Throwable t) {
+        log.error("[{}] Local request error", port, t);
+        session.sendEmptyResponse(Response.INTERNAL_ERROR);
+        return null;
+    }
 
-        @Override
-        @NotNull
-        public CompletableFuture<Value> getAsync(@NotNull final String id) {
-            return CompletableFuture.supplyAsync(() -> getEntityLocal(id), executor);
-        }
+    @Nullable
+    private Void logError(@NotNull final Throwable t) {
+        log.error("Unexpected error", t);
+        return null;
+    }
 
-        @Override
-        @NotNull
-        public CompletableFuture<Void> putAsync(
-                @NotNull final String id,
-                @NotNull final byte[] data) {
-            return CompletableFuture.supplyAsync(() -> {
-                putEntityLocal(id, data);
-                return null;
-            }, executor);
+    /**
+     * Clients of the nodes which address the same column family.
+     */
+    private final class ColumnFamilyClients {
+        private final EntryDAO dao;
+        private final LocalServiceClient local;
+        private final Map<String, ServiceClient> clients;
+
+        ColumnFamilyClients(
+                @NotNull final EntryDAO dao,
+                @Nullable final String name) {
+            this.dao = dao;
+            this.local = new LocalServiceClient(dao, workers);
+            this.clients = topology.all()
+                    .stream()
+                    .collect(toMap(node -> node, node -> createServiceClient(node, name)));
         }
 
-        @Override
         @NotNull
-        public CompletableFuture<Void> deleteAsync(@NotNull final String id) {
-            return CompletableFuture.supplyAsync(() -> {
-                deleteEntityLocal(id);
-                return null;
-            }, executor);
+        private ServiceClient createServiceClient(
+                @NotNull final String node,
+                @Nullable final String name) {
+            if (topology.isMe(node)) {
+                return local;
+            }
+            return new HttpServiceClient(node, name);
         }
     }
 }
@@ -1,15 +1,24 @@
 package ru.mail.polis.service.vaddya;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.vaddya.HybridClock;
+import ru.mail.polis.dao.vaddya.MergeOperator;
+import ru.mail.polis.dao.vaddya.RangeEstimate;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import static ru.mail.polis.service.vaddya.ResponseUtils.HEADER_TIMESTAMP;
@@ -19,14 +28,22 @@ import static ru.mail.polis.service.vaddya.ResponseUtils.PROXY_TRUE;
 @ThreadSafe
 final class HttpServiceClient implements ServiceClient {
     private static final String PATH_ENTITY = "/v0/entity";
+    private static final String PATH_BATCH = "/v0/batch";
+    private static final String PATH_ENTITIES = "/v0/entities";
+    private static final String PATH_ENTITIES_BATCH = "/v0/entities/batch";
+    private static final String PATH_ENTITIES_ESTIMATE = "/v0/entities/estimate";
     private static final int TIMEOUT_MILLIS = 200;
     private static final Logger log = LoggerFactory.getLogger(HttpServiceClient.class);
 
     private final String baseUrl;
+    private final String columnFamilyQuery;
     private final HttpClient client = HttpClient.newHttpClient();
 
-    HttpServiceClient(@NotNull final String baseUrl) {
+    HttpServiceClient(
+            @NotNull final String baseUrl,
+            @Nullable final String columnFamily) {
         this.baseUrl = baseUrl;
+        this.columnFamilyQuery = columnFamily == null ? "" : "&cf=" + encode(columnFamily);
     }
 
     @Override
@@ -49,6 +66,34 @@ final class HttpServiceClient implements ServiceClient {
                 .thenApply(x -> null);
     }
 
+    @Override
+    @NotNull
+    public CompletableFuture<Boolean> putIfAsync(
+            @NotNull final String id,
+            @NotNull final byte[] data,
+            @NotNull final Precondition precondition) {
+        final var request = request(id)
+                .header(precondition.headerName(), precondition.headerValue())
+                .PUT(bytes(data))
+                .build();
+        log.debug("Schedule conditional put remote entity: uri={}, id={}", baseUrl, id.hashCode());
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpServiceClient::checkPrecondition);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> mergeAsync(
+            @NotNull final String id,
+            @NotNull final MergeOperator operator,
+            @NotNull final byte[] operand) {
+        final var query = "?id=" + id + "&op=" + operator.name().toLowerCase(Locale.ROOT) + columnFamilyQuery;
+        final var request = request(URI.create(baseUrl + PATH_ENTITY + query)).method("PATCH", bytes(operand)).build();
+        log.debug("Schedule merge remote entity: uri={}, id={}", baseUrl, id.hashCode());
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpServiceClient::checkAccepted);
+    }
+
     @Override
     @NotNull
     public CompletableFuture<Void> deleteAsync(@NotNull final String id) {
@@ -58,11 +103,61 @@ final class HttpServiceClient implements ServiceClient {
                 .thenApply(x -> null);
     }
 
+    @Override
+    @NotNull
+    public CompletableFuture<Void> deleteRangeAsync(
+            @NotNull final String start,
+            @Nullable final String end) {
+        final var query = "?start=" + encode(start) + (end == null ? "" : "&end=" + encode(end)) + columnFamilyQuery;
+        final var request = request(URI.create(baseUrl + PATH_ENTITIES + query)).DELETE().build();
+        log.debug("Schedule delete remote range: uri={}", baseUrl);
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpServiceClient::checkAccepted);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<RangeEstimate> estimateRangeAsync(
+            @NotNull final String start,
+            @Nullable final String end) {
+        final var query = "?start=" + encode(start) + (end == null ? "" : "&end=" + encode(end)) + columnFamilyQuery;
+        final var request = request(URI.create(baseUrl + PATH_ENTITIES_ESTIMATE + query)).GET().build();
+        log.debug("Schedule estimate remote range: uri={}", baseUrl);
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(HttpServiceClient::toEstimate);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> batchAsync(@NotNull final Collection<BatchOperation> operations) {
+        final var body = bytes(BatchUtils.encodeBatch(operations));
+        final var request = request(URI.create(baseUrl + PATH_BATCH)).POST(body).build();
+        log.debug("Schedule remote batch: uri={}, size={}", baseUrl, operations.size());
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpServiceClient::checkCreated);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Map<String, Value>> getAllAsync(@NotNull final Collection<String> ids) {
+        final var body = bytes(BatchUtils.encodeIds(ids));
+        final var request = request(URI.create(baseUrl + PATH_ENTITIES_BATCH)).POST(body).build();
+        log.debug("Schedule get remote entities: uri={}, size={}", baseUrl, ids.size());
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(HttpServiceClient::toValues);
+    }
+
     @NotNull
     private HttpRequest.Builder request(@NotNull final String id) {
+        return request(URI.create(baseUrl + PATH_ENTITY + "?id=" + id + columnFamilyQuery));
+    }
+
+    @NotNull
+    private HttpRequest.Builder request(@NotNull final URI uri) {
         return HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + PATH_ENTITY + "?id=" + id))
+                .uri(uri)
                 .header(PROXY_HEADER, PROXY_TRUE)
+                .header(HEADER_TIMESTAMP, Long.toString(HybridClock.instance().now()))
                 .timeout(Duration.ofMillis(TIMEOUT_MILLIS));
     }
 
@@ -71,9 +166,61 @@ final class HttpServiceClient implements ServiceClient {
         return HttpRequest.BodyPublishers.ofByteArray(data);
     }
 
+    @Nullable
+    private static Void checkCreated(@NotNull final HttpResponse<Void> response) {
+        if (response.statusCode() != 201) {
+            throw new IllegalStateException("Unexpected status code: " + response.statusCode());
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Void checkAccepted(@NotNull final HttpResponse<Void> response) {
+        if (response.statusCode() != 202) {
+            throw new IllegalStateException("Unexpected status code: " + response.statusCode());
+        }
+        return null;
+    }
+
+    @NotNull
+    private static Boolean checkPrecondition(@NotNull final HttpResponse<Void> response) {
+        switch (response.statusCode()) {
+            case 201:
+                return Boolean.TRUE;
+            case 412:
+                return Boolean.FALSE;
+            default:
+                throw new IllegalStateException("Unexpected status code: " + response.statusCode());
+        }
+    }
+
+    @NotNull
+    private static String encode(@NotNull final String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private static Map<String, Value> toValues(@NotNull final HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Unexpected status code: " + response.statusCode());
+        }
+        final var values = BatchUtils.decodeValues(response.body());
+        values.values().forEach(value -> HybridClock.instance().observe(value.ts()));
+        return values;
+    }
+
+    @NotNull
+    private static RangeEstimate toEstimate(@NotNull final HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Unexpected status code: " + response.statusCode());
+        }
+        return ResponseUtils.parseEstimate(response.body());
+    }
+
     @NotNull
     private static Value toValue(@NotNull final HttpResponse<byte[]> response) {
         final var ts = response.headers().firstValueAsLong(HEADER_TIMESTAMP);
+        ts.ifPresent(HybridClock.instance()::observe);
         if (response.statusCode() == 200) {
             if (ts.isEmpty()) {
                 throw new IllegalArgumentException();
@@ -0,0 +1,216 @@
+package ru.mail.polis.service.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.vaddya.EntryDAO;
+import ru.mail.polis.dao.vaddya.MergeOperator;
+import ru.mail.polis.dao.vaddya.RangeEstimate;
+import ru.mail.polis.dao.vaddya.WriteBatch;
+import ru.mail.polis.dao.vaddya.sstable.SSTableBuilder;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import static ru.mail.polis.service.vaddya.ByteBufferUtils.wrapString;
+
+/**
+ * Client that executes requests against the local storage. The point reads and writes use the asynchronous
+ * operations of the storage, which complete in the calling thread unless they could block,
+ * the other requests are executed by the workers.
+ */
+@ThreadSafe
+final class LocalServiceClient implements ServiceClient {
+    private static final Logger log = LoggerFactory.getLogger(LocalServiceClient.class);
+
+    private final EntryDAO dao;
+    private final ExecutorService executor;
+
+    LocalServiceClient(
+            @NotNull final EntryDAO dao,
+            @NotNull final ExecutorService executor) {
+        this.dao = dao;
+        this.executor = executor;
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Value> getAsync(@NotNull final String id) {
+        log.debug("Get local entity: id={}", id.hashCode());
+        return dao.getEntryAsync(wrapString(id)).thenApply(Value::fromEntry);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Map<String, Value>> getAllAsync(@NotNull final Collection<String> ids) {
+        return CompletableFuture.supplyAsync(() -> getAll(ids), executor);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> putAsync(
+            @NotNull final String id,
+            @NotNull final byte[] data) {
+        log.debug("Put local entity: id={}", id.hashCode());
+        return dao.upsertAsync(wrapString(id), ByteBuffer.wrap(data));
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Boolean> putIfAsync(
+            @NotNull final String id,
+            @NotNull final byte[] data,
+            @NotNull final Precondition precondition) {
+        return CompletableFuture.supplyAsync(() -> putIf(id, data, precondition), executor);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> mergeAsync(
+            @NotNull final String id,
+            @NotNull final MergeOperator operator,
+            @NotNull final byte[] operand) {
+        return CompletableFuture.supplyAsync(() -> {
+            merge(id, operator, operand);
+            return null;
+        }, executor);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> deleteAsync(@NotNull final String id) {
+        log.debug("Delete local entity: id={}", id.hashCode());
+        return dao.removeAsync(wrapString(id));
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> deleteRangeAsync(
+            @NotNull final String start,
+            @Nullable final String end) {
+        return CompletableFuture.supplyAsync(() -> {
+            deleteRange(start, end);
+            return null;
+        }, executor);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<RangeEstimate> estimateRangeAsync(
+            @NotNull final String start,
+            @Nullable final String end) {
+        return CompletableFuture.supplyAsync(() -> estimateRange(start, end), executor);
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> batchAsync(@NotNull final Collection<BatchOperation> operations) {
+        return CompletableFuture.supplyAsync(() -> {
+            apply(operations);
+            return null;
+        }, executor);
+    }
+
+    @NotNull
+    Map<String, Value> getAll(@NotNull final Collection<String> ids) {
+        log.debug("Get local entities: size={}", ids.size());
+        final var keys = new HashMap<ByteBuffer, String>();
+        ids.forEach(id -> keys.put(wrapString(id), id));
+        final var entries = dao.getEntries(keys.keySet());
+        final var values = new HashMap<String, Value>();
+        keys.forEach((key, id) -> values.put(id, Value.fromEntry(entries.get(key))));
+        return values;
+    }
+
+    boolean putIf(
+            @NotNull final String id,
+            @NotNull final byte[] bytes,
+            @NotNull final Precondition precondition) {
+        log.debug("Put local entity: id={}, precondition={}", id.hashCode(), precondition);
+        final var key = wrapString(id);
+        final var value = ByteBuffer.wrap(bytes);
+        if (precondition.isAbsent()) {
+            return dao.putIfAbsent(key, value);
+        }
+        return dao.putIfTimestamp(key, value, precondition.ts());
+    }
+
+    void merge(
+            @NotNull final String id,
+            @NotNull final MergeOperator operator,
+            @NotNull final byte[] operand) {
+        log.debug("Merge local entity: id={}, operator={}", id.hashCode(), operator);
+        final var key = wrapString(id);
+        dao.merge(key, operator, ByteBuffer.wrap(operand));
+    }
+
+    void deleteRange(
+            @NotNull final String start,
+            @Nullable final String end) {
+        log.debug("Delete local range: start={}, end={}", start.hashCode(), end == null ? null : end.hashCode());
+        dao.removeRange(wrapString(start), end == null ? null : wrapString(end));
+    }
+
+    @NotNull
+    RangeEstimate estimateRange(
+            @NotNull final String start,
+            @Nullable final String end) {
+        log.debug("Estimate local range: start={}, end={}", start.hashCode(), end == null ? null : end.hashCode());
+        return dao.estimateRange(wrapString(start), end == null ? null : wrapString(end));
+    }
+
+    void apply(@NotNull final Collection<BatchOperation> operations) {
+        log.debug("Apply local batch: size={}", operations.size());
+        final var batch = new WriteBatch();
+        for (final var operation : operations) {
+            final var key = wrapString(operation.id());
+            if (operation.isRemove()) {
+                batch.remove(key);
+            } else {
+                batch.upsert(key, ByteBuffer.wrap(operation.data()));
+            }
+        }
+        dao.apply(batch);
+    }
+
+    /**
+     * Build a table from the operations sorted by their IDs and ingest it bypassing the MemTables.
+     *
+     * @throws IllegalArgumentException if the operations are not sorted by the IDs or there are no operations
+     * @throws IOException              if cannot write or ingest the table
+     */
+    void ingest(@NotNull final Collection<BatchOperation> operations) throws IOException {
+        log.debug("Ingest local dump: size={}", operations.size());
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("Dump is empty");
+        }
+        final var path = dao.ingestPath();
+        try {
+            try (var builder = SSTableBuilder.create(path, WriterConfig.defaults())) {
+                for (final var operation : operations) {
+                    final var key = wrapString(operation.id());
+                    if (operation.isRemove()) {
+                        builder.remove(key);
+                    } else {
+                        builder.upsert(key, ByteBuffer.wrap(operation.data()));
+                    }
+                }
+                builder.finish();
+            }
+            dao.ingest(List.of(path));
+        } finally {
+            // the ingested file is moved into the storage, so only the file of the failed ingestion is left
+            Files.deleteIfExists(path);
+        }
+    }
+}
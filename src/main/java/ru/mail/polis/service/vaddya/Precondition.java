@@ -0,0 +1,116 @@
+package ru.mail.polis.service.vaddya;
+
+import com.google.common.base.CharMatcher;
+import one.nio.http.Request;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Condition of a conditional PUT: either the value is absent ({@code If-None-Match: *})
+ * or the value is present with the timestamp reported in {@code X-OK-Timestamp} ({@code If-Match: <ts>}).
+ */
+@ThreadSafe
+final class Precondition {
+    static final String HEADER_IF_MATCH = "If-Match";
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String ANY = "*";
+    private static final Precondition ABSENT = new Precondition(-1);
+    private static final CharMatcher HEADER_SEPARATOR = CharMatcher.anyOf(": ");
+    private static final CharMatcher QUOTE = CharMatcher.is('"');
+
+    private final long ts;
+
+    @NotNull
+    static Precondition absent() {
+        return ABSENT;
+    }
+
+    @NotNull
+    static Precondition timestamp(final long ts) {
+        if (ts < 0) {
+            throw new IllegalArgumentException("Negative timestamp: " + ts);
+        }
+        return new Precondition(ts);
+    }
+
+    /**
+     * Get the precondition the value has to satisfy to remain unchanged.
+     */
+    @NotNull
+    static Precondition of(@NotNull final Value value) {
+        return value.state() == Value.State.PRESENT ? timestamp(value.ts()) : absent();
+    }
+
+    /**
+     * Parse the precondition from the headers of the request.
+     *
+     * @return the precondition or {@code null} if the request is not conditional
+     * @throws IllegalArgumentException if the headers are malformed or both of them are present
+     */
+    @Nullable
+    static Precondition fromRequest(@NotNull final Request request) {
+        final var ifMatch = header(request, HEADER_IF_MATCH);
+        final var ifNoneMatch = header(request, HEADER_IF_NONE_MATCH);
+        if (ifMatch != null && ifNoneMatch != null) {
+            throw new IllegalArgumentException("Both " + HEADER_IF_MATCH + " and " + HEADER_IF_NONE_MATCH);
+        }
+        if (ifNoneMatch != null) {
+            if (!ANY.equals(ifNoneMatch)) {
+                throw new IllegalArgumentException("Only '*' is supported by " + HEADER_IF_NONE_MATCH);
+            }
+            return absent();
+        }
+        if (ifMatch != null) {
+            try {
+                return timestamp(Long.parseLong(QUOTE.trimFrom(ifMatch)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Wrong timestamp: " + ifMatch, e);
+            }
+        }
+        return null;
+    }
+
+    private Precondition(final long ts) {
+        this.ts = ts;
+    }
+
+    boolean isAbsent() {
+        return this == ABSENT;
+    }
+
+    long ts() {
+        return ts;
+    }
+
+    boolean test(@NotNull final Value value) {
+        if (isAbsent()) {
+            return value.state() != Value.State.PRESENT;
+        }
+        return value.state() == Value.State.PRESENT && value.ts() == ts;
+    }
+
+    @NotNull
+    String headerName() {
+        return isAbsent() ? HEADER_IF_NONE_MATCH : HEADER_IF_MATCH;
+    }
+
+    @NotNull
+    String headerValue() {
+        return isAbsent() ? ANY : Long.toString(ts);
+    }
+
+    @Override
+    public String toString() {
+        return headerName() + ": " + headerValue();
+    }
+
+    @Nullable
+    private static String header(
+            @NotNull final Request request,
+            @NotNull final String name) {
+        final var header = request.getHeader(name);
+        return header == null ? null : HEADER_SEPARATOR.trimLeadingFrom(header).trim();
+    }
+}
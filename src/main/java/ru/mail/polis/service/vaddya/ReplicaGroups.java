@@ -0,0 +1,98 @@
+package ru.mail.polis.service.vaddya;
+
+import com.google.common.collect.Sets;
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.service.vaddya.topology.ReplicationFactor;
+import ru.mail.polis.service.vaddya.topology.Topology;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Items of a multi-key request grouped by the nodes that store their replicas,
+ * so each node receives all its items in a single request.
+ */
+@NotThreadSafe
+final class ReplicaGroups<T> {
+    private final List<T> items;
+    private final List<Set<String>> replicas;
+    private final Map<String, List<T>> byNode = new HashMap<>();
+    private final int ack;
+
+    /**
+     * Group the items by replicas.
+     *
+     * @param topology cluster topology
+     * @param rf       replication factor
+     * @param items    items to group
+     * @param id       function to get the item ID
+     * @return grouped items
+     */
+    @NotNull
+    static <T> ReplicaGroups<T> group(
+            @NotNull final Topology<String> topology,
+            @NotNull final ReplicationFactor rf,
+            @NotNull final List<T> items,
+            @NotNull final Function<T, String> id) {
+        final var groups = new ReplicaGroups<>(items, rf.ack());
+        for (final var item : items) {
+            final var nodes = topology.primaryFor(id.apply(item), rf);
+            groups.replicas.add(nodes);
+            nodes.forEach(node -> groups.byNode.computeIfAbsent(node, n -> new ArrayList<>()).add(item));
+        }
+        return groups;
+    }
+
+    private ReplicaGroups(
+            @NotNull final List<T> items,
+            final int ack) {
+        this.items = items;
+        this.replicas = new ArrayList<>(items.size());
+        this.ack = ack;
+    }
+
+    /**
+     * Get items by the nodes they should be sent to.
+     */
+    @NotNull
+    Map<String, List<T>> byNode() {
+        return byNode;
+    }
+
+    /**
+     * Get the items.
+     */
+    @NotNull
+    List<T> items() {
+        return items;
+    }
+
+    /**
+     * Get nodes of the given ones that store replicas of the item.
+     *
+     * @param index index of the item
+     * @param nodes nodes to filter
+     * @return replicas of the item
+     */
+    @NotNull
+    Set<String> replicasOf(
+            final int index,
+            @NotNull final Set<String> nodes) {
+        return Sets.intersection(replicas.get(index), nodes);
+    }
+
+    /**
+     * Check if every item is acknowledged by enough replicas.
+     *
+     * @param nodes nodes that have acknowledged their items
+     * @return {@code true} if there are enough acknowledgements
+     */
+    boolean acknowledged(@NotNull final Set<String> nodes) {
+        return replicas.stream().allMatch(r -> Sets.intersection(r, nodes).size() >= ack);
+    }
+}
@@ -1,16 +1,22 @@
 package ru.mail.polis.service.vaddya;
 
+import com.google.common.base.CharMatcher;
 import one.nio.http.Request;
 import one.nio.http.Response;
 import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.vaddya.RangeEstimate;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.OptionalLong;
 
 final class ResponseUtils {
+    static final String NOT_ENOUGH_REPLICAS = "504 Not Enough Replicas";
     static final String HEADER_TIMESTAMP = "X-OK-Timestamp";
     static final String PROXY_HEADER = "X-OK-Proxy";
     static final String PROXY_TRUE = "True";
     static final String TRANSFER_ENCODING_CHUNKED = "Transfer-Encoding: chunked";
+    private static final CharMatcher HEADER_SEPARATOR = CharMatcher.anyOf(": ");
 
     private ResponseUtils() {
     }
@@ -19,6 +25,22 @@ final class ResponseUtils {
         return request.getHeader(PROXY_HEADER) != null;
     }
 
+    /**
+     * Get the timestamp piggybacked by another node on the request.
+     */
+    @NotNull
+    static OptionalLong timestamp(@NotNull final Request request) {
+        final var header = request.getHeader(HEADER_TIMESTAMP);
+        if (header == null) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(HEADER_SEPARATOR.trimLeadingFrom(header)));
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+
     @NotNull
     static Response valueToResponse(@NotNull final Value value) {
         if (value.state() == Value.State.PRESENT) {
@@ -39,6 +61,29 @@ final class ResponseUtils {
         return valueToResponse(value);
     }
 
+    /**
+     * Write the estimate as the text line {@code <bytes> <entries>}.
+     */
+    @NotNull
+    static Response estimateToResponse(@NotNull final RangeEstimate estimate) {
+        final var body = estimate.sizeInBytes() + " " + estimate.count() + "\n";
+        return Response.ok(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the estimate written by {@link #estimateToResponse(RangeEstimate)}.
+     *
+     * @throws IllegalArgumentException if the body is malformed
+     */
+    @NotNull
+    static RangeEstimate parseEstimate(@NotNull final byte[] body) {
+        final var parts = new String(body, StandardCharsets.UTF_8).trim().split(" ");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Malformed estimate");
+        }
+        return RangeEstimate.of(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+    }
+
     @NotNull
     static Response emptyResponse(@NotNull final String code) {
         return new Response(code, Response.EMPTY);
@@ -1,7 +1,12 @@
 package ru.mail.polis.service.vaddya;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.vaddya.MergeOperator;
+import ru.mail.polis.dao.vaddya.RangeEstimate;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -17,6 +22,15 @@ public interface ServiceClient {
     @NotNull
     CompletableFuture<Value> getAsync(@NotNull String id);
 
+    /**
+     * Get values by keys asynchronously.
+     *
+     * @param ids keys
+     * @return future of values by their keys
+     */
+    @NotNull
+    CompletableFuture<Map<String, Value>> getAllAsync(@NotNull Collection<String> ids);
+
     /**
      * Put a value by key asynchronously.
      *
@@ -29,6 +43,34 @@ public interface ServiceClient {
             @NotNull String id,
             @NotNull byte[] data);
 
+    /**
+     * Put a value by key asynchronously if the precondition holds for the current value of the replica.
+     *
+     * @param id           key
+     * @param data         value
+     * @param precondition precondition of the write
+     * @return future of {@code true} if the value was put or {@code false} if the precondition failed
+     */
+    @NotNull
+    CompletableFuture<Boolean> putIfAsync(
+            @NotNull String id,
+            @NotNull byte[] data,
+            @NotNull Precondition precondition);
+
+    /**
+     * Merge an operand into a value by key asynchronously.
+     *
+     * @param id       key
+     * @param operator merge operator
+     * @param operand  operand accepted by the operator
+     * @return future of nothing
+     */
+    @NotNull
+    CompletableFuture<Void> mergeAsync(
+            @NotNull String id,
+            @NotNull MergeOperator operator,
+            @NotNull byte[] operand);
+
     /**
      * Delete a value by key asynchronously.
      *
@@ -37,4 +79,37 @@ public interface ServiceClient {
      */
     @NotNull
     CompletableFuture<Void> deleteAsync(@NotNull String id);
+
+    /**
+     * Delete values by the range of keys asynchronously.
+     *
+     * @param start the lowest key (inclusive)
+     * @param end   the highest key (exclusive) or {@code null} if the range is unbounded
+     * @return future of nothing
+     */
+    @NotNull
+    CompletableFuture<Void> deleteRangeAsync(
+            @NotNull String start,
+            @Nullable String end);
+
+    /**
+     * Estimate the values stored by the node in the range of keys asynchronously.
+     *
+     * @param start the lowest key (inclusive)
+     * @param end   the highest key (exclusive) or {@code null} if the range is unbounded
+     * @return future of the estimate of the node
+     */
+    @NotNull
+    CompletableFuture<RangeEstimate> estimateRangeAsync(
+            @NotNull String start,
+            @Nullable String end);
+
+    /**
+     * Apply a batch of upserts and removals asynchronously.
+     *
+     * @param operations operations of the batch
+     * @return future of nothing
+     */
+    @NotNull
+    CompletableFuture<Void> batchAsync(@NotNull Collection<BatchOperation> operations);
 }
@@ -1,6 +1,7 @@
 package ru.mail.polis.service.vaddya;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.Iterators;
 import one.nio.http.HttpServer;
 import one.nio.http.HttpSession;
 import one.nio.http.Response;
@@ -9,11 +10,13 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.mail.polis.Record;
+import ru.mail.polis.dao.vaddya.Cursor;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import static ru.mail.polis.service.vaddya.ResponseUtils.TRANSFER_ENCODING_CHUNKED;
 
@@ -24,7 +27,7 @@ final class ServiceSession extends HttpSession {
     private static final byte[] EMPTY_CHUNK = "0\r\n\r\n".getBytes(Charsets.UTF_8);
     private static final Logger log = LoggerFactory.getLogger(ServiceSession.class);
 
-    private Iterator<Record> records;
+    private Iterator<byte[]> chunks;
 
     @NotNull
     static ServiceSession cast(@NotNull final HttpSession httpSession) {
@@ -59,7 +62,36 @@ final class ServiceSession extends HttpSession {
     }
 
     void stream(@NotNull final Iterator<Record> records) throws IOException {
-        this.records = records;
+        streamChunks(Iterators.transform(records, record -> toChunk(record.getKey(), record.getValue())));
+    }
+
+    /**
+     * Stream the entries of the cursor, each chunk is copied directly from the views of the cursor.
+     */
+    void stream(@NotNull final Cursor cursor) throws IOException {
+        final var chunks = new Iterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.isValid();
+            }
+
+            @Override
+            public byte[] next() {
+                if (!cursor.isValid()) {
+                    throw new NoSuchElementException();
+                }
+                final var key = view(cursor.keyBuffer(), cursor.keyOffset(), cursor.keyLength());
+                final var value = view(cursor.valueBuffer(), cursor.valueOffset(), cursor.valueLength());
+                final var chunk = toChunk(key, value);
+                cursor.next();
+                return chunk;
+            }
+        };
+        streamChunks(chunks);
+    }
+
+    private void streamChunks(@NotNull final Iterator<byte[]> chunks) throws IOException {
+        this.chunks = chunks;
 
         final var response = new Response(Response.OK);
         response.addHeader(TRANSFER_ENCODING_CHUNKED);
@@ -72,19 +104,19 @@ final class ServiceSession extends HttpSession {
     protected void processWrite() throws Exception {
         super.processWrite();
 
-        if (records != null) {
+        if (chunks != null) {
             next();
         }
     }
 
     private void next() throws IOException {
-        while (records.hasNext() && queueHead == null) {
-            final var chunk = recordToChunk(records.next());
+        while (chunks.hasNext() && queueHead == null) {
+            final var chunk = chunks.next();
             write(chunk, 0, chunk.length);
         }
 
-        if (!records.hasNext()) {
-            records = null;
+        if (!chunks.hasNext()) {
+            chunks = null;
             write(EMPTY_CHUNK, 0, EMPTY_CHUNK.length);
             server.incRequestsProcessed();
             tryExtractNextRequest();
@@ -106,9 +138,19 @@ final class ServiceSession extends HttpSession {
     }
 
     @NotNull
-    private static byte[] recordToChunk(@NotNull final Record record) {
-        final var key = record.getKey();
-        final var value = record.getValue();
+    private static ByteBuffer view(
+            @NotNull final ByteBuffer buffer,
+            final int offset,
+            final int length) {
+        return buffer.duplicate()
+                .limit(offset + length)
+                .position(offset);
+    }
+
+    @NotNull
+    private static byte[] toChunk(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
 
         final var keyLength = key.remaining();
         final var valueLength = value.remaining();
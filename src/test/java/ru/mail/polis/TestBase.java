@@ -23,8 +23,14 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 /**
  * Contains utility methods for unit tests.
  *
@@ -33,6 +39,8 @@ import java.util.concurrent.ThreadLocalRandom;
 public abstract class TestBase {
     protected static final int KEY_LENGTH = 16;
     private static final int VALUE_LENGTH = 1024;
+    // small enough for the storage tests to flush and compact tables
+    protected static final long FLUSH_THRESHOLD = 64 * 1024;
 
     protected static int randomPort() {
         try (ServerSocket socket = new ServerSocket()) {
@@ -88,6 +96,21 @@ public abstract class TestBase {
         return result;
     }
 
+    /**
+     * Check that the iterator returns exactly the expected records in the order of the map.
+     */
+    protected static void assertRecords(
+            @NotNull final Map<ByteBuffer, ByteBuffer> expected,
+            @NotNull final Iterator<Record> iterator) {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertTrue(iterator.hasNext());
+            final Record record = iterator.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
     @NotNull
     protected static String endpoint(final int port) {
         return "http://localhost:" + port;
@@ -0,0 +1,217 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.sstable.SSTableBuilder;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncDAOTest extends TestBase {
+    @Test
+    void memTableHitsCompleteInline(@TempDir final File data) {
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            final ByteBuffer key = randomKeyBuffer();
+            final ByteBuffer value = randomValueBuffer();
+            final CompletableFuture<Void> upsert = dao.upsertAsync(key, value);
+            assertTrue(upsert.isDone());
+            final CompletableFuture<ByteBuffer> get = dao.getAsync(key);
+            assertTrue(get.isDone());
+            assertEquals(value, get.join());
+
+            final CompletableFuture<Void> remove = dao.removeAsync(key);
+            assertTrue(remove.isDone());
+            final CompletableFuture<ByteBuffer> removed = dao.getAsync(key);
+            assertTrue(removed.isDone());
+            final CompletionException e = assertThrows(CompletionException.class, removed::join);
+            assertTrue(e.getCause() instanceof NoSuchElementException);
+        }
+    }
+
+    @Test
+    void contendedWritesAreNotBlocking(@TempDir final File data) throws InterruptedException {
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            final ByteBuffer key = randomKeyBuffer();
+            final ByteBuffer value = randomValueBuffer();
+            final Lock lock = dao.keyLock(key);
+            final CountDownLatch locked = new CountDownLatch(1);
+            final CountDownLatch released = new CountDownLatch(1);
+            // the lock of the key is held by another thread as by a conditional write reading the tables
+            final Thread writer = new Thread(() -> {
+                lock.lock();
+                try {
+                    locked.countDown();
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+            });
+            writer.start();
+            locked.await();
+
+            final CompletableFuture<Void> upsert = dao.upsertAsync(key, value);
+            assertFalse(upsert.isDone());
+            released.countDown();
+            upsert.join();
+            writer.join();
+            assertEquals(value, dao.getAsync(key).join());
+        }
+    }
+
+    @Test
+    void tablesAreRead(@TempDir final File data) {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsertAsync(key, value).join();
+                expected.put(key, value);
+            }
+        }
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.getAsync(entry.getKey()).join());
+            }
+            assertNull(dao.getEntryAsync(randomKeyBuffer()).join());
+
+            // the operand is folded with the value of the table
+            final ByteBuffer counter = randomKeyBuffer();
+            dao.upsert(counter, ByteBuffer.allocate(Long.BYTES).putLong(0, 40));
+            dao.merge(counter, MergeOperator.ADD, ByteBuffer.allocate(Long.BYTES).putLong(0, 2));
+            assertEquals(42L, dao.getAsync(counter).join().getLong(0));
+        }
+    }
+
+    @Test
+    void ingestedValuesAreNewer(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            final ByteBuffer key = randomKeyBuffer();
+            dao.upsert(key, randomValueBuffer());
+            final ByteBuffer ingested = randomValueBuffer();
+            final Path path = root.toPath().resolve("dump.db");
+            try (SSTableBuilder builder = SSTableBuilder.create(path, WriterConfig.defaults())) {
+                builder.upsert(key, ingested);
+                builder.finish();
+            }
+            dao.ingest(List.of(path));
+            assertEquals(ingested, dao.getAsync(key).join());
+
+            final ByteBuffer value = randomValueBuffer();
+            dao.upsertAsync(key, value).join();
+            final CompletableFuture<ByteBuffer> get = dao.getAsync(key);
+            assertTrue(get.isDone());
+            assertEquals(value, get.join());
+        }
+    }
+
+    @Test
+    void rangeIsPublishedOnDemand(@TempDir final File data) {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (PartitionedDAO dao = new PartitionedDAO(data, 2, DAOConfig.of(FLUSH_THRESHOLD))) {
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            final List<ByteBuffer> keys = List.copyOf(expected.keySet());
+            final ByteBuffer from = keys.get(100);
+            final ByteBuffer to = keys.get(900);
+
+            final CollectingSubscriber all = new CollectingSubscriber(7, Long.MAX_VALUE);
+            dao.rangeAsync(from, to).subscribe(all);
+            assertRecords(expected.subMap(from, to), all.result.join().iterator());
+
+            // the scan is stopped once enough records are received
+            final CollectingSubscriber first = new CollectingSubscriber(10, 25);
+            dao.rangeAsync(from, null).subscribe(first);
+            assertRecords(expected.subMap(from, keys.get(125)), first.result.join().iterator());
+        }
+    }
+
+    @Test
+    void nonPositiveRequest(@TempDir final File data) {
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            final CollectingSubscriber subscriber = new CollectingSubscriber(0, Long.MAX_VALUE);
+            dao.rangeAsync(ByteBuffer.allocate(0), null).subscribe(subscriber);
+            final CompletionException e = assertThrows(CompletionException.class, subscriber.result::join);
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    /**
+     * Requests the records by batches and cancels the subscription after the limit.
+     */
+    private static final class CollectingSubscriber implements Flow.Subscriber<Record> {
+        private final CompletableFuture<List<Record>> result = new CompletableFuture<>();
+        private final List<Record> records = new ArrayList<>();
+        private final long batch;
+        private final long limit;
+        private Flow.Subscription subscription;
+        private long requested;
+
+        CollectingSubscriber(
+                final long batch,
+                final long limit) {
+            this.batch = batch;
+            this.limit = limit;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            requested = batch;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(final Record item) {
+            assertFalse(result.isDone());
+            records.add(item);
+            if (records.size() == limit) {
+                subscription.cancel();
+                result.complete(records);
+            } else if (records.size() == requested) {
+                requested += batch;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(records);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointTest extends TestBase {
+    private static final int VALUE_LOG_THRESHOLD = 256;
+    private static final DAOConfig CONFIG = DAOConfig.of(FLUSH_THRESHOLD).withValueLogThreshold(VALUE_LOG_THRESHOLD);
+
+    @Test
+    void checkpointIsStorage(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final Path target = root.toPath().resolve("checkpoint");
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            write(dao, expected, 1000);
+            dao.checkpoint(target);
+
+            // the storage keeps changing, the checkpoint does not
+            final NavigableMap<ByteBuffer, ByteBuffer> later = new TreeMap<>(expected);
+            write(dao, later, 1000);
+            dao.remove(expected.firstKey());
+            dao.compact();
+        }
+
+        assertTrue(Files.exists(target.resolve(Checkpoint.MANIFEST)));
+        try (DAOImpl dao = new DAOImpl(target.toFile(), CONFIG)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void incrementalCheckpoint(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final Path full = root.toPath().resolve("full");
+        final Path incremental = root.toPath().resolve("incremental");
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            write(dao, expected, 1000);
+            dao.checkpoint(full);
+            write(dao, expected, 100);
+            dao.checkpoint(incremental, full);
+        }
+
+        // only the new files are linked, the manifest lists all the live files
+        final List<String> manifest =
+                Files.readAllLines(incremental.resolve(Checkpoint.MANIFEST), StandardCharsets.UTF_8);
+        final String[] linked = incremental.toFile().list((dir, name) -> !name.equals(Checkpoint.MANIFEST));
+        assertTrue(linked != null && linked.length > 0);
+        for (final String name : linked) {
+            assertTrue(manifest.contains(name), name);
+            assertFalse(Files.exists(full.resolve(name)), name);
+        }
+
+        // restore the storage from both checkpoints
+        final Path restored = Files.createDirectory(root.toPath().resolve("restored"));
+        for (final String name : manifest) {
+            final Path source = incremental.resolve(name);
+            Files.copy(Files.exists(source) ? source : full.resolve(name), restored.resolve(name));
+        }
+        try (DAOImpl dao = new DAOImpl(restored.toFile(), CONFIG)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    private static void write(
+            final DAOImpl dao,
+            final Map<ByteBuffer, ByteBuffer> expected,
+            final int count) {
+        for (int i = 0; i < count; i++) {
+            final ByteBuffer key = randomKeyBuffer();
+            // every other value is stored in the value log
+            final ByteBuffer value = randomBuffer(i % 2 == 0 ? 100 : VALUE_LOG_THRESHOLD * 2);
+            dao.upsert(key, value);
+            expected.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.flush.TableFlusher;
+import ru.mail.polis.dao.vaddya.memtable.MemTablePoolImpl;
+import ru.mail.polis.dao.vaddya.naming.AtomicGenerationProvider;
+import ru.mail.polis.dao.vaddya.naming.LeveledFileManagerImpl;
+import ru.mail.polis.dao.vaddya.sstable.SSTable;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+import ru.mail.polis.dao.vaddya.vlog.ValueLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescedFlushTest extends TestBase {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+    private static final int COUNT = 100;
+    private static final ByteBuffer COUNTER = key(COUNT);
+
+    @Test
+    void queuedTablesAreFlushedTogether(@TempDir final File data) throws IOException, InterruptedException {
+        // the flushes run only when the test runs them, so the tables are queued
+        final List<Runnable> tasks = new ArrayList<>();
+        final MemoryBudget budget = MemoryBudget.unlimited();
+        final TableFlusher flusher = new TableFlusher(new LeveledFileManagerImpl(data), WriterConfig.defaults(),
+                new ValueLog(data, Integer.MAX_VALUE), tasks::add);
+        final MemTablePoolImpl pool = new MemTablePoolImpl(FLUSH_THRESHOLD, new AtomicGenerationProvider(), flusher,
+                budget);
+        final List<List<Integer>> sources = new ArrayList<>();
+        final List<SSTable> tables = new ArrayList<>();
+        flusher.addListener((generation, flushed, table) -> {
+            assertEquals(generation, (int) flushed.get(flushed.size() - 1));
+            sources.add(flushed);
+            tables.add(table);
+            flushed.forEach(pool::flushed);
+        });
+
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int round = 1; round <= 4; round++) {
+            for (int i = 0; i < COUNT; i += round) {
+                final ByteBuffer value = value(round, i);
+                pool.upsert(key(i), value);
+                expected.put(key(i), value);
+            }
+            pool.merge(COUNTER, MergeUtils.operand(MergeOperator.ADD, longBuffer(round)));
+            if (round == 3) {
+                pool.removeRange(key(50), key(60));
+                expected.subMap(key(50), key(60)).clear();
+            }
+            assertFalse(pool.flush(0, TimeUnit.MILLISECONDS));
+        }
+        final NavigableMap<ByteBuffer, ByteBuffer> coalesced = new TreeMap<>(expected);
+        pool.remove(key(1));
+        assertFalse(pool.flush(0, TimeUnit.MILLISECONDS));
+
+        assertEquals(5, tasks.size());
+        tasks.forEach(Runnable::run);
+        flusher.close();
+
+        // at most four tables are coalesced, the last one is flushed alone
+        assertEquals(List.of(List.of(0, 1, 2, 3), List.of(4)), sources);
+        assertEquals(0, pool.count());
+        assertEquals(0, budget.usedBytes());
+
+        final SSTable merged = tables.get(0);
+        assertEquals(1, merged.rangeTombstones().size());
+        final RangeTombstones tombstones = RangeTombstones.of(merged.rangeTombstones());
+        final Iterator<TableEntry> iterator = merged.iterator(ByteBuffer.allocate(0));
+        final Map<ByteBuffer, ByteBuffer> actual = new TreeMap<>();
+        TableEntry counter = null;
+        while (iterator.hasNext()) {
+            final TableEntry entry = tombstones.apply(iterator.next());
+            if (entry.getKey().equals(COUNTER)) {
+                counter = entry;
+            } else if (!entry.hasTombstone()) {
+                // the older versions are skipped, so each key is written once
+                assertNull(actual.put(entry.getKey(), entry.getValue()));
+            }
+        }
+        assertEquals(coalesced, actual);
+        assertTrue(counter != null && counter.isOperand());
+        assertEquals(1L + 2 + 3 + 4, MergeUtils.apply(null, counter.getValue()).getLong(0));
+        assertTrue(tables.get(1).iterator(key(1)).next().hasTombstone());
+    }
+
+    private static ByteBuffer key(final int i) {
+        // the decimal digits keep the order of the numbers
+        final String key = String.format(Locale.ROOT, "%04d", i);
+        return ByteBuffer.wrap(key.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer value(
+            final int round,
+            final int i) {
+        return ByteBuffer.wrap(("value-" + round + "-" + i).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer longBuffer(final long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(0, value);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnFamilyTest extends TestBase {
+    private static final DAOConfig CONFIG = DAOConfig.of(FLUSH_THRESHOLD);
+
+    @Test
+    void keyspacesAreIndependent(@TempDir final File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+        final ByteBuffer familyValue = randomValueBuffer();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            final DAOImpl family = dao.openColumnFamily("users", DAOConfig.of(FLUSH_THRESHOLD * 2));
+            assertSame(family, dao.columnFamily("users"));
+            dao.upsert(key, value);
+            family.upsert(key, familyValue);
+            family.removeRange(ByteBuffer.allocate(0), null);
+            family.upsert(key, familyValue);
+            dao.compact();
+
+            assertEquals(value, dao.get(key));
+            assertEquals(familyValue, family.get(key));
+        }
+
+        // the column family is opened with the configuration of the storage after the restart
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            final DAOImpl family = dao.columnFamily("users");
+            assertNotNull(family);
+            assertEquals(value, dao.get(key));
+            assertEquals(familyValue, family.get(key));
+            assertNull(dao.columnFamily("events"));
+        }
+    }
+
+    @Test
+    void namesAreChecked(@TempDir final File data) {
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertThrows(IllegalArgumentException.class, () -> dao.openColumnFamily("../users", CONFIG));
+            assertThrows(IllegalArgumentException.class, () -> dao.columnFamily(""));
+            dao.openColumnFamily("users", CONFIG);
+            assertThrows(IllegalStateException.class, () -> dao.openColumnFamily("users", CONFIG));
+        }
+    }
+
+    @Test
+    void checkpointIncludesFamilies(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final Path target = root.toPath().resolve("checkpoint");
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.openColumnFamily("users", CONFIG).upsert(key, value);
+            dao.checkpoint(target);
+        }
+
+        try (DAOImpl dao = new DAOImpl(target.toFile(), CONFIG)) {
+            final DAOImpl family = dao.columnFamily("users");
+            assertNotNull(family);
+            assertEquals(value, family.get(key));
+            assertFalse(dao.iterator(ByteBuffer.allocate(0)).hasNext());
+        }
+    }
+
+    @Test
+    void partitionedFamilies(@TempDir final File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+        try (PartitionedDAO dao = new PartitionedDAO(data, 4, CONFIG)) {
+            dao.openColumnFamily("users", CONFIG).upsert(key, value);
+        }
+
+        try (PartitionedDAO dao = new PartitionedDAO(data, 4, CONFIG)) {
+            final PartitionedDAO family = dao.columnFamily("users");
+            assertNotNull(family);
+            assertEquals(value, family.get(key));
+            assertTrue(family.iterator(ByteBuffer.allocate(0)).hasNext());
+            assertFalse(dao.iterator(ByteBuffer.allocate(0)).hasNext());
+        }
+    }
+}
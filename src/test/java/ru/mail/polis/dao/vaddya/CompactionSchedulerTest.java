@@ -0,0 +1,90 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactionSchedulerTest extends TestBase {
+    @Test
+    void compactOnFlush(@TempDir final File data) throws Exception {
+        final Map<ByteBuffer, ByteBuffer> expected = new ConcurrentHashMap<>();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            for (int i = 0; i < 4000; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+
+            // no explicit compaction, the flushes wake up the scheduler
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while (dao.pendingCompactionBytes() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, dao.pendingCompactionBytes());
+            assertEquals(expected, dao.getAll(expected.keySet()));
+        }
+    }
+
+    @Test
+    void compactWhileWriting(@TempDir final File data) throws Exception {
+        final Map<ByteBuffer, ByteBuffer> expected = new ConcurrentHashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        final ByteBuffer key = randomKeyBuffer();
+                        final ByteBuffer value = randomValueBuffer();
+                        dao.upsert(key, value);
+                        expected.put(key, value);
+                    }
+                }));
+            }
+            for (int i = 0; i < 5; i++) {
+                dao.compact();
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            dao.compact();
+            assertEquals(expected, dao.getAll(expected.keySet()));
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    @Test
+    void reopenAfterCompaction(@TempDir final File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new ConcurrentHashMap<>();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            for (int i = 0; i < 2000; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            dao.compact();
+        }
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertEquals(expected, dao.getAll(expected.keySet()));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConditionalWriteTest extends TestBase {
+    private static final DAOConfig CONFIG = DAOConfig.of(FLUSH_THRESHOLD);
+
+    @Test
+    void putIfAbsent(@TempDir final File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer first = randomValueBuffer();
+        final ByteBuffer second = randomValueBuffer();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertTrue(dao.putIfAbsent(key, first));
+            assertFalse(dao.putIfAbsent(key, second));
+            assertEquals(first, dao.get(key));
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            // the value is read from the table
+            assertFalse(dao.putIfAbsent(key, second));
+            dao.remove(key);
+            assertTrue(dao.putIfAbsent(key, second));
+            assertEquals(second, dao.get(key));
+        }
+    }
+
+    @Test
+    void putIfAbsentAfterRangeRemoval(@TempDir final File data) throws IOException {
+        final ByteBuffer key = ByteBuffer.wrap(new byte[]{5});
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.upsert(key, randomValueBuffer());
+            dao.removeRange(ByteBuffer.wrap(new byte[]{0}), ByteBuffer.wrap(new byte[]{10}));
+            final ByteBuffer value = randomValueBuffer();
+            assertTrue(dao.putIfAbsent(key, value));
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void putIfTimestamp(@TempDir final File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertFalse(dao.putIfTimestamp(key, value, 0L));
+            dao.upsert(key, randomValueBuffer());
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            final long ts = dao.getEntry(key).ts();
+            assertFalse(dao.putIfTimestamp(key, value, ts - 1));
+            assertTrue(dao.putIfTimestamp(key, value, ts));
+            assertEquals(value, dao.get(key));
+            // the write has changed the timestamp
+            assertFalse(dao.putIfTimestamp(key, randomValueBuffer(), ts));
+
+            final long removedTs = dao.getEntry(key).ts();
+            dao.remove(key);
+            assertFalse(dao.putIfTimestamp(key, randomValueBuffer(), removedTs));
+            assertFalse(dao.putIfTimestamp(key, randomValueBuffer(), dao.getEntry(key).ts()));
+        }
+    }
+
+    @Test
+    void concurrentCompareAndSet(@TempDir final File data) throws Exception {
+        final int threads = 4;
+        final int increments = 200;
+        final ByteBuffer key = randomKeyBuffer();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (PartitionedDAO dao = new PartitionedDAO(data, 2, CONFIG)) {
+            dao.upsert(key, longBuffer(0));
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < increments; i++) {
+                        boolean done = false;
+                        while (!done) {
+                            final TableEntry entry = dao.getEntry(key);
+                            final long next = entry.getValue().getLong(0) + 1;
+                            done = dao.putIfTimestamp(key, longBuffer(next), entry.ts());
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(longBuffer((long) threads * increments), dao.get(key));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static ByteBuffer longBuffer(final long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(0, value);
+    }
+}
@@ -0,0 +1,115 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CursorTest extends TestBase {
+    private static final long FLUSH_THRESHOLD = 256 * 1024;
+    private static final int LARGE_VALUE_SIZE = 4 * 1024;
+    private static final DAOConfig CONFIG = DAOConfig.of(FLUSH_THRESHOLD).withValueLogThreshold(1024);
+
+    @Test
+    void cursorMatchesRange(@TempDir final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            fill(dao, expected, 500);
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            // mix the memtable with the tables on disk
+            fill(dao, expected, 100);
+            final List<ByteBuffer> keys = new ArrayList<>(expected.keySet());
+            for (int i = 0; i < keys.size(); i += 7) {
+                dao.remove(keys.get(i));
+                expected.remove(keys.get(i));
+            }
+            final ByteBuffer removedFrom = keys.get(keys.size() / 2);
+            final ByteBuffer removedTo = keys.get(keys.size() / 2 + 20);
+            dao.removeRange(removedFrom, removedTo);
+            expected.subMap(removedFrom, removedTo).clear();
+
+            final ByteBuffer from = keys.get(10);
+            final ByteBuffer to = keys.get(keys.size() - 10);
+            assertCursor(expected.subMap(from, to), dao.cursor(from, to));
+            assertCursor(expected, dao.cursor(ByteBuffer.allocate(0), null));
+            assertRecords(expected.subMap(from, to), dao.range(from, to));
+        }
+    }
+
+    @Test
+    void concurrentReads(@TempDir final File data) throws Exception {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            fill(dao, expected, 1000);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10; j++) {
+                        assertEquals(expected, dao.getAll(expected.keySet()));
+                        assertCursor(expected, dao.cursor(ByteBuffer.allocate(0), null));
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    private static void fill(
+            final DAOImpl dao,
+            final NavigableMap<ByteBuffer, ByteBuffer> expected,
+            final int count) {
+        for (int i = 0; i < count; i++) {
+            final ByteBuffer key = randomKeyBuffer();
+            final ByteBuffer value = i % 3 == 0 ? randomBuffer(LARGE_VALUE_SIZE) : randomValueBuffer();
+            dao.upsert(key, value);
+            expected.put(key, value);
+        }
+    }
+
+    private static void assertCursor(
+            final SortedMap<ByteBuffer, ByteBuffer> expected,
+            final Cursor cursor) {
+        for (final var entry : expected.entrySet()) {
+            assertTrue(cursor.isValid());
+            assertEquals(entry.getKey(), view(cursor.keyBuffer(), cursor.keyOffset(), cursor.keyLength()));
+            assertEquals(entry.getValue(), view(cursor.valueBuffer(), cursor.valueOffset(), cursor.valueLength()));
+            assertEquals(entry.getKey(), cursor.entry().getKey());
+            assertEquals(entry.getValue(), cursor.entry().getValue());
+            cursor.next();
+        }
+        assertFalse(cursor.isValid());
+    }
+
+    private static ByteBuffer view(
+            final ByteBuffer buffer,
+            final int offset,
+            final int length) {
+        return buffer.duplicate().limit(offset + length).position(offset);
+    }
+}
@@ -0,0 +1,206 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.flush.FlushListener;
+import ru.mail.polis.dao.vaddya.flush.Flusher;
+import ru.mail.polis.dao.vaddya.memtable.MemTable;
+import ru.mail.polis.dao.vaddya.memtable.MemTablePoolImpl;
+import ru.mail.polis.dao.vaddya.memtable.MemTableType;
+import ru.mail.polis.dao.vaddya.naming.AtomicGenerationProvider;
+import ru.mail.polis.dao.vaddya.sstable.SSTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashMemTableTest extends TestBase {
+    @Test
+    void hashIndexed(@TempDir final File data) throws IOException {
+        writeReadReopen(data, DAOConfig.of(FLUSH_THRESHOLD).withMemTableType(MemTableType.HASH_INDEXED));
+    }
+
+    @Test
+    void hashOnly(@TempDir final File data) throws IOException {
+        writeReadReopen(data, DAOConfig.of(FLUSH_THRESHOLD).withMemTableType(MemTableType.HASH_ONLY));
+    }
+
+    @Test
+    void queuedTablesAreScanned() {
+        // the tables are never flushed, so they stay queued and are scanned through their sorted entries
+        final MemTablePoolImpl pool = new MemTablePoolImpl(4 * 1024, new AtomicGenerationProvider(),
+                new QueueingFlusher(), MemoryBudget.unlimited(), MemTableType.HASH_ONLY);
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            final ByteBuffer key = randomKeyBuffer();
+            final ByteBuffer value = randomValueBuffer();
+            pool.upsert(key, value);
+            expected.put(key, value);
+        }
+        final List<ByteBuffer> keys = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < keys.size(); i += 3) {
+            final ByteBuffer value = randomValueBuffer();
+            pool.upsert(keys.get(i), value);
+            expected.put(keys.get(i), value);
+        }
+        assertEntries(expected, pool.iterator(ByteBuffer.allocate(0)));
+        final ByteBuffer from = keys.get(keys.size() / 2);
+        assertEntries(expected.tailMap(from, true), pool.iterator(from));
+    }
+
+    @Test
+    void countersAreMerged(@TempDir final File data) throws IOException {
+        final DAOConfig config = DAOConfig.of(FLUSH_THRESHOLD).withMemTableType(MemTableType.HASH_ONLY);
+        final ByteBuffer key = randomKeyBuffer();
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            for (long i = 1; i <= 100; i++) {
+                dao.merge(key, MergeOperator.ADD, ByteBuffer.allocate(Long.BYTES).putLong(0, i));
+            }
+            assertEquals(5050L, dao.get(key).getLong(0));
+        }
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            assertEquals(5050L, dao.get(key).getLong(0));
+        }
+    }
+
+    @Test
+    void operandsAreFoldedAcrossTables(@TempDir final File data) throws IOException {
+        final DAOConfig config = DAOConfig.of(FLUSH_THRESHOLD).withMemTableType(MemTableType.HASH_ONLY);
+        final List<ByteBuffer> keys = new ArrayList<>();
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            for (int i = 0; i < 100; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                dao.upsert(key, ByteBuffer.allocate(Long.BYTES).putLong(0, 40));
+                keys.add(key);
+            }
+        }
+        // the operands of each table are folded with the value of the oldest one by the point lookups
+        for (int i = 0; i < 2; i++) {
+            try (DAOImpl dao = new DAOImpl(data, config)) {
+                for (final ByteBuffer key : keys) {
+                    dao.merge(key, MergeOperator.ADD, ByteBuffer.allocate(Long.BYTES).putLong(0, 1));
+                }
+            }
+        }
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            final Map<ByteBuffer, ByteBuffer> values = dao.getAll(keys);
+            for (final ByteBuffer key : keys) {
+                assertEquals(42L, dao.get(key).getLong(0));
+                assertEquals(42L, values.get(key).getLong(0));
+            }
+        }
+    }
+
+    @Test
+    void rangeRemovalHidesEntries(@TempDir final File data) throws IOException {
+        final DAOConfig config = DAOConfig.of(FLUSH_THRESHOLD).withMemTableType(MemTableType.HASH_INDEXED);
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            for (int i = 0; i < 100; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            final List<ByteBuffer> keys = new ArrayList<>(expected.keySet());
+            final ByteBuffer from = keys.get(20);
+            final ByteBuffer to = keys.get(40);
+            dao.removeRange(from, to);
+            expected.subMap(from, to).clear();
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            assertTrue(dao.getEntry(keys.get(30)).hasTombstone());
+        }
+    }
+
+    private static void assertEntries(
+            final NavigableMap<ByteBuffer, ByteBuffer> expected,
+            final Iterator<TableEntry> iterator) {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final TableEntry actual = iterator.next();
+            assertEquals(entry.getKey(), actual.getKey());
+            assertEquals(entry.getValue(), actual.getValue());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    private static void writeReadReopen(
+            final File data,
+            final DAOConfig config) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            // several tables are flushed and the rest stays in memory
+            for (int i = 0; i < 2000; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            final List<ByteBuffer> keys = new ArrayList<>(expected.keySet());
+            for (int i = 0; i < keys.size(); i += 5) {
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(keys.get(i), value);
+                expected.put(keys.get(i), value);
+            }
+            for (int i = 1; i < keys.size(); i += 7) {
+                dao.remove(keys.get(i));
+                expected.remove(keys.get(i));
+            }
+            assertContents(expected, dao);
+            final ByteBuffer from = keys.get(keys.size() / 2);
+            assertRecords(expected.tailMap(from, true), dao.iterator(from));
+        }
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            assertContents(expected, dao);
+        }
+    }
+
+    private static void assertContents(
+            final NavigableMap<ByteBuffer, ByteBuffer> expected,
+            final DAOImpl dao) throws IOException {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+        assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+    }
+
+    private static final class QueueingFlusher implements Flusher {
+        @Override
+        public void scheduleFlush(
+                final int generation,
+                @NotNull final MemTable table) {
+            // the table stays queued
+        }
+
+        @Override
+        @NotNull
+        public SSTable flushEntries(
+                final int generation,
+                @NotNull final Iterator<TableEntry> iterator,
+                @NotNull final Collection<RangeTombstone> tombstones) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addListener(@NotNull final FlushListener flushListener) {
+            // nothing is flushed
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
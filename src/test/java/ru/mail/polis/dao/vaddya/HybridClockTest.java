@@ -0,0 +1,107 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HybridClockTest {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long MAX_OFFSET_MILLIS = 500L;
+
+    @Test
+    void followWallClock() {
+        final AtomicLong millis = new AtomicLong(1000);
+        final HybridClock clock = new HybridClock(millis::get, MAX_OFFSET_MILLIS);
+
+        assertEquals(1000 * NANOS_PER_MILLI, clock.now());
+        assertEquals(1000 * NANOS_PER_MILLI + 1, clock.now());
+        millis.set(1001);
+        assertEquals(1001 * NANOS_PER_MILLI, clock.now());
+    }
+
+    @Test
+    void neverGoBackwards() {
+        final AtomicLong millis = new AtomicLong(1000);
+        final HybridClock clock = new HybridClock(millis::get, MAX_OFFSET_MILLIS);
+
+        final long before = clock.now();
+        millis.set(500);
+        final long after = clock.now();
+        assertEquals(before + 1, after);
+    }
+
+    @Test
+    void runAheadOfObservedTimestamps() {
+        final HybridClock clock = new HybridClock(() -> 1000, MAX_OFFSET_MILLIS);
+        final long remote = 1400 * NANOS_PER_MILLI + 42;
+
+        assertTrue(clock.observe(remote));
+        assertEquals(remote + 1, clock.now());
+
+        // an older timestamp does not move the clock backwards
+        assertTrue(clock.observe(1));
+        assertEquals(remote + 2, clock.now());
+    }
+
+    @Test
+    void rejectTimestampsTooFarAhead() {
+        final HybridClock clock = new HybridClock(() -> 1000, MAX_OFFSET_MILLIS);
+
+        assertFalse(clock.observe(2000 * NANOS_PER_MILLI));
+        assertFalse(clock.observe(Long.MAX_VALUE));
+        assertEquals(1000 * NANOS_PER_MILLI, clock.now());
+    }
+
+    @Test
+    void failOnExhaustedClock() {
+        final HybridClock clock = new HybridClock(() -> Long.MAX_VALUE / NANOS_PER_MILLI, MAX_OFFSET_MILLIS);
+
+        assertTrue(clock.observe(Long.MAX_VALUE));
+        assertThrows(IllegalStateException.class, clock::now);
+        assertThrows(IllegalStateException.class, clock::now);
+    }
+
+    @Test
+    void uniqueUnderContention() throws Exception {
+        final HybridClock clock = new HybridClock(() -> 1000, MAX_OFFSET_MILLIS);
+        final Set<Long> timestamps = ConcurrentHashMap.newKeySet();
+        final int threads = 8;
+        final int perThread = 10_000;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    long previous = 0;
+                    for (int j = 0; j < perThread; j++) {
+                        final long ts = clock.now();
+                        assertTrue(ts > previous);
+                        timestamps.add(ts);
+                        previous = ts;
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+        assertEquals(threads * perThread, timestamps.size());
+    }
+}
@@ -0,0 +1,164 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.sstable.SSTableBuilder;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestTest extends TestBase {
+    @Test
+    void ingestSortedFiles(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final File dumps = Files.createDirectory(root.toPath().resolve("dumps")).toFile();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        final ByteBuffer removed = randomKeyBuffer();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            for (int i = 0; i < 100; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            dao.upsert(removed, randomValueBuffer());
+
+            // the first file overwrites some of the existing keys, the second one removes a key
+            final NavigableMap<ByteBuffer, ByteBuffer> first = new TreeMap<>();
+            for (final ByteBuffer key : List.copyOf(expected.keySet()).subList(0, 50)) {
+                first.put(key, randomValueBuffer());
+            }
+            for (int i = 0; i < 100; i++) {
+                first.put(randomKeyBuffer(), randomValueBuffer());
+            }
+            final Path firstPath = dumps.toPath().resolve("first.db");
+            try (SSTableBuilder builder = SSTableBuilder.create(firstPath, WriterConfig.defaults())) {
+                for (final Map.Entry<ByteBuffer, ByteBuffer> entry : first.entrySet()) {
+                    builder.upsert(entry.getKey(), entry.getValue());
+                }
+                builder.finish();
+            }
+            expected.putAll(first);
+
+            final Path secondPath = dumps.toPath().resolve("second.db");
+            try (SSTableBuilder builder = SSTableBuilder.create(secondPath, WriterConfig.defaults())) {
+                builder.remove(removed);
+                builder.finish();
+            }
+
+            dao.ingest(List.of(firstPath, secondPath));
+            assertFalse(Files.exists(firstPath));
+            assertFalse(Files.exists(secondPath));
+
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+
+            // writes after the ingestion are newer
+            final ByteBuffer key = expected.firstKey();
+            final ByteBuffer value = randomValueBuffer();
+            dao.upsert(key, value);
+            expected.put(key, value);
+            assertEquals(value, dao.get(key));
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            dao.compact();
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void ingestIntoEmptyStorage(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final File dumps = Files.createDirectory(root.toPath().resolve("dumps")).toFile();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.put(randomKeyBuffer(), randomValueBuffer());
+        }
+        final Path path = dumps.toPath().resolve("dump.db");
+        try (SSTableBuilder builder = SSTableBuilder.create(path, WriterConfig.defaults())) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                builder.upsert(entry.getKey(), entry.getValue());
+            }
+            builder.finish();
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            dao.ingest(List.of(path));
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+
+        // nothing overlaps the table, so it is placed into the last level
+        final String[] files = data.list((dir, name) -> name.endsWith(".db"));
+        assertTrue(files != null && files.length == 1);
+        assertTrue(files[0].endsWith("_3.db"), files[0]);
+    }
+
+    @Test
+    void ingestFromStorageDirectory(@TempDir final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            expected.put(randomKeyBuffer(), randomValueBuffer());
+        }
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            final Path path = dao.ingestPath();
+            assertTrue(path.toAbsolutePath().startsWith(data.toPath().toAbsolutePath()), path.toString());
+            try (SSTableBuilder builder = SSTableBuilder.create(path, WriterConfig.defaults())) {
+                for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                    builder.upsert(entry.getKey(), entry.getValue());
+                }
+                builder.finish();
+            }
+            // the file is not a table of the storage until it is ingested
+            assertFalse(dao.iterator(ByteBuffer.allocate(0)).hasNext());
+
+            dao.ingest(List.of(path));
+            assertFalse(Files.exists(path));
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void rejectUnsortedKeys(@TempDir final File dumps) throws IOException {
+        final Path path = dumps.toPath().resolve("dump.db");
+        final ByteBuffer key = randomKeyBuffer();
+        try (SSTableBuilder builder = SSTableBuilder.create(path, WriterConfig.defaults())) {
+            builder.upsert(key, randomValueBuffer());
+            assertThrows(IllegalArgumentException.class, () -> builder.upsert(key, randomValueBuffer()));
+        }
+        // unfinished table is removed
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    void rejectInvalidFile(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final File dumps = Files.createDirectory(root.toPath().resolve("dumps")).toFile();
+        final Path path = dumps.toPath().resolve("garbage.db");
+        Files.write(path, randomValue());
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertThrows(IOException.class, () -> dao.ingest(List.of(path)));
+        }
+        assertTrue(Files.exists(path));
+    }
+}
@@ -0,0 +1,67 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryBudgetTest extends TestBase {
+    @Test
+    void overwritesAreNotCountedTwice(@TempDir final File data) {
+        final MemoryBudget budget = MemoryBudget.unlimited();
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD).withMemoryBudget(budget))) {
+            final ByteBuffer key = randomKeyBuffer();
+            dao.upsert(key, randomBuffer(100));
+            final long single = budget.usedBytes();
+            assertTrue(single > 100 + key.remaining());
+
+            for (int i = 0; i < 1000; i++) {
+                dao.upsert(key, randomBuffer(100));
+            }
+            assertEquals(single, budget.usedBytes());
+
+            dao.remove(key);
+            assertEquals(single - 100, budget.usedBytes());
+        }
+    }
+
+    @Test
+    void flushedTablesAreReleased(@TempDir final File data) {
+        final MemoryBudget budget = MemoryBudget.of(4 * FLUSH_THRESHOLD);
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD).withMemoryBudget(budget))) {
+            for (int i = 0; i < 1000; i++) {
+                dao.upsert(randomKeyBuffer(), randomValueBuffer());
+            }
+            assertTrue(budget.usedBytes() > 0);
+        }
+        assertEquals(0, budget.usedBytes());
+    }
+
+    @Test
+    void stallUntilReleased() throws Exception {
+        final MemoryBudget budget = MemoryBudget.of(100);
+        budget.charge(200);
+        assertTrue(budget.isExceeded());
+        assertFalse(budget.awaitBelowLimit(10, TimeUnit.MILLISECONDS));
+
+        final CompletableFuture<Boolean> stalled = CompletableFuture.supplyAsync(() -> {
+            try {
+                return budget.awaitBelowLimit(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        budget.release(150);
+        assertTrue(stalled.get(1, TimeUnit.MINUTES));
+        assertFalse(budget.isExceeded());
+    }
+}
@@ -0,0 +1,76 @@
+package ru.mail.polis.dao.vaddya;
+
+import com.google.common.collect.Iterators;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.dao.Iters;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class MergeCursorTest {
+    private static final int MAX_KEY = 1000;
+
+    @Test
+    void mergeLikeHeap() {
+        final Random random = new Random(42);
+        for (final int sourcesCount : new int[]{0, 1, 2, 3, 7, 8, 32}) {
+            final List<List<TableEntry>> sources = new ArrayList<>();
+            for (int i = 0; i < sourcesCount; i++) {
+                sources.add(randomSource(random));
+            }
+
+            final Iterator<TableEntry> expected = Iters.collapseEquals(
+                    Iterators.mergeSorted(iterators(sources), TableEntry.COMPARATOR), TableEntry::getKey);
+            final Iterator<TableEntry> actual = IteratorUtils.collapseIterators(iterators(sources));
+            while (expected.hasNext()) {
+                final TableEntry entry = expected.next();
+                final TableEntry merged = actual.next();
+                assertEquals(entry.getKey(), merged.getKey());
+                assertEquals(entry.ts(), merged.ts());
+            }
+            assertFalse(actual.hasNext());
+        }
+    }
+
+    @Test
+    void firstSourceWinsTie() {
+        final ByteBuffer key = key(1);
+        final TableEntry first = TableEntry.from(key, key(2), false, 1L);
+        final TableEntry second = TableEntry.from(key, key(3), false, 1L);
+        final Iterator<TableEntry> merged = IteratorUtils.collapseIterators(List.of(
+                List.of(first).iterator(),
+                List.of(second).iterator()));
+        assertSame(first, merged.next());
+        assertFalse(merged.hasNext());
+    }
+
+    private static List<TableEntry> randomSource(final Random random) {
+        final TreeSet<TableEntry> entries = new TreeSet<>(TableEntry.COMPARATOR);
+        final int count = random.nextInt(200);
+        for (int i = 0; i < count; i++) {
+            final ByteBuffer key = key(random.nextInt(MAX_KEY));
+            entries.add(TableEntry.from(key, key, random.nextBoolean(), 1 + random.nextInt(1000)));
+        }
+        return List.copyOf(entries);
+    }
+
+    private static List<Iterator<TableEntry>> iterators(final List<List<TableEntry>> sources) {
+        final List<Iterator<TableEntry>> iterators = new ArrayList<>();
+        for (final List<TableEntry> source : sources) {
+            iterators.add(source.iterator());
+        }
+        return iterators;
+    }
+
+    private static ByteBuffer key(final int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(value).flip();
+    }
+}
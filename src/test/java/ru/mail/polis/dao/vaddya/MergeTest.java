@@ -0,0 +1,222 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MergeTest extends TestBase {
+    private static final int VALUE_LOG_THRESHOLD = 1024;
+    private static final DAOConfig CONFIG = DAOConfig.of(FLUSH_THRESHOLD).withValueLogThreshold(VALUE_LOG_THRESHOLD);
+
+    @Test
+    void countersSurviveFlushesAndCompaction(@TempDir final File data) throws IOException {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(randomKeyBuffer());
+        }
+        final Map<ByteBuffer, Long> expected = new HashMap<>();
+        for (int round = 1; round <= 5; round++) {
+            try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+                for (int i = 0; i < keys.size(); i++) {
+                    final ByteBuffer key = keys.get(i);
+                    dao.merge(key, MergeOperator.ADD, longBuffer(i));
+                    dao.merge(key, MergeOperator.ADD, longBuffer(round));
+                    expected.merge(key, (long) i + round, Long::sum);
+                }
+                assertCounters(expected, dao);
+            }
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertCounters(expected, dao);
+            dao.compact();
+            assertCounters(expected, dao);
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertCounters(expected, dao);
+        }
+    }
+
+    @Test
+    void operatorsAreAppliedInOrder(@TempDir final File data) throws IOException {
+        final ByteBuffer appended = randomKeyBuffer();
+        final ByteBuffer max = randomKeyBuffer();
+        final ByteBuffer mixed = randomKeyBuffer();
+        final ByteBuffer overwritten = randomKeyBuffer();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.upsert(appended, string("x"));
+            dao.merge(appended, MergeOperator.APPEND, string("y"));
+            dao.merge(max, MergeOperator.MAX, longBuffer(7));
+            dao.merge(mixed, MergeOperator.ADD, longBuffer(5));
+            dao.upsert(overwritten, string("not a number"));
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.merge(appended, MergeOperator.APPEND, string("z"));
+            dao.merge(max, MergeOperator.MAX, longBuffer(3));
+            dao.merge(mixed, MergeOperator.MAX, longBuffer(3));
+            dao.merge(mixed, MergeOperator.ADD, longBuffer(1));
+            dao.merge(overwritten, MergeOperator.ADD, longBuffer(2));
+
+            assertEquals(string("xyz"), dao.get(appended));
+            assertEquals(longBuffer(7), dao.get(max));
+            assertEquals(longBuffer(6), dao.get(mixed));
+            assertEquals(longBuffer(2), dao.get(overwritten));
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.compact();
+            assertEquals(string("xyz"), dao.get(appended));
+            assertEquals(longBuffer(7), dao.get(max));
+            assertEquals(longBuffer(6), dao.get(mixed));
+            assertEquals(longBuffer(2), dao.get(overwritten));
+        }
+    }
+
+    @Test
+    void removalsResetOperands(@TempDir final File data) throws IOException {
+        final ByteBuffer removed = ByteBuffer.wrap(new byte[]{5});
+        final ByteBuffer rangeRemoved = ByteBuffer.wrap(new byte[]{1, 2, 3});
+        final ByteBuffer covered = ByteBuffer.wrap(new byte[]{1, 2, 4});
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.merge(removed, MergeOperator.ADD, longBuffer(5));
+            dao.merge(rangeRemoved, MergeOperator.ADD, longBuffer(5));
+            dao.merge(covered, MergeOperator.ADD, longBuffer(5));
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.remove(removed);
+            dao.removeRange(ByteBuffer.wrap(new byte[]{1}), ByteBuffer.wrap(new byte[]{2}));
+            dao.merge(removed, MergeOperator.ADD, longBuffer(2));
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.merge(rangeRemoved, MergeOperator.ADD, longBuffer(3));
+
+            assertEquals(longBuffer(2), dao.get(removed));
+            assertEquals(longBuffer(3), dao.get(rangeRemoved));
+            assertThrows(NoSuchElementException.class, () -> dao.get(covered));
+            assertFalse(dao.getAll(List.of(covered)).containsKey(covered));
+
+            dao.compact();
+            assertEquals(longBuffer(2), dao.get(removed));
+            assertEquals(longBuffer(3), dao.get(rangeRemoved));
+            assertThrows(NoSuchElementException.class, () -> dao.get(covered));
+        }
+    }
+
+    @Test
+    void operandsOfValueLogValues(@TempDir final File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer large = randomBuffer(VALUE_LOG_THRESHOLD * 4);
+        final List<ByteBuffer> overwritten = new ArrayList<>();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.upsert(key, large);
+            for (int i = 0; i < 20; i++) {
+                final ByteBuffer other = randomKeyBuffer();
+                dao.upsert(other, randomBuffer(VALUE_LOG_THRESHOLD * 4));
+                overwritten.add(other);
+            }
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.merge(key, MergeOperator.APPEND, string("tail"));
+            overwritten.forEach(dao::remove);
+        }
+
+        final ByteBuffer expected = join(large, string("tail"));
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertEquals(expected, dao.get(key));
+            // the value log file is collected, the base value is relocated
+            dao.compact();
+            assertEquals(expected, dao.get(key));
+            assertEquals(expected, dao.getAll(List.of(key)).get(key));
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.merge(key, MergeOperator.APPEND, string("!"));
+            assertEquals(join(expected, string("!")), dao.get(key));
+        }
+    }
+
+    @Test
+    void cursorFoldsOperands(@TempDir final File data) throws IOException {
+        final ByteBuffer first = ByteBuffer.wrap(new byte[]{1});
+        final ByteBuffer second = ByteBuffer.wrap(new byte[]{2});
+        final ByteBuffer third = ByteBuffer.wrap(new byte[]{3});
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.upsert(first, longBuffer(1));
+            dao.merge(second, MergeOperator.ADD, longBuffer(2));
+            dao.upsert(third, longBuffer(3));
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.merge(first, MergeOperator.ADD, longBuffer(10));
+            dao.merge(second, MergeOperator.ADD, longBuffer(20));
+
+            final Cursor cursor = dao.cursor(ByteBuffer.allocate(0), null);
+            assertTrue(cursor.isValid());
+            assertEquals(longBuffer(11), cursor.entry().getValue());
+            cursor.next();
+            assertEquals(second, cursor.entry().getKey());
+            assertFalse(cursor.isOperand());
+            assertEquals(longBuffer(22), cursor.entry().getValue());
+            cursor.next();
+            assertEquals(longBuffer(3), cursor.entry().getValue());
+            cursor.next();
+            assertFalse(cursor.isValid());
+
+            final Iterator<Record> iterator = dao.iterator(ByteBuffer.allocate(0));
+            assertEquals(longBuffer(11), iterator.next().getValue());
+            assertEquals(longBuffer(22), iterator.next().getValue());
+            assertEquals(longBuffer(3), iterator.next().getValue());
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    void wrongOperandsAreRejected(@TempDir final File data) {
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            final ByteBuffer key = randomKeyBuffer();
+            assertThrows(IllegalArgumentException.class,
+                    () -> dao.merge(key, MergeOperator.ADD, ByteBuffer.allocate(Integer.BYTES)));
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+
+    private static void assertCounters(
+            final Map<ByteBuffer, Long> expected,
+            final DAOImpl dao) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> all = dao.getAll(expected.keySet());
+        for (final Map.Entry<ByteBuffer, Long> entry : expected.entrySet()) {
+            assertEquals(longBuffer(entry.getValue()), dao.get(entry.getKey()));
+            assertEquals(longBuffer(entry.getValue()), all.get(entry.getKey()));
+        }
+        int count = 0;
+        final Cursor cursor = dao.cursor(ByteBuffer.allocate(0), null);
+        while (cursor.isValid()) {
+            assertEquals(longBuffer(expected.get(cursor.entry().getKey())), cursor.entry().getValue());
+            cursor.next();
+            count++;
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    private static ByteBuffer longBuffer(final long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(0, value);
+    }
+
+    private static ByteBuffer string(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,144 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.sstable.SSTableBuilder;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionedDAOTest extends TestBase {
+    private static final int PARTITIONS = 4;
+    private static final DAOConfig CONFIG = DAOConfig.of(FLUSH_THRESHOLD);
+
+    @Test
+    void scansAreMerged(@TempDir final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (PartitionedDAO dao = new PartitionedDAO(data, PARTITIONS, CONFIG)) {
+            for (int i = 0; i < 5000; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            final ByteBuffer removed = expected.firstKey();
+            dao.remove(removed);
+            expected.remove(removed);
+
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            final ByteBuffer from = List.copyOf(expected.keySet()).get(1000);
+            final ByteBuffer to = List.copyOf(expected.keySet()).get(2000);
+            final NavigableMap<ByteBuffer, ByteBuffer> range = expected.subMap(from, true, to, false);
+            assertRecords(range, dao.range(from, to));
+            assertRecords(range, IteratorUtils.toRecords(IteratorUtils.entries(dao.cursor(from, to))));
+        }
+
+        // each partition has its own directory
+        final String[] partitions = data.list();
+        assertTrue(partitions != null && partitions.length == PARTITIONS);
+
+        try (PartitionedDAO dao = new PartitionedDAO(data, PARTITIONS, CONFIG)) {
+            dao.compact();
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void batchIsSplit(@TempDir final File data) {
+        try (PartitionedDAO dao = new PartitionedDAO(data, PARTITIONS, CONFIG)) {
+            final ByteBuffer removed = randomKeyBuffer();
+            dao.upsert(removed, randomValueBuffer());
+
+            final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+            final WriteBatch batch = new WriteBatch();
+            for (int i = 0; i < 100; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                batch.upsert(key, value);
+                expected.put(key, value);
+            }
+            batch.remove(removed);
+            dao.apply(batch);
+
+            final Map<ByteBuffer, TableEntry> entries = dao.getEntries(List.of(expected.firstKey(), removed));
+            assertEquals(expected.firstEntry().getValue(), entries.get(expected.firstKey()).getValue());
+            assertTrue(entries.get(removed).hasTombstone());
+            assertEquals(expected, dao.getAll(expected.keySet()));
+            assertTrue(dao.getEntry(removed).hasTombstone());
+            assertNull(dao.getEntry(randomKeyBuffer()));
+        }
+    }
+
+    @Test
+    void ingestIsSplit(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final Path path = root.toPath().resolve("dump.db");
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.put(randomKeyBuffer(), randomValueBuffer());
+        }
+        try (SSTableBuilder builder = SSTableBuilder.create(path, WriterConfig.defaults())) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                builder.upsert(entry.getKey(), entry.getValue());
+            }
+            builder.finish();
+        }
+
+        try (PartitionedDAO dao = new PartitionedDAO(data, PARTITIONS, CONFIG)) {
+            dao.ingest(List.of(path));
+            assertFalse(Files.exists(path));
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        final String[] files = root.list();
+        assertTrue(files != null && files.length == 1);
+    }
+
+    @Test
+    void ingestKeepsTimestamps(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final Path path = root.toPath().resolve("dump.db");
+        final NavigableMap<ByteBuffer, ByteBuffer> dump = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            dump.put(randomKeyBuffer(), randomValueBuffer());
+        }
+        try (SSTableBuilder builder = SSTableBuilder.create(path, WriterConfig.defaults())) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : dump.entrySet()) {
+                builder.upsert(entry.getKey(), entry.getValue());
+            }
+            builder.finish();
+        }
+
+        try (PartitionedDAO dao = new PartitionedDAO(data, PARTITIONS, CONFIG)) {
+            // the writes made after the dump was built are newer than the parts of the dump
+            final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>(dump);
+            for (final ByteBuffer key : List.copyOf(dump.keySet()).subList(0, 10)) {
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            dao.ingest(List.of(path));
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void partitionsAreFixed(@TempDir final File data) {
+        new PartitionedDAO(data, PARTITIONS, CONFIG).close();
+        assertThrows(IllegalArgumentException.class, () -> new PartitionedDAO(data, PARTITIONS * 2, CONFIG));
+    }
+}
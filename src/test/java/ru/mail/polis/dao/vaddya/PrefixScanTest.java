@@ -0,0 +1,99 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.sstable.PrefixExtractor;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PrefixScanTest extends TestBase {
+    private static final long FLUSH_THRESHOLD = 16 * 1024;
+    private static final String[] PREFIXES = {"a:", "b:", "c:"};
+
+    @Test
+    void prefixScan(@TempDir final File data) {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, config(PrefixExtractor.delimiter((byte) ':')))) {
+            for (final String prefix : PREFIXES) {
+                for (int i = 0; i < 100; i++) {
+                    final ByteBuffer key = join(wrap(prefix + i), randomKeyBuffer());
+                    final ByteBuffer value = randomValueBuffer();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+            final ByteBuffer removed = expected.firstKey();
+            dao.remove(removed);
+            expected.remove(removed);
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, config(PrefixExtractor.delimiter((byte) ':')))) {
+            for (final String prefix : PREFIXES) {
+                assertPrefix(expected, dao, prefix);
+            }
+            assertPrefix(expected, dao, "b"); // no delimiter, filters are not used
+            assertPrefix(expected, dao, "b:1");
+            assertFalse(dao.prefix(wrap("d:")).hasNext());
+        }
+    }
+
+    @Test
+    void prefixOfHighestBytes(@TempDir final File data) {
+        final ByteBuffer highest = ByteBuffer.wrap(new byte[]{Byte.MAX_VALUE, Byte.MAX_VALUE});
+        final ByteBuffer lower = ByteBuffer.wrap(new byte[]{Byte.MAX_VALUE, 0});
+        final ByteBuffer other = ByteBuffer.wrap(new byte[]{0, Byte.MAX_VALUE});
+        try (DAOImpl dao = new DAOImpl(data, config(PrefixExtractor.fixedLength(1)))) {
+            dao.upsert(highest, highest);
+            dao.upsert(lower, lower);
+            dao.upsert(other, other);
+
+            final Iterator<Record> iterator = dao.prefix(ByteBuffer.wrap(new byte[]{Byte.MAX_VALUE}));
+            assertEquals(lower, iterator.next().getKey());
+            assertEquals(highest, iterator.next().getKey());
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    private static DAOConfig config(final PrefixExtractor extractor) {
+        return DAOConfig.of(FLUSH_THRESHOLD).withPrefixExtractor(extractor);
+    }
+
+    private static void assertPrefix(
+            final NavigableMap<ByteBuffer, ByteBuffer> expected,
+            final DAOImpl dao,
+            final String prefix) {
+        final Iterator<Record> iterator = dao.prefix(wrap(prefix));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            if (!startsWith(entry.getKey(), prefix)) {
+                continue;
+            }
+            final Record record = iterator.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    private static boolean startsWith(
+            final ByteBuffer key,
+            final String prefix) {
+        final ByteBuffer bytes = wrap(prefix);
+        return key.remaining() >= bytes.remaining()
+                && key.duplicate().limit(bytes.remaining()).equals(bytes);
+    }
+
+    private static ByteBuffer wrap(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,86 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RangeEstimateTest extends TestBase {
+    private static final int COUNT = 1000;
+    private static final int VALUE_SIZE = 100;
+    private static final int KEY_SIZE = 4;
+    // key size, key, timestamp, value size and value
+    private static final int STORED_ENTRY_SIZE = Integer.BYTES + KEY_SIZE + Long.BYTES + Integer.BYTES + VALUE_SIZE;
+
+    @Test
+    void memTablesAndTables(@TempDir final File data) throws IOException {
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            write(dao);
+            final RangeEstimate all = dao.estimateRange(key(0), null);
+            assertEquals(COUNT, all.count());
+            assertTrue(all.sizeInBytes() >= (long) COUNT * (KEY_SIZE + VALUE_SIZE));
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            // the keys are unique, so the estimate of the tables is exact
+            assertEquals(RangeEstimate.of((long) COUNT * STORED_ENTRY_SIZE, COUNT), dao.estimateRange(key(0), null));
+            assertEquals(RangeEstimate.of(200L * STORED_ENTRY_SIZE, 200), dao.estimateRange(key(100), key(300)));
+            assertEquals(RangeEstimate.of(STORED_ENTRY_SIZE, 1), dao.estimateRange(key(COUNT - 1), key(COUNT)));
+            assertEquals(RangeEstimate.empty(), dao.estimateRange(key(COUNT), null));
+            assertEquals(RangeEstimate.empty(), dao.estimateRange(key(300), key(100)));
+            assertEquals(RangeEstimate.empty(), dao.estimateRange(key(100), key(100)));
+        }
+    }
+
+    @Test
+    void overwritesAreCountedUntilCompaction(@TempDir final File data) throws IOException {
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            write(dao);
+            write(dao);
+            // the background compaction of L0 could already drop some of the overwritten versions
+            final long count = dao.estimateRange(key(0), null).count();
+            assertTrue(count >= COUNT && count <= 2 * COUNT, "Count: " + count);
+        }
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            dao.compact();
+            final long count = dao.estimateRange(key(0), null).count();
+            assertTrue(count >= COUNT && count < 2 * COUNT, "Count: " + count);
+        }
+    }
+
+    @Test
+    void partitionsAreSummed(@TempDir final File data) throws IOException {
+        try (PartitionedDAO dao = new PartitionedDAO(data, 4, DAOConfig.of(FLUSH_THRESHOLD))) {
+            write(dao);
+            assertEquals(COUNT, dao.estimateRange(key(0), null).count());
+            assertEquals(200, dao.estimateRange(key(100), key(300)).count());
+        }
+    }
+
+    @Test
+    void negativeEstimate() {
+        assertThrows(IllegalArgumentException.class, () -> RangeEstimate.of(-1, 0));
+        assertThrows(IllegalArgumentException.class, () -> RangeEstimate.of(0, -1));
+    }
+
+    private static void write(final EntryDAO dao) {
+        for (int i = 0; i < COUNT; i++) {
+            dao.upsert(key(i), randomBuffer(VALUE_SIZE));
+        }
+    }
+
+    private static ByteBuffer key(final int i) {
+        // the decimal digits keep the order of the numbers
+        final String key = String.format(Locale.ROOT, "%0" + KEY_SIZE + "d", i);
+        return ByteBuffer.wrap(key.getBytes(StandardCharsets.US_ASCII));
+    }
+}
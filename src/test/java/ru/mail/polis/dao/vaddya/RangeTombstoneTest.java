@@ -0,0 +1,177 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.sstable.SSTable;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RangeTombstoneTest extends TestBase {
+    @Test
+    void removeRange(@TempDir final File data) {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            for (int i = 0; i < 100; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            final List<ByteBuffer> keys = List.copyOf(expected.keySet());
+            final ByteBuffer from = keys.get(25);
+            final ByteBuffer to = keys.get(75);
+            dao.removeRange(from, to);
+            expected.subMap(from, to).clear();
+
+            final ByteBuffer value = randomValueBuffer();
+            dao.upsert(keys.get(50), value);
+            expected.put(keys.get(50), value);
+
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            assertThrows(NoSuchElementException.class, () -> dao.get(keys.get(30)));
+            assertEquals(value, dao.get(keys.get(50)));
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void lookupCoveredKeys(@TempDir final File data) {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer absent = randomKeyBuffer();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            dao.upsert(key, randomValueBuffer());
+            dao.removeRange(ByteBuffer.allocate(0), null);
+
+            final Map<ByteBuffer, TableEntry> entries = dao.getEntries(List.of(key, absent));
+            assertTrue(entries.get(key).hasTombstone());
+            assertTrue(entries.get(absent).hasTombstone());
+            assertTrue(dao.getAll(List.of(key, absent)).isEmpty());
+        }
+    }
+
+    @Test
+    void compactionDropsCoveredData(@TempDir final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        final List<ByteBuffer> keys = List.copyOf(expected.keySet());
+        final ByteBuffer from = keys.get(100);
+        final ByteBuffer to = keys.get(900);
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            dao.removeRange(from, to);
+            expected.subMap(from, to).clear();
+        }
+
+        final long sizeBefore = directorySize(data);
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            dao.compact();
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        assertTrue(directorySize(data) < sizeBefore / 2);
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void tableOfTombstonesIsFormatted(@TempDir final File data) throws IOException {
+        final Path root = data.toPath();
+        final RangeTombstone tombstone = RangeTombstone.from(ByteBuffer.allocate(0), null, 1L);
+        final SSTable table = SSTable.flushAndOpen(Collections.emptyIterator(),
+                root.resolve("1.tmp"), root.resolve("1.db"), WriterConfig.defaults(), List.of(tombstone));
+        assertTrue(table.toString().endsWith("count=0, tombstones=1, ratio=1.0, [, ]}"));
+    }
+
+    @Test
+    void compactionDropsObsoleteTombstones(@TempDir final File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer absent = randomKeyBuffer();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            dao.upsert(key, randomValueBuffer());
+            dao.removeRange(ByteBuffer.allocate(0), null);
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertTrue(dao.getEntries(List.of(absent)).get(absent).hasTombstone());
+
+            // nothing is left to remove in the last level, so the tombstone is not kept there
+            dao.compact();
+            assertTrue(dao.getEntries(List.of(key, absent)).isEmpty());
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertTrue(dao.getEntries(List.of(key, absent)).isEmpty());
+        }
+    }
+
+    @Test
+    void fragmentedTombstones() {
+        final Random random = new Random(42);
+        final List<RangeTombstone> tombstones = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final int from = random.nextInt(64);
+            final ByteBuffer to = random.nextInt(8) == 0 ? null : byteKey(from + random.nextInt(16));
+            tombstones.add(RangeTombstone.from(byteKey(from), to, 1 + random.nextInt(100)));
+        }
+        final RangeTombstones fragmented = RangeTombstones.of(tombstones);
+
+        for (int i = 0; i < 1000; i++) {
+            final ByteBuffer key = byteKey(random.nextInt(96));
+            final TableEntry entry = TableEntry.from(key, null, true, random.nextInt(100));
+            long ts = entry.ts();
+            for (final RangeTombstone tombstone : tombstones) {
+                final ByteBuffer to = tombstone.to();
+                if (tombstone.from().compareTo(key) <= 0 && (to == null || key.compareTo(to) < 0)) {
+                    ts = Math.max(ts, tombstone.ts());
+                }
+            }
+            assertEquals(ts > entry.ts(), fragmented.isCovered(entry));
+            assertEquals(ts, fragmented.apply(entry).ts());
+        }
+        assertSame(fragmented, fragmented.update(List.copyOf(tombstones)));
+    }
+
+    private static ByteBuffer byteKey(final int key) {
+        return ByteBuffer.wrap(new byte[]{(byte) key});
+    }
+
+    private static long directorySize(final File directory) {
+        long size = 0;
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.sstable.ReadAhead;
+import ru.mail.polis.dao.vaddya.sstable.SSTable;
+import ru.mail.polis.dao.vaddya.sstable.SSTableBuilder;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReadAheadTest extends TestBase {
+    @Test
+    void scansAreNotAffected(@TempDir final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            expected.put(randomKeyBuffer(), randomBuffer(1 + (i * 37) % 3000));
+        }
+        final Path path = data.toPath().resolve("table.db");
+        try (SSTableBuilder builder = SSTableBuilder.create(path, WriterConfig.defaults())) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                builder.upsert(entry.getKey(), entry.getValue());
+            }
+            builder.finish();
+        }
+
+        // windows smaller than an entry, larger than the table and in between
+        for (final int window : new int[]{0, 1, 64 * 1024, 64 * 1024 * 1024}) {
+            final SSTable table;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                table = SSTable.open(channel, ReadAhead.of(window));
+            }
+            assertEntries(expected, table.iterator(ByteBuffer.allocate(0)));
+            final ByteBuffer from = List.copyOf(expected.keySet()).get(500);
+            assertEntries(expected.tailMap(from, true), table.iterator(from));
+        }
+    }
+
+    @Test
+    void negativeWindow() {
+        assertThrows(IllegalArgumentException.class, () -> ReadAhead.of(-1));
+    }
+
+    private static void assertEntries(
+            final NavigableMap<ByteBuffer, ByteBuffer> expected,
+            final Iterator<TableEntry> iterator) {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final TableEntry actual = iterator.next();
+            assertEquals(entry.getKey(), actual.getKey());
+            assertEquals(entry.getValue(), actual.getValue());
+        }
+        assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,59 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SSTableWriterTest extends TestBase {
+    private static final long FLUSH_THRESHOLD = 256 * 1024;
+    private static final int BUFFER_SIZE = 4 * 1024;
+    private static final DAOConfig CONFIG = DAOConfig.of(FLUSH_THRESHOLD)
+            .withWriterConfig(WriterConfig.defaults()
+                    .withBufferSize(BUFFER_SIZE)
+                    .withForcePolicy(WriterConfig.ForcePolicy.NONE));
+
+    @Test
+    void entriesCrossingBuffer(@TempDir final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            for (int i = 0; i < 500; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                // values smaller than, comparable to and larger than the buffer
+                final ByteBuffer value = randomBuffer(1 + (i * 37) % (3 * BUFFER_SIZE));
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            final List<ByteBuffer> keys = List.copyOf(expected.keySet());
+            for (int i = 0; i < keys.size(); i += 5) {
+                dao.remove(keys.get(i));
+                expected.remove(keys.get(i));
+            }
+            dao.removeRange(keys.get(100), keys.get(120));
+            expected.subMap(keys.get(100), keys.get(120)).clear();
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            dao.compact();
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void bufferTooSmall() {
+        assertThrows(IllegalArgumentException.class, () -> WriterConfig.defaults().withBufferSize(16));
+    }
+}
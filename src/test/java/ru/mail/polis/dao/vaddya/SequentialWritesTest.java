@@ -0,0 +1,86 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SequentialWritesTest extends TestBase {
+    @Test
+    void appendedTablesSkipZeroLevel(@TempDir final File data) {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            for (int i = 0; i < 2000; i++) {
+                final ByteBuffer key = key(i);
+                final ByteBuffer value = randomBuffer(100);
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+
+        final File[] files = data.listFiles((dir, name) -> name.endsWith(".db"));
+        assertTrue(files != null && files.length > 1);
+        // nothing overlaps the appended tables, so all but the first one are installed directly into the last level
+        int zeroLevel = 0;
+        for (final File file : files) {
+            if (file.getName().endsWith("_0.db")) {
+                zeroLevel++;
+            } else {
+                assertTrue(file.getName().endsWith("_3.db"), file.getName());
+            }
+        }
+        assertTrue(zeroLevel <= 1);
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void keyOutOfOrder(@TempDir final File data) {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            for (int i = 0; i < 100; i++) {
+                final ByteBuffer key = key(i * 2);
+                final ByteBuffer value = randomBuffer(100);
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            dao.upsert(key(198), randomBuffer(100));
+            final ByteBuffer overwritten = randomBuffer(100);
+            dao.upsert(key(198), overwritten);
+            expected.put(key(198), overwritten);
+            dao.remove(key(198));
+            expected.remove(key(198));
+
+            // the keys in between convert the table
+            for (int i = 0; i < 100; i++) {
+                final ByteBuffer key = key(i * 2 + 1);
+                final ByteBuffer value = randomBuffer(100);
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            dao.remove(key(10));
+            expected.remove(key(10));
+
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            assertRecords(expected.tailMap(key(51), true), dao.iterator(key(51)));
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    private static ByteBuffer key(final int i) {
+        return ByteBuffer.wrap(String.format("ts:%010d", i).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,134 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.naming.StorageTiers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorageTiersTest extends TestBase {
+    @Test
+    void levelsAreStripedOverTiers(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final Path fast = root.toPath().resolve("fast");
+        final Path slow1 = root.toPath().resolve("slow1");
+        final Path slow2 = root.toPath().resolve("slow2");
+        final DAOConfig config = DAOConfig.of(FLUSH_THRESHOLD)
+                .withStorageTiers(StorageTiers.none().withTier(0, fast).withTier(1, slow1, slow2));
+
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            write(dao, expected, 2000);
+            dao.compact();
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+
+        // the compacted tables are striped over the slow directories, nothing is left in the storage directory
+        assertTrue(tableCount(slow1) > 0);
+        assertTrue(tableCount(slow2) > 0);
+        assertEquals(0, tableCount(data.toPath()));
+
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void tablesAreMovedOnReopen(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final Path cold = root.toPath().resolve("cold");
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            write(dao, expected, 2000);
+            dao.compact();
+        }
+        assertTrue(tableCount(data.toPath()) > 0);
+
+        // all the levels are moved to the new tier
+        final DAOConfig tiered = DAOConfig.of(FLUSH_THRESHOLD).withStorageTiers(StorageTiers.none().withTier(0, cold));
+        try (DAOImpl dao = new DAOImpl(data, tiered)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        assertEquals(0, tableCount(data.toPath()));
+        assertTrue(tableCount(cold) > 0);
+
+        // and back
+        try (DAOImpl dao = new DAOImpl(data, DAOConfig.of(FLUSH_THRESHOLD))) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        assertEquals(0, tableCount(cold));
+        assertTrue(tableCount(data.toPath()) > 0);
+    }
+
+    @Test
+    void storageWithInnerTierIsMovable(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final Path cold = data.toPath().resolve("cold");
+        final DAOConfig config = DAOConfig.of(FLUSH_THRESHOLD).withStorageTiers(StorageTiers.none().withTier(1, cold));
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            write(dao, expected, 2000);
+            dao.compact();
+        }
+        assertTrue(tableCount(cold) > 0);
+
+        // the remembered tier is relative to the storage directory, so the tables are found after the move
+        final File moved = Files.move(data.toPath(), root.toPath().resolve("moved")).toFile();
+        try (DAOImpl dao = new DAOImpl(moved, DAOConfig.of(FLUSH_THRESHOLD))) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        assertEquals(0, tableCount(moved.toPath().resolve("cold")));
+    }
+
+    @Test
+    void partitionsHaveOwnDirectories(@TempDir final File root) throws IOException {
+        final File data = Files.createDirectory(root.toPath().resolve("data")).toFile();
+        final Path cold = root.toPath().resolve("cold");
+        final DAOConfig config = DAOConfig.of(FLUSH_THRESHOLD).withStorageTiers(StorageTiers.none().withTier(1, cold));
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (PartitionedDAO dao = new PartitionedDAO(data, 2, config)) {
+            write(dao, expected, 2000);
+            dao.compact();
+        }
+        try (PartitionedDAO dao = new PartitionedDAO(data, 2, config)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        final String[] partitions = cold.toFile().list();
+        assertTrue(partitions != null && partitions.length == 2);
+    }
+
+    @Test
+    void wrongTier() {
+        assertThrows(IllegalArgumentException.class, () -> StorageTiers.none().withTier(-1, Path.of("data")));
+        assertThrows(IllegalArgumentException.class, () -> StorageTiers.none().withTier(1));
+    }
+
+    private static void write(
+            final EntryDAO dao,
+            final Map<ByteBuffer, ByteBuffer> expected,
+            final int count) {
+        for (int i = 0; i < count; i++) {
+            final ByteBuffer key = randomKeyBuffer();
+            final ByteBuffer value = randomValueBuffer();
+            dao.upsert(key, value);
+            expected.put(key, value);
+        }
+    }
+
+    private static int tableCount(final Path directory) {
+        final String[] tables = directory.toFile().list((dir, name) -> name.endsWith(".db"));
+        return tables == null ? 0 : tables.length;
+    }
+}
@@ -0,0 +1,115 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.sstable.SSTable;
+import ru.mail.polis.dao.vaddya.sstable.SSTableBuilder;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueCompressionTest extends TestBase {
+    private static final long FLUSH_THRESHOLD = 256 * 1024;
+    private static final WriterConfig WRITER_CONFIG = WriterConfig.defaults().withDictionaryCompression(8 * 1024);
+
+    @Test
+    void similarValuesAreCompressed(@TempDir final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int i = 0; i < 5000; i++) {
+            // documents of the same schema mixed with short and random values
+            final ByteBuffer value = i % 10 == 0 ? randomBuffer(1 + i % 100) : document(i);
+            expected.put(randomKeyBuffer(), value);
+        }
+        final Path path = data.toPath().resolve("table.db");
+        try (SSTableBuilder builder = SSTableBuilder.create(path, WRITER_CONFIG)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                builder.upsert(entry.getKey(), entry.getValue());
+            }
+            builder.finish();
+        }
+
+        final SSTable table;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            table = SSTable.open(channel);
+        }
+        assertTrue(table.compressionRatio() > 1.5, table::toString);
+        assertEntries(expected, table.iterator(ByteBuffer.allocate(0)));
+        final ByteBuffer from = List.copyOf(expected.keySet()).get(2500);
+        assertEntries(expected.tailMap(from, true), table.iterator(from));
+    }
+
+    @Test
+    void compressedTablesAreCompacted(@TempDir final File data) throws IOException {
+        final DAOConfig config = DAOConfig.of(FLUSH_THRESHOLD).withWriterConfig(WRITER_CONFIG);
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            for (int i = 0; i < 5000; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = document(i);
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            final List<ByteBuffer> keys = List.copyOf(expected.keySet());
+            for (int i = 0; i < keys.size(); i += 7) {
+                dao.remove(keys.get(i));
+                expected.remove(keys.get(i));
+            }
+        }
+
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            dao.compact();
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        try (DAOImpl dao = new DAOImpl(data, config)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void dictionaryTooLarge() {
+        assertThrows(IllegalArgumentException.class, () -> WriterConfig.defaults().withDictionaryCompression(-1));
+        assertThrows(IllegalArgumentException.class,
+                () -> WriterConfig.defaults().withDictionaryCompression(1024 * 1024));
+    }
+
+    private static ByteBuffer document(final int i) {
+        final String json = "{\"id\":" + i
+                + ",\"name\":\"user-" + (i * 31 % 1000)
+                + "\",\"email\":\"user" + i + "@example.com\""
+                + ",\"status\":\"" + (i % 3 == 0 ? "active" : "inactive")
+                + "\",\"roles\":[\"reader\",\"writer\"],\"created\":\"2019-10-" + (10 + i % 20) + "T12:00:00Z\"}";
+        return ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertEntries(
+            final NavigableMap<ByteBuffer, ByteBuffer> expected,
+            final Iterator<TableEntry> iterator) {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final TableEntry actual = iterator.next();
+            assertEquals(entry.getKey(), actual.getKey());
+            assertEquals(entry.getValue(), actual.getValue());
+        }
+        assertFalse(iterator.hasNext());
+    }
+}
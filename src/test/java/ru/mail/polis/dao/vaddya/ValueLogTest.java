@@ -0,0 +1,107 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueLogTest extends TestBase {
+    private static final long FLUSH_THRESHOLD = 256 * 1024;
+    private static final int VALUE_LOG_THRESHOLD = 1024;
+    private static final int LARGE_VALUE_SIZE = 4 * 1024;
+    private static final DAOConfig CONFIG = DAOConfig.of(FLUSH_THRESHOLD).withValueLogThreshold(VALUE_LOG_THRESHOLD);
+
+    @Test
+    void separateLargeValues(@TempDir final File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            for (int i = 0; i < 200; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = i % 2 == 0 ? randomValueBuffer() : largeValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+        assertTrue(valueLogFiles(data) > 0);
+
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertValues(expected, dao);
+            dao.compact();
+            assertValues(expected, dao);
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertValues(expected, dao);
+        }
+    }
+
+    @Test
+    void collectOverwrittenValues(@TempDir final File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        final ByteBuffer removed = randomKeyBuffer();
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.upsert(removed, largeValue());
+            for (int i = 0; i < 100; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                dao.upsert(key, largeValue());
+                expected.put(key, largeValue());
+            }
+        }
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            expected.forEach(dao::upsert);
+            dao.remove(removed);
+        }
+
+        final long sizeBefore = directorySize(data);
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            dao.compact();
+            assertValues(expected, dao);
+            assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+        }
+        assertTrue(directorySize(data) < sizeBefore * 3 / 4);
+
+        try (DAOImpl dao = new DAOImpl(data, CONFIG)) {
+            assertValues(expected, dao);
+            assertTrue(dao.getAll(List.of(removed)).isEmpty());
+        }
+    }
+
+    private static ByteBuffer largeValue() {
+        return randomBuffer(LARGE_VALUE_SIZE);
+    }
+
+    private static void assertValues(
+            final Map<ByteBuffer, ByteBuffer> expected,
+            final DAOImpl dao) {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+        assertEquals(expected, dao.getAll(expected.keySet()));
+    }
+
+    private static long valueLogFiles(final File directory) {
+        final String[] names = directory.list((dir, name) -> name.endsWith(".vlog"));
+        return names == null ? 0 : names.length;
+    }
+
+    private static long directorySize(final File directory) {
+        long size = 0;
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+}
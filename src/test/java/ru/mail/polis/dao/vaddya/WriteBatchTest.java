@@ -0,0 +1,76 @@
+package ru.mail.polis.dao.vaddya;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBatchTest extends TestBase {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+
+    @Test
+    void applyBatch(@TempDir final File data) {
+        final ByteBuffer key1 = randomKeyBuffer();
+        final ByteBuffer key2 = randomKeyBuffer();
+        final ByteBuffer value1 = randomValueBuffer();
+        final ByteBuffer value2 = randomValueBuffer();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            dao.upsert(key2, value2);
+            dao.apply(new WriteBatch()
+                    .upsert(key1, value1)
+                    .remove(key2));
+
+            assertEquals(value1, dao.get(key1));
+            assertThrows(NoSuchElementException.class, () -> dao.get(key2));
+
+            final TableEntry entry1 = dao.getEntry(key1);
+            final TableEntry entry2 = dao.getEntry(key2);
+            assertTrue(entry2.hasTombstone());
+            assertEquals(entry1.ts(), entry2.ts());
+        }
+    }
+
+    @Test
+    void lastOperationWins(@TempDir final File data) {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value1 = randomValueBuffer();
+        final ByteBuffer value2 = randomValueBuffer();
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            dao.apply(new WriteBatch()
+                    .upsert(key, value1)
+                    .remove(key)
+                    .upsert(key, value2));
+            assertEquals(value2, dao.get(key));
+        }
+    }
+
+    @Test
+    void batchSurvivesReopen(@TempDir final File data) {
+        final int count = 100;
+        final WriteBatch batch = new WriteBatch();
+        final ByteBuffer[] keys = new ByteBuffer[count];
+        final ByteBuffer[] values = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = randomKeyBuffer();
+            values[i] = randomValueBuffer();
+            batch.upsert(keys[i], values[i]);
+        }
+        assertEquals(count, batch.size());
+
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            dao.apply(batch);
+        }
+        try (DAOImpl dao = new DAOImpl(data, FLUSH_THRESHOLD)) {
+            for (int i = 0; i < count; i++) {
+                assertEquals(values[i], dao.get(keys[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.mail.polis.dao.vaddya.sstable.leveled;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.vaddya.MergeOperator;
+import ru.mail.polis.dao.vaddya.MergeUtils;
+import ru.mail.polis.dao.vaddya.RangeTombstone;
+import ru.mail.polis.dao.vaddya.RangeTombstones;
+import ru.mail.polis.dao.vaddya.TableEntry;
+import ru.mail.polis.dao.vaddya.naming.AtomicGenerationProvider;
+import ru.mail.polis.dao.vaddya.naming.LeveledFileManagerImpl;
+import ru.mail.polis.dao.vaddya.sstable.SSTable;
+import ru.mail.polis.dao.vaddya.sstable.WriterConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LevelTest extends TestBase {
+
+    @Test
+    void operandIsNotFoldedIntoRemovedValue(@TempDir final File data) throws IOException {
+        final LeveledFileManagerImpl fileManager = new LeveledFileManagerImpl(data);
+        final AtomicGenerationProvider generationProvider = new AtomicGenerationProvider();
+        final Level level = new Level(2, FLUSH_THRESHOLD, fileManager, generationProvider, WriterConfig.defaults());
+
+        // the value is removed by a range tombstone of a table out of the merge, then the operand is written
+        final ByteBuffer key = randomKeyBuffer();
+        final TableEntry value = TableEntry.upsert(key, longBuffer(40));
+        final RangeTombstone tombstone = RangeTombstone.remove(key, null);
+        final TableEntry operand = TableEntry.merge(key, MergeUtils.operand(MergeOperator.ADD, longBuffer(2)));
+        level.addTable(generationProvider.nextGeneration(), table(fileManager, generationProvider, value));
+        final SSTable operands = table(fileManager, generationProvider, operand);
+
+        final Map<Integer, SSTable> merged = level.mergeWith(operands, RangeTombstones.of(List.of(tombstone)));
+        final Map<ByteBuffer, TableEntry> result = new HashMap<>();
+        merged.values().forEach(table -> table.lookup(List.of(key), result));
+        // the operand is applied to the absent value
+        final TableEntry entry = result.get(key);
+        assertFalse(entry.isOperand());
+        assertEquals(longBuffer(2), entry.getValue());
+    }
+
+    @Test
+    void tombstoneIsKeptForQueuedFlush(@TempDir final File data) throws IOException {
+        final LeveledFileManagerImpl fileManager = new LeveledFileManagerImpl(data);
+        final AtomicGenerationProvider generationProvider = new AtomicGenerationProvider();
+        final AtomicLong unflushedSince = new AtomicLong(Long.MIN_VALUE);
+        final LeveledSSTablePoolImpl pool = new LeveledSSTablePoolImpl(FLUSH_THRESHOLD, FLUSH_THRESHOLD,
+                fileManager, generationProvider, WriterConfig.defaults(), unflushedSince::get);
+
+        // the older table is still queued to flush when the newer tombstone is compacted into the last level
+        final ByteBuffer key = randomKeyBuffer();
+        final int olderGeneration = generationProvider.nextGeneration();
+        final SSTable older = SSTable.flushAndOpen(List.of(TableEntry.upsert(key, longBuffer(40))).iterator(),
+                fileManager.tempPathTo(olderGeneration), fileManager.finalPathTo(olderGeneration),
+                WriterConfig.defaults(), List.of());
+        final RangeTombstone tombstone = RangeTombstone.remove(key, null);
+        final int generation = generationProvider.nextGeneration();
+        pool.addTable(generation, SSTable.flushAndOpen(Collections.emptyIterator(), fileManager.tempPathTo(generation),
+                fileManager.finalPathTo(generation), WriterConfig.defaults(), List.of(tombstone)));
+        pool.compact();
+        assertEquals(1, pool.rangeTombstones().size());
+
+        pool.addTable(olderGeneration, older);
+        final Map<ByteBuffer, TableEntry> result = new HashMap<>();
+        pool.lookup(List.of(key), result);
+        assertTrue(RangeTombstones.of(pool.rangeTombstones()).isCovered(result.get(key)));
+
+        // nothing is queued and older than the tombstone anymore
+        unflushedSince.set(Long.MAX_VALUE);
+        pool.compact();
+        assertTrue(pool.rangeTombstones().isEmpty());
+        assertEquals(0, pool.count());
+        pool.close();
+    }
+
+    private static SSTable table(
+            final LeveledFileManagerImpl fileManager,
+            final AtomicGenerationProvider generationProvider,
+            final TableEntry entry) throws IOException {
+        final int generation = generationProvider.nextGeneration();
+        return SSTable.flushAndOpen(List.of(entry).iterator(), fileManager.tempPathTo(generation),
+                fileManager.finalPathTo(generation), WriterConfig.defaults(), List.of());
+    }
+
+    private static ByteBuffer longBuffer(final long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(0, value);
+    }
+}
@@ -16,14 +16,20 @@
 
 package ru.mail.polis.service;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Iterators;
 import one.nio.http.HttpClient;
+import one.nio.http.Request;
 import one.nio.http.Response;
 import one.nio.net.ConnectionString;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import ru.mail.polis.TestBase;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -132,4 +138,168 @@ abstract class ClusterTestBase extends TestBase {
             final int from) throws Exception {
         return client(node).put(path(key, ack, from), data);
     }
+
+    Response upsert(
+            final int node,
+            @NotNull final String key,
+            @NotNull final byte[] data,
+            final int ack,
+            final int from,
+            @NotNull final String... headers) throws Exception {
+        return client(node).put(path(key, ack, from), data, headers);
+    }
+
+    Response batch(
+            final int node,
+            @NotNull final byte[] operations,
+            final int ack,
+            final int from) throws Exception {
+        return client(node).post("/v0/batch?replicas=" + ack + "/" + from, operations);
+    }
+
+    Response getAll(
+            final int node,
+            @NotNull final byte[] ids,
+            final int ack,
+            final int from) throws Exception {
+        return client(node).post("/v0/entities/batch?replicas=" + ack + "/" + from, ids);
+    }
+
+    Response prefix(
+            final int node,
+            @NotNull final String prefix) throws Exception {
+        return client(node).get("/v0/entities?prefix=" + prefix);
+    }
+
+    Response range(
+            final int node,
+            @NotNull final String start,
+            @Nullable final String end) throws Exception {
+        return client(node).get(rangePath(start, end));
+    }
+
+    Response deleteRange(
+            final int node,
+            @NotNull final String start,
+            @Nullable final String end) throws Exception {
+        return client(node).delete(rangePath(start, end));
+    }
+
+    Response ingest(
+            final int node,
+            @NotNull final byte[] dump) throws Exception {
+        return client(node).post("/v0/admin/ingest", dump);
+    }
+
+    Response getFromFamily(
+            final int node,
+            @NotNull final String cf,
+            @NotNull final String key,
+            final int ack,
+            final int from) throws Exception {
+        return client(node).get(path(key, ack, from) + "&cf=" + cf);
+    }
+
+    Response upsertToFamily(
+            final int node,
+            @NotNull final String cf,
+            @NotNull final String key,
+            @NotNull final byte[] data,
+            final int ack,
+            final int from) throws Exception {
+        return client(node).put(path(key, ack, from) + "&cf=" + cf, data);
+    }
+
+    Response merge(
+            final int node,
+            @NotNull final String key,
+            @NotNull final String op,
+            @NotNull final byte[] operand,
+            final int ack,
+            final int from) throws Exception {
+        final HttpClient client = client(node);
+        final Request request = client.createRequest(Request.METHOD_PATCH, path(key, ack, from) + "&op=" + op);
+        request.addHeader("Content-Length: " + operand.length);
+        request.setBody(operand);
+        return client.invoke(request);
+    }
+
+    Response estimate(
+            final int node,
+            @NotNull final String start,
+            @Nullable final String end,
+            final int ack,
+            final int from) throws Exception {
+        return client(node).get("/v0/entities/estimate?start=" + start + (end == null ? "" : "&end=" + end)
+                + "&replicas=" + ack + "/" + from);
+    }
+
+    @NotNull
+    private static String rangePath(
+            @NotNull final String start,
+            @Nullable final String end) {
+        return "/v0/entities?start=" + start + (end == null ? "" : "&end=" + end);
+    }
+
+    /**
+     * Get the timestamp of the value reported in {@code X-OK-Timestamp}.
+     */
+    static long timestamp(@NotNull final Response response) {
+        return Long.parseLong(response.getHeader("X-OK-Timestamp: "));
+    }
+
+    /**
+     * Encode the write batch, {@code null} value is a removal.
+     */
+    @NotNull
+    static byte[] operations(@NotNull final Map<String, byte[]> values) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        values.forEach((id, value) -> {
+            writeId(out, id);
+            if (value == null) {
+                out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(-1).array());
+            } else {
+                out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(value.length).array());
+                out.writeBytes(value);
+            }
+        });
+        return out.toByteArray();
+    }
+
+    @NotNull
+    static byte[] ids(@NotNull final Collection<String> ids) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ids.forEach(id -> writeId(out, id));
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode the values of the multi-get response, removed and absent values are {@code null}.
+     */
+    @NotNull
+    static Map<String, byte[]> values(@NotNull final byte[] body) {
+        final ByteBuffer buffer = ByteBuffer.wrap(body);
+        final Map<String, byte[]> values = new HashMap<>();
+        while (buffer.hasRemaining()) {
+            final byte[] id = new byte[buffer.getInt()];
+            buffer.get(id);
+            buffer.getLong();
+            final int size = buffer.getInt();
+            byte[] value = null;
+            if (size >= 0) {
+                value = new byte[size];
+                buffer.get(value);
+            }
+            values.put(new String(id, Charsets.UTF_8), value);
+        }
+        return values;
+    }
+
+    private static void writeId(
+            @NotNull final ByteArrayOutputStream out,
+            @NotNull final String id) {
+        final byte[] bytes = id.getBytes(Charsets.UTF_8);
+        out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        out.writeBytes(bytes);
+    }
 }
@@ -0,0 +1,345 @@
+package ru.mail.polis.service;
+
+import com.google.common.base.Charsets;
+import one.nio.http.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.Files;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.DAOFactory;
+import ru.mail.polis.dao.vaddya.DAOConfig;
+import ru.mail.polis.dao.vaddya.EntryDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the single node API beyond the entity CRUD.
+ */
+class SingleNodeExtendedApiTest extends ClusterTestBase {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private static final String FAMILY = "counters";
+    private File data;
+    private DAO dao;
+    private Service storage;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        final int port = randomPort();
+        endpoints = Collections.singleton(endpoint(port));
+        data = Files.createTempDirectory();
+        dao = DAOFactory.create(data);
+        ((EntryDAO) dao).openColumnFamily(FAMILY, DAOConfig.of(FLUSH_THRESHOLD));
+        storage = ServiceFactory.create(port, dao, endpoints);
+        start(0, storage);
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        stop(0, storage);
+        dao.close();
+        Files.recursiveDelete(data);
+        endpoints = Collections.emptySet();
+    }
+
+    @Test
+    void clientTimestampIsIgnored() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value = randomValue();
+
+            // Only the other nodes are trusted to move the clock
+            final String header = "X-OK-Timestamp: " + Long.MAX_VALUE;
+            assertEquals(201, upsert(0, key, randomValue(), 1, 1, header).getStatus());
+            assertEquals(201, upsert(0, key, value).getStatus());
+            final Response response = get(0, key);
+            assertArrayEquals(value, response.getBody());
+            assertTrue(timestamp(response) < Long.MAX_VALUE);
+        });
+    }
+
+    @Test
+    void timestampTooFarAhead() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final long ahead = (System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)) * 1_000_000L;
+
+            final String[] headers = {"X-OK-Proxy: True", "X-OK-Timestamp: " + ahead};
+            assertEquals(201, upsert(0, key, randomValue(), 1, 1, headers).getStatus());
+            assertEquals(201, upsert(0, key, randomValue()).getStatus());
+            assertTrue(timestamp(get(0, key)) < ahead);
+        });
+    }
+
+    @Test
+    void batch() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key1 = randomId();
+            final String key2 = randomId();
+            final String removed = randomId();
+            final byte[] value1 = randomValue();
+            final byte[] value2 = randomValue();
+            assertEquals(201, upsert(0, removed, randomValue()).getStatus());
+
+            final Map<String, byte[]> operations = new LinkedHashMap<>();
+            operations.put(key1, value1);
+            operations.put(key2, value2);
+            operations.put(removed, null);
+            assertEquals(201, batch(0, operations(operations), 1, 1).getStatus());
+
+            assertArrayEquals(value1, get(0, key1).getBody());
+            assertArrayEquals(value2, get(0, key2).getBody());
+            assertEquals(404, get(0, removed).getStatus());
+        });
+    }
+
+    @Test
+    void malformedBatch() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final byte[] truncated = ByteBuffer.allocate(Integer.BYTES).putInt(100).array();
+            assertEquals(400, batch(0, truncated, 1, 1).getStatus());
+            assertEquals(400, getAll(0, truncated, 1, 1).getStatus());
+        });
+    }
+
+    @Test
+    void getAll() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String present = randomId();
+            final String removed = randomId();
+            final String absent = randomId();
+            final byte[] value = randomValue();
+            assertEquals(201, upsert(0, present, value).getStatus());
+            assertEquals(201, upsert(0, removed, randomValue()).getStatus());
+            assertEquals(202, delete(0, removed).getStatus());
+
+            final Response response = getAll(0, ids(List.of(present, removed, absent)), 1, 1);
+            assertEquals(200, response.getStatus());
+            final Map<String, byte[]> values = values(response.getBody());
+            assertEquals(3, values.size());
+            assertArrayEquals(value, values.get(present));
+            assertNull(values.get(removed));
+            assertNull(values.get(absent));
+        });
+    }
+
+    @Test
+    void prefix() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            assertEquals(201, upsert(0, "prefix1", "value1".getBytes(Charsets.UTF_8)).getStatus());
+            assertEquals(201, upsert(0, "prefix2", "value2".getBytes(Charsets.UTF_8)).getStatus());
+            assertEquals(201, upsert(0, "other", "value3".getBytes(Charsets.UTF_8)).getStatus());
+            assertEquals(202, delete(0, "prefix2").getStatus());
+
+            final Response response = prefix(0, "prefix");
+            assertEquals(200, response.getStatus());
+            assertArrayEquals("prefix1\nvalue1".getBytes(Charsets.UTF_8), response.getBody());
+
+            assertEquals(200, prefix(0, "absent").getStatus());
+            assertEquals(0, prefix(0, "absent").getBody().length);
+            assertEquals(400, prefix(0, "").getStatus());
+        });
+    }
+
+    @Test
+    void deleteRange() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String prefix = "range";
+            for (int i = 1; i <= 4; i++) {
+                assertEquals(201, upsert(0, prefix + i, randomValue()).getStatus());
+            }
+
+            assertEquals(202, deleteRange(0, prefix + 2, prefix + 4).getStatus());
+
+            assertEquals(200, get(0, prefix + 1).getStatus());
+            assertEquals(404, get(0, prefix + 2).getStatus());
+            assertEquals(404, get(0, prefix + 3).getStatus());
+            assertEquals(200, get(0, prefix + 4).getStatus());
+            assertEquals(0, range(0, prefix + 2, prefix + 4).getBody().length);
+
+            // Unbounded range removes the rest of the keys
+            assertEquals(202, deleteRange(0, prefix + 4, null).getStatus());
+            assertEquals(404, get(0, prefix + 4).getStatus());
+        });
+    }
+
+    @Test
+    void ingest() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final byte[] value1 = randomValue();
+            final byte[] value2 = randomValue();
+            assertEquals(201, upsert(0, "dump3", randomValue()).getStatus());
+
+            final Map<String, byte[]> dump = new LinkedHashMap<>();
+            dump.put("dump1", value1);
+            dump.put("dump2", value2);
+            dump.put("dump3", null);
+            assertEquals(201, ingest(0, operations(dump)).getStatus());
+
+            assertArrayEquals(value1, get(0, "dump1").getBody());
+            assertArrayEquals(value2, get(0, "dump2").getBody());
+            assertEquals(404, get(0, "dump3").getStatus());
+        });
+    }
+
+    @Test
+    void unsortedDump() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final Map<String, byte[]> dump = new LinkedHashMap<>();
+            dump.put("dump2", randomValue());
+            dump.put("dump1", randomValue());
+            assertEquals(400, ingest(0, operations(dump)).getStatus());
+            assertEquals(404, get(0, "dump1").getStatus());
+        });
+    }
+
+    @Test
+    void columnFamily() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value = randomValue();
+
+            assertEquals(201, upsertToFamily(0, FAMILY, key, value, 1, 1).getStatus());
+            final Response response = getFromFamily(0, FAMILY, key, 1, 1);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value, response.getBody());
+
+            // The default keyspace is independent
+            assertEquals(404, get(0, key).getStatus());
+
+            assertEquals(404, getFromFamily(0, "absent", key, 1, 1).getStatus());
+            assertEquals(400, getFromFamily(0, "wrong.name", key, 1, 1).getStatus());
+        });
+    }
+
+    @Test
+    void merge() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String counter = randomId();
+            assertEquals(202, merge(0, counter, "add", longBytes(2), 1, 1).getStatus());
+            assertEquals(202, merge(0, counter, "add", longBytes(3), 1, 1).getStatus());
+            assertArrayEquals(longBytes(5), get(0, counter).getBody());
+
+            final String text = randomId();
+            assertEquals(201, upsert(0, text, "a".getBytes(Charsets.UTF_8)).getStatus());
+            assertEquals(202, merge(0, text, "append", "b".getBytes(Charsets.UTF_8), 1, 1).getStatus());
+            assertArrayEquals("ab".getBytes(Charsets.UTF_8), get(0, text).getBody());
+        });
+    }
+
+    @Test
+    void wrongMerge() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            assertEquals(400, merge(0, key, "unknown", longBytes(1), 1, 1).getStatus());
+            assertEquals(400, merge(0, key, "add", new byte[]{1}, 1, 1).getStatus());
+            assertEquals(404, get(0, key).getStatus());
+        });
+    }
+
+    @Test
+    void conditionalPut() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value1 = randomValue();
+            final byte[] value2 = randomValue();
+
+            // Create only if absent
+            assertEquals(201, upsert(0, key, value1, 1, 1, "If-None-Match: *").getStatus());
+            assertEquals(412, upsert(0, key, value2, 1, 1, "If-None-Match: *").getStatus());
+            Response response = get(0, key);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value1, response.getBody());
+
+            // Replace only the version that was read
+            final long ts = timestamp(response);
+            assertEquals(201, upsert(0, key, value2, 1, 1, "If-Match: " + ts).getStatus());
+            assertEquals(412, upsert(0, key, value1, 1, 1, "If-Match: " + ts).getStatus());
+            response = get(0, key);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value2, response.getBody());
+        });
+    }
+
+    @Test
+    void conditionalPutOfRemoved() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value = randomValue();
+
+            assertEquals(201, upsert(0, key, randomValue()).getStatus());
+            assertEquals(202, delete(0, key).getStatus());
+            assertEquals(201, upsert(0, key, value, 1, 1, "If-None-Match: *").getStatus());
+            assertArrayEquals(value, get(0, key).getBody());
+        });
+    }
+
+    @Test
+    void wrongPrecondition() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            assertEquals(400, upsert(0, key, randomValue(), 1, 1, "If-None-Match: 42").getStatus());
+            assertEquals(400, upsert(0, key, randomValue(), 1, 1, "If-Match: never").getStatus());
+            assertEquals(400, upsert(0, key, randomValue(), 1, 1, "If-Match: 42", "If-None-Match: *").getStatus());
+            assertEquals(404, get(0, key).getStatus());
+        });
+    }
+
+    @Test
+    void timestampHeader() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            assertEquals(201, upsert(0, key, randomValue()).getStatus());
+            Response response = get(0, key);
+            assertEquals(200, response.getStatus());
+            final long upserted = timestamp(response);
+
+            // Removed value keeps the timestamp of the removal
+            assertEquals(202, delete(0, key).getStatus());
+            response = get(0, key);
+            assertEquals(404, response.getStatus());
+            assertTrue(timestamp(response) > upserted);
+
+            // Absent value has no timestamp
+            assertNull(get(0, randomId()).getHeader("X-OK-Timestamp: "));
+        });
+    }
+
+    @Test
+    void estimate() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String prefix = "estimate";
+            long size = 0;
+            for (int i = 0; i < 10; i++) {
+                final byte[] value = randomValue();
+                assertEquals(201, upsert(0, prefix + i, value).getStatus());
+                size += (prefix + i).length() + value.length;
+            }
+            assertEquals(201, upsert(0, "other", randomValue()).getStatus());
+
+            final Response response = estimate(0, prefix, prefix + "~", 1, 1);
+            assertEquals(200, response.getStatus());
+            assertEquals(size + " " + 10, new String(response.getBody(), Charsets.UTF_8).trim());
+
+            assertEquals(400, estimate(0, "", null, 1, 1).getStatus());
+        });
+    }
+
+    private static byte[] longBytes(final long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+}
@@ -0,0 +1,291 @@
+package ru.mail.polis.service;
+
+import com.google.common.base.Charsets;
+import one.nio.http.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.Files;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.DAOFactory;
+import ru.mail.polis.dao.vaddya.DAOConfig;
+import ru.mail.polis.dao.vaddya.EntryDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the API beyond the entity CRUD on a three node replicated {@link Service} cluster.
+ */
+class ThreeNodeExtendedApiTest extends ClusterTestBase {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private static final int NODES = 3;
+    private static final String FAMILY = "counters";
+    private final File[] data = new File[NODES];
+    private final DAO[] daos = new DAO[NODES];
+    private final Service[] storages = new Service[NODES];
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        final int[] ports = new int[NODES];
+        endpoints = new LinkedHashSet<>();
+        for (int node = 0; node < NODES; node++) {
+            ports[node] = randomPort();
+            endpoints.add(endpoint(ports[node]));
+        }
+        for (int node = 0; node < NODES; node++) {
+            data[node] = Files.createTempDirectory();
+            daos[node] = DAOFactory.create(data[node]);
+            ((EntryDAO) daos[node]).openColumnFamily(FAMILY, DAOConfig.of(FLUSH_THRESHOLD));
+            storages[node] = ServiceFactory.create(ports[node], daos[node], endpoints);
+            start(node, storages[node]);
+        }
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        for (int node = 0; node < NODES; node++) {
+            stop(node, storages[node]);
+            daos[node].close();
+            Files.recursiveDelete(data[node]);
+        }
+        endpoints = Collections.emptySet();
+    }
+
+    @Test
+    void batch() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final Map<String, byte[]> operations = new LinkedHashMap<>();
+            for (int i = 0; i < 10; i++) {
+                operations.put(randomId(), randomValue());
+            }
+            final String removed = randomId();
+            assertEquals(201, upsert(1, removed, randomValue(), 3, 3).getStatus());
+            operations.put(removed, null);
+
+            assertEquals(201, batch(0, operations(operations), 2, 3).getStatus());
+
+            for (final Map.Entry<String, byte[]> operation : operations.entrySet()) {
+                final Response response = get(2, operation.getKey(), 2, 3);
+                if (operation.getValue() == null) {
+                    assertEquals(404, response.getStatus());
+                } else {
+                    assertEquals(200, response.getStatus());
+                    assertArrayEquals(operation.getValue(), response.getBody());
+                }
+            }
+        });
+    }
+
+    @Test
+    void batchWithoutReplicas() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            stop(0, storages[0]);
+            final Map<String, byte[]> operations = new LinkedHashMap<>();
+            for (int i = 0; i < 10; i++) {
+                operations.put(randomId(), randomValue());
+            }
+            assertEquals(504, batch(1, operations(operations), 3, 3).getStatus());
+        });
+    }
+
+    @Test
+    void getAll() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final Map<String, byte[]> expected = new LinkedHashMap<>();
+            for (int i = 0; i < 10; i++) {
+                final String key = randomId();
+                final byte[] value = randomValue();
+                assertEquals(201, upsert(i % NODES, key, value, 2, 3).getStatus());
+                expected.put(key, value);
+            }
+            final String absent = randomId();
+
+            final List<String> ids = new ArrayList<>(expected.keySet());
+            ids.add(absent);
+            final Response response = getAll(1, ids(ids), 2, 3);
+            assertEquals(200, response.getStatus());
+            final Map<String, byte[]> values = values(response.getBody());
+            assertEquals(ids.size(), values.size());
+            expected.forEach((key, value) -> assertArrayEquals(value, values.get(key)));
+            assertNull(values.get(absent));
+        });
+    }
+
+    @Test
+    void getAllWithoutReplicas() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            stop(0, storages[0]);
+            assertEquals(504, getAll(1, ids(List.of(randomId(), randomId())), 3, 3).getStatus());
+        });
+    }
+
+    @Test
+    void deleteRange() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String prefix = "range";
+            for (int i = 1; i <= 4; i++) {
+                assertEquals(201, upsert(0, prefix + i, randomValue(), 3, 3).getStatus());
+            }
+
+            // The range is removed on all the nodes, since the keys are spread over the whole cluster
+            assertEquals(202, deleteRange(1, prefix + 2, prefix + 4).getStatus());
+
+            assertEquals(200, get(2, prefix + 1, 3, 3).getStatus());
+            assertEquals(404, get(2, prefix + 2, 3, 3).getStatus());
+            assertEquals(404, get(2, prefix + 3, 3, 3).getStatus());
+            assertEquals(200, get(2, prefix + 4, 3, 3).getStatus());
+        });
+    }
+
+    @Test
+    void deleteRangeWithoutQuorum() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            stop(0, storages[0]);
+            stop(1, storages[1]);
+            assertEquals(504, deleteRange(2, "range1", "range2").getStatus());
+        });
+    }
+
+    @Test
+    void ingestIsLocal() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final byte[] value = randomValue();
+            final Map<String, byte[]> dump = new LinkedHashMap<>();
+            dump.put("dump1", value);
+            assertEquals(201, ingest(0, operations(dump)).getStatus());
+
+            // Only the node which ingested the dump has the value, so the reads of all the replicas find it
+            final Response response = get(1, "dump1", 3, 3);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value, response.getBody());
+        });
+    }
+
+    @Test
+    void columnFamily() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value = randomValue();
+
+            assertEquals(201, upsertToFamily(0, FAMILY, key, value, 3, 3).getStatus());
+            final Response response = getFromFamily(1, FAMILY, key, 3, 3);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value, response.getBody());
+
+            assertEquals(404, get(2, key, 3, 3).getStatus());
+            assertEquals(404, getFromFamily(2, "absent", key, 3, 3).getStatus());
+        });
+    }
+
+    @Test
+    void merge() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String counter = randomId();
+            for (int node = 0; node < NODES; node++) {
+                assertEquals(202, merge(node, counter, "add", longBytes(node + 1), 3, 3).getStatus());
+            }
+            for (int node = 0; node < NODES; node++) {
+                assertArrayEquals(longBytes(6), get(node, counter, 3, 3).getBody());
+            }
+
+            final String max = randomId();
+            assertEquals(202, merge(0, max, "max", longBytes(7), 3, 3).getStatus());
+            assertEquals(202, merge(1, max, "max", longBytes(3), 3, 3).getStatus());
+            assertArrayEquals(longBytes(7), get(2, max, 3, 3).getBody());
+        });
+    }
+
+    @Test
+    void mergeWithoutReplicas() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            stop(0, storages[0]);
+            assertEquals(504, merge(1, randomId(), "append", "a".getBytes(Charsets.UTF_8), 3, 3).getStatus());
+        });
+    }
+
+    @Test
+    void conditionalPut() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value1 = randomValue();
+            final byte[] value2 = randomValue();
+
+            // Create only if absent on the replicas
+            assertEquals(201, upsert(0, key, value1, 2, 3, "If-None-Match: *").getStatus());
+            assertEquals(412, upsert(1, key, value2, 2, 3, "If-None-Match: *").getStatus());
+            Response response = get(2, key, 3, 3);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value1, response.getBody());
+
+            // Replace only the version that was read
+            final long ts = timestamp(response);
+            assertEquals(201, upsert(1, key, value2, 3, 3, "If-Match: " + ts).getStatus());
+            assertEquals(412, upsert(2, key, value1, 3, 3, "If-Match: " + ts).getStatus());
+            response = get(0, key, 3, 3);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value2, response.getBody());
+        });
+    }
+
+    @Test
+    void conditionalPutWithoutReplicas() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            stop(0, storages[0]);
+            assertEquals(504, upsert(1, key, randomValue(), 3, 3, "If-None-Match: *").getStatus());
+        });
+    }
+
+    @Test
+    void timestampHeader() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            assertEquals(201, upsert(0, key, randomValue(), 3, 3).getStatus());
+            Response response = get(1, key, 3, 3);
+            assertEquals(200, response.getStatus());
+            final long upserted = timestamp(response);
+
+            assertEquals(202, delete(2, key, 3, 3).getStatus());
+            response = get(0, key, 3, 3);
+            assertEquals(404, response.getStatus());
+            assertTrue(timestamp(response) > upserted);
+        });
+    }
+
+    @Test
+    void estimate() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String prefix = "estimate";
+            long size = 0;
+            for (int i = 0; i < 10; i++) {
+                final byte[] value = randomValue();
+                assertEquals(201, upsert(i % NODES, prefix + i, value, 3, 3).getStatus());
+                size += (prefix + i).length() + value.length;
+            }
+
+            // Each node has all the keys, so the sum of the nodes is divided by the replicas
+            final Response response = estimate(1, prefix, prefix + "~", 3, 3);
+            assertEquals(200, response.getStatus());
+            assertEquals(size + " " + 10, new String(response.getBody(), Charsets.UTF_8).trim());
+        });
+    }
+
+    private static byte[] longBytes(final long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+}